@@ -0,0 +1,251 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2023 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.muenchen.allg.itd51.wollmux.config.ConfigThingy;
+import de.muenchen.allg.itd51.wollmux.config.ConfigWatcher;
+import de.muenchen.allg.itd51.wollmux.config.SyntaxErrorException;
+import de.muenchen.allg.itd51.wollmux.db.Datasources;
+import de.muenchen.allg.itd51.wollmux.document.DocumentLoader;
+import de.muenchen.allg.itd51.wollmux.event.handlers.OnReloadConfiguration;
+import de.muenchen.allg.itd51.wollmux.util.L;
+
+/**
+ * Reloads the configuration if wollmux.conf or one of its included files changes.
+ *
+ * The files are parsed on the thread of the {@link ConfigWatcher}. If the top level sections of
+ * the new configuration differ from the current ones, an {@link OnReloadConfiguration} event
+ * replaces the configuration on the event queue. So an event sees either the old or the new
+ * configuration but never a mixture. Only the data sources and function libraries affected by the
+ * changed sections are rebuilt. Menus, text fragments and everything else which is read from the
+ * configuration when it's needed see the new configuration automatically.
+ */
+public class ConfigReloader
+{
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ConfigReloader.class);
+
+  /**
+   * Environment variable or system property to enable the reload of the configuration with "on".
+   */
+  private static final String WOLLMUX_CONF_RELOAD = "WOLLMUX_CONF_RELOAD";
+
+  /**
+   * Interval in milliseconds in which the files are checked, if they can't be watched.
+   */
+  private static final long POLL_INTERVAL = 30000;
+
+  /**
+   * Sections which are only evaluated during startup.
+   */
+  private static final Set<String> RESTART_SECTIONS = Set.of("DEFAULT_CONTEXT", "CLASSPATH",
+      "LOGGING_MODE", "L10n", "Tastenkuerzel", "OOoEinstellungen", "SENDER_SOURCE",
+      "AbsenderdatenSpaltenumsetzung", "OVERRIDE_FRAG_DB_SPALTE", "CONF_SERVER", "USERNAME");
+
+  /**
+   * Sections of the {@link GlobalFunctions}.
+   */
+  private static final Set<String> FUNCTION_SECTIONS = Set.of("Funktionen", "Funktionsdialoge",
+      "Druckfunktionen", "Dokumentaktionen");
+
+  private static ConfigWatcher watcher;
+
+  private ConfigReloader()
+  {
+    // nothing to do
+  }
+
+  /**
+   * Start watching the files of the configuration if it is enabled by the environment variable or
+   * system property WOLLMUX_CONF_RELOAD.
+   */
+  public static void start()
+  {
+    String mode = System.getProperty(WOLLMUX_CONF_RELOAD, System.getenv(WOLLMUX_CONF_RELOAD));
+    File file = WollMuxFiles.getWollMuxConfFile();
+    if (!"on".equalsIgnoreCase(mode) || file == null)
+    {
+      return;
+    }
+
+    List<URL> urls = WollMuxFiles.getWollmuxConfUrls();
+    if (urls.isEmpty())
+    {
+      try
+      {
+        // the configuration couldn't be loaded, so only the file itself is known
+        urls = List.of(file.toURI().toURL());
+      } catch (MalformedURLException e)
+      {
+        LOGGER.error("", e);
+        return;
+      }
+    }
+    watch(urls);
+  }
+
+  private static synchronized void watch(List<URL> urls)
+  {
+    if (watcher != null)
+    {
+      if (watcher.getUrls().equals(urls))
+      {
+        return;
+      }
+      watcher.close();
+    }
+
+    LOGGER.debug("Watching configuration files {}", urls);
+    watcher = new ConfigWatcher(urls, POLL_INTERVAL, ConfigReloader::reload);
+    try
+    {
+      watcher.start();
+    } catch (IOException e)
+    {
+      LOGGER.error(L.m("Changes of the configuration can't be detected."), e);
+      watcher = null;
+    }
+  }
+
+  /**
+   * Parse the configuration files and emit an event if the configuration has changed.
+   */
+  private static void reload()
+  {
+    List<URL> urls = new ArrayList<>();
+    ConfigThingy conf;
+    try
+    {
+      conf = WollMuxFiles.reloadWollMuxConf(WollMuxFiles.getWollMuxConfFile(), urls);
+    } catch (IOException | SyntaxErrorException e)
+    {
+      LOGGER.error(L.m("The changed configuration can't be loaded. The current configuration is kept."), e);
+      return;
+    } catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+      return;
+    }
+
+    if (!changedSections(WollMuxFiles.getWollmuxConf(), conf).isEmpty())
+    {
+      new OnReloadConfiguration(conf, urls).emit();
+    }
+    watch(urls);
+  }
+
+  /**
+   * Replace the configuration and rebuild everything which depends on the changed sections. Has to
+   * be called on the event queue.
+   *
+   * @param conf
+   *          The new configuration.
+   * @param urls
+   *          The files of the new configuration.
+   */
+  public static void apply(ConfigThingy conf, List<URL> urls)
+  {
+    Set<String> changed = changedSections(WollMuxFiles.getWollmuxConf(), conf);
+    if (changed.isEmpty())
+    {
+      return;
+    }
+    LOGGER.info("Reload configuration, changed sections: {}", changed);
+
+    WollMuxFiles.setWollmuxConf(conf, urls);
+    boolean datasourcesChanged = changed.contains("Datenquellen")
+        && Datasources.reload(conf, WollMuxFiles.getDefaultContext());
+    if (datasourcesChanged || !Collections.disjoint(changed, FUNCTION_SECTIONS))
+    {
+      GlobalFunctions.reload();
+    }
+    DocumentLoader.getInstance().clear();
+
+    Set<String> restart = new TreeSet<>(changed);
+    restart.retainAll(RESTART_SECTIONS);
+    if (!restart.isEmpty())
+    {
+      LOGGER.warn(L.m("Changes of {0} take effect after a restart of LibreOffice.", restart));
+    }
+  }
+
+  /**
+   * Compare the top level sections of two configurations. Sections with the same name are
+   * compared as a whole, because they are usually queried together.
+   *
+   * @param oldConf
+   *          The old configuration.
+   * @param newConf
+   *          The new configuration.
+   * @return The names of the sections which have been added, removed or changed.
+   */
+  static Set<String> changedSections(ConfigThingy oldConf, ConfigThingy newConf)
+  {
+    Map<String, String> oldSections = sections(oldConf);
+    Map<String, String> newSections = sections(newConf);
+    Set<String> changed = new TreeSet<>();
+    for (Map.Entry<String, String> section : oldSections.entrySet())
+    {
+      if (!section.getValue().equals(newSections.get(section.getKey())))
+      {
+        changed.add(section.getKey());
+      }
+    }
+    for (String name : newSections.keySet())
+    {
+      if (!oldSections.containsKey(name))
+      {
+        changed.add(name);
+      }
+    }
+    return changed;
+  }
+
+  private static Map<String, String> sections(ConfigThingy conf)
+  {
+    Map<String, StringBuilder> sections = new HashMap<>();
+    for (ConfigThingy section : conf)
+    {
+      sections.computeIfAbsent(section.getName(), name -> new StringBuilder())
+          .append(section.stringRepresentation());
+    }
+    Map<String, String> result = new HashMap<>();
+    sections.forEach((name, content) -> result.put(name, content.toString()));
+    return result;
+  }
+}
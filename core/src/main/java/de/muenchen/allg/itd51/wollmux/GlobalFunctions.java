@@ -22,6 +22,8 @@
  */
 package de.muenchen.allg.itd51.wollmux;
 
+import de.muenchen.allg.itd51.wollmux.config.ConfigThingy;
+import de.muenchen.allg.itd51.wollmux.config.NodeNotFoundException;
 import de.muenchen.allg.itd51.wollmux.dialog.DialogFactory;
 import de.muenchen.allg.itd51.wollmux.dialog.DialogLibrary;
 import de.muenchen.allg.itd51.wollmux.func.FunctionFactory;
@@ -35,7 +37,7 @@ import de.muenchen.allg.itd51.wollmux.print.PrintFunctionLibrary;
 public class GlobalFunctions
 {
 
-  private static GlobalFunctions instance;
+  private static volatile GlobalFunctions instance;
 
   /**
    * Enthält die im Funktionen-Abschnitt der wollmux,conf definierten Funktionen.
@@ -62,8 +64,24 @@ public class GlobalFunctions
     return instance;
   }
 
+  /**
+   * Parst die Funktionen neu, nachdem sich die wollmux,conf geändert hat. Die neuen Bibliotheken
+   * werden gemeinsam ausgetauscht, Aufrufer die sich eine Bibliothek geholt haben arbeiten mit
+   * der alten Bibliothek weiter.
+   */
+  public static void reload()
+  {
+    if (instance != null)
+      instance = new GlobalFunctions();
+  }
+
   private GlobalFunctions()
   {
+    /*
+     * Muss vor dem Parsen der Funktionen festgelegt werden.
+     */
+    FunctionFactory.setCompileFunctions(isCompileFunctions(WollMuxFiles.getWollmuxConf()));
+
     /*
      * Globale Funktionsdialoge parsen. ACHTUNG! Muss vor parseGlobalFunctions() erfolgen. Als
      * context wird null übergeben, weil globale Funktionen keinen Kontext haben.
@@ -95,6 +113,23 @@ public class GlobalFunctions
       WollMuxFiles.getWollmuxConf(), "Dokumentaktionen", null, null);
   }
 
+  /**
+   * Liefert true, falls der letzte COMPILE_FUNCTIONS-Eintrag in conf "true" ist. Dann
+   * werden die Funktionen der Konfiguration und der Formulare übersetzt statt
+   * interpretiert (siehe {@link de.muenchen.allg.itd51.wollmux.func.FunctionCompiler}).
+   */
+  static boolean isCompileFunctions(ConfigThingy conf)
+  {
+    try
+    {
+      return conf.query("COMPILE_FUNCTIONS", 1).getLastChild().toString()
+          .equalsIgnoreCase("true");
+    } catch (NodeNotFoundException e)
+    {
+      return false;
+    }
+  }
+
   /**
    * Liefert die Funktionsbibliothek, die die global definierten Funktionen enthält.
    */
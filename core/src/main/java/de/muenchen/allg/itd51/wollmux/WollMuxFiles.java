@@ -31,6 +31,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.io.Writer;
 import java.lang.management.ManagementFactory;
 import java.net.InetAddress;
 import java.net.MalformedURLException;
@@ -49,7 +50,9 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Enumeration;
+import java.util.List;
 import java.util.Properties;
+import java.util.TreeSet;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
 import java.util.regex.Pattern;
@@ -78,8 +81,15 @@ import com.sun.star.util.XStringSubstitution;
 import de.muenchen.allg.afid.UNO;
 import de.muenchen.allg.afid.UnoDictionary;
 import de.muenchen.allg.afid.UnoProps;
+import de.muenchen.allg.itd51.wollmux.config.CompiledConfig;
 import de.muenchen.allg.itd51.wollmux.config.ConfigThingy;
+import de.muenchen.allg.itd51.wollmux.config.IncludeLoader;
 import de.muenchen.allg.itd51.wollmux.config.NodeNotFoundException;
+import de.muenchen.allg.itd51.wollmux.config.SyntaxErrorException;
+import de.muenchen.allg.itd51.wollmux.func.Function;
+import de.muenchen.allg.itd51.wollmux.func.FunctionLibrary;
+import de.muenchen.allg.itd51.wollmux.func.FunctionOptimizer;
+import de.muenchen.allg.itd51.wollmux.func.MemoizedFunction;
 import de.muenchen.allg.itd51.wollmux.util.L;
 import de.muenchen.allg.itd51.wollmux.util.Utils;
 import de.muenchen.allg.util.UnoComponent;
@@ -99,6 +109,19 @@ public class WollMuxFiles
 
   private static final String WOLLMUX_CONF_PATH = "WOLLMUX_CONF_PATH";
 
+  /**
+   * Environment variable or system property to control the cache of the configuration. "off"
+   * disables the cache, "rebuild" ignores an existing cache and creates a new one.
+   */
+  private static final String WOLLMUX_CONF_CACHE = "WOLLMUX_CONF_CACHE";
+
+  private static final String WOLLMUX_CONF_CACHE_FILE = "wollmux.conf.cache";
+
+  /**
+   * Folder for the cache of included files from HTTP servers.
+   */
+  private static final String WOLLMUX_INCLUDE_CACHE_DIR = "includes";
+
   private static boolean debugMode = false;
 
   /**
@@ -122,7 +145,12 @@ public class WollMuxFiles
   /**
    * The configuration.
    */
-  private static ConfigThingy wollmuxConf;
+  private static volatile ConfigThingy wollmuxConf;
+
+  /**
+   * The files of the configuration.
+   */
+  private static volatile List<URL> wollmuxConfUrls = List.of();
 
   /**
    * The .wollmux folder in user space.
@@ -182,21 +210,10 @@ public class WollMuxFiles
     {
       try
       {
-        wollmuxConf = new ConfigThingy("", wollMuxConfigFile.toURI().toURL());
-	String serverURI = wollmuxConf.getString("CONF_SERVER", null);
-        if (serverURI != null)
-        {
-          String user = wollmuxConf.getString("USERNAME", System.getProperty("user.name"));
-          HttpClient client = HttpClient.newHttpClient();
-          HttpRequest request = HttpRequest.newBuilder().uri(URI.create(serverURI))
-              .header("Content-Type", "application/json")
-              .POST(BodyPublishers.ofString(("{ \"username\":\"" + user + "\"}")))
-              .timeout(Duration.ofSeconds(5)).build();
-
-          HttpResponse<String> response = client.send(request, BodyHandlers.ofString());
-
-          wollmuxConf = new ConfigThingy("", response.body());
-        }
+        List<URL> urls = new ArrayList<>();
+        wollmuxConf = loadWollMuxConf(wollMuxConfigFile.toURI().toURL(), urls);
+        wollmuxConfUrls = urls;
+        wollmuxConf = fetchServerConf(wollmuxConf);
       } catch (HttpTimeoutException ex) {
         LOGGER.error("Serverrespond takes more than 5 seconds", ex);
       } catch (Exception e)
@@ -208,9 +225,112 @@ public class WollMuxFiles
       LOGGER.info(WOLLMUX_NOCONF);
     }
 
+    wollmuxConf.enableQueryIndex();
     return wollmuxConf;
   }
 
+  /**
+   * Load a configuration again without replacing the current one. Other than
+   * {@link #parseWollMuxConf(File)} all errors are reported, so that a configuration which is
+   * currently edited doesn't replace a valid one.
+   *
+   * @param wollMuxConfigFile
+   *          The configuration file.
+   * @param urls
+   *          Gets the URLs of the configuration file and its included files.
+   * @return The configuration.
+   * @throws IOException
+   *           The configuration or an included file can't be read.
+   * @throws SyntaxErrorException
+   *           The configuration isn't valid.
+   * @throws InterruptedException
+   *           The request to the configuration server has been interrupted.
+   */
+  static ConfigThingy reloadWollMuxConf(File wollMuxConfigFile, List<URL> urls)
+      throws IOException, SyntaxErrorException, InterruptedException
+  {
+    ConfigThingy conf = fetchServerConf(loadWollMuxConf(wollMuxConfigFile.toURI().toURL(), urls));
+    conf.enableQueryIndex();
+    return conf;
+  }
+
+  /**
+   * Replace the configuration.
+   *
+   * @param conf
+   *          The new configuration.
+   * @param urls
+   *          The URLs of the configuration file and its included files.
+   */
+  static void setWollmuxConf(ConfigThingy conf, List<URL> urls)
+  {
+    wollmuxConf = conf;
+    wollmuxConfUrls = List.copyOf(urls);
+  }
+
+  /**
+   * Replace the configuration by the one of the configuration server if it is defined by
+   * CONF_SERVER.
+   *
+   * @param conf
+   *          The configuration.
+   * @return The configuration of the server or conf if there's no server.
+   */
+  private static ConfigThingy fetchServerConf(ConfigThingy conf)
+      throws IOException, SyntaxErrorException, InterruptedException
+  {
+    String serverURI = conf.getString("CONF_SERVER", null);
+    if (serverURI == null)
+    {
+      return conf;
+    }
+
+    String user = conf.getString("USERNAME", System.getProperty("user.name"));
+    HttpClient client = HttpClient.newHttpClient();
+    HttpRequest request = HttpRequest.newBuilder().uri(URI.create(serverURI))
+        .header("Content-Type", "application/json")
+        .POST(BodyPublishers.ofString(("{ \"username\":\"" + user + "\"}")))
+        .timeout(Duration.ofSeconds(5)).build();
+
+    HttpResponse<String> response = client.send(request, BodyHandlers.ofString());
+
+    return new ConfigThingy("", response.body());
+  }
+
+  /**
+   * Load the configuration file from the cache in the WollMux folder if it hasn't changed.
+   * Otherwise it is parsed and the included files are fetched concurrently.
+   *
+   * @param url
+   *          The configuration file.
+   * @param urls
+   *          Gets the URLs of the configuration file and its included files.
+   * @return The configuration.
+   * @throws IOException
+   *           The configuration or an included file can't be read.
+   * @throws SyntaxErrorException
+   *           The configuration isn't valid.
+   */
+  private static ConfigThingy loadWollMuxConf(URL url, List<URL> urls)
+      throws IOException, SyntaxErrorException
+  {
+    String cacheMode = System.getProperty(WOLLMUX_CONF_CACHE, System.getenv(WOLLMUX_CONF_CACHE));
+    IncludeLoader loader;
+    ConfigThingy conf;
+    if ("off".equalsIgnoreCase(cacheMode))
+    {
+      loader = new IncludeLoader(null);
+      conf = loader.load("", url);
+    } else
+    {
+      loader = new IncludeLoader(new File(getWollMuxDir(), WOLLMUX_INCLUDE_CACHE_DIR));
+      conf = CompiledConfig.load("", url, new File(getWollMuxDir(), WOLLMUX_CONF_CACHE_FILE),
+          "rebuild".equalsIgnoreCase(cacheMode), loader);
+    }
+    urls.addAll(loader.getUrls());
+    return conf;
+  }
+
   /**
    * Initialize localization.
    *
@@ -373,6 +493,16 @@ public class WollMuxFiles
     return wollmuxConf;
   }
 
+  /**
+   * Get the configuration file and all its included files.
+   *
+   * @return The URLs of the files.
+   */
+  public static List<URL> getWollmuxConfUrls()
+  {
+    return wollmuxConfUrls;
+  }
+
   /**
    * Get default context of WollMux.
    *
@@ -553,7 +683,7 @@ public class WollMuxFiles
       out.write("===================== END wollmuxConfFile ==================\n");
 
       out.write("===================== START wollmux.conf ==================\n");
-      out.write(getWollmuxConf().stringRepresentation());
+      getWollmuxConf().writeTo(out);
       out.write("===================== END wollmux.conf ==================\n");
 
       out.write("===================== START losCacheFile ==================\n");
@@ -574,6 +704,10 @@ public class WollMuxFiles
       out.write("===================== START OOo datasources ==================\n");
       dumpOfficeDatasources(out);
       out.write("===================== END OOo datasources ==================\n");
+
+      out.write("===================== START function caches ==================\n");
+      dumpFunctionCaches(out);
+      out.write("===================== END function caches ==================\n");
     } catch (IOException | NumberFormatException | JMException x)
     {
       LOGGER.error("Error while creating the dump file", x);
@@ -582,6 +716,26 @@ public class WollMuxFiles
     return dumpFile.getAbsolutePath();
   }
 
+  /**
+   * Write the hit rates of the cached global functions.
+   */
+  private static void dumpFunctionCaches(BufferedWriter out) throws IOException
+  {
+    FunctionLibrary funcLib = GlobalFunctions.getInstance().getGlobalFunctions();
+    for (String name : new TreeSet<>(funcLib.getFunctionNames()))
+    {
+      Function func = funcLib.get(name);
+      if (func instanceof MemoizedFunction)
+      {
+        MemoizedFunction memo = (MemoizedFunction) func;
+        long hits = memo.getHits();
+        long lookups = hits + memo.getMisses();
+        out.write(name + ": " + hits + "/" + lookups + " hits ("
+            + (lookups == 0 ? 0 : hits * 100 / lookups) + "%) " + FunctionOptimizer.dump(memo) + "\n");
+      }
+    }
+  }
+
   private static void dumpOfficeDatasources(BufferedWriter out) throws IOException
   {
     UnoDictionary<Object> dataSources = UnoDictionary.create(UNO.dbContext, Object.class);
@@ -788,10 +942,11 @@ public class WollMuxFiles
    */
   public static void writeConfToFile(File file, ConfigThingy conf) throws IOException
   {
-    try (OutputStreamWriter out = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))
+    try (Writer out = new BufferedWriter(
+        new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)))
     {
       out.write("\uFEFF");
-      out.write(conf.stringRepresentation(true, '"'));
+      conf.writeTo(out, true, '"', false);
     }
   }
 
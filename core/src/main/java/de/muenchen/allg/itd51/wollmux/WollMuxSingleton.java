@@ -134,6 +134,9 @@ public class WollMuxSingleton
       // Initialisiere EventProcessor
       WollMuxEventHandler.getInstance().setAcceptEvents(true);
 
+      // Änderungen an der wollmux.conf überwachen
+      ConfigReloader.start();
+
       // register global EventListener
       try
       {
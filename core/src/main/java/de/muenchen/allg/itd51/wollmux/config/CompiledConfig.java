@@ -0,0 +1,499 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2023 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.config;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.muenchen.allg.itd51.wollmux.config.ConfigThingy.Token;
+
+/**
+ * A binary snapshot of a parsed configuration, so that an unchanged configuration hasn't to be
+ * loaded and parsed again.
+ *
+ * The snapshot contains a manifest of the configuration file and all included files with their
+ * last modification date, size and ETag. The snapshot is only used if none of them has changed.
+ * Files from servers are checked concurrently with HEAD requests. If a file has neither a
+ * modification date nor an ETag, changes can't be detected and no snapshot is written. All names of
+ * the nodes are stored once in a string table followed by the nodes in pre-order.
+ */
+public class CompiledConfig
+{
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(CompiledConfig.class);
+
+  /**
+   * "WMCC"
+   */
+  private static final int MAGIC = 0x574D4343;
+
+  /**
+   * Has to be incremented if the format or the parsing of configurations changes.
+   */
+  private static final int VERSION = 1;
+
+  /**
+   * Connect and read timeout in milliseconds for checking files on a server.
+   */
+  static final int TIMEOUT = 5000;
+
+  /**
+   * Maximum number of files checked at the same time.
+   */
+  private static final int MAX_PARALLEL_REQUESTS = 8;
+
+  private CompiledConfig()
+  {
+    // nothing to do
+  }
+
+  /**
+   * Load a configuration from its snapshot. If there's no valid snapshot the configuration is
+   * parsed and a new snapshot is written.
+   *
+   * @param name
+   *          The name of the root of the configuration.
+   * @param url
+   *          The configuration file.
+   * @param cacheFile
+   *          The file of the snapshot.
+   * @param rebuild
+   *          If true, an existing snapshot is ignored.
+   * @param loader
+   *          The loader used to parse the configuration if there's no valid snapshot.
+   * @return The configuration.
+   * @throws IOException
+   *           The configuration or an included file can't be read.
+   * @throws SyntaxErrorException
+   *           The configuration isn't valid.
+   */
+  public static ConfigThingy load(String name, URL url, File cacheFile, boolean rebuild,
+      IncludeLoader loader) throws IOException, SyntaxErrorException
+  {
+    if (!rebuild)
+    {
+      List<Source> sources = new ArrayList<>();
+      ConfigThingy conf = read(name, url, cacheFile, sources);
+      if (conf != null)
+      {
+        LOGGER.debug("Configuration {} loaded from {}", url, cacheFile);
+        sources.forEach(loader::addSource);
+        return conf;
+      }
+    }
+
+    loader.prefetch(url);
+    List<Source> sources = new ArrayList<>();
+    ConfigThingy conf = new ConfigThingy(name);
+    List<Token> tokens = loader.tokenize(url);
+    sources.add(loader.getSource(url));
+    conf.childrenFromTokens(url, tokens, include -> {
+      List<Token> includeTokens = loader.tokenize(include);
+      sources.add(loader.getSource(include));
+      return includeTokens;
+    });
+
+    if (sources.stream().anyMatch(source -> source == null || !source.isCacheable()))
+    {
+      LOGGER.debug("Configuration {} isn't cached because not all files can be checked", url);
+      return conf;
+    }
+    try
+    {
+      write(conf, sources, cacheFile);
+    } catch (IOException e)
+    {
+      LOGGER.debug("Configuration cache {} couldn't be written", cacheFile, e);
+    }
+    return conf;
+  }
+
+  /**
+   * Read a snapshot.
+   *
+   * @return The configuration or null if the snapshot doesn't exist, is invalid or outdated.
+   */
+  static ConfigThingy read(String name, URL url, File cacheFile)
+  {
+    return read(name, url, cacheFile, new ArrayList<>());
+  }
+
+  /**
+   * Read a snapshot.
+   *
+   * @param sources
+   *          Gets the files of the configuration if the snapshot is valid.
+   * @return The configuration or null if the snapshot doesn't exist, is invalid or outdated.
+   */
+  static ConfigThingy read(String name, URL url, File cacheFile, List<Source> sources)
+  {
+    if (!cacheFile.isFile())
+    {
+      return null;
+    }
+
+    try
+    {
+      ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(cacheFile.toPath()));
+      if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+      {
+        LOGGER.debug("Configuration cache {} has an unknown format", cacheFile);
+        return null;
+      }
+
+      int sourceCount = buffer.getInt();
+      List<Source> manifest = new ArrayList<>(sourceCount);
+      for (int i = 0; i < sourceCount; i++)
+      {
+        manifest.add(new Source(readString(buffer), buffer.getLong(), buffer.getLong(),
+            readString(buffer)));
+      }
+      String changed = manifest.isEmpty() || !manifest.get(0).url.equals(url.toString())
+          ? url.toString()
+          : findChanged(manifest);
+      if (changed != null)
+      {
+        LOGGER.debug("Configuration cache {} is outdated because of {}", cacheFile, changed);
+        return null;
+      }
+
+      String[] strings = new String[buffer.getInt()];
+      for (int i = 0; i < strings.length; i++)
+      {
+        strings[i] = readString(buffer);
+      }
+
+      ConfigThingy conf = new ConfigThingy(name);
+      int childCount = buffer.getInt();
+      for (int i = 0; i < childCount; i++)
+      {
+        conf.addChild(readNode(buffer, strings));
+      }
+      if (buffer.hasRemaining())
+      {
+        LOGGER.debug("Configuration cache {} is corrupt", cacheFile);
+        return null;
+      }
+      sources.addAll(manifest);
+      return conf;
+    } catch (IOException | BufferUnderflowException | IndexOutOfBoundsException
+        | IllegalArgumentException e)
+    {
+      LOGGER.debug("Configuration cache {} can't be used", cacheFile, e);
+      return null;
+    } catch (InterruptedException e)
+    {
+      LOGGER.debug("Configuration cache {} can't be used", cacheFile, e);
+      Thread.currentThread().interrupt();
+      return null;
+    }
+  }
+
+  /**
+   * Check whether the files of a manifest have changed. Local files are checked directly, all
+   * other files concurrently.
+   *
+   * @return The URL of a changed file or null if no file has changed.
+   */
+  private static String findChanged(List<Source> manifest) throws InterruptedException
+  {
+    List<Source> remote = new ArrayList<>();
+    for (Source source : manifest)
+    {
+      if (source.url.startsWith("file:"))
+      {
+        if (!isUnchanged(source))
+        {
+          return source.url;
+        }
+      } else
+      {
+        remote.add(source);
+      }
+    }
+    if (remote.isEmpty())
+    {
+      return null;
+    }
+
+    ExecutorService executor = Executors
+        .newFixedThreadPool(Math.min(remote.size(), MAX_PARALLEL_REQUESTS));
+    try
+    {
+      List<Future<Boolean>> futures = new ArrayList<>(remote.size());
+      for (Source source : remote)
+      {
+        futures.add(executor.submit(() -> isUnchanged(source)));
+      }
+      for (int i = 0; i < remote.size(); i++)
+      {
+        if (!futures.get(i).get())
+        {
+          return remote.get(i).url;
+        }
+      }
+      return null;
+    } catch (ExecutionException e)
+    {
+      LOGGER.debug("", e);
+      return remote.get(0).url;
+    } finally
+    {
+      executor.shutdownNow();
+    }
+  }
+
+  private static boolean isUnchanged(Source source)
+  {
+    try
+    {
+      return source.isCacheable() && source.equals(Source.of(new URL(source.url)));
+    } catch (IOException e)
+    {
+      LOGGER.debug("{} can't be checked", source.url, e);
+      return false;
+    }
+  }
+
+  /**
+   * Write a snapshot. The snapshot is written to a temporary file first, so that other instances
+   * never read an incomplete snapshot.
+   */
+  static void write(ConfigThingy conf, List<Source> sources, File cacheFile) throws IOException
+  {
+    Map<String, Integer> stringIndex = new HashMap<>();
+    List<String> strings = new ArrayList<>();
+    collectStrings(conf, stringIndex, strings);
+
+    Path tmp = Files.createTempFile(cacheFile.getAbsoluteFile().getParentFile().toPath(),
+        cacheFile.getName(), ".tmp");
+    try
+    {
+      try (DataOutputStream out = new DataOutputStream(
+          new BufferedOutputStream(Files.newOutputStream(tmp))))
+      {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(sources.size());
+        for (Source source : sources)
+        {
+          writeString(out, source.url);
+          out.writeLong(source.lastModified);
+          out.writeLong(source.size);
+          writeString(out, source.etag);
+        }
+
+        out.writeInt(strings.size());
+        for (String str : strings)
+        {
+          writeString(out, str);
+        }
+
+        out.writeInt(conf.count());
+        for (ConfigThingy child : conf)
+        {
+          writeNode(out, child, stringIndex);
+        }
+      }
+      Files.move(tmp, cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    } finally
+    {
+      Files.deleteIfExists(tmp);
+    }
+  }
+
+  private static void collectStrings(ConfigThingy conf, Map<String, Integer> stringIndex,
+      List<String> strings)
+  {
+    for (ConfigThingy child : conf)
+    {
+      stringIndex.computeIfAbsent(child.getName(), str -> {
+        strings.add(str);
+        return strings.size() - 1;
+      });
+      collectStrings(child, stringIndex, strings);
+    }
+  }
+
+  private static void writeNode(DataOutputStream out, ConfigThingy node,
+      Map<String, Integer> stringIndex) throws IOException
+  {
+    out.writeInt(stringIndex.get(node.getName()));
+    out.writeInt(node.count());
+    for (ConfigThingy child : node)
+    {
+      writeNode(out, child, stringIndex);
+    }
+  }
+
+  private static ConfigThingy readNode(ByteBuffer buffer, String[] strings)
+  {
+    ConfigThingy node = new ConfigThingy(strings[buffer.getInt()]);
+    int childCount = buffer.getInt();
+    for (int i = 0; i < childCount; i++)
+    {
+      node.addChild(readNode(buffer, strings));
+    }
+    return node;
+  }
+
+  private static void writeString(DataOutputStream out, String str) throws IOException
+  {
+    byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(ByteBuffer buffer)
+  {
+    int length = buffer.getInt();
+    if (length < 0 || length > buffer.remaining())
+    {
+      throw new IllegalArgumentException("Invalid string length " + length);
+    }
+    String str = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+    buffer.position(buffer.position() + length);
+    return str;
+  }
+
+  /**
+   * A file of the configuration with the properties used to detect changes.
+   */
+  static class Source
+  {
+    final String url;
+
+    final long lastModified;
+
+    final long size;
+
+    final String etag;
+
+    Source(String url, long lastModified, long size, String etag)
+    {
+      this.url = url;
+      this.lastModified = lastModified;
+      this.size = size;
+      this.etag = etag;
+    }
+
+    /**
+     * Can changes of the file be detected? That's the case if the file has a modification date or
+     * an ETag.
+     *
+     * @return True if changes can be detected, false otherwise.
+     */
+    boolean isCacheable()
+    {
+      return lastModified > 0 || !etag.isEmpty();
+    }
+
+    /**
+     * Get the current properties of a file. Local files are checked directly, other URLs with a
+     * HEAD request if possible. The request fails after {@link CompiledConfig#TIMEOUT}.
+     */
+    static Source of(URL url) throws IOException
+    {
+      if ("file".equals(url.getProtocol()))
+      {
+        try
+        {
+          File file = new File(url.toURI());
+          return new Source(url.toString(), file.lastModified(), file.length(), "");
+        } catch (URISyntaxException | IllegalArgumentException e)
+        {
+          // check with a connection
+        }
+      }
+
+      URLConnection connection = url.openConnection();
+      connection.setConnectTimeout(TIMEOUT);
+      connection.setReadTimeout(TIMEOUT);
+      try
+      {
+        if (connection instanceof HttpURLConnection)
+        {
+          ((HttpURLConnection) connection).setRequestMethod("HEAD");
+        }
+        String etag = connection.getHeaderField("ETag");
+        return new Source(url.toString(), connection.getLastModified(),
+            connection.getContentLengthLong(), etag == null ? "" : etag);
+      } finally
+      {
+        if (connection instanceof HttpURLConnection)
+        {
+          ((HttpURLConnection) connection).disconnect();
+        } else
+        {
+          connection.getInputStream().close();
+        }
+      }
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+      if (this == obj)
+      {
+        return true;
+      }
+      if (obj == null || getClass() != obj.getClass())
+      {
+        return false;
+      }
+      Source other = (Source) obj;
+      return url.equals(other.url) && lastModified == other.lastModified && size == other.size
+          && etag.equals(other.etag);
+    }
+
+    @Override
+    public int hashCode()
+    {
+      return Objects.hash(url, lastModified, size, etag);
+    }
+  }
+}
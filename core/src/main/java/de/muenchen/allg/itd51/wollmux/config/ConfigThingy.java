@@ -22,23 +22,28 @@
  */
 package de.muenchen.allg.itd51.wollmux.config;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.io.StringReader;
+import java.io.UncheckedIOException;
 import java.io.UnsupportedEncodingException;
+import java.io.Writer;
 import java.lang.reflect.InvocationTargetException;
 import java.net.URL;
 import java.net.URLEncoder;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -63,15 +68,16 @@ public class ConfigThingy implements Iterable<ConfigThingy>
   public static final String CHARSET = "UTF-8";
 
   /**
-   * Pattern for Unicode letters and digits.
+   * Escapes of the characters that must be escaped in strings enclosed by ".
    */
-  private static final Pattern NON_LETTER_OR_DIGITS =
-    Pattern.compile("\\P{javaLetterOrDigit}");
+  private static final String[] ESCAPES_DOUBLE_QUOTE = escapeTable('"');
 
   /**
-   * Pattern for characters that must be escaped in ConfigThingys.
+   * Escapes of the characters that must be escaped in strings enclosed by '.
    */
-  private static final Pattern CONFIGTHINGY_SPECIAL = Pattern.compile("[%\n\r\"']");
+  private static final String[] ESCAPES_SINGLE_QUOTE = escapeTable('\'');
+
+  private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
 
   /**
    * Indentation for stringRepresentation().
@@ -92,12 +98,28 @@ public class ConfigThingy implements Iterable<ConfigThingy>
 
   private static final int ST_OTHER = 2;
 
+  /**
+   * The children of all nodes without children. The list is replaced by a new one when the
+   * first child is added, so that leaves (about half of all nodes) don't need a list of their
+   * own.
+   */
+  private static final List<ConfigThingy> NO_CHILDREN = Collections.emptyList();
+
   /** The child nodes. */
   private List<ConfigThingy> children;
 
   /** The name of the node. For leaves, this is the (string) value of the node. */
   private String name;
 
+  /** The index for queries on this node. Null if not enabled. */
+  private QueryIndex queryIndex;
+
+  /**
+   * The index which contains this node. Null if the node isn't part of an indexed tree. Changes of
+   * this node invalidate the index.
+   */
+  private QueryIndex indexedBy;
+
   /**
    * Parses the data from the file specified by {@code url}.
    *
@@ -150,7 +172,9 @@ public class ConfigThingy implements Iterable<ConfigThingy>
   }
 
   /**
-   * Copy Constructor (deep copy).
+   * Copy Constructor (deep copy). The copy takes time and memory proportional to the size of
+   * {@code conf}. It doesn't share any nodes with {@code conf}, because nodes are handed out by
+   * reference (e.g. by {@link #query(String)}) and changed in place.
    */
   public ConfigThingy(ConfigThingy conf)
   {
@@ -168,7 +192,7 @@ public class ConfigThingy implements Iterable<ConfigThingy>
   public ConfigThingy(String name)
   {
     this.name = name;
-    this.children = new ArrayList<>(1);
+    this.children = NO_CHILDREN;
   }
 
   /**
@@ -182,16 +206,38 @@ public class ConfigThingy implements Iterable<ConfigThingy>
 
   /**
    * Adds independent copies of all children of {@code conf} to this ConfigThingy.
-   * The children are copied along with all descendants.
+   * The children are copied along with all descendants, like with
+   * {@link #ConfigThingy(ConfigThingy)}.
    */
   public void addChildCopiesFrom(ConfigThingy conf)
   {
+    if (children == NO_CHILDREN && !conf.children.isEmpty())
+    {
+      children = new ArrayList<>(conf.children.size());
+    }
     for (ConfigThingy childToCopy : conf)
     {
-      ConfigThingy childCopy = new ConfigThingy(childToCopy.getName());
-      childCopy.addChildCopiesFrom(childToCopy);
-      this.addChild(childCopy);
+      this.addChild(copyOf(childToCopy));
+    }
+  }
+
+  /**
+   * Creates a deep copy of {@code conf}. The lists of children are created with their final
+   * size and leaves share {@link #NO_CHILDREN}.
+   */
+  private static ConfigThingy copyOf(ConfigThingy conf)
+  {
+    ConfigThingy copy = new ConfigThingy(conf.name);
+    if (!conf.children.isEmpty())
+    {
+      copy.children = new ArrayList<>(conf.children.size());
+      for (ConfigThingy child : conf.children)
+      {
+        // the copy isn't part of an indexed tree yet, so there's no index to invalidate
+        copy.children.add(copyOf(child));
+      }
     }
+    return copy;
   }
 
   /**
@@ -208,111 +254,190 @@ public class ConfigThingy implements Iterable<ConfigThingy>
   {
     try
     {
-      Deque<ConfigThingy> stack = new ArrayDeque<>();
-      stack.push(this);
-      List<StringContentToken> tokens = tokenize(url, read);
-      Iterator<StringContentToken> liter = tokens.iterator();
-      Token token1;
-      Token token2;
-      do
+      childrenFromTokens(url, tokenize(url, read), ConfigThingy::tokenize);
+    }
+    finally
+    {
+      try
       {
-        token1 = liter.next();
-        ConfigThingy child;
-        switch (token1.type())
-        {
-          case INCLUDE:
-            token2 = liter.next();
-            if (token2.type() == TokenType.STRING && !token2.contentString().isEmpty())
+        read.close();
+      }
+      catch (Exception x)
+      {
+        LOGGER.trace("", x);
+      }
+    }
+  }
+
+  /**
+   * Tokenizes the file {@code url}.
+   */
+  static List<Token> tokenize(URL url) throws IOException, SyntaxErrorException
+  {
+    try (Reader read = new InputStreamReader(url.openStream(), CHARSET))
+    {
+      return tokenize(url, read);
+    }
+  }
+
+  /**
+   * Provides the tokens of included files.
+   */
+  @FunctionalInterface
+  interface IncludeResolver
+  {
+    /**
+     * Get the tokens of an included file.
+     *
+     * @throws IOException
+     *           if the file can't be read.
+     * @throws SyntaxErrorException
+     *           if the file can't be tokenized.
+     */
+    List<Token> tokenize(URL url) throws IOException, SyntaxErrorException;
+  }
+
+  /**
+   * Appends the nodes described by the {@code tokens} of {@code url} as children to {@code this}.
+   * The tokens of included files are provided by {@code includes}.
+   *
+   * Equal names and values of the parsed nodes share one String and the lists of children are
+   * trimmed to their size, because most nodes are never changed after parsing.
+   *
+   * @throws IOException
+   *           if an included file can't be read.
+   * @throws SyntaxErrorException
+   *           if a syntactic error is found in the tokens.
+   */
+  void childrenFromTokens(URL url, List<Token> tokens, IncludeResolver includes)
+      throws IOException, SyntaxErrorException
+  {
+    childrenFromTokens(url, tokens, includes, new HashMap<>());
+    trimChildren();
+  }
+
+  /**
+   * Appends the nodes described by the {@code tokens} of {@code url} as children to {@code this}.
+   *
+   * @param symbols
+   *          The names of the nodes parsed so far. It's shared with the included files.
+   */
+  private void childrenFromTokens(URL url, List<Token> tokens, IncludeResolver includes,
+      Map<String, String> symbols) throws IOException, SyntaxErrorException
+  {
+    Deque<ConfigThingy> stack = new ArrayDeque<>();
+    stack.push(this);
+    Iterator<Token> liter = tokens.iterator();
+    Token token1;
+    Token token2;
+    do
+    {
+      token1 = liter.next();
+      ConfigThingy child;
+      switch (token1.type())
+      {
+        case INCLUDE:
+          token2 = liter.next();
+          if (token2.type() == TokenType.STRING && !token2.contentString().isEmpty())
+          {
+            try
             {
-              try
-              {
-                URL includeURL = new URL(url, urlEncode(token2.contentString()));
-                stack.peek().childrenFromUrl(includeURL,
-                  new InputStreamReader(includeURL.openStream(), CHARSET));
-              }
-              catch (IOException iox)
-              {
-                throw new IOException(token2.url() + " in line " + token2.line()
-                  + " at char " + token2.position()
-                  + ": %include failed: ", iox);
-              }
+              URL includeURL = new URL(url, urlEncode(token2.contentString()));
+              stack.peek().childrenFromTokens(includeURL, includes.tokenize(includeURL),
+                  includes, symbols);
             }
-            else
+            catch (IOException iox)
             {
-              throw new SyntaxErrorException(token2.url()
-                + ": URL string (enclosed in quotes) expected in line "
-                + token2.line() + " at char " + token2.position());
+              throw new IOException(token2.url() + " in line " + token2.line()
+                + " at char " + token2.position()
+                + ": %include failed: ", iox);
             }
-            break;
+          }
+          else
+          {
+            throw new SyntaxErrorException(token2.url()
+              + ": URL string (enclosed in quotes) expected in line "
+              + token2.line() + " at char " + token2.position());
+          }
+          break;
 
-          case KEY:
-            token2 = liter.next();
-            switch (token2.type())
-            {
-              case OPENPAREN:
-                child = new ConfigThingy(token1.contentString());
-                stack.peek().addChild(child);
-                stack.push(child);
-                break;
-              case STRING:
-                child = new ConfigThingy(token1.contentString());
-                ConfigThingy grandchild = new ConfigThingy(token2.contentString());
-                child.addChild(grandchild);
-                stack.peek().addChild(child);
-                break;
-              default:
-                throw new SyntaxErrorException(token2.url()
-                  + ": syntax error in line " + token2.line() + " at char "
-                  + token2.position());
-            }
-            break;
+        case KEY:
+          token2 = liter.next();
+          switch (token2.type())
+          {
+            case OPENPAREN:
+              child = new ConfigThingy(symbol(symbols, token1.contentString()));
+              stack.peek().addChild(child);
+              stack.push(child);
+              break;
+            case STRING:
+              child = new ConfigThingy(symbol(symbols, token1.contentString()));
+              ConfigThingy grandchild = new ConfigThingy(symbol(symbols, token2.contentString()));
+              child.addChild(grandchild);
+              stack.peek().addChild(child);
+              break;
+            default:
+              throw new SyntaxErrorException(token2.url()
+                + ": syntax error in line " + token2.line() + " at char "
+                + token2.position());
+          }
+          break;
 
-          case STRING:
-            child = new ConfigThingy(token1.contentString());
-            stack.peek().addChild(child);
-            break;
+        case STRING:
+          child = new ConfigThingy(symbol(symbols, token1.contentString()));
+          stack.peek().addChild(child);
+          break;
 
-          case CLOSEPAREN:
-            // Attention: root must not be popped.
-            if (stack.size() <= 1)
-              throw new SyntaxErrorException(token1.url()
-                + ": Bracket ')' without matching bracket '(' in line "
-                + token1.line() + " at char " + token1.position());
-            stack.pop();
-            break;
+        case CLOSEPAREN:
+          // Attention: root must not be popped.
+          if (stack.size() <= 1)
+            throw new SyntaxErrorException(token1.url()
+              + ": Bracket ')' without matching bracket '(' in line "
+              + token1.line() + " at char " + token1.position());
+          stack.pop().trimChildren();
+          break;
 
-          case OPENPAREN:
-            child = new ConfigThingy("");
-            stack.peek().addChild(child);
-            stack.push(child);
-            break;
+        case OPENPAREN:
+          child = new ConfigThingy("");
+          stack.peek().addChild(child);
+          stack.push(child);
+          break;
 
-          case END:
-            break;
+        case END:
+          break;
 
-          default:
-            throw new SyntaxErrorException(token1.url() + ": syntax error in line"
-              + token1.line() + " at char " + token1.position());
-        }
+        default:
+          throw new SyntaxErrorException(token1.url() + ": syntax error in line"
+            + token1.line() + " at char " + token1.position());
+      }
 
-      } while (token1.type() != TokenType.END);
+    } while (token1.type() != TokenType.END);
 
-      if (stack.size() > 1)
-      {
-        throw new SyntaxErrorException(token1.url() + ": " + (stack.size() - 1)
-          + " closing brackets are missing");
-      }
+    if (stack.size() > 1)
+    {
+      throw new SyntaxErrorException(token1.url() + ": " + (stack.size() - 1)
+        + " closing brackets are missing");
     }
-    finally
+  }
+
+  /**
+   * Returns the String of the symbol table equal to {@code str}, so that equal names of a tree
+   * share one String.
+   */
+  private static String symbol(Map<String, String> symbols, String str)
+  {
+    String symbol = symbols.putIfAbsent(str, str);
+    return symbol == null ? str : symbol;
+  }
+
+  /**
+   * Trims the list of children to its size.
+   */
+  private void trimChildren()
+  {
+    if (children instanceof ArrayList)
     {
-      try
-      {
-        read.close();
-      }
-      catch (Exception x)
-      {
-        LOGGER.trace("", x);
-      }
+      ((ArrayList<ConfigThingy>) children).trimToSize();
     }
   }
 
@@ -362,7 +487,12 @@ public class ConfigThingy implements Iterable<ConfigThingy>
    */
   public void addChild(ConfigThingy child)
   {
+    if (children == NO_CHILDREN)
+    {
+      children = new ArrayList<>(1);
+    }
     children.add(child);
+    modified();
   }
 
   /**
@@ -392,7 +522,41 @@ public class ConfigThingy implements Iterable<ConfigThingy>
   @Override
   public Iterator<ConfigThingy> iterator()
   {
-    return children.iterator();
+    Iterator<ConfigThingy> iter = children.iterator();
+    return new Iterator<ConfigThingy>()
+    {
+      @Override
+      public boolean hasNext()
+      {
+        return iter.hasNext();
+      }
+
+      @Override
+      public ConfigThingy next()
+      {
+        return iter.next();
+      }
+
+      @Override
+      public void remove()
+      {
+        iter.remove();
+        modified();
+      }
+    };
+  }
+
+  /**
+   * Enables an index for the get and query methods of this node. The index is built on the first
+   * query and built again after a node of this tree has been changed. Therefore it should only be
+   * enabled for large trees which are rarely changed, e.g. the complete configuration.
+   */
+  public void enableQueryIndex()
+  {
+    if (queryIndex == null)
+    {
+      queryIndex = new QueryIndex();
+    }
   }
 
   /**
@@ -464,6 +628,28 @@ public class ConfigThingy implements Iterable<ConfigThingy>
   public void setName(String newName)
   {
     name = newName;
+    modified();
+  }
+
+  /**
+   * Invalidates the index of the tree this node is part of.
+   */
+  private void modified()
+  {
+    if (indexedBy != null)
+    {
+      indexedBy.invalidate();
+    }
+  }
+
+  /**
+   * Is the index of this node up to date? Only for tests.
+   *
+   * @return True if the index is enabled and up to date.
+   */
+  boolean isQueryIndexValid()
+  {
+    return queryIndex != null && queryIndex.valid;
   }
 
   /**
@@ -515,6 +701,8 @@ public class ConfigThingy implements Iterable<ConfigThingy>
    *          are inserted into this list. Each node appears at most once in this list,
    *          i.e. if getParents==true and a node has several children with name name,
    *          this node is nevertheless inserted only once.
+   * @param foundParents
+   *          the parents already inserted into {@code found} if {@code getParents==true}.
    * @param parentLevel
    *          the search depth for breadth-first search of {@code parent},
    *          i.e. this has search depth {@code parentLevel + 1}
@@ -528,8 +716,8 @@ public class ConfigThingy implements Iterable<ConfigThingy>
    * @return {@code true} if at least one node with search depth searchlevel has been reached,
    *         i.e. if a search with a higher searchlevel could possibly yield results.
    */
-  private boolean rollcall(ConfigThingy parent, String name,
-      List<ConfigThingy> found, int parentLevel, int searchLevel, boolean getParents)
+  private boolean rollcall(ConfigThingy parent, String name, List<ConfigThingy> found,
+      Set<ConfigThingy> foundParents, int parentLevel, int searchLevel, boolean getParents)
   {
     int level = parentLevel + 1;
     if (searchLevel == level)
@@ -538,7 +726,7 @@ public class ConfigThingy implements Iterable<ConfigThingy>
       {
         if (getParents)
         {
-          if (!found.contains(parent)) {
+          if (foundParents.add(parent)) {
             found.add(parent);
           }
         }
@@ -553,7 +741,7 @@ public class ConfigThingy implements Iterable<ConfigThingy>
       for (ConfigThingy child : children)
       {
         boolean result =
-          child.rollcall(this, name, found, level, searchLevel, getParents);
+          child.rollcall(this, name, found, foundParents, level, searchLevel, getParents);
         haveMore = haveMore || result;
       }
       return haveMore;
@@ -784,13 +972,14 @@ public class ConfigThingy implements Iterable<ConfigThingy>
   public ConfigThingy queryAll(String name, int maxlevel, boolean getParents)
   {
     ArrayList<ConfigThingy> found = new ArrayList<>();
+    Set<ConfigThingy> foundParents = newIdentitySet();
 
     boolean hasMore;
 
     int searchlevel = 1;
     do
     {
-      hasMore = rollcall(this, name, found, -1, searchlevel++, getParents);
+      hasMore = rollcall(this, name, found, foundParents, -1, searchlevel++, getParents);
     } while (hasMore && searchlevel < maxlevel + 1);
 
     return new ConfigThingy("<query results>", found);
@@ -803,17 +992,26 @@ public class ConfigThingy implements Iterable<ConfigThingy>
   protected ConfigThingy query(String name, boolean getParents, int maxlevel,
       int minlevel)
   {
-    List<ConfigThingy> found = new ArrayList<>();
-    boolean haveMore;
-    int searchlevel = minlevel;
-    do
+    List<ConfigThingy> found;
+    if (queryIndex != null)
     {
-      if (searchlevel > maxlevel) {
-        break;
-      }
-      haveMore = rollcall(this, name, found, -1, searchlevel, getParents);
-      ++searchlevel;
-    } while (found.isEmpty() && haveMore);
+      found = queryIndex.query(this, name, getParents, maxlevel, minlevel);
+    }
+    else
+    {
+      found = new ArrayList<>();
+      Set<ConfigThingy> foundParents = newIdentitySet();
+      boolean haveMore;
+      int searchlevel = minlevel;
+      do
+      {
+        if (searchlevel > maxlevel) {
+          break;
+        }
+        haveMore = rollcall(this, name, found, foundParents, -1, searchlevel, getParents);
+        ++searchlevel;
+      } while (found.isEmpty() && haveMore);
+    }
 
     if (found.isEmpty()) {
       return new ConfigThingy("<query results>");
@@ -830,6 +1028,156 @@ public class ConfigThingy implements Iterable<ConfigThingy>
     return query(name, getParents, maxlevel, DEFAULT_MINLEVEL);
   }
 
+  private static Set<ConfigThingy> newIdentitySet()
+  {
+    return Collections.newSetFromMap(new IdentityHashMap<>());
+  }
+
+  /**
+   * Index of all descendants of a node by name and search depth. Querying the index gives the same
+   * results in the same order as the breadth-first search of
+   * {@link ConfigThingy#rollcall(ConfigThingy, String, List, Set, int, int, boolean)}.
+   *
+   * Building the index marks all nodes of the tree, so that a change of one of them invalidates
+   * the index. If a node is part of several indexed trees, the indexes are linked and invalidated
+   * together.
+   */
+  private static class QueryIndex
+  {
+    /**
+     * The nodes of each name ordered by search depth. Nodes of the same search depth are in
+     * document order.
+     */
+    private Map<String, List<IndexEntry>> nodesByName;
+
+    /**
+     * False if a node of the tree has been changed since the index was built.
+     */
+    private volatile boolean valid = false;
+
+    /**
+     * Indexes of other trees which share nodes with this tree.
+     */
+    private final Set<QueryIndex> linked = Collections.newSetFromMap(new WeakHashMap<>());
+
+    void invalidate()
+    {
+      valid = false;
+      synchronized (linked)
+      {
+        for (QueryIndex index : linked)
+        {
+          index.valid = false;
+        }
+      }
+    }
+
+    synchronized List<ConfigThingy> query(ConfigThingy root, String name, boolean getParents,
+        int maxlevel, int minlevel)
+    {
+      if (!valid)
+      {
+        valid = true;
+        build(root);
+      }
+
+      List<ConfigThingy> found = new ArrayList<>();
+      List<IndexEntry> entries = nodesByName.get(name);
+      // rollcall never reaches a negative search depth
+      if (entries == null || minlevel < 0)
+      {
+        return found;
+      }
+
+      // first entry with level >= minlevel
+      int low = 0;
+      int high = entries.size();
+      while (low < high)
+      {
+        int mid = (low + high) >>> 1;
+        if (entries.get(mid).level < minlevel)
+          low = mid + 1;
+        else
+          high = mid;
+      }
+      if (low == entries.size() || entries.get(low).level > maxlevel)
+      {
+        return found;
+      }
+
+      int level = entries.get(low).level;
+      Set<ConfigThingy> foundParents = newIdentitySet();
+      for (int i = low; i < entries.size() && entries.get(i).level == level; ++i)
+      {
+        IndexEntry entry = entries.get(i);
+        if (!getParents)
+          found.add(entry.node);
+        else if (foundParents.add(entry.parent))
+          found.add(entry.parent);
+      }
+      return found;
+    }
+
+    private void build(ConfigThingy root)
+    {
+      nodesByName = new HashMap<>();
+      List<IndexEntry> currentLevel = new ArrayList<>();
+      currentLevel.add(new IndexEntry(root, root, 0));
+      while (!currentLevel.isEmpty())
+      {
+        List<IndexEntry> nextLevel = new ArrayList<>();
+        for (IndexEntry entry : currentLevel)
+        {
+          mark(entry.node);
+          nodesByName.computeIfAbsent(entry.node.name, k -> new ArrayList<>(1)).add(entry);
+          for (ConfigThingy child : entry.node.children)
+          {
+            nextLevel.add(new IndexEntry(child, entry.node, entry.level + 1));
+          }
+        }
+        currentLevel = nextLevel;
+      }
+    }
+
+    private void mark(ConfigThingy node)
+    {
+      QueryIndex other = node.indexedBy;
+      if (other != null && other != this)
+      {
+        link(other);
+        other.link(this);
+      }
+      node.indexedBy = this;
+    }
+
+    private void link(QueryIndex other)
+    {
+      synchronized (linked)
+      {
+        linked.add(other);
+      }
+    }
+  }
+
+  /**
+   * A node of a {@link QueryIndex}.
+   */
+  private static class IndexEntry
+  {
+    private final ConfigThingy node;
+
+    private final ConfigThingy parent;
+
+    private final int level;
+
+    IndexEntry(ConfigThingy node, ConfigThingy parent, int level)
+    {
+      this.node = node;
+      this.parent = parent;
+      this.level = level;
+    }
+  }
+
   /**
    * If {@code getParents == false} this function behaves like {@link #get(String, int)},
    * if {@code getParents == true} like {@link #getByChild(String, int)}.
@@ -869,20 +1217,15 @@ public class ConfigThingy implements Iterable<ConfigThingy>
   public String stringRepresentation(boolean childrenOnly, char stringChar,
       boolean escapeAll)
   {
-    if (stringChar != '"' && stringChar != '\'')
-      throw new java.lang.IllegalArgumentException(
-        "Only \" and ' are allowed as string limiters.");
-
     StringBuilder buf = new StringBuilder();
-    if (!childrenOnly)
-      stringRepresentation(buf, "", stringChar, escapeAll);
-    else
+    try
     {
-      for (ConfigThingy child : children)
-      {
-        child.stringRepresentation(buf, "", stringChar, escapeAll);
-        buf.append('\n');
-      }
+      writeTo(buf, childrenOnly, stringChar, escapeAll);
+    }
+    catch (IOException x)
+    {
+      // StringBuilder doesn't throw
+      throw new UncheckedIOException(x);
     }
     return buf.toString();
   }
@@ -904,81 +1247,150 @@ public class ConfigThingy implements Iterable<ConfigThingy>
   }
 
   /**
-   * Replaces ' with '', \n with %n, % with %%.
+   * Writes the same text as {@link #stringRepresentation(boolean, char, boolean)} to {@code out}
+   * without building the text in memory.
    *
+   * @param out
+   *          the destination, e.g. a {@link Writer} or a {@link StringBuilder}.
+   * @param childrenOnly
+   *          if true no outermost nesting is created with the name of this.
+   * @param stringChar
+   *          the character to be used to enclose strings.
    * @param escapeAll
-   *          if true all {@link #NON_LETTER_OR_DIGITS} are escaped as Unicode escapes.
+   *          if {@code true}, all characters in strings that are not letters
+   *          or digits are escaped with the %u syntax.
+   * @throws IOException
+   *           if writing to {@code out} fails.
+   * @throws IllegalArgumentException
+   *           if {@code stringChar} is not ' or ".
    */
-  private String escapeString(String str, char stringChar, boolean escapeAll)
+  public void writeTo(Appendable out, boolean childrenOnly, char stringChar, boolean escapeAll)
+      throws IOException
   {
-    Pattern p;
-    if (escapeAll)
-      p = NON_LETTER_OR_DIGITS;
-    else
-      p = CONFIGTHINGY_SPECIAL;
+    if (stringChar != '"' && stringChar != '\'')
+      throw new java.lang.IllegalArgumentException(
+        "Only \" and ' are allowed as string limiters.");
 
-    Matcher m = p.matcher(str);
-    ArrayList<Integer> locations = new ArrayList<>();
-    while (m.find())
-      locations.add(Integer.valueOf(m.start()));
-    StringBuilder buffy = new StringBuilder(str);
-    while (!locations.isEmpty())
+    if (!childrenOnly)
+      writeTo(out, 0, stringChar, escapeAll);
+    else
     {
-      int idx = locations.remove(locations.size() - 1).intValue();
-
-      String repstr = Character.toString(buffy.charAt(idx));
-
-      if (escapeAll)
+      for (ConfigThingy child : children)
       {
-        repstr = Integer.toHexString(buffy.charAt(idx));
-        while (repstr.length() < 4)
-          repstr = "0" + repstr;
-        repstr = "%u" + repstr;
+        child.writeTo(out, 0, stringChar, escapeAll);
+        out.append('\n');
       }
-      else
+    }
+  }
+
+  /**
+   * Like {@link #writeTo(Appendable, boolean, char, boolean)} with
+   * {@code writeTo(out, false, '"', false)}.
+   */
+  public void writeTo(Appendable out) throws IOException
+  {
+    writeTo(out, false, '"', false);
+  }
+
+  /**
+   * Appends {@code str} with ' replaced by '', \n by %n, % by %% etc.
+   *
+   * @param escapeAll
+   *          if true all characters which aren't letters or digits are escaped as Unicode
+   *          escapes.
+   */
+  private static void writeEscaped(Appendable out, String str, char stringChar,
+      boolean escapeAll) throws IOException
+  {
+    if (escapeAll)
+    {
+      int start = 0;
+      int idx = 0;
+      while (idx < str.length())
       {
-        switch (buffy.charAt(idx))
+        int codePoint = str.codePointAt(idx);
+        int next = idx + Character.charCount(codePoint);
+        if (!Character.isLetterOrDigit(codePoint))
         {
-          case '\'':
-            repstr = stringChar == '\'' ? "''" : "'";
-            break;
-          case '"':
-            repstr = stringChar == '"' ? "\"\"" : "\"";
-            break;
-          case '\n':
-            repstr = "%n";
-            break;
-          case '\r':
-            repstr = "%u000a";
-            break;
-          case '%':
-            repstr = "%%";
-            break;
-          default:
-            break;
+          write(out, str, start, idx);
+          // only the first char of a surrogate pair is escaped
+          char ch = str.charAt(idx);
+          out.append("%u");
+          for (int shift = 12; shift >= 0; shift -= 4)
+            out.append(HEX_DIGITS[(ch >> shift) & 0xF]);
+          start = idx + 1;
         }
+        idx = next;
       }
-      buffy.replace(idx, idx + 1, repstr);
+      write(out, str, start, str.length());
+      return;
     }
-    return buffy.toString();
+
+    String[] escapes = stringChar == '"' ? ESCAPES_DOUBLE_QUOTE : ESCAPES_SINGLE_QUOTE;
+    int start = 0;
+    for (int idx = 0; idx < str.length(); ++idx)
+    {
+      char ch = str.charAt(idx);
+      if (ch < escapes.length && escapes[ch] != null)
+      {
+        write(out, str, start, idx);
+        out.append(escapes[ch]);
+        start = idx + 1;
+      }
+    }
+    write(out, str, start, str.length());
   }
 
   /**
-   * Appends a textual representation of these ConfigThingys to {@code buf}.
-   * Each line is prefixed with {@code childPrefix}.
+   * Appends str[start..end) to {@code out} without creating a substring.
+   */
+  private static void write(Appendable out, String str, int start, int end) throws IOException
+  {
+    if (start == end)
+      return;
+    if (out instanceof Writer)
+      ((Writer) out).write(str, start, end - start);
+    else
+      out.append(str, start, end);
+  }
+
+  /**
+   * Creates the table of escapes for the characters which must be escaped in strings enclosed by
+   * {@code stringChar}.
+   */
+  private static String[] escapeTable(char stringChar)
+  {
+    String[] escapes = new String[128];
+    escapes[stringChar] = "" + stringChar + stringChar;
+    escapes['\n'] = "%n";
+    escapes['\r'] = "%u000a";
+    escapes['%'] = "%%";
+    return escapes;
+  }
+
+  private static void writeIndent(Appendable out, int depth) throws IOException
+  {
+    for (int i = 0; i < depth; ++i)
+      out.append(INDENT);
+  }
+
+  /**
+   * Appends a textual representation of these ConfigThingys to {@code out}.
+   * Each line is indented by {@code depth} levels.
    *
    * @param escapeAll
    *          if true, all characters in strings that are not letters
    *          or digits are escaped with the %u syntax.
    */
-  private void stringRepresentation(StringBuilder buf, String childPrefix,
-      char stringChar, boolean escapeAll)
+  private void writeTo(Appendable out, int depth, char stringChar, boolean escapeAll)
+      throws IOException
   {
 
     if (count() == 0) // leaf
     {
-      buf.append(stringChar + escapeString(getName(), stringChar, escapeAll)
-        + stringChar);
+      out.append(stringChar);
+      writeEscaped(out, getName(), stringChar, escapeAll);
+      out.append(stringChar);
     }
     else if (count() == 1 && getFirstChildNoThrow().count() == 0) // Schlüssel-Wert-Paar
     {
@@ -987,16 +1399,15 @@ public class ConfigThingy implements Iterable<ConfigThingy>
        * but in the special case that the key is empty (list with only one element)
        * the parentheses must not be omitted.
        */
-      buf.append(getName());
+      out.append(getName());
       if (getName().length() == 0)
-        buf.append('(');
+        out.append('(');
       else
-        buf.append(' ');
+        out.append(' ');
 
-      getFirstChildNoThrow().stringRepresentation(buf, childPrefix, stringChar,
-        escapeAll);
+      getFirstChildNoThrow().writeTo(out, depth, stringChar, escapeAll);
       if (getName().length() == 0) {
-        buf.append(')');
+        out.append(')');
       }
     }
     else
@@ -1005,46 +1416,45 @@ public class ConfigThingy implements Iterable<ConfigThingy>
       if (type == ST_VALUE_LIST || type == ST_PAIR_LIST) // nur Kinder, keine
       // Enkelkinder
       {
-        buf.append(childPrefix);
-        buf.append(getName());
-        buf.append('(');
-        Iterator<ConfigThingy> iter = iterator();
+        writeIndent(out, depth);
+        out.append(getName());
+        out.append('(');
+        Iterator<ConfigThingy> iter = children.iterator();
         while (iter.hasNext())
         {
           ConfigThingy child = iter.next();
-          child.stringRepresentation(buf, childPrefix, stringChar, escapeAll);
+          child.writeTo(out, depth, stringChar, escapeAll);
           if (iter.hasNext())
           {
             if (type == ST_VALUE_LIST) {
-              buf.append(',');
+              out.append(',');
             }
-            buf.append(' ');
+            out.append(' ');
           }
         }
-        buf.append(')');
-        buf.append("\n");
+        out.append(')');
+        out.append('\n');
       }
       else
       {
-        buf.append('\n');
-        buf.append(childPrefix);
-        buf.append(getName());
-        buf.append("(\n");
+        out.append('\n');
+        writeIndent(out, depth);
+        out.append(getName());
+        out.append("(\n");
         for (ConfigThingy child : children)
         {
           if (child.count() == 0
             || (child.count() == 1 && child.getFirstChildNoThrow().count() == 0))
-            buf.append(childPrefix + INDENT);
+            writeIndent(out, depth + 1);
 
-          child.stringRepresentation(buf, childPrefix + INDENT, stringChar,
-            escapeAll);
+          child.writeTo(out, depth + 1, stringChar, escapeAll);
 
           if (child.count() == 0
             || (child.count() == 1 && child.getFirstChildNoThrow().count() == 0))
-            buf.append('\n');
+            out.append('\n');
         }
-        buf.append(childPrefix);
-        buf.append(")\n");
+        writeIndent(out, depth);
+        out.append(")\n");
       }
     }
   }
@@ -1086,22 +1496,21 @@ public class ConfigThingy implements Iterable<ConfigThingy>
       throw new InvalidIdentifierException(id);
   }
 
-  private enum TokenType
+  enum TokenType
   {
     KEY,
     STRING,
     OPENPAREN,
     CLOSEPAREN,
     END,
-    INCLUDE,
-    LINECOMMENT;
+    INCLUDE;
   }
 
   /**
-   * The {@link ConfigThingy#tokenize(URL)} method returns a list of objects
+   * The {@link ConfigThingy#tokenize(URL, Reader)} method returns a list of objects
    * that all implement this interface.
    */
-  private interface Token
+  interface Token
   {
     /**
      * Returns the URL of the document in which this token was found.
@@ -1187,95 +1596,13 @@ public class ConfigThingy implements Iterable<ConfigThingy>
     /**
      * Creates a new StringToken
      *
-     * @param tokenData
-     *          a string for which {@link #atStartOf(String)} returns a value greater than 0.
+     * @param content
+     *          the string without quotes and with evaluated escapes.
      */
-    public StringToken(String tokenData, URL url, int line, int position)
+    public StringToken(String content, URL url, int line, int position)
     {
       super(url, line, position);
-
-      int len = atStartOf(tokenData);
-      if (len < 2) {
-        throw new IllegalArgumentException("String token expected!");
-      }
-
-      char quote = tokenData.charAt(0);
-
-      /*
-       * Evaluate % escapes, as well as replace quotequote with quote
-       */
-      StringBuilder buffy = new StringBuilder(tokenData.substring(1, len - 1));
-      String quoteStr = Character.toString(quote);
-      int startidx = 0;
-      int idx;
-      while (true)
-      {
-        idx = buffy.indexOf("%", startidx);
-        int idx2 = buffy.indexOf(quoteStr, startidx);
-
-        if (idx < 0 && idx2 < 0) {
-          break;
-        }
-
-        String repstr;
-        int replen;
-
-        if (idx < 0 || (idx2 >= 0 && idx2 < idx)) // quotequote
-        {
-          idx = idx2;
-          replen = 2;
-          repstr = quoteStr;
-        }
-        else // % escape
-        {
-          if (idx + 1 >= buffy.length()) {
-            break;
-          }
-
-          // default: replace with the same character, i.e. %
-          repstr = Character.toString(buffy.charAt(idx));
-          replen = 1;
-
-          switch (buffy.charAt(idx + 1))
-          {
-            case 'n':
-              repstr = "\n";
-              replen = 2;
-              break;
-            case '%':
-              repstr = "%";
-              replen = 2;
-              break;
-            case 'u':
-              repstr = parseUnicode(buffy, idx + 2);
-              replen = 6;
-              break;
-            default:
-              break;
-          }
-        }
-        buffy.replace(idx, idx + replen, repstr);
-        startidx = idx + repstr.length();
-      }
-
-      content = buffy.toString();
-    }
-
-    private String parseUnicode(StringBuilder str, int idx)
-    {
-      if (idx + 4 > str.length())
-        throw new IllegalArgumentException("Incomplete %u escape!");
-      String code = str.substring(idx, idx + 4);
-      try
-      {
-        char ch = (char) Integer.parseInt(code, 16);
-        return Character.toString(ch);
-      }
-      catch (NumberFormatException x)
-      {
-        throw new IllegalArgumentException("Incorrect hex number in %u escape: \"%u"
-          + code + "\"");
-      }
+      this.content = content;
     }
 
     @Override
@@ -1283,35 +1610,6 @@ public class ConfigThingy implements Iterable<ConfigThingy>
     {
       return TokenType.STRING;
     }
-
-    /**
-     * Returns the length of the longest prefix of str which can be interpreted
-     * as a token of this class.
-     */
-    public static int atStartOf(String str)
-    {
-      if (str.length() < 2) {
-        return 0;
-      }
-      char quote = str.charAt(0);
-      if (quote != '"' && quote != '\'') {
-        return 0;
-      }
-
-      int idx = 1;
-      while (true)
-      {
-        idx = str.indexOf(quote, idx);
-        if (idx < 0) {
-          return 0;
-        }
-        ++idx;
-        if (idx >= str.length() || str.charAt(idx) != quote) {
-          return idx;
-        }
-        ++idx;
-      }
-    }
   }
 
   /**
@@ -1319,25 +1617,16 @@ public class ConfigThingy implements Iterable<ConfigThingy>
    */
   private static class KeyToken extends StringContentToken
   {
-    /**
-     * Regex for the identification of valid keys.
-     */
-    private static Pattern p = Pattern.compile("^([a-zA-Z_][a-zA-Z_0-9]*)");
-
     /**
      * Creates a new KeyToken
      *
-     * @param tokenData
-     *          a string for which {@link #atStartOf(String)} returns a value greater than 0.
+     * @param content
+     *          a valid key.
      */
-    public KeyToken(String tokenData, URL url, int line, int position)
+    public KeyToken(String content, URL url, int line, int position)
     {
       super(url, line, position);
-      Matcher m = p.matcher(tokenData);
-      if (!m.find()) {
-        throw new IllegalArgumentException("Key token expected!");
-      }
-      content = m.group(1);
+      this.content = content;
     }
 
     @Override
@@ -1345,19 +1634,6 @@ public class ConfigThingy implements Iterable<ConfigThingy>
     {
       return TokenType.KEY;
     }
-
-    /**
-     * Returns the length of the longest prefix of str which can be interpreted
-     * as a token of this class.
-     */
-    public static int atStartOf(String str)
-    {
-      Matcher m = p.matcher(str);
-      if (!m.find()) {
-        return 0;
-      }
-      return m.end();
-    }
   }
 
   /**
@@ -1376,14 +1652,6 @@ public class ConfigThingy implements Iterable<ConfigThingy>
     {
       return TokenType.OPENPAREN;
     }
-
-    /**
-     * Returns 1 if {@code str} starts with '(', 0 otherwise.
-     */
-    public static int atStartOf(String str)
-    {
-      return str.startsWith("(") ? 1 : 0;
-    }
   }
 
   /**
@@ -1402,14 +1670,6 @@ public class ConfigThingy implements Iterable<ConfigThingy>
     {
       return TokenType.CLOSEPAREN;
     }
-
-    /**
-     * Returns 1 if {@code str} starts with ')', 0 otherwise.
-     */
-    public static int atStartOf(String str)
-    {
-      return str.startsWith(")") ? 1 : 0;
-    }
   }
 
   /**
@@ -1430,51 +1690,6 @@ public class ConfigThingy implements Iterable<ConfigThingy>
     {
       return TokenType.INCLUDE;
     }
-
-    /**
-     * Returns the length of the longest prefix of str which can be interpreted
-     * as a token of this class.
-     */
-    public static int atStartOf(String str)
-    {
-      return str.startsWith(INC) ? INC.length() : 0;
-    }
-  }
-
-  /**
-   * Token for a comment according to WollMux config file syntax.
-   * ATTENTION: Tokens of this class are currently not returned by
-   * {@link ConfigThingy#tokenize(URL)}, but discarded.
-   */
-  private static class LineCommentToken extends StringContentToken
-  {
-
-    /**
-     * Creates a new LineCommentToken.
-     *
-     * @param tokenData
-     *          a string whose first character is '#'.
-     */
-    public LineCommentToken(String tokenData, URL url, int line, int position)
-    {
-      super(url, line, position);
-      content = tokenData.substring(1);
-    }
-
-    @Override
-    public TokenType type()
-    {
-      return TokenType.LINECOMMENT;
-    }
-
-    /**
-     * Returns the length of the longest prefix of {@code str}
-     * which can be interpreted as a token of this class.
-     */
-    public static int atStartOf(String str)
-    {
-      return str.startsWith("#") ? str.length() : 0;
-    }
   }
 
   /**
@@ -1496,97 +1711,285 @@ public class ConfigThingy implements Iterable<ConfigThingy>
   }
 
   /**
-   * Splits the data from {@code read} into {@link Tokens}s.
+   * Splits the data from {@code read} into {@link Token}s.
    * As source URL {@code url} is entered in the tokens.
    *
+   * The data is read completely and then scanned once. Lines end with "\n", "\r" or "\r\n".
+   * Comments (starting with '#' up to the end of the line) are discarded, because the parser
+   * can't skip them between pairs like KEY STRING.
+   *
    * @return the list of identified tokens, terminated by at least 7 {@link EndToken}s.
    * @throws IOException
    *           in case something goes wrong when accessing the data from {@code url}.
    * @throws SyntaxErrorException
    *           if a string cannot be identified as a token.
    */
-  private static List<StringContentToken> tokenize(URL url, Reader read)
+  static List<Token> tokenize(URL url, Reader read)
       throws IOException, SyntaxErrorException
   {
-    List<StringContentToken> tokens = new ArrayList<>();
-    BufferedReader in = new BufferedReader(read);
-    String line;
+    StringBuilder data = new StringBuilder();
+    char[] buffer = new char[8192];
+    int count;
+    while ((count = read.read(buffer)) >= 0)
+    {
+      data.append(buffer, 0, count);
+    }
+    char[] chars = new char[data.length()];
+    data.getChars(0, chars.length, chars, 0);
 
+    List<Token> tokens = new ArrayList<>();
     int lineNo = 0;
-    Pattern whitespace = Pattern.compile("^(\\p{Space}|\\u00A0|,|;|\\uFEFF)+");
-    while (null != (line = in.readLine()))
+    int lineStart = 0;
+    while (lineStart < chars.length)
     {
       ++lineNo;
-      int pos = 0;
+      int lineEnd = lineStart;
+      while (lineEnd < chars.length && chars[lineEnd] != '\n' && chars[lineEnd] != '\r')
+      {
+        ++lineEnd;
+      }
+
+      tokenizeLine(chars, lineStart, lineEnd, url, lineNo, tokens);
 
-      while (line.length() > 0)
+      lineStart = lineEnd + 1;
+      if (lineEnd + 1 < chars.length && chars[lineEnd] == '\r' && chars[lineEnd + 1] == '\n')
       {
-        Matcher wsm = whitespace.matcher(line);
-        if (wsm.find())
-        {
-          pos += wsm.end();
-          line = line.substring(wsm.end());
-          if (line.length() == 0) {
-            continue;
-          }
-        }
+        ++lineStart;
+      }
+    }
+
+    // add a couple EndTokens so that users don't have to worry about
+    // checking if there's enough input remaining
+    ++lineNo;
+    for (int i = 0; i < 7; ++i)
+      tokens.add(new EndToken(url, lineNo, 0));
+
+    return tokens;
+  }
+
+  /**
+   * Adds the tokens of the line chars[lineStart..lineEnd) to tokens.
+   */
+  private static void tokenizeLine(char[] chars, int lineStart, int lineEnd, URL url, int lineNo,
+      List<Token> tokens) throws SyntaxErrorException
+  {
+    int pos = lineStart;
+    while (pos < lineEnd)
+    {
+      char ch = chars[pos];
+      if (isWhitespace(ch))
+      {
+        ++pos;
+        continue;
+      }
 
-        int tokenLength;
-        try
+      int position = pos - lineStart + 1;
+      int end;
+      try
+      {
+        if (isKeyStart(ch))
         {
-          if (0 != (tokenLength = KeyToken.atStartOf(line)))
-          {
-            tokens.add(new KeyToken(line, url, lineNo, pos + 1));
-          }
-          else if (0 != (tokenLength = StringToken.atStartOf(line)))
-          {
-            tokens.add(new StringToken(line, url, lineNo, pos + 1));
-          }
-          else if (0 != (tokenLength = OpenParenToken.atStartOf(line)))
-          {
-            tokens.add(new OpenParenToken(url, lineNo, pos + 1));
-          }
-          else if (0 != (tokenLength = CloseParenToken.atStartOf(line)))
-          {
-            tokens.add(new CloseParenToken(url, lineNo, pos + 1));
-          }
-          else if (0 != (tokenLength = IncludeToken.atStartOf(line)))
-          {
-            tokens.add(new IncludeToken(url, lineNo, pos + 1));
-          }
-          else if (0 != (tokenLength = LineCommentToken.atStartOf(line)))
+          end = pos + 1;
+          while (end < lineEnd && isKeyPart(chars[end]))
           {
-            // LineCommentTokens werden nicht in tokens eingefügt, weil
-            // der Parser im Fall von 2er Paaren wie KEY STRING nicht in
-            // der Lage ist über Kommentare hinwegzulesen. Anstatt ihm das
-            // Einzubauen ist es einfacher, Kommentare einfach wegzuschmeissen.
-          }
-          else
-          {
-            throw new SyntaxErrorException(url + ": syntax error in line " + lineNo
-              + " at char " + (pos + 1) + ", text in error location: \"" + line
-              + "\"");
+            ++end;
           }
+          tokens.add(new KeyToken(new String(chars, pos, end - pos), url, lineNo, position));
+          pos = end;
+        }
+        else if ((ch == '"' || ch == '\'') && (end = stringEnd(chars, pos, lineEnd)) > 0)
+        {
+          tokens.add(new StringToken(unescape(chars, pos + 1, end - 1, ch), url, lineNo, position));
+          pos = end;
+        }
+        else if (ch == '(')
+        {
+          tokens.add(new OpenParenToken(url, lineNo, position));
+          ++pos;
+        }
+        else if (ch == ')')
+        {
+          tokens.add(new CloseParenToken(url, lineNo, position));
+          ++pos;
         }
-        catch (IllegalArgumentException x)
+        else if (startsWith(chars, pos, lineEnd, IncludeToken.INC))
+        {
+          tokens.add(new IncludeToken(url, lineNo, position));
+          pos += IncludeToken.INC.length();
+        }
+        else if (ch == '#')
+        {
+          pos = lineEnd;
+        }
+        else
         {
           throw new SyntaxErrorException(url + ": syntax error in line " + lineNo
-            + " at char " + (pos + 1) + ", text in error location: \"" + line
-            + "\"", x);
+            + " at char " + position + ", text in error location: \""
+            + new String(chars, pos, lineEnd - pos) + "\"");
         }
+      }
+      catch (IllegalArgumentException x)
+      {
+        throw new SyntaxErrorException(url + ": syntax error in line " + lineNo
+          + " at char " + position + ", text in error location: \""
+          + new String(chars, pos, lineEnd - pos) + "\"", x);
+      }
+    }
+  }
+
+  private static boolean isWhitespace(char ch)
+  {
+    switch (ch)
+    {
+      case ' ':
+      case '\t':
+      case '\n':
+      case '\u000B':
+      case '\f':
+      case '\r':
+      case '\u00A0':
+      case ',':
+      case ';':
+      case '\uFEFF':
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  private static boolean isKeyStart(char ch)
+  {
+    return (ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z') || ch == '_';
+  }
 
-        pos += tokenLength;
-        line = line.substring(tokenLength);
+  private static boolean isKeyPart(char ch)
+  {
+    return isKeyStart(ch) || (ch >= '0' && ch <= '9');
+  }
+
+  private static boolean startsWith(char[] chars, int pos, int end, String prefix)
+  {
+    if (end - pos < prefix.length())
+    {
+      return false;
+    }
+    for (int i = 0; i < prefix.length(); ++i)
+    {
+      if (chars[pos + i] != prefix.charAt(i))
+      {
+        return false;
       }
     }
+    return true;
+  }
 
-    // add a couple EndTokens so that users don't have to worry about
-    // checking if there's enough input remaining
-    ++lineNo;
-    for (int i = 0; i < 7; ++i)
-      tokens.add(new EndToken(url, lineNo, 0));
+  /**
+   * Returns the index after the closing quote of the string starting with the quote at
+   * chars[start]. Quotes within the string are doubled.
+   *
+   * @return the end of the string or 0 if the string isn't closed before end.
+   */
+  private static int stringEnd(char[] chars, int start, int end)
+  {
+    char quote = chars[start];
+    int idx = start + 1;
+    while (true)
+    {
+      while (idx < end && chars[idx] != quote)
+      {
+        ++idx;
+      }
+      if (idx >= end)
+      {
+        return 0;
+      }
+      ++idx;
+      if (idx >= end || chars[idx] != quote)
+      {
+        return idx;
+      }
+      ++idx;
+    }
+  }
 
-    return tokens;
+  /**
+   * Evaluates % escapes and replaces quotequote with quote in chars[start..end).
+   *
+   * @throws IllegalArgumentException
+   *           if there's an incomplete or invalid %u escape.
+   */
+  private static String unescape(char[] chars, int start, int end, char quote)
+  {
+    int idx = start;
+    while (idx < end && chars[idx] != '%' && chars[idx] != quote)
+    {
+      ++idx;
+    }
+    if (idx == end)
+    {
+      return new String(chars, start, end - start);
+    }
+
+    StringBuilder buffy = new StringBuilder(end - start);
+    buffy.append(chars, start, idx - start);
+    while (idx < end)
+    {
+      char ch = chars[idx];
+      if (ch == quote) // quotequote
+      {
+        buffy.append(quote);
+        idx += 2;
+      }
+      else if (ch != '%')
+      {
+        buffy.append(ch);
+        ++idx;
+      }
+      else if (idx + 1 >= end)
+      {
+        buffy.append(ch);
+        ++idx;
+      }
+      else
+      {
+        switch (chars[idx + 1])
+        {
+          case 'n':
+            buffy.append('\n');
+            idx += 2;
+            break;
+          case '%':
+            buffy.append('%');
+            idx += 2;
+            break;
+          case 'u':
+            buffy.append(parseUnicode(chars, idx + 2, end));
+            idx += 6;
+            break;
+          default:
+            // unknown escapes are kept
+            buffy.append('%');
+            ++idx;
+            break;
+        }
+      }
+    }
+    return buffy.toString();
+  }
+
+  private static char parseUnicode(char[] chars, int idx, int end)
+  {
+    if (idx + 4 > end)
+      throw new IllegalArgumentException("Incomplete %u escape!");
+    try
+    {
+      return (char) Integer.parseInt(new String(chars, idx, 4), 16);
+    }
+    catch (NumberFormatException x)
+    {
+      throw new IllegalArgumentException("Incorrect hex number in %u escape: \"%u"
+        + new String(chars, idx, 4) + "\"");
+    }
   }
 
   /**
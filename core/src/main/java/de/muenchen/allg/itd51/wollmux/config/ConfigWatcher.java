@@ -0,0 +1,278 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2023 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.config;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Watches the files of a configuration and notifies a listener if one of them has changed.
+ *
+ * Local files are watched with a {@link WatchService}. Because a WatchService doesn't work reliably
+ * on network drives and can't watch other URLs, all files are also checked periodically by the
+ * properties used to validate a {@link CompiledConfig}. The listener is called once a series of
+ * changes has settled, so that a file written in several steps is only reported once.
+ */
+public class ConfigWatcher implements Closeable
+{
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ConfigWatcher.class);
+
+  /**
+   * Time in milliseconds without further changes before the listener is called.
+   */
+  private static final long QUIET_PERIOD = 500;
+
+  private final Map<URL, CompiledConfig.Source> sources = new LinkedHashMap<>();
+
+  /**
+   * The local files watched by the {@link WatchService}.
+   */
+  private final Set<Path> files = new HashSet<>();
+
+  private final long pollInterval;
+
+  private final Runnable listener;
+
+  private WatchService watchService;
+
+  private volatile boolean closed = false;
+
+  /**
+   * A new watcher. Call {@link #start()} to start watching.
+   *
+   * @param urls
+   *          The files of the configuration.
+   * @param pollInterval
+   *          The interval in milliseconds in which all files are checked.
+   * @param listener
+   *          Called on the thread of the watcher if a file has changed.
+   */
+  public ConfigWatcher(Collection<URL> urls, long pollInterval, Runnable listener)
+  {
+    for (URL url : urls)
+    {
+      sources.put(url, null);
+    }
+    this.pollInterval = pollInterval;
+    this.listener = listener;
+  }
+
+  /**
+   * Start watching on a new daemon thread.
+   *
+   * @throws IOException
+   *           The {@link WatchService} can't be created.
+   */
+  public synchronized void start() throws IOException
+  {
+    watchService = FileSystems.getDefault().newWatchService();
+    for (URL url : sources.keySet())
+    {
+      Path file = toPath(url);
+      if (file != null && file.getParent() != null && file.getParent().toFile().isDirectory())
+      {
+        file.getParent().register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+        files.add(file);
+      }
+    }
+    updateSources();
+
+    Thread thread = new Thread(this::run, "WollMux configuration watcher");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Stop watching. The listener isn't called afterwards, unless it is already running.
+   */
+  @Override
+  public void close()
+  {
+    closed = true;
+    try
+    {
+      if (watchService != null)
+      {
+        watchService.close();
+      }
+    } catch (IOException e)
+    {
+      LOGGER.debug("", e);
+    }
+  }
+
+  private void run()
+  {
+    long nextPoll = System.currentTimeMillis() + pollInterval;
+    try
+    {
+      while (!closed)
+      {
+        boolean changed = waitForChange(Math.max(1, nextPoll - System.currentTimeMillis()));
+        if (!changed && System.currentTimeMillis() >= nextPoll)
+        {
+          changed = updateSources();
+          nextPoll = System.currentTimeMillis() + pollInterval;
+        }
+        if (changed && !closed)
+        {
+          while (waitForChange(QUIET_PERIOD))
+          {
+            // wait until the files aren't written any more
+          }
+          updateSources();
+          notifyListener();
+        }
+      }
+    } catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+    } catch (ClosedWatchServiceException e)
+    {
+      LOGGER.trace("", e);
+    }
+  }
+
+  private void notifyListener()
+  {
+    if (closed)
+    {
+      return;
+    }
+    try
+    {
+      listener.run();
+    } catch (RuntimeException e)
+    {
+      LOGGER.error("", e);
+    }
+  }
+
+  /**
+   * Wait for an event of the {@link WatchService}.
+   *
+   * @return True if a watched file has changed, false if the timeout elapsed or another file in
+   *         the same directory has changed.
+   */
+  private boolean waitForChange(long timeout) throws InterruptedException
+  {
+    WatchKey key = watchService.poll(timeout, TimeUnit.MILLISECONDS);
+    if (key == null)
+    {
+      return false;
+    }
+
+    boolean changed = false;
+    Path dir = (Path) key.watchable();
+    for (WatchEvent<?> event : key.pollEvents())
+    {
+      if (event.kind() == OVERFLOW || files.contains(dir.resolve((Path) event.context())))
+      {
+        changed = true;
+      }
+    }
+    key.reset();
+    return changed;
+  }
+
+  /**
+   * Check the properties of all files.
+   *
+   * @return True if a file has changed since the last check.
+   */
+  private boolean updateSources()
+  {
+    boolean changed = false;
+    for (Map.Entry<URL, CompiledConfig.Source> entry : sources.entrySet())
+    {
+      CompiledConfig.Source source;
+      try
+      {
+        source = CompiledConfig.Source.of(entry.getKey());
+      } catch (IOException e)
+      {
+        // the file doesn't exist (any more)
+        source = null;
+      }
+      if (!Objects.equals(source, entry.getValue()))
+      {
+        LOGGER.debug("{} has changed", entry.getKey());
+        changed = true;
+        entry.setValue(source);
+      }
+    }
+    return changed;
+  }
+
+  private static Path toPath(URL url)
+  {
+    if (!"file".equals(url.getProtocol()))
+    {
+      return null;
+    }
+    try
+    {
+      return new File(url.toURI()).toPath().toAbsolutePath().normalize();
+    } catch (URISyntaxException | IllegalArgumentException e)
+    {
+      LOGGER.trace("", e);
+      return null;
+    }
+  }
+
+  /**
+   * The files watched by this watcher.
+   *
+   * @return The URLs of the files.
+   */
+  public List<URL> getUrls()
+  {
+    return List.copyOf(sources.keySet());
+  }
+}
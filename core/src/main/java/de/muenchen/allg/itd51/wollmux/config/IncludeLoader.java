@@ -0,0 +1,505 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2023 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.config;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.muenchen.allg.itd51.wollmux.config.ConfigThingy.Token;
+import de.muenchen.allg.itd51.wollmux.config.ConfigThingy.TokenType;
+
+/**
+ * Loads a configuration with all its included files.
+ *
+ * Before the configuration is parsed, all files which are included directly or indirectly are
+ * fetched. All includes of the same depth are fetched concurrently, so that the startup takes the
+ * sum of the maximum latency per depth instead of the sum of all latencies. The tree is assembled
+ * afterwards in the order of the files, so the result is the same as of
+ * {@link ConfigThingy#ConfigThingy(String, URL)}.
+ *
+ * Files from HTTP servers are stored in a cache directory and requested with If-None-Match and
+ * If-Modified-Since, so that unchanged files aren't transferred again.
+ */
+public class IncludeLoader
+{
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(IncludeLoader.class);
+
+  /**
+   * Maximum number of files fetched at the same time.
+   */
+  private static final int MAX_PARALLEL_REQUESTS = 8;
+
+  /**
+   * Default connect and read timeout in milliseconds.
+   */
+  private static final int TIMEOUT = 10000;
+
+  /**
+   * The cache directory of files from HTTP servers. Null if there's no cache.
+   */
+  private final File cacheDir;
+
+  private final int timeout;
+
+  /**
+   * The fetched files by their URL.
+   */
+  private final Map<String, Include> includes = new ConcurrentHashMap<>();
+
+  /**
+   * The files of a configuration loaded from a snapshot by their URL.
+   */
+  private final Map<String, CompiledConfig.Source> snapshotSources = new ConcurrentHashMap<>();
+
+  /**
+   * A new loader.
+   *
+   * @param cacheDir
+   *          The cache directory of files from HTTP servers. Null if no cache should be used.
+   */
+  public IncludeLoader(File cacheDir)
+  {
+    this(cacheDir, TIMEOUT);
+  }
+
+  /**
+   * A new loader.
+   *
+   * @param cacheDir
+   *          The cache directory of files from HTTP servers. Null if no cache should be used.
+   * @param timeout
+   *          The connect and read timeout in milliseconds for each file.
+   */
+  public IncludeLoader(File cacheDir, int timeout)
+  {
+    this.cacheDir = cacheDir;
+    this.timeout = timeout;
+  }
+
+  /**
+   * Parses a configuration.
+   *
+   * @param name
+   *          The name of the root of the configuration.
+   * @param url
+   *          The configuration file.
+   * @return The configuration.
+   * @throws IOException
+   *           The configuration or an included file can't be read.
+   * @throws SyntaxErrorException
+   *           The configuration isn't valid.
+   */
+  public ConfigThingy load(String name, URL url) throws IOException, SyntaxErrorException
+  {
+    prefetch(url);
+    ConfigThingy conf = new ConfigThingy(name);
+    conf.childrenFromTokens(url, tokenize(url), this::tokenize);
+    return conf;
+  }
+
+  /**
+   * Fetch a file and all files included by it.
+   */
+  void prefetch(URL url)
+  {
+    ExecutorService executor = Executors.newFixedThreadPool(MAX_PARALLEL_REQUESTS);
+    try
+    {
+      List<URL> depth = List.of(url);
+      while (!depth.isEmpty())
+      {
+        Map<URL, Future<Include>> futures = new LinkedHashMap<>();
+        for (URL include : depth)
+        {
+          if (!includes.containsKey(include.toString()))
+          {
+            futures.putIfAbsent(include, executor.submit(() -> fetch(include)));
+          }
+        }
+
+        List<URL> next = new ArrayList<>();
+        for (Map.Entry<URL, Future<Include>> entry : futures.entrySet())
+        {
+          Include include = entry.getValue().get();
+          includes.put(entry.getKey().toString(), include);
+          if (include.tokens != null)
+          {
+            next.addAll(findIncludes(entry.getKey(), include.tokens));
+          }
+        }
+        depth = next;
+      }
+    } catch (ExecutionException e)
+    {
+      LOGGER.debug("", e);
+    } catch (InterruptedException e)
+    {
+      LOGGER.debug("", e);
+      Thread.currentThread().interrupt();
+    } finally
+    {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Get the tokens of a file. Files which haven't been prefetched are fetched now.
+   *
+   * @throws IOException
+   *           The file can't be read.
+   * @throws SyntaxErrorException
+   *           The file can't be tokenized.
+   */
+  List<Token> tokenize(URL url) throws IOException, SyntaxErrorException
+  {
+    Include include = includes.computeIfAbsent(url.toString(), key -> fetch(url));
+    if (include.ioError != null)
+    {
+      throw include.ioError;
+    }
+    if (include.syntaxError != null)
+    {
+      throw include.syntaxError;
+    }
+    return include.tokens;
+  }
+
+  /**
+   * Get the properties of a fetched file, which can be used to detect changes.
+   *
+   * @return The properties or null if the file hasn't been fetched successfully or changes of the
+   *         file can't be detected.
+   */
+  CompiledConfig.Source getSource(URL url)
+  {
+    Include include = includes.get(url.toString());
+    if (include == null)
+    {
+      return snapshotSources.get(url.toString());
+    }
+    return include.source;
+  }
+
+  /**
+   * Register a file of a configuration which has been loaded from a snapshot instead of being
+   * fetched.
+   */
+  void addSource(CompiledConfig.Source source)
+  {
+    snapshotSources.put(source.url, source);
+  }
+
+  /**
+   * Get all files which have been loaded by this loader, including those which couldn't be read.
+   *
+   * @return The URLs of the configuration file and its included files.
+   */
+  public List<URL> getUrls()
+  {
+    List<URL> urls = new ArrayList<>();
+    for (String url : includes.keySet())
+    {
+      addUrl(urls, url);
+    }
+    for (String url : snapshotSources.keySet())
+    {
+      addUrl(urls, url);
+    }
+    return urls;
+  }
+
+  private static void addUrl(List<URL> urls, String url)
+  {
+    try
+    {
+      urls.add(new URL(url));
+    } catch (MalformedURLException e)
+    {
+      LOGGER.trace("", e);
+    }
+  }
+
+  /**
+   * The URLs of the included files in the order of the tokens. Invalid includes are ignored, they
+   * are reported when the tokens are parsed.
+   */
+  private static List<URL> findIncludes(URL url, List<Token> tokens)
+  {
+    List<URL> urls = new ArrayList<>();
+    Iterator<Token> iter = tokens.iterator();
+    while (iter.hasNext())
+    {
+      if (iter.next().type() == TokenType.INCLUDE && iter.hasNext())
+      {
+        Token token = iter.next();
+        if (token.type() == TokenType.STRING && !token.contentString().isEmpty())
+        {
+          try
+          {
+            urls.add(new URL(url, ConfigThingy.urlEncode(token.contentString())));
+          } catch (MalformedURLException e)
+          {
+            LOGGER.trace("", e);
+          }
+        }
+      }
+    }
+    return urls;
+  }
+
+  /**
+   * Fetch and tokenize a file. Errors are stored in the result.
+   */
+  private Include fetch(URL url)
+  {
+    Include include = new Include();
+    try
+    {
+      byte[] content;
+      if ("http".equals(url.getProtocol()) || "https".equals(url.getProtocol()))
+      {
+        content = fetchHttp(url, include);
+      } else
+      {
+        include.source = CompiledConfig.Source.of(url);
+        URLConnection connection = url.openConnection();
+        connection.setConnectTimeout(timeout);
+        connection.setReadTimeout(timeout);
+        try (InputStream in = connection.getInputStream())
+        {
+          content = in.readAllBytes();
+        }
+      }
+
+      try (Reader read = new InputStreamReader(new ByteArrayInputStream(content),
+          ConfigThingy.CHARSET))
+      {
+        include.tokens = ConfigThingy.tokenize(url, read);
+      }
+    } catch (SyntaxErrorException e)
+    {
+      include.syntaxError = e;
+    } catch (IOException e)
+    {
+      include.ioError = e;
+      include.source = null;
+    }
+    return include;
+  }
+
+  /**
+   * Fetch a file from an HTTP server. If the file is in the cache, it is only transferred if it
+   * has changed.
+   */
+  private byte[] fetchHttp(URL url, Include include) throws IOException
+  {
+    File cacheFile = getCacheFile(url);
+    CachedFile cached = readCache(url, cacheFile);
+
+    HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+    try
+    {
+      connection.setConnectTimeout(timeout);
+      connection.setReadTimeout(timeout);
+      if (cached != null)
+      {
+        if (!cached.source.etag.isEmpty())
+        {
+          connection.setRequestProperty("If-None-Match", cached.source.etag);
+        }
+        if (cached.source.lastModified > 0)
+        {
+          connection.setIfModifiedSince(cached.source.lastModified);
+        }
+      }
+
+      if (cached != null && connection.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED)
+      {
+        LOGGER.debug("{} hasn't changed", url);
+        include.source = cached.source;
+        return cached.content;
+      }
+
+      byte[] content;
+      try (InputStream in = connection.getInputStream())
+      {
+        content = in.readAllBytes();
+      }
+      String etag = connection.getHeaderField("ETag");
+      CompiledConfig.Source source = new CompiledConfig.Source(url.toString(),
+          connection.getLastModified(), connection.getContentLengthLong(), etag == null ? "" : etag);
+      if (source.isCacheable())
+      {
+        include.source = source;
+        if (cacheFile != null)
+        {
+          writeCache(source, content, cacheFile);
+        }
+      } else
+      {
+        LOGGER.debug("{} has neither an ETag nor a modification date", url);
+      }
+      return content;
+    } finally
+    {
+      connection.disconnect();
+    }
+  }
+
+  private File getCacheFile(URL url)
+  {
+    if (cacheDir == null)
+    {
+      return null;
+    }
+    try
+    {
+      byte[] hash = MessageDigest.getInstance("SHA-256")
+          .digest(url.toString().getBytes(StandardCharsets.UTF_8));
+      StringBuilder name = new StringBuilder();
+      for (byte b : hash)
+      {
+        name.append(String.format("%02x", b));
+      }
+      return new File(cacheDir, name.toString());
+    } catch (NoSuchAlgorithmException e)
+    {
+      LOGGER.debug("", e);
+      return null;
+    }
+  }
+
+  private static CachedFile readCache(URL url, File cacheFile)
+  {
+    if (cacheFile == null || !cacheFile.isFile())
+    {
+      return null;
+    }
+    try (DataInputStream in = new DataInputStream(
+        new BufferedInputStream(Files.newInputStream(cacheFile.toPath()))))
+    {
+      CompiledConfig.Source source = new CompiledConfig.Source(in.readUTF(), in.readLong(),
+          in.readLong(), in.readUTF());
+      if (!source.url.equals(url.toString()))
+      {
+        return null;
+      }
+      return new CachedFile(source, in.readAllBytes());
+    } catch (IOException e)
+    {
+      LOGGER.debug("Cached file {} can't be read", cacheFile, e);
+      return null;
+    }
+  }
+
+  private static void writeCache(CompiledConfig.Source source, byte[] content, File cacheFile)
+  {
+    try
+    {
+      Files.createDirectories(cacheFile.getParentFile().toPath());
+      Path tmp = Files.createTempFile(cacheFile.getParentFile().toPath(), cacheFile.getName(),
+          ".tmp");
+      try
+      {
+        try (DataOutputStream out = new DataOutputStream(
+            new BufferedOutputStream(Files.newOutputStream(tmp))))
+        {
+          out.writeUTF(source.url);
+          out.writeLong(source.lastModified);
+          out.writeLong(source.size);
+          out.writeUTF(source.etag);
+          out.write(content);
+        }
+        Files.move(tmp, cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      } finally
+      {
+        Files.deleteIfExists(tmp);
+      }
+    } catch (IOException e)
+    {
+      LOGGER.debug("{} couldn't be cached", source.url, e);
+    }
+  }
+
+  /**
+   * The result of fetching a file.
+   */
+  private static class Include
+  {
+    private List<Token> tokens;
+
+    private CompiledConfig.Source source;
+
+    private IOException ioError;
+
+    private SyntaxErrorException syntaxError;
+  }
+
+  /**
+   * A file in the cache directory.
+   */
+  private static class CachedFile
+  {
+    private final CompiledConfig.Source source;
+
+    private final byte[] content;
+
+    CachedFile(CompiledConfig.Source source, byte[] content)
+    {
+      this.source = source;
+      this.content = content;
+    }
+  }
+}
@@ -0,0 +1,236 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2023 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.config.generator.xml;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * Writes a XML-document element by element. The output is formatted like the output of
+ * {@link XMLGenerator#printDocument(org.w3c.dom.Document, OutputStream)}: Every element starts on
+ * a new line indented by four spaces per level, elements with only text are written on one line
+ * and elements without content are written as empty elements.
+ */
+class IndentingXMLWriter
+{
+  /** The XML-declaration, which is written by the transformer. */
+  private static final String DECLARATION = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>";
+  /** The indention of one level. */
+  private static final String INDENTION = "    ";
+
+  /** The underlying writer. */
+  private final Writer writer;
+  /** The XML-writer. */
+  private final XMLStreamWriter xml;
+  /** Has the open element at this position child elements. */
+  private final Deque<Boolean> open = new ArrayDeque<>();
+  /** The name of an element, whose start tag isn't written yet. */
+  private String pendingName;
+  /** The name of the attribute of the pending element. */
+  private String pendingAttribute;
+  /** The value of the attribute of the pending element. */
+  private String pendingValue;
+
+  /**
+   * Create a new writer and write the XML-declaration.
+   *
+   * @param out
+   *          The stream to write to. The document is encoded with UTF-8.
+   * @throws IOException
+   *           Couldn't write the declaration.
+   * @throws XMLStreamException
+   *           Couldn't create a XML-writer.
+   */
+  IndentingXMLWriter(final OutputStream out) throws IOException, XMLStreamException
+  {
+    writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+    writer.write(DECLARATION);
+    xml = XMLOutputFactory.newInstance().createXMLStreamWriter(writer);
+  }
+
+  /**
+   * Start a new element. The start tag is written as soon as the first child is written.
+   *
+   * @param name
+   *          The name of the element.
+   * @param attribute
+   *          The name of an attribute or null.
+   * @param value
+   *          The value of the attribute.
+   * @throws XMLStreamException
+   *           Couldn't write.
+   */
+  void startElement(final String name, final String attribute, final String value)
+      throws XMLStreamException
+  {
+    startChild();
+    pendingName = name;
+    pendingAttribute = attribute;
+    pendingValue = value;
+  }
+
+  /**
+   * Write an element, which has only text as content.
+   *
+   * @param name
+   *          The name of the element.
+   * @param text
+   *          The content of the element.
+   * @throws XMLStreamException
+   *           Couldn't write.
+   */
+  void textElement(final String name, final String text) throws XMLStreamException
+  {
+    startChild();
+    if (text.isEmpty())
+    {
+      xml.writeEmptyElement(name);
+    } else
+    {
+      xml.writeStartElement(name);
+      writeText(text);
+      xml.writeEndElement();
+    }
+  }
+
+  /**
+   * Close the last started element.
+   *
+   * @throws XMLStreamException
+   *           Couldn't write.
+   */
+  void endElement() throws XMLStreamException
+  {
+    if (pendingName != null)
+    {
+      xml.writeEmptyElement(pendingName);
+      writeAttribute();
+      pendingName = null;
+    } else
+    {
+      if (open.pop())
+      {
+        newLine(open.size());
+      }
+      xml.writeEndElement();
+    }
+  }
+
+  /**
+   * Finish the document and flush all data. The underlying stream isn't closed.
+   *
+   * @throws XMLStreamException
+   *           Couldn't write.
+   * @throws IOException
+   *           Couldn't write.
+   */
+  void finish() throws XMLStreamException, IOException
+  {
+    xml.writeEndDocument();
+    xml.flush();
+    writer.write(System.lineSeparator());
+    writer.flush();
+  }
+
+  /**
+   * Write the pending start tag and start a new line for a child element.
+   */
+  private void startChild() throws XMLStreamException
+  {
+    if (pendingName != null)
+    {
+      xml.writeStartElement(pendingName);
+      writeAttribute();
+      pendingName = null;
+      open.push(Boolean.FALSE);
+    }
+    if (!open.isEmpty())
+    {
+      open.pop();
+      open.push(Boolean.TRUE);
+    }
+    newLine(open.size());
+  }
+
+  private void writeAttribute() throws XMLStreamException
+  {
+    if (pendingAttribute != null)
+    {
+      xml.writeAttribute(pendingAttribute, pendingValue);
+    }
+  }
+
+  private void newLine(final int level) throws XMLStreamException
+  {
+    StringBuilder builder = new StringBuilder(System.lineSeparator());
+    for (int i = 0; i < level; i++)
+    {
+      builder.append(INDENTION);
+    }
+    xml.writeCharacters(builder.toString());
+  }
+
+  /**
+   * Write text and use character references for the same characters as the transformer does.
+   */
+  private void writeText(final String text) throws XMLStreamException
+  {
+    int start = 0;
+    int index = 0;
+    while (index < text.length())
+    {
+      int codePoint = text.codePointAt(index);
+      int length = Character.charCount(codePoint);
+      if (needsReference(codePoint))
+      {
+        if (start < index)
+        {
+          xml.writeCharacters(text.substring(start, index));
+        }
+        xml.writeEntityRef("#" + codePoint);
+        start = index + length;
+      }
+      index += length;
+    }
+    if (start < text.length())
+    {
+      xml.writeCharacters(text.substring(start));
+    }
+  }
+
+  private static boolean needsReference(final int codePoint)
+  {
+    return (codePoint < 0x20 && codePoint != '\t' && codePoint != '\n')
+        || (codePoint >= 0x7F && codePoint <= 0x9F) || Character.isSupplementaryCodePoint(codePoint);
+  }
+}
@@ -0,0 +1,533 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2023 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.config.generator.xml;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import de.muenchen.allg.itd51.wollmux.config.Trimmer;
+
+/**
+ * Generates a configuration out of a XML-document like {@link ConfGenerator}, but reads the
+ * document with StAX instead of building it in memory. The output is the same.
+ *
+ * The document is read twice. The first pass only marks the groups containing keys, because they
+ * are printed on several lines. The second pass prints the configuration.
+ */
+public class StaxConfGenerator
+{
+  /**
+   * Opens the output of a file of the configuration.
+   */
+  @FunctionalInterface
+  public interface OutputProvider
+  {
+    /**
+     * Open the output of a file.
+     *
+     * @param filename
+     *          The filename attribute of the file.
+     * @return The stream to write the file to. It's closed after the file has been written.
+     * @throws IOException
+     *           Couldn't open the output.
+     */
+    OutputStream open(String filename) throws IOException;
+  }
+
+  /**
+   * The XML-document.
+   */
+  private final URL xml;
+  /**
+   * The groups (numbered in document order) containing a key.
+   */
+  private final BitSet groupsWithKey = new BitSet();
+  /**
+   * The filenames of the file elements.
+   */
+  private final List<String> filenames = new ArrayList<>();
+
+  /**
+   * Create a new StaxConfGenerator.
+   *
+   * @param xml
+   *          The XML-document with the configuration.
+   * @throws XMLGeneratorException
+   *           Couldn't read the document or it isn't a configuration.
+   */
+  public StaxConfGenerator(final URL xml) throws XMLGeneratorException
+  {
+    this.xml = xml;
+    try (InputStream in = xml.openStream())
+    {
+      final XMLStreamReader reader = createReader(in);
+      if (!XMLTags.CONFIG.getName().equals(reader.getLocalName()))
+      {
+        throw new XMLGeneratorException("No root element config in xml file");
+      }
+      final Deque<Integer> groups = new ArrayDeque<>();
+      int groupCount = 0;
+      int depth = 0;
+      while (reader.hasNext())
+      {
+        final int event = reader.next();
+        if (event == XMLStreamConstants.START_ELEMENT)
+        {
+          depth++;
+          final String name = reader.getLocalName();
+          if (XMLTags.GROUP.getName().equals(name))
+          {
+            groups.push(groupCount++);
+          } else if (XMLTags.KEY.getName().equals(name))
+          {
+            for (final int group : groups)
+            {
+              if (groupsWithKey.get(group))
+              {
+                break;
+              }
+              groupsWithKey.set(group);
+            }
+          } else if (depth == 1)
+          {
+            filenames.add(reader.getAttributeValue(null, "filename"));
+          }
+        } else if (event == XMLStreamConstants.END_ELEMENT)
+        {
+          depth--;
+          if (XMLTags.GROUP.getName().equals(reader.getLocalName()))
+          {
+            groups.pop();
+          }
+        }
+      }
+      reader.close();
+    } catch (final IOException | XMLStreamException e)
+    {
+      throw new XMLGeneratorException("Couldn't read XML-document", e);
+    }
+    if (filenames.isEmpty())
+    {
+      throw new XMLGeneratorException("Root element of document has no child-elements.");
+    }
+  }
+
+  /**
+   * Print a file entry of the XML-document to this stream.
+   *
+   * @param stream
+   *          The stream
+   * @param file
+   *          The number of the file to print (starting by 0).
+   * @throws XMLGeneratorException
+   *           Invalid XML-document or unable to generate the configuration file.
+   */
+  public void generateConf(final OutputStream stream, final int file)
+      throws XMLGeneratorException
+  {
+    generate(file, filename -> stream, Charset.defaultCharset());
+  }
+
+  /**
+   * Convert the first file entry of the configuration into a string. The first file is the file,
+   * which was named for generating the configuration as XML. The data from other files is not part
+   * of the string.
+   *
+   * @param encoding
+   *          The encoding of the string.
+   * @return The first file of the configuration as string.
+   * @throws XMLGeneratorException
+   *           Invalid XML-document or unsupported encoding.
+   */
+  public String generateConf(final String encoding) throws XMLGeneratorException
+  {
+    try
+    {
+      ByteArrayOutputStream os = new ByteArrayOutputStream();
+      generateConf(os, 0);
+      return os.toString(encoding);
+    } catch (UnsupportedEncodingException e)
+    {
+      throw new XMLGeneratorException("Unsupported encoding", e);
+    }
+  }
+
+  /**
+   * Convert the configuration into strings. For each file entry a separate string is build.
+   *
+   * @param encoding
+   *          The encoding of the string.
+   * @return A map mapping filenames to content (as string).
+   * @throws XMLGeneratorException
+   *           Invalid XML-document or unsupported encoding.
+   */
+  public Map<String, String> generateConfMap(final String encoding) throws XMLGeneratorException
+  {
+    final Map<String, ByteArrayOutputStream> outputs = new LinkedHashMap<>(filenames.size());
+    generate(-1, filename -> {
+      ByteArrayOutputStream os = new ByteArrayOutputStream();
+      outputs.put(filename, os);
+      return os;
+    }, Charset.defaultCharset());
+    try
+    {
+      Map<String, String> map = new LinkedHashMap<>(outputs.size());
+      for (Map.Entry<String, ByteArrayOutputStream> entry : outputs.entrySet())
+      {
+        map.put(entry.getKey(), entry.getValue().toString(encoding));
+      }
+      return map;
+    } catch (UnsupportedEncodingException e)
+    {
+      throw new XMLGeneratorException("Unsupported encoding", e);
+    }
+  }
+
+  /**
+   * Convert the configuration file by file. Each file is written to its output while the document
+   * is read and the output is closed at the end of the file, so that no file is held in memory.
+   *
+   * @param outputs
+   *          Provides the output for each file entry. The files are written with UTF-8.
+   * @throws XMLGeneratorException
+   *           Invalid XML-document or unable to generate the configuration file.
+   */
+  public void generateConfMap(final OutputProvider outputs) throws XMLGeneratorException
+  {
+    generate(-1, outputs, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Generate a configuration file from an XML-document. The whole data form the document is writen
+   * to the files specified in the configuration.
+   *
+   * @throws XMLGeneratorException
+   *           Invalid XML-document or unable to generate the configuration file.
+   */
+  public void generateConf() throws XMLGeneratorException
+  {
+    generateConfMap(FileOutputStream::new);
+  }
+
+  /**
+   * Read the document and print the file entries.
+   *
+   * @param only
+   *          The number of the file to print or -1 for all files.
+   * @param outputs
+   *          The outputs of the files.
+   * @param charset
+   *          The charset of the outputs.
+   * @throws XMLGeneratorException
+   *           Invalid XML-document or unable to generate the configuration file.
+   */
+  private void generate(final int only, final OutputProvider outputs, final Charset charset)
+      throws XMLGeneratorException
+  {
+    try (InputStream in = xml.openStream())
+    {
+      final XMLStreamReader reader = createReader(in);
+      final Printer printer = new Printer();
+      int file = 0;
+      while (reader.nextTag() == XMLStreamConstants.START_ELEMENT)
+      {
+        if (only < 0 || only == file)
+        {
+          final String filename = reader.getAttributeValue(null, "filename");
+          final PrettyPrinter out = new PrettyPrinter(
+              new OutputStreamWriter(outputs.open(filename), charset));
+          printer.printFile(reader, out);
+          out.close();
+          if (only == file)
+          {
+            break;
+          }
+        } else
+        {
+          printer.skip(reader);
+        }
+        file++;
+      }
+      reader.close();
+    } catch (final IOException | XMLStreamException e)
+    {
+      throw new XMLGeneratorException("Print was unsuccessful", e);
+    }
+  }
+
+  private static XMLStreamReader createReader(final InputStream in) throws XMLStreamException
+  {
+    final XMLInputFactory factory = XMLInputFactory.newInstance();
+    factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    final XMLStreamReader reader = factory.createXMLStreamReader(in);
+    reader.nextTag();
+    return reader;
+  }
+
+  /**
+   * Prints the elements of a file like {@link ConfGenerator}. Separators, which depend on the next
+   * sibling of an element, are printed as soon as the sibling is read.
+   */
+  private class Printer
+  {
+    /**
+     * The number of groups read so far.
+     */
+    private int groupCount = 0;
+
+    /**
+     * Print a file element. The reader is positioned on its start tag.
+     */
+    void printFile(final XMLStreamReader reader, final PrettyPrinter out)
+        throws XMLStreamException, XMLGeneratorException, IOException
+    {
+      final Deque<Frame> stack = new ArrayDeque<>();
+      stack.push(new Frame(XMLTags.FILE, false, false));
+      while (!stack.isEmpty())
+      {
+        final int event = reader.next();
+        if (event == XMLStreamConstants.START_ELEMENT)
+        {
+          startElement(reader, stack, out);
+        } else if (event == XMLStreamConstants.END_ELEMENT)
+        {
+          endElement(stack, out);
+        }
+      }
+    }
+
+    /**
+     * Skip an element. The reader is positioned on its start tag.
+     */
+    void skip(final XMLStreamReader reader) throws XMLStreamException
+    {
+      int depth = 1;
+      while (depth > 0)
+      {
+        final int event = reader.next();
+        if (event == XMLStreamConstants.START_ELEMENT)
+        {
+          depth++;
+          if (XMLTags.GROUP.getName().equals(reader.getLocalName()))
+          {
+            groupCount++;
+          }
+        } else if (event == XMLStreamConstants.END_ELEMENT)
+        {
+          depth--;
+        }
+      }
+    }
+
+    private void startElement(final XMLStreamReader reader, final Deque<Frame> stack,
+        final PrettyPrinter out) throws XMLStreamException, XMLGeneratorException, IOException
+    {
+      final Frame parent = stack.peek();
+      final XMLTags tag = XMLTags.valueOf(reader.getLocalName().toUpperCase());
+      switch (parent.tag)
+      {
+      case FILE:
+        if (parent.keyEnded)
+        {
+          if (tag != XMLTags.COMMENT)
+          {
+            if (!parent.keyWithGroup)
+            {
+              out.print();
+            }
+          } else
+          {
+            out.add2Line(" ");
+          }
+          parent.keyEnded = false;
+        }
+        if (tag == XMLTags.FILE || tag == XMLTags.CONFIG)
+        {
+          throw new XMLGeneratorException("Unsupported element");
+        }
+        break;
+      case GROUP:
+        if (parent.separator != null)
+        {
+          out.add2Line(parent.separator);
+          parent.separator = null;
+        }
+        if (tag != XMLTags.KEY && tag != XMLTags.VALUE && tag != XMLTags.GROUP
+            && tag != XMLTags.COMMENT)
+        {
+          throw new XMLGeneratorException("unsupported element for group");
+        }
+        break;
+      default:
+        // only the first child of a key is printed
+        if (parent.children++ > 0)
+        {
+          skip(reader);
+          return;
+        }
+        if (tag != XMLTags.VALUE && tag != XMLTags.GROUP)
+        {
+          throw new XMLGeneratorException("unsupported Element for key");
+        }
+        break;
+      }
+
+      switch (tag)
+      {
+      case KEY:
+        out.add2Line(reader.getAttributeValue(null, "id") + " ");
+        stack.push(new Frame(XMLTags.KEY, false, false));
+        break;
+      case VALUE:
+        printValue(reader.getElementText(), parent, out);
+        break;
+      case GROUP:
+        out.add2Line("(");
+        final boolean named = parent.tag == XMLTags.KEY;
+        final boolean list = !groupsWithKey.get(groupCount++);
+        if (named && !list)
+        {
+          out.print();
+          out.indent();
+        }
+        stack.push(new Frame(XMLTags.GROUP, named, list));
+        break;
+      case COMMENT:
+        out.add2Line(reader.getElementText());
+        out.print();
+        break;
+      default:
+        out.add2Line("%include \"" + reader.getElementText() + "\"");
+        out.print();
+        break;
+      }
+    }
+
+    private void printValue(final String value, final Frame parent, final PrettyPrinter out)
+        throws IOException
+    {
+      switch (parent.tag)
+      {
+      case FILE:
+        out.add2Line("(" + Trimmer.addQuoates(value) + ")");
+        out.print();
+        break;
+      case GROUP:
+        out.add2Line(Trimmer.addQuoates(value));
+        parent.separator = parent.list ? ", " : " ";
+        break;
+      default:
+        out.add2Line(Trimmer.addQuoates(value));
+        break;
+      }
+    }
+
+    private void endElement(final Deque<Frame> stack, final PrettyPrinter out) throws IOException
+    {
+      final Frame frame = stack.pop();
+      final Frame parent = stack.peek();
+      switch (frame.tag)
+      {
+      case FILE:
+        if (frame.keyEnded)
+        {
+          out.add2Line(" ");
+        }
+        out.print();
+        out.flush();
+        break;
+      case KEY:
+        if (parent.tag == XMLTags.FILE)
+        {
+          parent.keyEnded = true;
+          parent.keyWithGroup = frame.keyWithGroup;
+        } else
+        {
+          parent.separator = " ";
+        }
+        break;
+      default:
+        if (frame.named && !frame.list)
+        {
+          out.removeIndent();
+        }
+        out.add2Line(")");
+        out.print();
+        if (parent.tag == XMLTags.KEY)
+        {
+          parent.keyWithGroup = true;
+        }
+        break;
+      }
+    }
+  }
+
+  /**
+   * An open file, key or group element.
+   */
+  private static class Frame
+  {
+    /** The element. */
+    final XMLTags tag;
+    /** Is the group preceeded by a key? */
+    final boolean named;
+    /** Is the group a list? */
+    final boolean list;
+    /** The number of children of a key. */
+    int children;
+    /** Has a key a group as value? */
+    boolean keyWithGroup;
+    /** Has a key of a file ended and is the separator to the next element still open? */
+    boolean keyEnded;
+    /** The separator to print before the next element of a group. */
+    String separator;
+
+    Frame(final XMLTags tag, final boolean named, final boolean list)
+    {
+      this.tag = tag;
+      this.named = named;
+      this.list = list;
+    }
+  }
+}
@@ -22,19 +22,25 @@
  */
 package de.muenchen.allg.itd51.wollmux.config.generator.xml;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Deque;
 import java.util.LinkedList;
+import java.util.List;
 
 import javax.xml.XMLConstants;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamException;
 import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
@@ -66,10 +72,14 @@ import de.muenchen.allg.itd51.wollmux.config.scanner.TokenType;
  * XMLGenerator generator = new XMLGenerator(new URL("file:someFile"));
  * //create XML-document
  * Document doc = generator.generateXML();
+ * //or write the XML-document directly to a stream without building it in memory
+ * generator.generateXML(new FileOutputStream("someFile.xml"));
  * //print XML-document to original files
  * new ConfGenerator(doc).generateConf();
  * //print the first file of the XML-document to a stream.
  * new ConfGenerator(doc).generateConf(new FileOutputStream("someOtherFile"), 0);
+ * //print a XML-file to the original files without building a document
+ * new StaxConfGenerator(new URL("file:someFile.xml")).generateConf();
  * </code>
  * </pre>
  *
@@ -90,6 +100,10 @@ public class XMLGenerator
    * The scanner to get the configuration from.
    */
   private final Scanner scanner;
+  /**
+   * The attribute of file elements with the name of the file.
+   */
+  private static final String FILE_NAME = "filename";
   /**
    * A stack with the produced elements, which can contain other elements.
    */
@@ -318,7 +332,6 @@ public class XMLGenerator
    */
   private void createFile(final Token token) throws MalformedURLException
   {
-    final String FILE_NAME = "filename";
     Element element;
     if (!XMLTags.CONFIG.getName().equals(files.peek().getTagName()))
     {
@@ -326,28 +339,167 @@ public class XMLGenerator
       element.setTextContent(token.getContent());
       files.peek().appendChild(element);
     }
-    URL context = new URL("file:" + files.peek().getAttribute(FILE_NAME));
-    String newFile = PathProcessor.processInclude(token.getContent());
-    Path path = Paths.get(newFile);
     element = document.createElement(XMLTags.FILE.getName());
+    element.setAttribute(FILE_NAME,
+        getFileName(files.peek().getAttribute(FILE_NAME), token.getContent()));
+    config.appendChild(element);
+    files.push(element);
+  }
+
+  /**
+   * Compute the value of the filename attribute of an included file.
+   *
+   * @param parent
+   *          The filename attribute of the element containing the include.
+   * @param include
+   *          The content of the include.
+   * @return The filename.
+   * @throws MalformedURLException
+   *           Couldn't create the URL of the file.
+   */
+  private static String getFileName(final String parent, final String include)
+      throws MalformedURLException
+  {
+    URL context = new URL("file:" + parent);
+    String newFile = PathProcessor.processInclude(include);
+    Path path = Paths.get(newFile);
     boolean windowsOS = System.getProperty("os.name").toLowerCase().contains("windows");
-    if(windowsOS)
+    if (windowsOS && path.toFile().exists())
+    {
+      return new URL(context, "/" + newFile).getPath();
+    }
+    return new URL(context, newFile).getPath();
+  }
+
+  /**
+   * Write the XML-document to a stream without building it in memory. Every file is scanned on
+   * its own, so that only the elements on the path to the current token are held. The output is
+   * the same as of {@link #printDocument(Document, OutputStream)} with the document of
+   * {@link #generateXML()}, only filenames with control characters are escaped differently.
+   *
+   * The configuration can only be scanned once, so either this method or {@link #generateXML()}
+   * can be used.
+   *
+   * @param out
+   *          The stream to write to. It isn't closed.
+   * @throws XMLGeneratorException
+   *           Couldn't scan the configuration or write the XML-document.
+   */
+  public void generateXML(final OutputStream out) throws XMLGeneratorException
+  {
+    try
     {
-      if(path.toFile().exists())
+      final IndentingXMLWriter writer = new IndentingXMLWriter(out);
+      writer.startElement(XMLTags.CONFIG.getName(), null, null);
+      scanner.setFollowIncludes(false);
+      if (scanner.hasNext())
       {
-        element.setAttribute(FILE_NAME, new URL(context, "/" + newFile).getPath());
+        streamFile(scanner, getFileName("", scanner.next().getContent()), writer);
       }
-      else
+      scanner.close();
+      writer.endElement();
+      writer.finish();
+    } catch (final ScannerException ex)
+    {
+      throw new XMLGeneratorException("Problems while scaning", ex);
+    } catch (final XMLStreamException | IOException e)
+    {
+      throw new XMLGeneratorException("Couldn't write XML-document", e);
+    }
+  }
+
+  /**
+   * Write a file element with the tokens of a scanner up to the end of the file. Afterwards the
+   * included files are written.
+   *
+   * @param fileScanner
+   *          The scanner of the file, which doesn't follow includes.
+   * @param filename
+   *          The filename attribute of the file.
+   * @param writer
+   *          The writer.
+   */
+  private void streamFile(final Scanner fileScanner, final String filename,
+      final IndentingXMLWriter writer)
+      throws ScannerException, XMLGeneratorException, XMLStreamException, IOException
+  {
+    final List<URL> includes = new ArrayList<>();
+    final List<String> includeNames = new ArrayList<>();
+    final Deque<XMLTags> open = new ArrayDeque<>();
+    writer.startElement(XMLTags.FILE.getName(), FILE_NAME, filename);
+    boolean endOfFile = false;
+    while (!endOfFile && fileScanner.hasNext())
+    {
+      final Token token = fileScanner.next();
+      switch (token.getType())
       {
-        element.setAttribute(FILE_NAME, new URL(context, newFile).getPath());
+      case KEY:
+        writer.startElement(XMLTags.KEY.getName(), "id", token.getContent());
+        open.push(XMLTags.KEY);
+        break;
+      case VALUE:
+        writer.textElement(XMLTags.VALUE.getName(), Trimmer.trimQuotes(token.getContent()));
+        if (open.peek() == XMLTags.KEY)
+        {
+          writer.endElement();
+          open.pop();
+        }
+        break;
+      case OPENING_BRACKET:
+        writer.startElement(XMLTags.GROUP.getName(), null, null);
+        open.push(XMLTags.GROUP);
+        break;
+      case CLOSING_BRACKET:
+        if (open.isEmpty())
+        {
+          throw new XMLGeneratorException("Unexpected closing bracket in " + filename);
+        }
+        writer.endElement();
+        open.pop();
+        if (open.peek() == XMLTags.KEY)
+        {
+          writer.endElement();
+          open.pop();
+        }
+        break;
+      case COMMENT:
+        writer.textElement(XMLTags.COMMENT.getName(), token.getContent());
+        break;
+      case NEW_FILE:
+        writer.textElement(XMLTags.FILEREFERENCE.getName(), token.getContent());
+        includes.add(new URL(fileScanner.getFilename(),
+            PathProcessor.processInclude(token.getContent())));
+        // includes within keys or groups are resolved like in the document
+        includeNames.add(getFileName(open.isEmpty() ? filename : "", token.getContent()));
+        break;
+      case END_FILE:
+        endOfFile = true;
+        break;
+      default:
+        throw new XMLGeneratorException("Unknown token");
       }
     }
-    else
+    while (!open.isEmpty())
     {
-      element.setAttribute(FILE_NAME, new URL(context, newFile).getPath());
+      writer.endElement();
+      open.pop();
+    }
+    writer.endElement();
+
+    for (int i = 0; i < includes.size(); i++)
+    {
+      final Scanner includeScanner = new Scanner(includes.get(i));
+      try
+      {
+        includeScanner.setFollowIncludes(false);
+        // skip the token of the file itself
+        includeScanner.next();
+        streamFile(includeScanner, includeNames.get(i), writer);
+      } finally
+      {
+        includeScanner.close();
+      }
     }
-    config.appendChild(element);
-    files.push(element);
   }
 
   /**
@@ -373,7 +525,7 @@ public class XMLGenerator
     transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount",
         "4");
     transformer.transform(new DOMSource(doc), new StreamResult(
-        new OutputStreamWriter(out)));
+        new OutputStreamWriter(out, StandardCharsets.UTF_8)));
   }
 
 }
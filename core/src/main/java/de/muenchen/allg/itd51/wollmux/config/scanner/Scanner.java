@@ -51,6 +51,8 @@ public class Scanner implements Iterator<Token>, Closeable
   private final Deque<Tokenizer> stack = new LinkedList<>();
   /** Is this the first time to read. */
   private boolean isStart;
+  /** Are the tokens of included files returned. */
+  private boolean followIncludes = true;
 
   /**
    * Create a new ScannerReader and read the UTF-8 byte ordering mark if there
@@ -84,6 +86,28 @@ public class Scanner implements Iterator<Token>, Closeable
     stack.push(new Tokenizer(stream));
   }
 
+  /**
+   * Should included files be read? If not, only the {@link TokenType#NEW_FILE} token of an include
+   * is returned and the caller has to scan the included file on its own. The default is true.
+   *
+   * @param followIncludes
+   *          True if the tokens of included files are returned.
+   */
+  public void setFollowIncludes(final boolean followIncludes)
+  {
+    this.followIncludes = followIncludes;
+  }
+
+  /**
+   * Get the URL of the file which is currently read. Includes are resolved against it.
+   *
+   * @return The URL of the current file or null if all files have been read.
+   */
+  public URL getFilename()
+  {
+    return stack.isEmpty() ? null : stack.peek().getFilename();
+  }
+
   @Override
   public void close() throws ScannerException
   {
@@ -114,7 +138,7 @@ public class Scanner implements Iterator<Token>, Closeable
       return new Token(stack.peek().getFilename().getFile(), TokenType.NEW_FILE);
     }
     final Token token = stack.peek().next();
-    if (token.getType() == TokenType.NEW_FILE)
+    if (token.getType() == TokenType.NEW_FILE && followIncludes)
     {
       try
       {
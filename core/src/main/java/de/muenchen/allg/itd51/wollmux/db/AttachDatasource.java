@@ -90,6 +90,16 @@ public class AttachDatasource extends Datasource
 
   private String source2Prefix;
 
+  /**
+   * Ergänzt Datensätze aus SOURCE um die passenden Datensätze aus ATTACH.
+   */
+  private DatasetJoin join2;
+
+  /**
+   * Sucht zu Datensätzen aus ATTACH die passenden Datensätze aus SOURCE.
+   */
+  private DatasetJoin join1;
+
   /**
    * Erzeugt eine neue AttachDatasource.
    *
@@ -175,6 +185,9 @@ public class AttachDatasource extends Datasource
       match1[i] = spalte1;
       match2[i] = spalte2;
     }
+
+    join2 = new DatasetJoin(source2, match1, match2);
+    join1 = new DatasetJoin(source1, match2, match1);
   }
 
   /*
@@ -258,80 +271,13 @@ public class AttachDatasource extends Datasource
 
   private QueryResults attachColumns(QueryResults results, Predicate<Dataset> filter)
   {
-    List<Dataset> resultsWithAttachments = new ArrayList<>(results.size());
-
-    for (Dataset ds : results)
-    {
-      List<QueryPart> query = new ArrayList<>(match1.length);
-      for (int i = 0; i < match1.length; ++i)
-      {
-        try
-        {
-          query.add(new QueryPart(match2[i], ds.get(match1[i])));
-        } catch (ColumnNotFoundException x)
-        {
-          LOGGER.error("", x);
-        }
-      }
-
-      QueryResults appendix = source2.find(query);
-
-      Dataset newDataset;
-
-      if (appendix.size() == 0)
-      {
-        newDataset = new ConcatDataset(ds, null);
-        if (filter.test(newDataset))
-        {
-          resultsWithAttachments.add(newDataset);
-        }
-      } else
-      {
-        for (Dataset appenixElement : appendix)
-        {
-          newDataset = new ConcatDataset(ds, appenixElement);
-          if (filter.test(newDataset))
-          {
-            resultsWithAttachments.add(newDataset);
-            break;
-          }
-        }
-      }
-    }
-
-    return new QueryResultsList(resultsWithAttachments);
+    return new QueryResultsList(join2.leftJoinFirst(results, ConcatDataset::new, filter));
   }
 
   private QueryResults attachColumnsReversed(QueryResults results)
   {
-    List<ConcatDataset> resultsWithAttachments = new ArrayList<>(results.size());
-
-    for (Dataset ds : results)
-    {
-      List<QueryPart> query = new ArrayList<>(match1.length);
-      for (int i = 0; i < match1.length; ++i)
-      {
-        try
-        {
-          query.add(new QueryPart(match1[i], ds.get(match2[i])));
-        } catch (ColumnNotFoundException x)
-        {
-          LOGGER.error("", x);
-        }
-      }
-
-      QueryResults prependix = source1.find(query);
-
-      if (prependix.size() > 0)
-      {
-        for (Dataset ds1 : prependix)
-        {
-          resultsWithAttachments.add(new ConcatDataset(ds1, ds));
-        }
-      }
-    }
-
-    return new QueryResultsList(resultsWithAttachments);
+    return new QueryResultsList(
+        join1.innerJoin(results, (ds, ds1) -> new ConcatDataset(ds1, ds), DatasetPredicate.matchAll));
   }
 
   private class ConcatDataset implements Dataset
@@ -0,0 +1,308 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2023 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.db;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.muenchen.allg.itd51.wollmux.config.ConfigThingy;
+import de.muenchen.allg.itd51.wollmux.config.ConfigurationErrorException;
+import de.muenchen.allg.itd51.wollmux.util.L;
+
+/**
+ * Datasource which caches the results of another datasource.
+ *
+ * The configuration looks like
+ *
+ * <pre>
+ * Datenquelle(
+ *   NAME "name"
+ *   TYPE "cache"
+ *   SOURCE "source"
+ *   MAX_ENTRIES "1000" # optional, number of cached queries
+ *   TTL "300000" # optional, time in milliseconds a result is valid
+ *   CACHE_EMPTY_RESULTS "false" # optional, cache queries without results
+ * )
+ * </pre>
+ *
+ * Queries are cached independently of the order of their {@link QueryPart}s. The least recently
+ * used query is evicted if there are more than MAX_ENTRIES cached queries. Results of
+ * {@link #getDatasetsByKey(Collection)} are returned in the order of the requested keys, no matter
+ * in which order the keys were requested when the results were cached.
+ *
+ * The cache is only kept in memory and isn't persisted. It starts empty after a restart and, as a
+ * changed configuration creates a new data source, after the configuration has changed.
+ */
+public class CachingDatasource extends Datasource
+{
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(CachingDatasource.class);
+
+  private static final long DEFAULT_MAX_ENTRIES = 1000;
+
+  private static final long DEFAULT_TTL = 300000;
+
+  /** Prefixes of the cache keys, so that keys of different methods never collide. */
+  private static final String FIND_PREFIX = "find:";
+
+  private static final String KEYS_PREFIX = "keys:";
+
+  private static final String CONTENTS_KEY = "contents:";
+
+  private static final char SEPARATOR = '\u0000';
+
+  private String name;
+
+  private Datasource source;
+
+  private long ttl;
+
+  private boolean cacheEmptyResults;
+
+  private Map<String, CacheEntry> cache;
+
+  private long hits = 0;
+
+  private long misses = 0;
+
+  private long evictions = 0;
+
+  /**
+   * Create a new cache for a datasource.
+   *
+   * @param nameToDatasource
+   *          All already defined datasources.
+   * @param sourceDesc
+   *          The configuration of this datasource.
+   * @param context
+   *          The context for relative URLs (not used).
+   * @throws ConfigurationErrorException
+   *           Invalid configuration.
+   */
+  public CachingDatasource(Map<String, Datasource> nameToDatasource, ConfigThingy sourceDesc, URL context)
+  {
+    name = parseConfig(sourceDesc, "NAME", () -> L.m("NAME of data source is missing"));
+    String sourceName = parseConfig(sourceDesc, "SOURCE",
+        () -> L.m("\"{0}\" of data source \"{1}\" is missing.", "SOURCE", name));
+    source = nameToDatasource.get(sourceName);
+    if (source == null)
+    {
+      throw new ConfigurationErrorException(L.m("Error during initialization of datasource \"{0}\": "
+          + "Referenced datasource \"{1}\" missing or defined incorrectly", name, sourceName));
+    }
+
+    long maxEntries = parseConfig(sourceDesc, "MAX_ENTRIES", DEFAULT_MAX_ENTRIES);
+    ttl = parseConfig(sourceDesc, "TTL", DEFAULT_TTL);
+    cacheEmptyResults = Boolean.parseBoolean(sourceDesc.getString("CACHE_EMPTY_RESULTS", "false"));
+
+    cache = new LinkedHashMap<>(16, 0.75f, true)
+    {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest)
+      {
+        if (size() > maxEntries)
+        {
+          evictions++;
+          return true;
+        }
+        return false;
+      }
+    };
+  }
+
+  @Override
+  public List<String> getSchema()
+  {
+    return source.getSchema();
+  }
+
+  @Override
+  public QueryResults getDatasetsByKey(Collection<String> keys)
+  {
+    StringBuilder cacheKey = new StringBuilder(KEYS_PREFIX);
+    for (String key : new TreeSet<>(keys))
+    {
+      cacheKey.append(key).append(SEPARATOR);
+    }
+    return inKeyOrder(lookup(cacheKey.toString(), () -> source.getDatasetsByKey(keys)), keys);
+  }
+
+  @Override
+  public QueryResults find(List<QueryPart> query)
+  {
+    List<String> parts = new ArrayList<>(query.size());
+    for (QueryPart part : query)
+    {
+      parts.add(part.getColumnName() + SEPARATOR + part.getSearchString());
+    }
+    Collections.sort(parts);
+
+    StringBuilder cacheKey = new StringBuilder(FIND_PREFIX);
+    for (String part : parts)
+    {
+      cacheKey.append(part).append(SEPARATOR);
+    }
+    return lookup(cacheKey.toString(), () -> source.find(query));
+  }
+
+  @Override
+  public QueryResults getContents()
+  {
+    return lookup(CONTENTS_KEY, source::getContents);
+  }
+
+  @Override
+  public String getName()
+  {
+    return name;
+  }
+
+  /**
+   * Remove all cached results.
+   */
+  public synchronized void clear()
+  {
+    cache.clear();
+  }
+
+  public synchronized long getHits()
+  {
+    return hits;
+  }
+
+  public synchronized long getMisses()
+  {
+    return misses;
+  }
+
+  public synchronized long getEvictions()
+  {
+    return evictions;
+  }
+
+  public synchronized int size()
+  {
+    return cache.size();
+  }
+
+  @Override
+  public synchronized String toString()
+  {
+    return String.format("CachingDatasource[name=%s, size=%d, hits=%d, misses=%d, evictions=%d]", name,
+        cache.size(), hits, misses, evictions);
+  }
+
+  private QueryResults lookup(String cacheKey, Supplier<QueryResults> query)
+  {
+    synchronized (this)
+    {
+      CacheEntry entry = cache.get(cacheKey);
+      if (entry != null && entry.expires > System.currentTimeMillis())
+      {
+        hits++;
+        return new QueryResultsList(entry.datasets);
+      }
+      if (entry != null)
+      {
+        cache.remove(cacheKey);
+        evictions++;
+      }
+      misses++;
+    }
+
+    // The query isn't synchronized, so that slow queries don't block others.
+    QueryResults results = query.get();
+    List<Dataset> datasets = new ArrayList<>(results.size());
+    results.forEach(datasets::add);
+    datasets = Collections.unmodifiableList(datasets);
+
+    if (!datasets.isEmpty() || cacheEmptyResults)
+    {
+      synchronized (this)
+      {
+        long now = System.currentTimeMillis();
+        cache.put(cacheKey, new CacheEntry(datasets, now + Math.min(ttl, Long.MAX_VALUE - now)));
+      }
+    }
+    LOGGER.trace("{}", this);
+    return new QueryResultsList(datasets);
+  }
+
+  /**
+   * Sort datasets in the order of the keys. Datasets with the same key keep their order. Datasets
+   * with other keys are appended.
+   *
+   * @param results
+   *          The datasets.
+   * @param keys
+   *          The keys in the requested order.
+   * @return The sorted datasets.
+   */
+  private static QueryResults inKeyOrder(QueryResults results, Collection<String> keys)
+  {
+    Map<String, List<Dataset>> byKey = new LinkedHashMap<>();
+    for (Dataset ds : results)
+    {
+      byKey.computeIfAbsent(ds.getKey(), key -> new ArrayList<>()).add(ds);
+    }
+    List<Dataset> sorted = new ArrayList<>(results.size());
+    for (String key : keys)
+    {
+      List<Dataset> datasets = byKey.remove(key);
+      if (datasets != null)
+      {
+        sorted.addAll(datasets);
+      }
+    }
+    byKey.values().forEach(sorted::addAll);
+    return new QueryResultsList(sorted);
+  }
+
+  /**
+   * Cached results of a query.
+   */
+  private static class CacheEntry
+  {
+    private final List<Dataset> datasets;
+
+    private final long expires;
+
+    CacheEntry(List<Dataset> datasets, long expires)
+    {
+      this.datasets = datasets;
+      this.expires = expires;
+    }
+  }
+}
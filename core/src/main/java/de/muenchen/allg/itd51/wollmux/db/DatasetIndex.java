@@ -0,0 +1,428 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2023 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.db;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+
+/**
+ * In-memory indexes over the datasets of a {@link RAMDatasource}.
+ *
+ * Every column has a hash index for exact search strings, a sorted index for prefix search strings
+ * and a trigram index for all other search strings. The values are indexed case insensitive. Each
+ * query is answered by the index of its most selective {@link QueryPart}. The candidates of this
+ * index are checked with {@link DatasetPredicate}, so that the results are exactly the same as the
+ * results of a full scan and are in the same order. If no {@link QueryPart} can use an index (e.g.
+ * "*a*"), all datasets are scanned.
+ *
+ * The datasets mustn't be changed after the index has been built.
+ */
+class DatasetIndex
+{
+  /**
+   * Length of the n-grams of the n-gram index.
+   */
+  private static final int GRAM_LENGTH = 3;
+
+  private static final int[] NONE = new int[0];
+
+  private final Dataset[] data;
+
+  /**
+   * Positions of the datasets by key.
+   */
+  private final Map<String, int[]> keyIndex;
+
+  private final Map<String, ColumnIndex> columnIndexes = new HashMap<>();
+
+  /**
+   * Builds the indexes.
+   *
+   * @param schema
+   *          The columns to index.
+   * @param datasets
+   *          The datasets.
+   */
+  DatasetIndex(List<String> schema, List<Dataset> datasets)
+  {
+    data = datasets.toArray(new Dataset[0]);
+
+    Map<String, List<Integer>> keys = new HashMap<>();
+    for (int i = 0; i < data.length; i++)
+    {
+      keys.computeIfAbsent(data[i].getKey(), k -> new ArrayList<>()).add(i);
+    }
+    keyIndex = toPositions(keys);
+
+    for (String column : schema)
+    {
+      columnIndexes.put(column, new ColumnIndex(column));
+    }
+  }
+
+  /**
+   * Get all datasets with one of the keys in the same order as the datasets.
+   *
+   * @param keys
+   *          The keys.
+   * @return The datasets.
+   */
+  QueryResults getDatasetsByKey(Collection<String> keys)
+  {
+    List<int[]> positions = new ArrayList<>();
+    for (String key : new HashSet<>(keys))
+    {
+      int[] pos = keyIndex.get(key);
+      if (pos != null)
+      {
+        positions.add(pos);
+      }
+    }
+    return toResults(union(positions), DatasetPredicate.matchAll);
+  }
+
+  /**
+   * Get all datasets matching the query in the same order as the datasets.
+   *
+   * @param query
+   *          A non empty query.
+   * @return The datasets.
+   */
+  QueryResults find(List<QueryPart> query)
+  {
+    QueryPart best = null;
+    int bestEstimate = Integer.MAX_VALUE;
+    for (QueryPart part : query)
+    {
+      ColumnIndex index = columnIndexes.get(part.getColumnName());
+      int estimate = index == null ? Integer.MAX_VALUE : index.estimate(part.getSearchString());
+      if (estimate < bestEstimate)
+      {
+        best = part;
+        bestEstimate = estimate;
+      }
+    }
+
+    Predicate<Dataset> pred = DatasetPredicate.makePredicate(query);
+    if (best == null)
+    {
+      List<Dataset> results = new ArrayList<>();
+      for (Dataset ds : data)
+      {
+        if (pred.test(ds))
+        {
+          results.add(ds);
+        }
+      }
+      return new QueryResultsList(results);
+    }
+    return toResults(columnIndexes.get(best.getColumnName()).candidates(best.getSearchString()), pred);
+  }
+
+  private QueryResults toResults(int[] positions, Predicate<Dataset> pred)
+  {
+    List<Dataset> results = new ArrayList<>(positions.length);
+    for (int pos : positions)
+    {
+      if (pred.test(data[pos]))
+      {
+        results.add(data[pos]);
+      }
+    }
+    return new QueryResultsList(results);
+  }
+
+  /**
+   * Normalizes a string, so that all strings which are equal ignoring case have the same
+   * normalization.
+   */
+  static String normalize(String value)
+  {
+    StringBuilder normalized = new StringBuilder(value.length());
+    value.codePoints().forEach(cp -> normalized.appendCodePoint(Character.toLowerCase(Character.toUpperCase(cp))));
+    return normalized.toString();
+  }
+
+  private static Map<String, int[]> toPositions(Map<String, List<Integer>> lists)
+  {
+    Map<String, int[]> positions = new HashMap<>();
+    lists.forEach((key, list) -> positions.put(key, list.stream().mapToInt(Integer::intValue).toArray()));
+    return positions;
+  }
+
+  /**
+   * The sorted union of sorted positions.
+   */
+  private static int[] union(List<int[]> positions)
+  {
+    if (positions.size() == 1)
+    {
+      return positions.get(0);
+    }
+    int[] result = positions.stream().flatMapToInt(Arrays::stream).toArray();
+    Arrays.sort(result);
+    return result;
+  }
+
+  /**
+   * The sorted intersection of sorted positions.
+   */
+  private static int[] intersect(List<int[]> positions)
+  {
+    positions.sort((a, b) -> Integer.compare(a.length, b.length));
+    int[] result = positions.get(0);
+    for (int i = 1; i < positions.size() && result.length > 0; i++)
+    {
+      int[] other = positions.get(i);
+      int[] next = new int[result.length];
+      int count = 0;
+      int j = 0;
+      for (int pos : result)
+      {
+        while (j < other.length && other[j] < pos)
+        {
+          j++;
+        }
+        if (j < other.length && other[j] == pos)
+        {
+          next[count++] = pos;
+        }
+      }
+      result = Arrays.copyOf(next, count);
+    }
+    return result;
+  }
+
+  /**
+   * The indexes of one column.
+   */
+  private class ColumnIndex
+  {
+    /**
+     * Positions of the datasets by normalized value.
+     */
+    private final Map<String, int[]> exact;
+
+    /**
+     * Sorted distinct normalized values.
+     */
+    private final String[] sorted;
+
+    /**
+     * offsets[i] is the number of datasets with a value less than sorted[i].
+     */
+    private final int[] offsets;
+
+    /**
+     * Positions of the datasets sorted by normalized value.
+     */
+    private final int[] sortedPositions;
+
+    /**
+     * Positions of the datasets by n-gram of their normalized value.
+     */
+    private final Map<String, int[]> grams;
+
+    ColumnIndex(String column)
+    {
+      Map<String, List<Integer>> values = new TreeMap<>();
+      Map<String, List<Integer>> gramLists = new HashMap<>();
+      for (int i = 0; i < data.length; i++)
+      {
+        String value;
+        try
+        {
+          value = data[i].get(column);
+        } catch (ColumnNotFoundException e)
+        {
+          value = null;
+        }
+        if (value == null)
+        {
+          // null never matches
+          continue;
+        }
+        String normalized = normalize(value);
+        values.computeIfAbsent(normalized, k -> new ArrayList<>()).add(i);
+        for (int j = 0; j + GRAM_LENGTH <= normalized.length(); j++)
+        {
+          List<Integer> list = gramLists.computeIfAbsent(normalized.substring(j, j + GRAM_LENGTH),
+              k -> new ArrayList<>());
+          if (list.isEmpty() || list.get(list.size() - 1) != i)
+          {
+            list.add(i);
+          }
+        }
+      }
+
+      exact = toPositions(values);
+      grams = toPositions(gramLists);
+      sorted = values.keySet().toArray(new String[0]);
+      offsets = new int[sorted.length + 1];
+      sortedPositions = new int[values.values().stream().mapToInt(List::size).sum()];
+      int i = 0;
+      for (List<Integer> list : values.values())
+      {
+        int offset = offsets[i];
+        for (int pos : list)
+        {
+          sortedPositions[offset++] = pos;
+        }
+        offsets[++i] = offset;
+      }
+    }
+
+    /**
+     * Estimates the number of candidates of a search string.
+     *
+     * @return The maximum number of candidates or {@link Integer#MAX_VALUE} if the search string
+     *         can't use an index.
+     */
+    int estimate(String searchString)
+    {
+      SearchPattern pattern = new SearchPattern(searchString);
+      if (pattern.isExact())
+      {
+        return exact.getOrDefault(pattern.literals[0], NONE).length;
+      }
+      if (pattern.isPrefix())
+      {
+        int[] range = prefixRange(pattern.literals[0]);
+        return offsets[range[1]] - offsets[range[0]];
+      }
+      int estimate = Integer.MAX_VALUE;
+      for (String gram : pattern.grams())
+      {
+        estimate = Math.min(estimate, grams.getOrDefault(gram, NONE).length);
+      }
+      return estimate;
+    }
+
+    /**
+     * Sorted positions of all datasets which may match the search string. Must only be called if
+     * {@link #estimate(String)} returned a number less than {@link Integer#MAX_VALUE}.
+     */
+    int[] candidates(String searchString)
+    {
+      SearchPattern pattern = new SearchPattern(searchString);
+      if (pattern.isExact())
+      {
+        return exact.getOrDefault(pattern.literals[0], NONE);
+      }
+      if (pattern.isPrefix())
+      {
+        int[] range = prefixRange(pattern.literals[0]);
+        int[] result = Arrays.copyOfRange(sortedPositions, offsets[range[0]], offsets[range[1]]);
+        Arrays.sort(result);
+        return result;
+      }
+      List<int[]> positions = new ArrayList<>();
+      for (String gram : pattern.grams())
+      {
+        positions.add(grams.getOrDefault(gram, NONE));
+      }
+      return intersect(positions);
+    }
+
+    /**
+     * The range of all values in {@link #sorted} starting with the prefix.
+     *
+     * @return The first index and the index after the last one.
+     */
+    private int[] prefixRange(String prefix)
+    {
+      int from = Arrays.binarySearch(sorted, prefix);
+      if (from < 0)
+      {
+        from = -from - 1;
+      }
+      int low = from;
+      int high = sorted.length;
+      while (low < high)
+      {
+        int mid = (low + high) >>> 1;
+        if (sorted[mid].startsWith(prefix))
+        {
+          low = mid + 1;
+        } else
+        {
+          high = mid;
+        }
+      }
+      return new int[] { from, low };
+    }
+  }
+
+  /**
+   * The normalized literals of a search string separated by '*'.
+   */
+  private static class SearchPattern
+  {
+    private final boolean anyPrefix;
+
+    private final boolean anySuffix;
+
+    private final String[] literals;
+
+    SearchPattern(String searchString)
+    {
+      anyPrefix = searchString.startsWith("*");
+      anySuffix = searchString.endsWith("*");
+      literals = Arrays.stream(searchString.split("\\*+")).filter(s -> !s.isEmpty())
+          .map(DatasetIndex::normalize).toArray(String[]::new);
+    }
+
+    boolean isExact()
+    {
+      return !anyPrefix && !anySuffix && literals.length == 1;
+    }
+
+    boolean isPrefix()
+    {
+      return !anyPrefix && anySuffix && literals.length == 1;
+    }
+
+    /**
+     * All n-grams of the literals.
+     */
+    List<String> grams()
+    {
+      List<String> result = new ArrayList<>();
+      for (String literal : literals)
+      {
+        for (int i = 0; i + GRAM_LENGTH <= literal.length(); i++)
+        {
+          result.add(literal.substring(i, i + GRAM_LENGTH));
+        }
+      }
+      return result;
+    }
+  }
+}
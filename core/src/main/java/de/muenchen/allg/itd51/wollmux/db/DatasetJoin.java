@@ -0,0 +1,231 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2023 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.db;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.Predicate;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Joins the datasets of one datasource with the datasets of another datasource, which are found by
+ * the values of some match columns.
+ *
+ * The outer datasets are grouped by the tuple of their match column values. Every distinct tuple
+ * is looked up only once in the probe datasource, so that the number of queries depends on the
+ * number of distinct tuples and not on the number of outer datasets. The lookup uses
+ * {@link Datasource#find(List)}, so that matching follows the same rules as a search.
+ *
+ * Used by {@link AttachDatasource}, {@link OverlayDatasource} and {@link PreferDatasource}.
+ */
+class DatasetJoin
+{
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(DatasetJoin.class);
+
+  private final Datasource probe;
+
+  private final String[] outerColumns;
+
+  private final String[] probeColumns;
+
+  /**
+   * A new join.
+   *
+   * @param probe
+   *          The datasource which is queried for matching datasets.
+   * @param outerColumns
+   *          The match columns of the outer datasets.
+   * @param probeColumns
+   *          The match columns of the probe datasource. probeColumns[i] has to be equal to
+   *          outerColumns[i].
+   */
+  DatasetJoin(Datasource probe, String[] outerColumns, String[] probeColumns)
+  {
+    this.probe = probe;
+    this.outerColumns = outerColumns;
+    this.probeColumns = probeColumns;
+  }
+
+  /**
+   * Combines each outer dataset with its first matching probe dataset, so that each outer dataset
+   * is used at most once. If there's no matching probe dataset, the outer dataset is combined with
+   * null.
+   *
+   * @param outer
+   *          The outer datasets.
+   * @param combine
+   *          Creates the result of an outer dataset and a probe dataset (can be null).
+   * @param filter
+   *          Only combined datasets accepted by the filter are part of the result.
+   * @return The combined datasets in the order of the outer datasets.
+   */
+  List<Dataset> leftJoinFirst(QueryResults outer, BiFunction<Dataset, Dataset, Dataset> combine,
+      Predicate<Dataset> filter)
+  {
+    Map<List<String>, List<Dataset>> matches = lookup(outer);
+    List<Dataset> results = new ArrayList<>(outer.size());
+    for (Dataset ds : outer)
+    {
+      List<Dataset> probeDatasets = matches.get(tuple(ds));
+      if (probeDatasets.isEmpty())
+      {
+        Dataset newDataset = combine.apply(ds, null);
+        if (filter.test(newDataset))
+        {
+          results.add(newDataset);
+        }
+      } else
+      {
+        for (Dataset probeDataset : probeDatasets)
+        {
+          Dataset newDataset = combine.apply(ds, probeDataset);
+          if (filter.test(newDataset))
+          {
+            results.add(newDataset);
+            break;
+          }
+        }
+      }
+    }
+    return results;
+  }
+
+  /**
+   * Combines each outer dataset with all matching probe datasets.
+   *
+   * @param outer
+   *          The outer datasets.
+   * @param combine
+   *          Creates the result of an outer dataset and a probe dataset.
+   * @param filter
+   *          Only combined datasets accepted by the filter are part of the result.
+   * @return The combined datasets in the order of the outer datasets.
+   */
+  List<Dataset> innerJoin(QueryResults outer, BiFunction<Dataset, Dataset, Dataset> combine,
+      Predicate<Dataset> filter)
+  {
+    Map<List<String>, List<Dataset>> matches = lookup(outer);
+    List<Dataset> results = new ArrayList<>(outer.size());
+    for (Dataset ds : outer)
+    {
+      for (Dataset probeDataset : matches.get(tuple(ds)))
+      {
+        Dataset newDataset = combine.apply(ds, probeDataset);
+        if (filter.test(newDataset))
+        {
+          results.add(newDataset);
+        }
+      }
+    }
+    return results;
+  }
+
+  /**
+   * Get the keys of all datasets.
+   *
+   * @param results
+   *          Some datasets.
+   * @return The distinct keys in the order of their first occurrence.
+   */
+  static Set<String> keys(QueryResults results)
+  {
+    Set<String> keys = new LinkedHashSet<>();
+    results.forEach(ds -> keys.add(ds.getKey()));
+    return keys;
+  }
+
+  /**
+   * Get the keys of a datasource which are contained in a collection. The datasource is queried
+   * with one call of {@link Datasource#getDatasetsByKey(Collection)}.
+   *
+   * @param source
+   *          The datasource.
+   * @param keys
+   *          The keys to look for.
+   * @return The keys which have at least one dataset in the datasource.
+   */
+  static Set<String> existingKeys(Datasource source, Collection<String> keys)
+  {
+    if (keys.isEmpty())
+    {
+      return new LinkedHashSet<>();
+    }
+    return keys(source.getDatasetsByKey(keys));
+  }
+
+  /**
+   * Query the probe datasource once for each distinct tuple of the outer datasets.
+   */
+  private Map<List<String>, List<Dataset>> lookup(QueryResults outer)
+  {
+    Map<List<String>, List<Dataset>> matches = new HashMap<>();
+    for (Dataset ds : outer)
+    {
+      matches.computeIfAbsent(tuple(ds), this::find);
+    }
+    LOGGER.trace("Joined {} datasets with {} queries on {}.", outer.size(), matches.size(),
+        probe.getName());
+    return matches;
+  }
+
+  private List<Dataset> find(List<String> tuple)
+  {
+    List<QueryPart> query = new ArrayList<>(probeColumns.length);
+    for (int i = 0; i < probeColumns.length; ++i)
+    {
+      query.add(new QueryPart(probeColumns[i], tuple.get(i)));
+    }
+    List<Dataset> datasets = new ArrayList<>();
+    probe.find(query).forEach(datasets::add);
+    return datasets;
+  }
+
+  /**
+   * The values of the match columns of an outer dataset. Values of unknown columns are null.
+   */
+  private List<String> tuple(Dataset ds)
+  {
+    String[] values = new String[outerColumns.length];
+    for (int i = 0; i < outerColumns.length; ++i)
+    {
+      try
+      {
+        values[i] = ds.get(outerColumns[i]);
+      } catch (ColumnNotFoundException x)
+      {
+        LOGGER.error("", x);
+      }
+    }
+    return Arrays.asList(values);
+  }
+}
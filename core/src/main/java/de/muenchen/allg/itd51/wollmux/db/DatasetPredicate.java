@@ -40,8 +40,8 @@ public class DatasetPredicate
   }
 
   /**
-   * Matches a List of {@link QueryPart} against a given {@link Dataset}. Invalid * character in
-   * QueryPart's search string are filtered out.
+   * Matches a List of {@link QueryPart} against a given {@link Dataset}. The search strings are
+   * analyzed once when the predicate is created, see {@link #makeMatcher(String)}.
    *
    * @param query
    *          List of {@link QueryPart}
@@ -50,13 +50,13 @@ public class DatasetPredicate
   public static Predicate<Dataset> makePredicate(List<QueryPart> query)
   {
     return query.stream().map(part -> {
+      String column = part.getColumnName();
+      Predicate<String> matcher = makeMatcher(part.getSearchString());
       @SuppressWarnings("squid:S1488")
       Predicate<Dataset> pred = (Dataset ds) -> {
         try
         {
-          return Pattern.compile(part.getSearchString().replace("*", "").toLowerCase())
-              .matcher(ds.get(part.getColumnName()).toLowerCase())
-              .find();
+          return matcher.test(ds.get(column));
         } catch (ColumnNotFoundException ex)
         {
           return false;
@@ -66,4 +66,92 @@ public class DatasetPredicate
       return pred;
     }).reduce(matchAll, Predicate::and);
   }
+
+  /**
+   * Creates a case insensitive matcher for values of a column. A search string without '*' matches
+   * only equal values. A leading '*' selects a suffix search, a trailing '*' a prefix search and
+   * both a search for a substring. Sequences of '*' are treated as a single one. The rarely used
+   * '*' in the middle of a search string are matched with a regular expression. null never matches.
+   *
+   * @param searchString
+   *          The search string of a {@link QueryPart}.
+   * @return Predicate for a value.
+   */
+  public static Predicate<String> makeMatcher(String searchString)
+  {
+    int start = 0;
+    int end = searchString.length();
+    while (start < end && searchString.charAt(start) == '*')
+    {
+      start++;
+    }
+    while (end > start && searchString.charAt(end - 1) == '*')
+    {
+      end--;
+    }
+    boolean anyPrefix = start > 0;
+    boolean anySuffix = end < searchString.length();
+    String pattern = searchString.substring(start, end);
+
+    if (pattern.indexOf('*') >= 0)
+    {
+      return makeRegexMatcher(pattern, anyPrefix, anySuffix);
+    }
+
+    int length = pattern.length();
+    if (anyPrefix && anySuffix)
+    {
+      return value -> {
+        if (value == null)
+        {
+          return false;
+        }
+        for (int i = 0, last = value.length() - length; i <= last; i++)
+        {
+          if (value.regionMatches(true, i, pattern, 0, length))
+          {
+            return true;
+          }
+        }
+        return false;
+      };
+    } else if (anyPrefix)
+    {
+      return value -> value != null && value.length() >= length
+          && value.regionMatches(true, value.length() - length, pattern, 0, length);
+    } else if (anySuffix)
+    {
+      return value -> value != null && value.regionMatches(true, 0, pattern, 0, length);
+    } else
+    {
+      return value -> value != null && value.length() == length
+          && value.regionMatches(true, 0, pattern, 0, length);
+    }
+  }
+
+  private static Predicate<String> makeRegexMatcher(String pattern, boolean anyPrefix,
+      boolean anySuffix)
+  {
+    StringBuilder regex = new StringBuilder();
+    if (anyPrefix)
+    {
+      regex.append(".*");
+    }
+    String[] literals = pattern.split("\\*+");
+    for (int i = 0; i < literals.length; i++)
+    {
+      if (i > 0)
+      {
+        regex.append(".*");
+      }
+      regex.append(Pattern.quote(literals[i]));
+    }
+    if (anySuffix)
+    {
+      regex.append(".*");
+    }
+    Pattern compiled = Pattern.compile(regex.toString(),
+        Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE | Pattern.DOTALL);
+    return value -> value != null && compiled.matcher(value).matches();
+  }
 }
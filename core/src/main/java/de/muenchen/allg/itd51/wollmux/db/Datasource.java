@@ -33,6 +33,7 @@ import de.muenchen.allg.itd51.wollmux.WollMuxFiles;
 import de.muenchen.allg.itd51.wollmux.config.ConfigThingy;
 import de.muenchen.allg.itd51.wollmux.config.ConfigurationErrorException;
 import de.muenchen.allg.itd51.wollmux.config.NodeNotFoundException;
+import de.muenchen.allg.itd51.wollmux.util.L;
 
 /**
  * Interface für Datenquellen, die der DJ verwalten kann. ACHTUNG! Die Konstruktoren dieser Klasse
@@ -56,7 +57,7 @@ import de.muenchen.allg.itd51.wollmux.config.NodeNotFoundException;
  * implementieren - würde vermutlich dazu führen, dass Daten im LDAP schlechter gepflegt werden,
  * weil es einfacher ist, einen Override einzuführen
  */
-public abstract class Datasource
+public abstract class Datasource implements AutoCloseable
 {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(Datasource.class);
@@ -102,6 +103,19 @@ public abstract class Datasource
    */
   public abstract String getName();
 
+  /**
+   * Gibt die Ressourcen der Datenquelle frei, z.B. Verbindungen und Threads. Wird aufgerufen, wenn
+   * die Datenquelle beim Neuladen der Konfiguration ersetzt oder entfernt wurde. Anfragen, die
+   * danach noch an die Datenquelle gestellt werden, dürfen fehlschlagen. Datenquellen, die auf
+   * anderen Datenquellen aufbauen, schließen diese nicht, da sie ihnen nicht gehören. Die
+   * Standardimplementierung tut nichts.
+   */
+  @Override
+  public void close()
+  {
+    // nothing to do
+  }
+
   /**
    * Gets datasource value by given {@link ConfigThingy} and key.
    *
@@ -118,6 +132,41 @@ public abstract class Datasource
     return source.get(key, ConfigurationErrorException.class, errorMessage.get()).toString();
   }
 
+  /**
+   * Gets an optional positive number of the datasource configuration.
+   *
+   * @param source
+   *          {@link ConfigThingy} ConfigThingy that should contain a configured datasource.
+   * @param key
+   *          Name of the value.
+   * @param defaultValue
+   *          Value to use if there's no key in the configuration.
+   * @return The value of the configuration or the default value.
+   * @throws ConfigurationErrorException
+   *           The value is not a positive number.
+   */
+  public long parseConfig(ConfigThingy source, String key, long defaultValue)
+  {
+    String value = source.getString(key);
+    if (value == null)
+    {
+      return defaultValue;
+    }
+    try
+    {
+      long number = Long.parseLong(value);
+      if (number > 0)
+      {
+        return number;
+      }
+    } catch (NumberFormatException e)
+    {
+      LOGGER.trace("", e);
+    }
+    throw new ConfigurationErrorException(
+        L.m("{0} of data source has to be a number greater than 0: \"{1}\"", key, value));
+  }
+
   public static long getDatasourceTimeout()
   {
     if (datasourceTimeout == null)
@@ -145,4 +194,16 @@ public abstract class Datasource
     }
     return datasourceTimeout;
   }
+
+  /**
+   * Setzt das Zeitlimit für Anfragen an Datenquellen. Bei null wird es beim nächsten Zugriff wieder
+   * aus DATASOURCE_TIMEOUT gelesen.
+   *
+   * @param timeout
+   *          Das Zeitlimit in Millisekunden oder null.
+   */
+  static void setDatasourceTimeout(Long timeout)
+  {
+    datasourceTimeout = timeout;
+  }
 }
@@ -23,8 +23,12 @@
 package de.muenchen.allg.itd51.wollmux.db;
 
 import java.net.URL;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Map;
+import java.util.Set;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -41,7 +45,12 @@ public class Datasources
 
   private static final Logger LOGGER = LoggerFactory.getLogger(Datasources.class);
 
-  private static Map<String, Datasource> datasources = null;
+  private static volatile Map<String, Datasource> datasources = null;
+
+  /**
+   * The descriptions of the current data sources by their name.
+   */
+  private static Map<String, String> descriptions = Map.of();
 
   private Datasources()
   {
@@ -55,16 +64,99 @@ public class Datasources
    */
   public static Map<String, Datasource> getDatasources()
   {
-    if (datasources != null)
+    Map<String, Datasource> current = datasources;
+    if (current != null)
+    {
+      return current;
+    }
+
+    synchronized (Datasources.class)
     {
+      if (datasources == null)
+      {
+        Map<String, String> newDescriptions = new HashMap<>();
+        datasources = Collections.unmodifiableMap(parseDatasources(WollMuxFiles.getWollmuxConf(),
+            WollMuxFiles.getDefaultContext(), Map.of(), Map.of(), newDescriptions, new HashSet<>()));
+        descriptions = newDescriptions;
+      }
       return datasources;
     }
+  }
 
-    HashMap<String, Datasource> datasources = new HashMap<>();
-    ConfigThingy joinConf = WollMuxFiles.getWollmuxConf();
-    URL context = WollMuxFiles.getDefaultContext();
+  /**
+   * Update the data sources after the configuration has changed. Data sources whose description
+   * hasn't changed and which don't use a changed data source are kept. The new data sources are
+   * published at once, so that callers of {@link #getDatasources()} either get the old or the new
+   * data sources. Afterwards the replaced and removed data sources are closed.
+   *
+   * @param conf
+   *          The new configuration.
+   * @param context
+   *          The context for relative URLs.
+   * @return True if a data source has been created, changed or removed.
+   */
+  public static synchronized boolean reload(ConfigThingy conf, URL context)
+  {
+    if (datasources == null)
+    {
+      return false;
+    }
+
+    Map<String, String> newDescriptions = new HashMap<>();
+    Set<String> changed = new HashSet<>();
+    Map<String, Datasource> oldDatasources = datasources;
+    Map<String, Datasource> newDatasources = parseDatasources(conf, context, oldDatasources,
+        descriptions, newDescriptions, changed);
+    descriptions = newDescriptions;
+    datasources = Collections.unmodifiableMap(newDatasources);
+    closeReplaced(oldDatasources, newDatasources);
+    if (!changed.isEmpty())
+    {
+      LOGGER.info("Data sources {} have been reloaded", changed);
+    }
+    return !changed.isEmpty();
+  }
 
-    ConfigThingy datenquellen = joinConf.query("Datenquellen").query("Datenquelle");
+  /**
+   * Parse the configuration for {@link Datasource} definitions. Data sources which haven't changed
+   * since the last parse are reused.
+   *
+   * @param conf
+   *          The configuration.
+   * @param context
+   *          The context for relative URLs.
+   * @param oldDatasources
+   *          The data sources of the last parse.
+   * @param oldDescriptions
+   *          The descriptions of the data sources of the last parse.
+   * @param descriptions
+   *          Gets the descriptions of the new data sources.
+   * @param changed
+   *          Gets the names of the data sources which have been created, changed or removed.
+   * @return Mapping from data source name to {@link Datasource}.
+   */
+  static Map<String, Datasource> parseDatasources(ConfigThingy conf, URL context,
+      Map<String, Datasource> oldDatasources, Map<String, String> oldDescriptions,
+      Map<String, String> descriptions, Set<String> changed)
+  {
+    ConfigThingy datenquellen = conf.query("Datenquellen").query("Datenquelle");
+    for (ConfigThingy sourceDesc : datenquellen)
+    {
+      String name = sourceDesc.getString("NAME");
+      if (name != null)
+      {
+        descriptions.put(name, sourceDesc.stringRepresentation());
+      }
+    }
+    for (String name : oldDatasources.keySet())
+    {
+      if (!descriptions.containsKey(name))
+      {
+        changed.add(name);
+      }
+    }
+
+    HashMap<String, Datasource> datasources = new HashMap<>();
     for (ConfigThingy sourceDesc : datenquellen)
     {
       String name = sourceDesc.getString("NAME");
@@ -75,47 +167,16 @@ public class Datasources
         continue;
       }
 
-      Datasource ds = null;
-      try
-      {
-        switch (type)
-        {
-        case "conf":
-          ds = new ThingyDatasource(datasources, sourceDesc, context);
-          break;
-        case "union":
-          ds = new UnionDatasource(datasources, sourceDesc, context);
-          break;
-        case "attach":
-          ds = new AttachDatasource(datasources, sourceDesc, context);
-          break;
-        case "overlay":
-          ds = new OverlayDatasource(datasources, sourceDesc, context);
-          break;
-        case "prefer":
-          ds = new PreferDatasource(datasources, sourceDesc, context);
-          break;
-        case "schema":
-          ds = new SchemaDatasource(datasources, sourceDesc, context);
-          break;
-        case "ldap":
-          ds = new LDAPDatasource(datasources, sourceDesc, context);
-          break;
-        case "ooo":
-          ds = new OOoDatasource(datasources, sourceDesc);
-          break;
-        case "funky":
-          ds = new FunkyDatasource(datasources, sourceDesc);
-          break;
-        default:
-          LOGGER.error("Unsupported data source type: {}", type);
-          break;
-        }
-      } catch (Exception x)
+      if (oldDatasources.get(name) != null
+          && sourceDesc.stringRepresentation().equals(oldDescriptions.get(name))
+          && !usesDatasource(sourceDesc, changed))
       {
-        LOGGER.error("Error during initialization of data source '{}' (Type '{}'):", name, type, x);
+        datasources.put(name, oldDatasources.get(name));
+        continue;
       }
+      changed.add(name);
 
+      Datasource ds = createDatasource(datasources, sourceDesc, context, name, type);
       if (ds == null)
       {
         LOGGER.error("Data source {} of type {} could not be initialized", name, type);
@@ -131,4 +192,115 @@ public class Datasources
 
     return datasources;
   }
+
+  /**
+   * Close all old data sources which aren't part of the new data sources any more.
+   *
+   * @param oldDatasources
+   *          The data sources before the reload.
+   * @param newDatasources
+   *          The data sources after the reload.
+   */
+  static void closeReplaced(Map<String, Datasource> oldDatasources,
+      Map<String, Datasource> newDatasources)
+  {
+    Set<Datasource> kept = Collections.newSetFromMap(new IdentityHashMap<>());
+    kept.addAll(newDatasources.values());
+    for (Datasource ds : oldDatasources.values())
+    {
+      if (ds != null && kept.add(ds))
+      {
+        try
+        {
+          ds.close();
+        } catch (RuntimeException e)
+        {
+          LOGGER.error("Data source {} couldn't be closed", ds.getName(), e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Does a description refer to one of the given data sources? The references aren't known for
+   * all types of data sources, so every value of the description except NAME and TYPE is
+   * considered a reference.
+   */
+  private static boolean usesDatasource(ConfigThingy sourceDesc, Set<String> names)
+  {
+    for (ConfigThingy child : sourceDesc)
+    {
+      if (!"NAME".equals(child.getName()) && !"TYPE".equals(child.getName())
+          && containsValue(child, names))
+      {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean containsValue(ConfigThingy conf, Set<String> values)
+  {
+    if (conf.count() == 0)
+    {
+      return values.contains(conf.getName());
+    }
+    for (ConfigThingy child : conf)
+    {
+      if (containsValue(child, values))
+      {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static Datasource createDatasource(Map<String, Datasource> datasources,
+      ConfigThingy sourceDesc, URL context, String name, String type)
+  {
+    Datasource ds = null;
+    try
+    {
+      switch (type)
+      {
+      case "conf":
+        ds = new ThingyDatasource(datasources, sourceDesc, context);
+        break;
+      case "union":
+        ds = new UnionDatasource(datasources, sourceDesc, context);
+        break;
+      case "attach":
+        ds = new AttachDatasource(datasources, sourceDesc, context);
+        break;
+      case "overlay":
+        ds = new OverlayDatasource(datasources, sourceDesc, context);
+        break;
+      case "prefer":
+        ds = new PreferDatasource(datasources, sourceDesc, context);
+        break;
+      case "schema":
+        ds = new SchemaDatasource(datasources, sourceDesc, context);
+        break;
+      case "ldap":
+        ds = new LDAPDatasource(datasources, sourceDesc, context);
+        break;
+      case "ooo":
+        ds = new OOoDatasource(datasources, sourceDesc);
+        break;
+      case "funky":
+        ds = new FunkyDatasource(datasources, sourceDesc);
+        break;
+      case "cache":
+        ds = new CachingDatasource(datasources, sourceDesc, context);
+        break;
+      default:
+        LOGGER.error("Unsupported data source type: {}", type);
+        break;
+      }
+    } catch (Exception x)
+    {
+      LOGGER.error("Error during initialization of data source '{}' (Type '{}'):", name, type, x);
+    }
+    return ds;
+  }
 }
@@ -0,0 +1,425 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2023 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.db;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.naming.NamingException;
+import javax.naming.ServiceUnavailableException;
+import javax.naming.directory.DirContext;
+import javax.naming.ldap.InitialLdapContext;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.muenchen.allg.itd51.wollmux.util.L;
+
+/**
+ * A bounded pool of LDAP connections for one {@link LDAPDatasource}.
+ *
+ * At most {@link #getMaxSize()} contexts are in use at the same time. A caller who
+ * {@link #borrow()}s a context has to give it back with {@link #release(DirContext)} or, if the
+ * connection is broken, with {@link #invalidate(DirContext)}. Contexts which have been idle for
+ * longer than the idle timeout are closed, either on the next access or by a background task,
+ * which runs once per idle timeout. Contexts which have been idle for a while are checked by
+ * reading the root DSE before they are handed out again. If the pool isn't used any more, it has
+ * to be closed with {@link #close()}.
+ */
+class LDAPContextPool
+{
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(LDAPContextPool.class);
+
+  /**
+   * Contexts which have been idle for at least this time (in milliseconds) are checked before they
+   * are reused.
+   */
+  private static final long VALIDATION_INTERVAL = 5000;
+
+  /**
+   * Closes the idle contexts of all pools.
+   */
+  private static final ScheduledExecutorService EVICTOR = Executors.newSingleThreadScheduledExecutor(r -> {
+    Thread t = new Thread(r, "LDAP-Pool-Evictor");
+    t.setDaemon(true);
+    return t;
+  });
+
+  private final Properties properties;
+
+  private final int maxSize;
+
+  private final long idleTimeout;
+
+  private final long borrowTimeout;
+
+  private final Semaphore permits;
+
+  /** Idle contexts, the most recently used one first. */
+  private final Deque<PooledContext> idle = new ArrayDeque<>();
+
+  private final AtomicLong borrowCount = new AtomicLong();
+
+  private final AtomicLong borrowNanos = new AtomicLong();
+
+  private final AtomicLong maxBorrowNanos = new AtomicLong();
+
+  private final AtomicLong exhaustedCount = new AtomicLong();
+
+  private final AtomicLong createdCount = new AtomicLong();
+
+  private final AtomicLong invalidatedCount = new AtomicLong();
+
+  private final ScheduledFuture<?> evictTask;
+
+  private volatile boolean closed = false;
+
+  /**
+   * A new pool.
+   *
+   * @param properties
+   *          The environment of the contexts.
+   * @param maxSize
+   *          The maximum number of contexts in use at the same time.
+   * @param idleTimeout
+   *          Time in milliseconds after which an idle context is closed.
+   * @param borrowTimeout
+   *          Time in milliseconds {@link #borrow()} waits for a context if all are in use.
+   */
+  LDAPContextPool(Properties properties, int maxSize, long idleTimeout, long borrowTimeout)
+  {
+    this.properties = properties;
+    this.maxSize = maxSize;
+    this.idleTimeout = idleTimeout;
+    this.borrowTimeout = borrowTimeout;
+    this.permits = new Semaphore(maxSize, true);
+    this.evictTask = EVICTOR.scheduleWithFixedDelay(this::evictIdle, idleTimeout, idleTimeout,
+        TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Get a context from the pool. If there's no idle context a new one is created.
+   *
+   * @return A connected context.
+   * @throws NamingException
+   *           No context could be created, all contexts were in use during the borrow timeout or
+   *           the pool is closed.
+   */
+  DirContext borrow() throws NamingException
+  {
+    if (closed)
+    {
+      throw new ServiceUnavailableException(L.m("The LDAP connection pool is closed"));
+    }
+    long start = System.nanoTime();
+    try
+    {
+      if (!permits.tryAcquire())
+      {
+        exhaustedCount.incrementAndGet();
+        LOGGER.debug("All {} LDAP connections are in use, waiting for a free connection.", maxSize);
+        if (!permits.tryAcquire(borrowTimeout, TimeUnit.MILLISECONDS))
+        {
+          throw new ServiceUnavailableException(
+              L.m("No free LDAP connection within {0} ms", borrowTimeout));
+        }
+      }
+    } catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+      throw new ServiceUnavailableException(L.m("Interrupted while waiting for a LDAP connection"));
+    }
+
+    try
+    {
+      DirContext ctx = pollIdle();
+      if (ctx == null)
+      {
+        ctx = new InitialLdapContext(properties, null);
+        createdCount.incrementAndGet();
+      }
+      recordBorrowTime(System.nanoTime() - start);
+      return ctx;
+    } catch (NamingException | RuntimeException e)
+    {
+      permits.release();
+      throw e;
+    }
+  }
+
+  /**
+   * Give a context back to the pool, so that it can be reused. If the pool is closed, the context
+   * is closed.
+   *
+   * @param ctx
+   *          A context of {@link #borrow()}.
+   */
+  void release(DirContext ctx)
+  {
+    synchronized (idle)
+    {
+      if (closed)
+      {
+        close(ctx);
+      } else
+      {
+        idle.addFirst(new PooledContext(ctx));
+      }
+    }
+    permits.release();
+    evictIdle();
+  }
+
+  /**
+   * Close a broken context of {@link #borrow()} instead of giving it back to the pool.
+   *
+   * @param ctx
+   *          The context.
+   */
+  void invalidate(DirContext ctx)
+  {
+    invalidatedCount.incrementAndGet();
+    close(ctx);
+    permits.release();
+  }
+
+  /**
+   * Close all idle contexts.
+   */
+  void clear()
+  {
+    synchronized (idle)
+    {
+      idle.forEach(pooled -> close(pooled.ctx));
+      idle.clear();
+    }
+  }
+
+  /**
+   * Close all idle contexts and stop pooling. Contexts, which are in use, are closed as soon as
+   * they are given back. Afterwards {@link #borrow()} fails.
+   */
+  void close()
+  {
+    synchronized (idle)
+    {
+      closed = true;
+    }
+    evictTask.cancel(false);
+    clear();
+  }
+
+  boolean isClosed()
+  {
+    return closed;
+  }
+
+  /**
+   * Is the task, which closes idle contexts, still scheduled?
+   *
+   * @return False after {@link #close()}.
+   */
+  boolean isEvicting()
+  {
+    return !evictTask.isDone();
+  }
+
+  int getMaxSize()
+  {
+    return maxSize;
+  }
+
+  int getIdleCount()
+  {
+    synchronized (idle)
+    {
+      return idle.size();
+    }
+  }
+
+  int getActiveCount()
+  {
+    return maxSize - permits.availablePermits();
+  }
+
+  long getBorrowCount()
+  {
+    return borrowCount.get();
+  }
+
+  /**
+   * The average time of {@link #borrow()} including waiting for a free context and creating a new
+   * one.
+   *
+   * @return The average borrow latency in nanoseconds.
+   */
+  long getAverageBorrowNanos()
+  {
+    long count = borrowCount.get();
+    return count == 0 ? 0 : borrowNanos.get() / count;
+  }
+
+  long getMaxBorrowNanos()
+  {
+    return maxBorrowNanos.get();
+  }
+
+  /**
+   * How often was the pool exhausted, so that {@link #borrow()} had to wait for a free context.
+   *
+   * @return The number of exhausted borrows.
+   */
+  long getExhaustedCount()
+  {
+    return exhaustedCount.get();
+  }
+
+  long getCreatedCount()
+  {
+    return createdCount.get();
+  }
+
+  long getInvalidatedCount()
+  {
+    return invalidatedCount.get();
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format(
+        "LDAPContextPool[active=%d, idle=%d, max=%d, borrowed=%d, created=%d, invalidated=%d, exhausted=%d, "
+            + "avgBorrow=%dµs, maxBorrow=%dµs]",
+        getActiveCount(), getIdleCount(), maxSize, getBorrowCount(), getCreatedCount(), getInvalidatedCount(),
+        getExhaustedCount(), TimeUnit.NANOSECONDS.toMicros(getAverageBorrowNanos()),
+        TimeUnit.NANOSECONDS.toMicros(getMaxBorrowNanos()));
+  }
+
+  /**
+   * Get the most recently used idle context, which is still alive.
+   *
+   * @return A context or null if there's no usable idle context.
+   */
+  private DirContext pollIdle()
+  {
+    evictIdle();
+    while (true)
+    {
+      PooledContext pooled;
+      synchronized (idle)
+      {
+        pooled = idle.pollFirst();
+      }
+      if (pooled == null)
+      {
+        return null;
+      }
+      if (System.currentTimeMillis() - pooled.lastUsed < VALIDATION_INTERVAL || isAlive(pooled.ctx))
+      {
+        return pooled.ctx;
+      }
+      invalidatedCount.incrementAndGet();
+      close(pooled.ctx);
+    }
+  }
+
+  /**
+   * Close all contexts which have been idle for longer than the idle timeout.
+   */
+  private void evictIdle()
+  {
+    long now = System.currentTimeMillis();
+    synchronized (idle)
+    {
+      Iterator<PooledContext> iter = idle.descendingIterator();
+      while (iter.hasNext())
+      {
+        PooledContext pooled = iter.next();
+        if (now - pooled.lastUsed < idleTimeout)
+        {
+          break;
+        }
+        iter.remove();
+        LOGGER.trace("Closing idle LDAP connection.");
+        close(pooled.ctx);
+      }
+    }
+  }
+
+  private boolean isAlive(DirContext ctx)
+  {
+    try
+    {
+      ctx.getAttributes("", new String[] { "objectClass" });
+      return true;
+    } catch (NamingException e)
+    {
+      LOGGER.debug("Pooled LDAP connection is broken.", e);
+      return false;
+    }
+  }
+
+  private void recordBorrowTime(long nanos)
+  {
+    borrowCount.incrementAndGet();
+    borrowNanos.addAndGet(nanos);
+    maxBorrowNanos.accumulateAndGet(nanos, Math::max);
+    LOGGER.trace("Borrowed LDAP connection in {} µs.", TimeUnit.NANOSECONDS.toMicros(nanos));
+  }
+
+  private static void close(DirContext ctx)
+  {
+    try
+    {
+      ctx.close();
+    } catch (NamingException e)
+    {
+      LOGGER.error("", e);
+    }
+  }
+
+  /**
+   * An idle context and the time it was given back to the pool.
+   */
+  private static class PooledContext
+  {
+    private final DirContext ctx;
+
+    private final long lastUsed;
+
+    PooledContext(DirContext ctx)
+    {
+      this.ctx = ctx;
+      this.lastUsed = System.currentTimeMillis();
+    }
+  }
+}
@@ -32,22 +32,31 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
 import java.util.Properties;
 import java.util.Vector;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
 import java.util.regex.Pattern;
 
+import javax.naming.CommunicationException;
 import javax.naming.Context;
+import javax.naming.InterruptedNamingException;
 import javax.naming.Name;
 import javax.naming.NameParser;
 import javax.naming.NamingEnumeration;
 import javax.naming.NamingException;
+import javax.naming.ServiceUnavailableException;
 import javax.naming.directory.Attribute;
 import javax.naming.directory.Attributes;
 import javax.naming.directory.DirContext;
 import javax.naming.directory.SearchControls;
 import javax.naming.directory.SearchResult;
-import javax.naming.ldap.InitialLdapContext;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -80,6 +89,21 @@ public class LDAPDatasource extends Datasource
   /** properties für die Verbindung zum LDAP-Server */
   private Properties properties = new Properties();
 
+  /** Default number of connections to the LDAP-Server. */
+  private static final long DEFAULT_POOL_SIZE = 4;
+
+  /** Default time in milliseconds after which idle connections are closed. */
+  private static final long DEFAULT_POOL_IDLE_TIMEOUT = 60000;
+
+  /** wiederverwendbare Verbindungen zum LDAP-Server */
+  private LDAPContextPool pool;
+
+  /**
+   * Threads für parallele Suchen auf einer Ebene des Verzeichnisses oder null, falls sequentiell
+   * gesucht wird (SEARCH_THREADS "1").
+   */
+  private ExecutorService executor;
+
   /** Separator zur Schluesselerzeugung aus mehreren Schluesselwerten */
   private static final String SEPARATOR = "&:=&:%";
 
@@ -131,11 +155,6 @@ public class LDAPDatasource extends Datasource
   private static final Pattern KEY_RE = Pattern.compile("^(\\(&(\\([^()=]+[^()]*\\))+\\))?"
       + KEY_SEPARATOR_0_NON_0_RE + "([a-zA-Z_][a-zA-Z0-9_]*=.*" + SEPARATOR + ")?$");
 
-  /**
-   * temporärer cache für relative Attribute (wird bei jeder neuen Suche neu angelegt)
-   */
-  private Map<CacheKey, Attributes> attributeCache = new HashMap<>();
-
   /**
    * Erzeugt eine neue LDAPDatasource.
    *
@@ -202,6 +221,10 @@ public class LDAPDatasource extends Datasource
       properties.put(Context.SECURITY_CREDENTIALS, password);
     }
 
+    long poolSize = parseConfig(sourceDesc, "POOL_SIZE", DEFAULT_POOL_SIZE);
+    long poolIdleTimeout = parseConfig(sourceDesc, "POOL_IDLE_TIMEOUT", DEFAULT_POOL_IDLE_TIMEOUT);
+    int searchThreads = (int) Math.min(parseConfig(sourceDesc, "SEARCH_THREADS", poolSize), Integer.MAX_VALUE);
+
     ConfigThingy spalten = sourceDesc.query("Spalten");
 
     if (spalten.count() == 0)
@@ -328,6 +351,55 @@ public class LDAPDatasource extends Datasource
     {
       keyStatus = ABSOLUTE_AND_RELATIVE;
     }
+
+    // Pool und Threads erst erzeugen, wenn die Konfiguration fehlerfrei ist, da sie sonst nie
+    // geschlossen werden.
+    pool = new LDAPContextPool(properties, (int) Math.min(poolSize, Integer.MAX_VALUE), poolIdleTimeout,
+        Datasource.getDatasourceTimeout());
+    if (searchThreads > 1)
+    {
+      ThreadPoolExecutor threadPool = new ThreadPoolExecutor(searchThreads, searchThreads, 60,
+          TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, "LDAP-Search-" + datasourceName);
+            t.setDaemon(true);
+            return t;
+          });
+      threadPool.allowCoreThreadTimeOut(true);
+      executor = threadPool;
+    }
+  }
+
+  /**
+   * Get the connection pool of this data source.
+   *
+   * @return The pool.
+   */
+  LDAPContextPool getPool()
+  {
+    return pool;
+  }
+
+  /**
+   * Get the threads for parallel searches of this data source.
+   *
+   * @return The executor or null if the searches are sequential.
+   */
+  ExecutorService getExecutor()
+  {
+    return executor;
+  }
+
+  /**
+   * Schließt alle Verbindungen zum LDAP-Server und beendet die Threads für parallele Suchen.
+   */
+  @Override
+  public void close()
+  {
+    pool.close();
+    if (executor != null)
+    {
+      executor.shutdown();
+    }
   }
 
   /** Setzt die timeout-Properties. */
@@ -429,30 +501,22 @@ public class LDAPDatasource extends Datasource
 
     List<Dataset> results = new ArrayList<>(keys.size());
 
-    try
-    {
-      attributeCache.clear();
-
-      if (keyStatus == ABSOLUTE_ONLY || keyStatus == ABSOLUTE_AND_RELATIVE)
-      { // absolute Attribute vorhanden
-        results.addAll(handleAbsoluteKeys(keys));
-      } else
-      { // nur relative Attribute
-        for (String currentKey : keys)
-        {
-          List<QueryPart> query = keyToFindQuery(currentKey);
+    if (keyStatus == ABSOLUTE_ONLY || keyStatus == ABSOLUTE_AND_RELATIVE)
+    { // absolute Attribute vorhanden
+      results.addAll(handleAbsoluteKeys(keys));
+    } else
+    { // nur relative Attribute
+      for (String currentKey : keys)
+      {
+        List<QueryPart> query = keyToFindQuery(currentKey);
 
-          QueryResults res = find(query);
-          for (Dataset ds : res)
-            results.add(ds);
-        }
+        QueryResults res = find(query);
+        for (Dataset ds : res)
+          results.add(ds);
       }
-
-      return new QueryResultsList(results);
-    } finally
-    {
-      attributeCache.clear();
     }
+
+    return new QueryResultsList(results);
   }
 
   private List<Dataset> handleAbsoluteKeys(Collection<String> keys)
@@ -478,22 +542,14 @@ public class LDAPDatasource extends Datasource
     searchFilter.append(")");
 
     // search LDAP
-    NamingEnumeration<SearchResult> currentResults = searchLDAP("", searchFilter.toString(),
+    List<SearchResult> currentResults = searchLDAP("", searchFilter.toString(),
         SearchControls.SUBTREE_SCOPE, true);
 
-    while (currentResults != null && currentResults.hasMoreElements())
+    for (Dataset dataset : getDatasets(currentResults))
     {
-      try
-      {
-        SearchResult currentResult = currentResults.next();
-        Dataset dataset = getDataset(currentResult);
-        if (keyStatus == ABSOLUTE_ONLY || keys.contains(dataset.getKey()))
-        {
-          results.add(dataset);
-        }
-      } catch (NamingException e)
+      if (keyStatus == ABSOLUTE_ONLY || keys.contains(dataset.getKey()))
       {
-        LOGGER.error("Error in LDAP-Directory.", e);
+        results.add(dataset);
       }
     }
     return results;
@@ -551,59 +607,49 @@ public class LDAPDatasource extends Datasource
   {
 
     List<Name> paths = null;
-    DirContext ctx = null;
 
     try
     {
-      ctx = new InitialLdapContext(properties, null);
-      NameParser np = ctx.getNameParser("");
-      int rootSize = np.parse(baseDN).size();
-      SearchControls sc = new SearchControls();
-      sc.setSearchScope(SearchControls.SUBTREE_SCOPE);
+      paths = withContext(ctx -> getPaths(ctx, filter, pathLength));
+    } catch (NamingException e)
+    {
+      LOGGER.error("Internal error in LDAP.", e);
+    }
 
-      sc.setTimeLimit((int) Datasource.getDatasourceTimeout());
+    return new RelativePaths(pathLength, paths);
 
-      LOGGER.trace("ctx.search({}, {}, sc) mit Zeitlimit {}", baseDN, filter, sc.getTimeLimit());
-      NamingEnumeration<SearchResult> enumer = ctx.search(baseDN, filter, sc);
-      LOGGER.trace("ctx.search() abgeschlossen");
+  }
 
-      paths = new Vector<>();
+  private List<Name> getPaths(DirContext ctx, String filter, int pathLength) throws NamingException
+  {
+    NameParser np = ctx.getNameParser("");
+    int rootSize = np.parse(baseDN).size();
+    SearchControls sc = new SearchControls();
+    sc.setSearchScope(SearchControls.SUBTREE_SCOPE);
 
-      while (enumer != null && enumer.hasMoreElements())
-      {
-        SearchResult result = enumer.nextElement();
-        String path = preparePath(result.getNameInNamespace());
-        Name pathName = np.parse(path);
-        /*
-         * ACHTUNG: hier kann NICHT (pathLength < 0 && (pathName.size()+rootLength >
-         * abs(pathLength))) getestet werden, denn Minus-Bedingungen betreffen die Nachfahren, hier
-         * muesste also die Tiefe des tiefsten Nachfahrens ausgewertet werden, die wir nicht kennen.
-         */
-        if (pathName.size() + rootSize == pathLength || pathLength < 0)
-          paths.add(pathName);
-      }
+    sc.setTimeLimit((int) Datasource.getDatasourceTimeout());
 
-      ctx.close();
+    LOGGER.trace("ctx.search({}, {}, sc) mit Zeitlimit {}", baseDN, filter, sc.getTimeLimit());
+    NamingEnumeration<SearchResult> enumer = ctx.search(baseDN, filter, sc);
+    LOGGER.trace("ctx.search() abgeschlossen");
 
-    } catch (NamingException e)
-    {
-      LOGGER.error("Internal error in LDAP.", e);
-    } finally
+    List<Name> paths = new Vector<>();
+
+    while (enumer != null && enumer.hasMoreElements())
     {
-      if (ctx != null)
-      {
-        try
-        {
-          ctx.close();
-        } catch (NamingException e)
-        {
-          LOGGER.error("", e);
-        }
-      }
+      SearchResult result = enumer.nextElement();
+      String path = preparePath(result.getNameInNamespace());
+      Name pathName = np.parse(path);
+      /*
+       * ACHTUNG: hier kann NICHT (pathLength < 0 && (pathName.size()+rootLength >
+       * abs(pathLength))) getestet werden, denn Minus-Bedingungen betreffen die Nachfahren, hier
+       * muesste also die Tiefe des tiefsten Nachfahrens ausgewertet werden, die wir nicht kennen.
+       */
+      if (pathName.size() + rootSize == pathLength || pathLength < 0)
+        paths.add(pathName);
     }
 
-    return new RelativePaths(pathLength, paths);
-
+    return paths;
   }
 
   /*
@@ -967,12 +1013,11 @@ public class LDAPDatasource extends Datasource
         {
           comma = "";
         }
-        NamingEnumeration<SearchResult> currentResults = searchLDAP(subTree + comma,
+        List<SearchResult> currentResults = searchLDAP(subTree + comma,
             searchFilter.toString(), SearchControls.SUBTREE_SCOPE, true);
 
-        while (currentResults != null && currentResults.hasMoreElements())
+        for (SearchResult sr : currentResults)
         {
-          SearchResult sr = currentResults.nextElement();
           String name = preparePath(sr.getNameInNamespace());
           sr.setName(name + (name.length() > 0 ? comma : "") + subTree);
           currentResultList.add(sr);
@@ -997,24 +1042,43 @@ public class LDAPDatasource extends Datasource
 
     }
 
-    List<Dataset> results = new ArrayList<>();
-
     // generate Datasets from SearchResults
+    return new QueryResultsList(getDatasets(currentResultList));
+  }
 
-    attributeCache.clear();
+  /**
+   * Generates the {@link Dataset}s of the {@link SearchResult}s. All of them share one connection
+   * to the LDAP-Server and one cache for looking up relative attributes. The cache is local to
+   * each call, so that concurrent searches don't interfere.
+   *
+   * @param searchResults
+   *          The results of a search.
+   * @return The datasets in the order of the search results.
+   */
+  private List<Dataset> getDatasets(List<SearchResult> searchResults)
+  {
+    List<Dataset> results = new ArrayList<>(searchResults.size());
+    if (searchResults.isEmpty())
+    {
+      return results;
+    }
 
+    Map<CacheKey, Attributes> attributeCache = new HashMap<>();
     try
     {
-      for (SearchResult currentResult : currentResultList)
-      {
-        results.add(getDataset(currentResult));
-      }
-    } finally
+      withContext(ctx -> {
+        for (SearchResult currentResult : searchResults)
+        {
+          results.add(getDataset(ctx, currentResult, attributeCache));
+        }
+        return results;
+      });
+    } catch (NamingException e)
     {
-      attributeCache.clear();
+      LOGGER.error("Fehler beim Zugriff auf das LDAP-Verzeichnis.", e);
     }
 
-    return new QueryResultsList(results);
+    return results;
   }
 
   /**
@@ -1157,13 +1221,17 @@ public class LDAPDatasource extends Datasource
   /**
    * vervollständigt SearchResults um Daten aus dem Verzeichnis und gibt ein Dataset zurück
    *
+   * @param ctx
+   *          Connection to the LDAP-Server.
    * @param searchResult
-   * @param endTime
+   * @param attributeCache
+   *          Cache of the relative attributes already read.
    * @return Dataset
    * @author Max Meier (D-III-ITD 5.1)
    *
    */
-  private Dataset getDataset(SearchResult searchResult)
+  private Dataset getDataset(DirContext ctx, SearchResult searchResult,
+      Map<CacheKey, Attributes> attributeCache)
   {
     Attributes attributes = searchResult.getAttributes();
 
@@ -1171,14 +1239,12 @@ public class LDAPDatasource extends Datasource
 
     Name pathName = null;
     Name rootName = null;
-    DirContext ctx = null;
 
     try
     {
       String tempPath = searchResult.getNameInNamespace();
       tempPath = preparePath(tempPath);
 
-      ctx = new InitialLdapContext(properties, null);
       NameParser nameParser = ctx.getNameParser("");
       pathName = nameParser.parse(tempPath);
       rootName = nameParser.parse(baseDN); // TOD0: Das ist eine Konstante, nur
@@ -1289,12 +1355,11 @@ public class LDAPDatasource extends Datasource
    * @param onlyObjectClass
    *          falls true, werden nur Knoten zurückgeliefert, deren objectClass {@link #objectClass}
    *          entspricht.
-   * @return die Suchergebnisse
+   * @return die Suchergebnisse, leer falls bei der Suche ein Fehler auftritt.
    * @author Max Meier (D-III-ITD 5.1)
-   * @throws NamingException
    *
    */
-  private NamingEnumeration<SearchResult> searchLDAP(String path, String filter, int searchScope,
+  private List<SearchResult> searchLDAP(String path, String filter, int searchScope,
       boolean onlyObjectClass)
   {
     LOGGER.debug("searchLDAP({}, {}, {}, {})", path, filter, searchScope, onlyObjectClass);
@@ -1315,40 +1380,80 @@ public class LDAPDatasource extends Datasource
       // doch überflüssig
     }
 
-    Optional<NamingEnumeration<SearchResult>> result = Optional.empty();
-    DirContext ctx = null;
+    String searchFilter = filter;
+    List<SearchResult> result = new ArrayList<>();
 
     try
     {
-      ctx = new InitialLdapContext(properties, null);
-      NameParser nameParser = ctx.getNameParser("");
-      Name name = nameParser.parse(path + baseDN);
+      withContext(ctx -> {
+        NameParser nameParser = ctx.getNameParser("");
+        Name name = nameParser.parse(path + baseDN);
+
+        LOGGER.trace("ctx.search({}, {}, searchControls) mit Zeitlimit {}", name, searchFilter,
+            searchControls.getTimeLimit());
+        NamingEnumeration<SearchResult> enumer = ctx.search(name, searchFilter, searchControls);
+        LOGGER.trace("ctx.search() abgeschlossen");
 
-      LOGGER.trace("ctx.search({}, {}, searchControls) mit Zeitlimit {}", name, filter,
-          searchControls.getTimeLimit());
-      result = Optional.of(ctx.search(name, filter, searchControls));
-      LOGGER.trace("ctx.search() abgeschlossen");
+        // Die Ergebnisse müssen gelesen werden, solange die Verbindung nicht wieder im Pool ist.
+        while (enumer.hasMoreElements())
+        {
+          result.add(enumer.nextElement());
+        }
+        return result;
+      });
     } catch (NamingException e)
     {
       LOGGER.error("", e);
+    }
+
+    LOGGER.debug(result.isEmpty() ? "keine Ergebnisse gefunden" : "Ergebnisse gefunden");
+
+    return result;
+  }
+
+  /**
+   * Führt eine Operation mit einer Verbindung aus dem {@link #pool} aus. Die Verbindung wird danach
+   * wieder an den Pool zurückgegeben bzw. verworfen, falls sie abgebrochen ist. Eine Verbindung,
+   * deren Operation unterbrochen wurde (z.B. weil die Suche das Zeitlimit überschritten hat), wird
+   * ebenfalls verworfen, da der Server die Anfrage noch bearbeitet und weitere Anfragen über die
+   * Verbindung erst danach beantworten würde.
+   *
+   * @param operation
+   *          Die Operation.
+   * @return Das Ergebnis der Operation.
+   * @throws NamingException
+   *           Es konnte keine Verbindung hergestellt werden oder die Operation ist fehlgeschlagen.
+   */
+  private <T> T withContext(ContextOperation<T> operation) throws NamingException
+  {
+    DirContext ctx = pool.borrow();
+    boolean broken = false;
+    try
+    {
+      return operation.execute(ctx);
+    } catch (CommunicationException | ServiceUnavailableException | InterruptedNamingException e)
+    {
+      broken = true;
+      throw e;
     } finally
     {
-      if (ctx != null)
+      if (broken)
       {
-        try
-        {
-          ctx.close();
-        } catch (NamingException e)
-        {
-          LOGGER.error("", e);
-        }
+        pool.invalidate(ctx);
+      } else
+      {
+        pool.release(ctx);
       }
     }
+  }
 
-    result.ifPresent(r -> LOGGER
-        .debug(r.hasMoreElements() ? "Ergebnisse gefunden" : "keine Ergebnisse gefunden"));
-
-    return result.orElse(null);
+  /**
+   * Eine Operation auf einer Verbindung zum LDAP-Server.
+   */
+  @FunctionalInterface
+  private interface ContextOperation<T>
+  {
+    T execute(DirContext ctx) throws NamingException;
   }
 
   /**
@@ -1362,66 +1467,133 @@ public class LDAPDatasource extends Datasource
    */
   private List<SearchResult> searchLDAPLevel(String path, String filter, int level)
   {
+    long deadline = System.currentTimeMillis() + Datasource.getDatasourceTimeout();
+
     List<String> seeds = new ArrayList<>();
     seeds.add(path);
 
-    String comma;
-
     for (int n = 0; n < (level - 1); n++)
     {
-      List<String> nextSeeds = new ArrayList<>();
+      seeds = searchSeeds(seeds, this::searchChildPaths, deadline);
+    }
 
-      for (String searchPath : seeds)
-      {
-        comma = ",";
-        if (searchPath.isEmpty())
-        {
-          comma = "";
-        }
+    return searchSeeds(seeds, currentPath -> searchLevel(currentPath, filter, level), deadline);
+  }
 
-        NamingEnumeration<SearchResult> enumer = searchLDAP(searchPath + comma, "",
-            SearchControls.ONELEVEL_SCOPE, false);
+  /**
+   * Liefert die Pfade aller Kinder des Knotens searchPath + BASE_DN.
+   */
+  private List<String> searchChildPaths(String searchPath)
+  {
+    String comma = ",";
+    if (searchPath.isEmpty())
+    {
+      comma = "";
+    }
 
-        while (enumer != null && enumer.hasMoreElements())
-        {
-          SearchResult currentResult = enumer.nextElement();
-          String subPath = preparePath(currentResult.getNameInNamespace());
-          comma = ",";
-          if (subPath.isEmpty())
-          {
-            comma = "";
-          }
-          String currentPath = subPath + comma + searchPath;
-          nextSeeds.add(currentPath);
-        }
-      }
+    List<String> nextSeeds = new ArrayList<>();
+    List<SearchResult> enumer = searchLDAP(searchPath + comma, "", SearchControls.ONELEVEL_SCOPE,
+        false);
 
-      seeds = nextSeeds;
+    for (SearchResult currentResult : enumer)
+    {
+      // getNameInNamespace() liefert den vollständigen Pfad, nicht nur den relativen zu searchPath
+      nextSeeds.add(preparePath(currentResult.getNameInNamespace()));
+    }
+    return nextSeeds;
+  }
 
+  /**
+   * Sucht unterhalb des Knotens currentPath + BASE_DN (bzw. im Knoten selbst, falls level 0 ist)
+   * nach Knoten, auf die filter passt.
+   */
+  private List<SearchResult> searchLevel(String currentPath, String filter, int level)
+  {
+    String comma = ",";
+    if (currentPath.isEmpty())
+    {
+      comma = "";
     }
 
     List<SearchResult> result = new ArrayList<>();
+    List<SearchResult> enumer = searchLDAP(currentPath + comma, filter,
+        level == 0 ? SearchControls.OBJECT_SCOPE : SearchControls.ONELEVEL_SCOPE, true);
 
-    for (String currentPath : seeds)
+    for (SearchResult sr : enumer)
     {
-      comma = ",";
-      if (currentPath.isEmpty())
+      String name = preparePath(sr.getNameInNamespace());
+      String actualPath = name + (name.length() > 0 ? comma : "") + currentPath;
+      sr.setName(actualPath);
+      result.add(sr);
+    }
+    return result;
+  }
+
+  /**
+   * Führt search für jeden Pfad aus seeds aus und liefert die Ergebnisse in der Reihenfolge der
+   * seeds. Falls SEARCH_THREADS größer als 1 ist, werden die Suchen parallel ausgeführt. Ist die
+   * deadline überschritten, werden nur die Ergebnisse der Pfade geliefert, deren Suche bis dahin
+   * abgeschlossen ist.
+   *
+   * @param seeds
+   *          Die Pfade.
+   * @param search
+   *          Die Suche für einen Pfad.
+   * @param deadline
+   *          Zeitpunkt (in Millisekunden) bis zu dem die parallelen Suchen abgeschlossen sein
+   *          müssen.
+   * @return Die zusammengeführten Ergebnisse.
+   */
+  private <T> List<T> searchSeeds(List<String> seeds, Function<String, List<T>> search,
+      long deadline)
+  {
+    List<T> result = new ArrayList<>();
+
+    if (executor == null || seeds.size() < 2)
+    {
+      for (String seed : seeds)
       {
-        comma = "";
+        result.addAll(search.apply(seed));
       }
+      return result;
+    }
 
-      NamingEnumeration<SearchResult> enumer = searchLDAP(currentPath + comma, filter,
-          level == 0 ? SearchControls.OBJECT_SCOPE : SearchControls.ONELEVEL_SCOPE, true);
+    List<Future<List<T>>> futures = new ArrayList<>(seeds.size());
+    for (String seed : seeds)
+    {
+      futures.add(executor.submit(() -> search.apply(seed)));
+    }
 
-      while (enumer != null && enumer.hasMoreElements())
+    try
+    {
+      boolean timedOut = false;
+      for (Future<List<T>> future : futures)
+      {
+        long remaining = deadline - System.currentTimeMillis();
+        try
+        {
+          result.addAll(future.get(Math.max(remaining, 0), TimeUnit.MILLISECONDS));
+        } catch (TimeoutException e)
+        {
+          // die Ergebnisse der übrigen Pfade, die bereits vorliegen, werden trotzdem geliefert
+          timedOut = true;
+        } catch (ExecutionException e)
+        {
+          LOGGER.error("", e);
+        }
+      }
+      if (timedOut)
       {
-        SearchResult sr = enumer.nextElement();
-        String name = preparePath(sr.getNameInNamespace());
-        String actualPath = name + (name.length() > 0 ? comma : "") + currentPath;
-        sr.setName(actualPath);
-        result.add(sr);
+        LOGGER.error("Die Suche in der Datenquelle \"{}\" hat das Zeitlimit von {} ms überschritten.",
+            datasourceName, Datasource.getDatasourceTimeout());
       }
-
+    } catch (InterruptedException e)
+    {
+      LOGGER.error("", e);
+      Thread.currentThread().interrupt();
+    } finally
+    {
+      futures.forEach(future -> future.cancel(true));
     }
 
     return result;
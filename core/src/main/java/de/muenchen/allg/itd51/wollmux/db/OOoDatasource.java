@@ -23,13 +23,16 @@
 package de.muenchen.allg.itd51.wollmux.db;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Vector;
+import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -37,20 +40,26 @@ import org.slf4j.LoggerFactory;
 import com.sun.star.sdb.CommandType;
 import com.sun.star.sdb.XColumn;
 import com.sun.star.sdbc.SQLException;
+import com.sun.star.sdbc.XCloseable;
 import com.sun.star.sdbc.XColumnLocate;
 import com.sun.star.sdbc.XConnection;
 import com.sun.star.sdbc.XDataSource;
+import com.sun.star.sdbc.XParameters;
+import com.sun.star.sdbc.XPreparedStatement;
 import com.sun.star.sdbc.XResultSet;
 import com.sun.star.sdbc.XRow;
 import com.sun.star.sdbc.XRowSet;
+import com.sun.star.sdbcx.KeyType;
 import com.sun.star.sdbcx.XColumnsSupplier;
 import com.sun.star.sdbcx.XKeysSupplier;
+import com.sun.star.uno.UnoRuntime;
 
 import de.muenchen.allg.afid.UNO;
 import de.muenchen.allg.afid.UnoDictionary;
 import de.muenchen.allg.itd51.wollmux.config.ConfigThingy;
 import de.muenchen.allg.itd51.wollmux.config.ConfigurationErrorException;
 import de.muenchen.allg.itd51.wollmux.util.L;
+import de.muenchen.allg.itd51.wollmux.util.Utils;
 import de.muenchen.allg.util.UnoComponent;
 import de.muenchen.allg.util.UnoProperty;
 
@@ -163,6 +172,12 @@ public class OOoDatasource extends Datasource
    */
   private String[] keyColumns;
 
+  /**
+   * Falls true, sind die Schlüsselspalten als Primärschlüssel oder eindeutiger Schlüssel der
+   * Datenbank bekannt.
+   */
+  private boolean uniqueKey = false;
+
   /**
    * Benutzername für den Login bei der Datenbank.
    */
@@ -170,6 +185,58 @@ public class OOoDatasource extends Datasource
 
   private static final String SQL_SELECT_COMMAND = "SELECT * FROM ";
 
+  /**
+   * Maximale Anzahl an Werten in einer IN-Liste.
+   */
+  private static final int MAX_IN_LIST_SIZE = 1000;
+
+  /**
+   * Maximale Anzahl an Prepared Statements, die pro Verbindung vorgehalten werden.
+   */
+  private static final int MAX_CACHED_STATEMENTS = 50;
+
+  /**
+   * Anzahl der Datensätze, die {@link #find(List)} und {@link #getContents()} pro Anfrage laden.
+   * Ist der Wert 0, werden alle Datensätze mit einer Anfrage geladen.
+   */
+  private int pageSize = 0;
+
+  /**
+   * Falls true, werden Anfragen als Prepared Statements mit gebundenen Parametern abgesetzt.
+   */
+  private volatile boolean usePreparedStatements = true;
+
+  /**
+   * Die Verbindung zur Datenbank, die von allen Anfragen verwendet wird. Null, falls noch keine
+   * Verbindung besteht.
+   */
+  private XConnection connection;
+
+  /**
+   * Falls true, wurde die Datenquelle mit {@link #close()} geschlossen und es werden keine neuen
+   * Verbindungen mehr aufgebaut.
+   */
+  private volatile boolean closed = false;
+
+  /**
+   * Die Prepared Statements von {@link #connection}, die zuletzt verwendeten zuletzt.
+   */
+  private final Map<String, CachedStatement> statements = new LinkedHashMap<>(16, 0.75f, true)
+  {
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest)
+    {
+      if (size() > MAX_CACHED_STATEMENTS)
+      {
+        close(eldest.getValue().statement);
+        return true;
+      }
+      return false;
+    }
+  };
+
   /**
    * Passwort für den Login bei der Datenbank.
    */
@@ -186,7 +253,10 @@ public class OOoDatasource extends Datasource
 
   /**
    * Erzeugt eine neue OOoDatasource. Wenn kein SQL_SYNTAX Parameter in ConfigThingy
-   * gesetzt ist, wird 'mysql' als Standard verwendet.
+   * gesetzt ist, wird 'mysql' als Standard verwendet. Mit PAGE_SIZE wird die Anzahl
+   * der Datensätze festgelegt, die pro Anfrage geladen werden (siehe
+   * {@link PagedQueryResults}). Mit PREPARED_STATEMENTS "false" werden Anfragen
+   * nicht als Prepared Statements, sondern mit eingesetzten Werten abgesetzt.
    *
    * @param nameToDatasource
    *          enthält alle bis zum Zeitpunkt der Definition dieser OOoDatasource
@@ -237,6 +307,9 @@ public class OOoDatasource extends Datasource
       throw new ConfigurationErrorException(L.m(
         "SQL_SYNTAX \"{0}\" not supported", sqlSyntaxStr));
 
+    pageSize = (int) Math.min(parseConfig(sourceDesc, "PAGE_SIZE", 0), Integer.MAX_VALUE);
+    usePreparedStatements = Boolean.parseBoolean(sourceDesc.getString("PREPARED_STATEMENTS", "true"));
+
     schema = new ArrayList<>();
     ConfigThingy schemaConf = sourceDesc.query("Schema");
     if (schemaConf.count() != 0)
@@ -334,11 +407,14 @@ public class OOoDatasource extends Datasource
             try
             {
               XKeysSupplier keysSupp = UNO.XKeysSupplier(table);
-              XColumnsSupplier colSupp =
-                UNO.XColumnsSupplier(keysSupp.getKeys().getByIndex(0));
+              Object key = keysSupp.getKeys().getByIndex(0);
+              XColumnsSupplier colSupp = UNO.XColumnsSupplier(key);
               columns = UnoDictionary.create(colSupp.getColumns(), XColumn.class);
               colNames = columns.keySet();
               keyColumns = colNames.toArray(new String[] {});
+              Object keyType = Utils.getProperty(key, "Type");
+              uniqueKey = keyType instanceof Number && (((Number) keyType).intValue() == KeyType.PRIMARY
+                  || ((Number) keyType).intValue() == KeyType.UNIQUE);
             }
             catch (Exception x)
             {
@@ -409,35 +485,81 @@ public class OOoDatasource extends Datasource
       return new QueryResultsList(new ArrayList<Dataset>(0));
     }
 
-    StringBuilder buffy =
-        new StringBuilder(SQL_SELECT_COMMAND + sqlIdentifier(oooTableName) + " WHERE ");
+    Sql sql = new Sql().append(SQL_SELECT_COMMAND + sqlIdentifier(oooTableName) + " WHERE ");
+
+    if (appendKeysAsInList(sql, keys))
+    {
+      return sqlQuery(sql);
+    }
 
     Iterator<String> iter = keys.iterator();
     boolean first = true;
     while (iter.hasNext())
     {
       if (!first) {
-        buffy.append(" OR ");
+        sql.append(" OR ");
       }
       first = false;
       String key = iter.next();
       String[] parts = key.split("#", -1);
-      buffy.append('(');
+      sql.append("(");
       for (int i = 1; i < parts.length; i += 2)
       {
         if (i > 1) {
-          buffy.append(" AND ");
+          sql.append(" AND ");
         }
-        buffy.append(sqlIdentifier(decode(parts[i - 1])));
-        buffy.append('=');
-        buffy.append(sqlLiteral(decode(parts[i])));
+        sql.append(sqlIdentifier(decode(parts[i - 1])));
+        sql.append("=");
+        sql.appendParameter(decode(parts[i]));
       }
-      buffy.append(')');
+      sql.append(")");
     }
 
-    buffy.append(';');
+    return sqlQuery(sql);
+  }
 
-    return sqlQuery(buffy.toString());
+  /**
+   * Hängt an sql eine Bedingung der Form "<colId>" IN (?, ...) an, falls alle Schlüssel aus
+   * genau einer Spalte und zwar der gleichen bestehen. Da manche Datenbanken (z.B. Oracle) nur
+   * 1000 Einträge pro IN-Liste erlauben, werden längere Listen mit OR verknüpft.
+   *
+   * @return false, falls die Schlüssel nicht als IN-Liste dargestellt werden können. sql ist
+   *         dann unverändert.
+   */
+  private boolean appendKeysAsInList(Sql sql, Collection<String> keys)
+  {
+    String column = null;
+    List<String> values = new ArrayList<>(keys.size());
+    for (String key : keys)
+    {
+      String[] parts = key.split("#", -1);
+      if (parts.length != 3 || (column != null && !column.equals(parts[0])))
+      {
+        return false;
+      }
+      column = parts[0];
+      values.add(decode(parts[1]));
+    }
+
+    String identifier = sqlIdentifier(decode(column));
+    for (int i = 0; i < values.size(); i += MAX_IN_LIST_SIZE)
+    {
+      if (i > 0)
+      {
+        sql.append(" OR ");
+      }
+      sql.append(identifier).append(" IN (");
+      for (int j = i; j < Math.min(i + MAX_IN_LIST_SIZE, values.size()); j++)
+      {
+        if (j > i)
+        {
+          sql.append(", ");
+        }
+        sql.appendParameter(values.get(j));
+      }
+      sql.append(")");
+    }
+    return true;
   }
 
   @Override
@@ -447,8 +569,7 @@ public class OOoDatasource extends Datasource
       return new QueryResultsList(new Vector<Dataset>(0));
     }
 
-    StringBuilder buffy =
-        new StringBuilder(SQL_SELECT_COMMAND + sqlIdentifier(oooTableName) + " WHERE ");
+    Sql sql = new Sql().append(SQL_SELECT_COMMAND + sqlIdentifier(oooTableName) + " WHERE ");
 
     Iterator<QueryPart> iter = query.iterator();
     boolean first = true;
@@ -456,15 +577,15 @@ public class OOoDatasource extends Datasource
     {
       QueryPart part = iter.next();
       if (!first) {
-        buffy.append(" AND ");
+        sql.append(" AND ");
       }
       first = false;
-      buffy.append('(');
-      buffy.append(sqlLower());
-      buffy.append('(');
-      buffy.append(sqlIdentifier(part.getColumnName()));
-      buffy.append(')');
-      buffy.append(" LIKE ");
+      sql.append("(");
+      sql.append(sqlLower());
+      sql.append("(");
+      sql.append(sqlIdentifier(part.getColumnName()));
+      sql.append(")");
+      sql.append(" LIKE ");
 
       if (SQL_SYNTAX_PERVASIVESQL == sqlSyntax) {
           // Rechts vom LIKE können nur einfache Konstanten und keine Funktionen wie
@@ -473,60 +594,296 @@ public class OOoDatasource extends Datasource
           // Die Inhalte der zu durchsuchenden Spalte können wiederum mit lcase/lower
           // behandelt werden. Somit ist sichergestellt, dass der durchsuchende und der zu
           // suchende String nur Kleinbuchstaben enthält.
-          buffy.append(sqlLiteral(sqlSearchPattern(part.getSearchString())).toLowerCase());
+          sql.appendParameter(sqlSearchPattern(part.getSearchString()).toLowerCase());
       } else {
-        buffy.append(sqlLower());
-        buffy.append('(');
-        buffy.append(sqlLiteral(sqlSearchPattern(part.getSearchString())));
-        buffy.append(") ESCAPE '|'");
+        sql.append(sqlLower());
+        sql.append("(");
+        sql.appendParameter(sqlSearchPattern(part.getSearchString()));
+        sql.append(") ESCAPE '|'");
       }
 
-      buffy.append(')');
+      sql.append(")");
     }
 
-    buffy.append(';');
-    return sqlQuery(buffy.toString());
+    return pagedSqlQuery(sql);
   }
 
   @Override
   public QueryResults getContents()
   {
-    return sqlQuery(SQL_SELECT_COMMAND + sqlIdentifier(oooTableName) + ";");
+    return pagedSqlQuery(new Sql().append(SQL_SELECT_COMMAND + sqlIdentifier(oooTableName)));
+  }
+
+  /**
+   * Setzt die SQL-Anfrage select an die Datenbank ab. Ist {@link #pageSize} gesetzt, werden die
+   * Resultate erst beim Durchlaufen seitenweise geladen. PervasiveSQL unterstützt kein
+   * Überspringen von Datensätzen, daher wird dort immer alles auf einmal geladen.
+   */
+  private QueryResults pagedSqlQuery(Sql select)
+  {
+    if (pageSize <= 0 || SQL_SYNTAX_PERVASIVESQL == sqlSyntax)
+    {
+      return sqlQuery(select);
+    }
+    return new PagedQueryResults((offset, limit) -> loadDatasets(sqlPage(select, offset, limit)), pageSize);
+  }
+
+  /**
+   * Liefert abhängig von {@link #sqlSyntax} eine SQL-Anfrage, die von den Resultaten von select
+   * sortiert nach {@link #pageOrder()} die ersten offset Datensätze überspringt und höchstens limit
+   * Datensätze liefert. offset und limit sind Parameter der Anfrage, damit alle Seiten dasselbe
+   * Prepared Statement verwenden.
+   */
+  private Sql sqlPage(Sql select, int offset, int limit)
+  {
+    String orderBy = " ORDER BY "
+        + pageOrder().stream().map(this::sqlIdentifier).collect(Collectors.joining(", "));
+    switch (sqlSyntax)
+    {
+    case SQL_SYNTAX_MYSQL:
+      return select.wrap("", orderBy + " LIMIT ").appendParameter(limit).append(" OFFSET ")
+          .appendParameter(offset);
+    case SQL_SYNTAX_ORACLE:
+      return select.wrap("SELECT * FROM (SELECT \"page\".*, ROWNUM \"rnum\" FROM (",
+          orderBy + ") \"page\" WHERE ROWNUM <= ").appendParameter((long) offset + limit)
+          .append(") WHERE \"rnum\" > ").appendParameter(offset);
+    default:
+      return select.wrap("", orderBy + " OFFSET ").appendParameter(offset)
+          .append(" ROWS FETCH NEXT ").appendParameter(limit).append(" ROWS ONLY");
+    }
+  }
+
+  /**
+   * Liefert die Spalten, nach denen die Seiten sortiert werden. Die Reihenfolge muss bei jeder
+   * Anfrage gleich sein, sonst werden Datensätze übersprungen oder doppelt geliefert. Ist der
+   * Schlüssel nicht als eindeutig bekannt, wird daher zusätzlich nach allen anderen Spalten des
+   * Schemas sortiert. Datensätze, die dann noch gleich sind, unterscheiden sich in keiner Spalte
+   * und ihre Reihenfolge ist egal.
+   */
+  private List<String> pageOrder()
+  {
+    List<String> columns = new ArrayList<>(Arrays.asList(keyColumns));
+    if (!uniqueKey)
+    {
+      schema.stream().filter(column -> !columns.contains(column)).forEach(columns::add);
+    }
+    return columns;
   }
 
   /**
    * Setzt die SQL-Anfrage query an die Datenbank ab und liefert die Resultate.
    */
-  private QueryResults sqlQuery(String query)
+  private QueryResults sqlQuery(Sql query)
+  {
+    return new QueryResultsList(loadDatasets(query));
+  }
+
+  /**
+   * Setzt die SQL-Anfrage query an die Datenbank ab und liefert die Datensätze. Wenn möglich wird
+   * ein Prepared Statement der Verbindung wiederverwendet. Schlägt das fehl, wird die Anfrage mit
+   * eingesetzten Werten über ein RowSet abgesetzt. Nur wenn der Treiber kein Prepared Statement
+   * erzeugen kann, wird für alle weiteren Anfragen nur noch dieser Weg verwendet.
+   *
+   * Anfragen an die Datenquelle laufen parallel, synchronisiert werden nur die Verbindung und
+   * {@link #statements}.
+   */
+  private List<OOoDataset> loadDatasets(Sql query)
   {
     LOGGER.debug("sqlQuery(\"{}\")", query);
+    if (closed)
+    {
+      LOGGER.debug("Data source {} is closed", datasourceName);
+      return new ArrayList<>();
+    }
 
-    List<OOoDataset> datasets = new ArrayList<>();
+    Exception preparedError = null;
+    if (usePreparedStatements)
+    {
+      try
+      {
+        return executePrepared(query);
+      }
+      catch (Exception x)
+      {
+        // Die Verbindung ist evtl. abgebrochen, daher einmal mit neuer Verbindung versuchen.
+        LOGGER.debug("", x);
+      }
+      try
+      {
+        return executePrepared(query);
+      }
+      catch (Exception x)
+      {
+        preparedError = x;
+      }
+    }
 
-    XRowSet results = null;
-    XConnection conn = null;
     try
     {
+      List<OOoDataset> datasets = executeRowSet(query.toLiteral());
+      if (preparedError instanceof PreparedStatementUnsupportedException)
+      {
+        LOGGER.info("Data source {} doesn't support prepared statements.", datasourceName, preparedError);
+        usePreparedStatements = false;
+      }
+      else if (preparedError != null)
+      {
+        LOGGER.debug("Prepared statement of data source {} failed, used a RowSet instead.",
+            datasourceName, preparedError);
+      }
+      return datasets;
+    }
+    catch (Exception x)
+    {
+      if (closed)
+      {
+        LOGGER.debug("Data source {} has been closed during the query", datasourceName, x);
+      }
+      else
+      {
+        LOGGER.error("Fehler beim Absetzen der Anfrage", x);
+      }
+      return new ArrayList<>();
+    }
+  }
+
+  /**
+   * Führt query als Prepared Statement aus. Die Statements werden pro Verbindung in
+   * {@link #statements} vorgehalten, ebenso die Abbildung der Spalten auf die Indizes des
+   * Resultats. Während der Ausführung ist das Statement nicht in {@link #statements}, so dass
+   * es keine andere Anfrage gleichzeitig verwendet. Bei einem Fehler werden das Statement und
+   * die Verbindung geschlossen.
+   *
+   * @throws PreparedStatementUnsupportedException
+   *           falls der Treiber kein Prepared Statement für query erzeugen kann.
+   */
+  private List<OOoDataset> executePrepared(Sql query)
+      throws SQLException, PreparedStatementUnsupportedException
+  {
+    String sql = query.statement.toString();
+    CachedStatement cached = checkOut(sql);
+    if (cached == null)
+    {
+      cached = prepare(sql);
+    }
+
+    boolean success = false;
+    try
+    {
+      XParameters parameters = UnoRuntime.queryInterface(XParameters.class, cached.statement);
+      parameters.clearParameters();
+      for (int i = 0; i < query.parameters.size(); i++)
+      {
+        Object value = query.parameters.get(i);
+        if (value instanceof Long)
+        {
+          parameters.setLong(i + 1, (Long) value);
+        } else
+        {
+          parameters.setString(i + 1, (String) value);
+        }
+      }
 
+      XResultSet results = cached.statement.executeQuery();
       try
       {
-        XDataSource ds =
-          UNO.XDataSource(UNO.dbContext.getRegisteredObject(oooDatasourceName));
-
-        ds.setLoginTimeout((int) Datasource.getDatasourceTimeout());
-        conn = ds.getConnection(userName, password);
+        if (cached.columns == null)
+        {
+          cached.columns = getColumnMapping(results);
+        }
+        List<OOoDataset> datasets = readDatasets(results, cached.columns);
+        success = true;
+        return datasets;
       }
-      catch (SQLException x)
+      finally
+      {
+        close(results);
+      }
+    }
+    finally
+    {
+      if (success)
       {
-        LOGGER.error("Kann keine Verbindung zur Datenquelle herstellen", x);
+        checkIn(sql, cached);
       }
+      else
+      {
+        close(cached.statement);
+        closeConnection(cached.connection);
+      }
+    }
+  }
 
+  /**
+   * Erzeugt ein Prepared Statement für sql mit der aktuellen Verbindung.
+   *
+   * @throws PreparedStatementUnsupportedException
+   *           falls der Treiber kein Prepared Statement für sql erzeugen kann.
+   */
+  private CachedStatement prepare(String sql)
+      throws SQLException, PreparedStatementUnsupportedException
+  {
+    XConnection con = getConnection();
+    XPreparedStatement statement;
+    try
+    {
+      statement = con.prepareStatement(sql);
+    }
+    catch (SQLException | RuntimeException x)
+    {
+      closeConnection(con);
+      throw new PreparedStatementUnsupportedException(x);
+    }
+    if (statement == null || UnoRuntime.queryInterface(XParameters.class, statement) == null)
+    {
+      close(statement);
+      throw new PreparedStatementUnsupportedException(null);
+    }
+    return new CachedStatement(con, statement);
+  }
+
+  /**
+   * Nimmt das Prepared Statement für sql aus {@link #statements}.
+   *
+   * @return Das Statement oder null, falls keines vorgehalten wird.
+   */
+  private synchronized CachedStatement checkOut(String sql)
+  {
+    return statements.remove(sql);
+  }
+
+  /**
+   * Legt das Prepared Statement für sql nach der Ausführung wieder in {@link #statements}. Gehört
+   * es nicht mehr zur aktuellen Verbindung oder hat eine parallele Anfrage inzwischen ein
+   * Statement für sql abgelegt, wird es geschlossen.
+   */
+  private synchronized void checkIn(String sql, CachedStatement cached)
+  {
+    if (closed || cached.connection != connection || statements.containsKey(sql))
+    {
+      close(cached.statement);
+    }
+    else
+    {
+      statements.put(sql, cached);
+    }
+  }
+
+  /**
+   * Setzt die SQL-Anfrage query über ein RowSet an die Datenbank ab.
+   */
+  private List<OOoDataset> executeRowSet(String query) throws Exception
+  {
+    XConnection con = getConnection();
+    XRowSet results = null;
+    try
+    {
       results = UNO.XRowSet(UnoComponent.createComponentWithContext(UnoComponent.CSS_SDB_ROW_SET));
 
       if (results == null)
         throw new NullPointerException(L.m("Could not create RowSet"));
 
-      UnoProperty.setProperty(results, UnoProperty.ACTIVE_CONNECTION, conn);
+      UnoProperty.setProperty(results, UnoProperty.ACTIVE_CONNECTION, con);
 
       /*
        * EscapeProcessing == false bedeutet, dass OOo die Query nicht selbst anfassen
@@ -543,52 +900,131 @@ public class OOoDatasource extends Datasource
 
       results.execute();
 
-      Map<String, Integer> mapColumnNameToIndex = getColumnMapping(results);
-      XRow row = UNO.XRow(results);
-
-      while (results.next())
-      {
-        Map<String, String> data = new HashMap<>();
-        Iterator<Map.Entry<String, Integer>> iter =
-          mapColumnNameToIndex.entrySet().iterator();
-        while (iter.hasNext())
-        {
-          Map.Entry<String, Integer> entry = iter.next();
-          String column = entry.getKey();
-          int idx = entry.getValue().intValue();
-          String value = null;
-          if (idx > 0) {
-            value = row.getString(idx);
-          }
-          data.put(column, value);
-        }
-        datasets.add(new OOoDataset(data));
-      }
-
+      return readDatasets(results, getColumnMapping(results));
     }
     catch (Exception x)
     {
-      LOGGER.error("Fehler beim Absetzen der Anfrage", x);
+      closeConnection(con);
+      throw x;
     }
     finally
     {
       if (results != null) {
         UNO.XComponent(results).dispose();
       }
-      if (conn != null) {
-        try
-        {
-          conn.close();
-        }
-        catch (Exception e)
-        {
-          LOGGER.trace("", e);
+    }
+  }
+
+  /**
+   * Liest alle Datensätze von results.
+   *
+   * @param mapColumnNameToIndex
+   *          Abbildung der Spalten auf die Indizes des Resultats, siehe
+   *          {@link #getColumnMapping(XResultSet)}.
+   */
+  private List<OOoDataset> readDatasets(XResultSet results, Map<String, Integer> mapColumnNameToIndex)
+      throws SQLException
+  {
+    List<OOoDataset> datasets = new ArrayList<>();
+    XRow row = UNO.XRow(results);
+
+    while (results.next())
+    {
+      Map<String, String> data = new HashMap<>();
+      Iterator<Map.Entry<String, Integer>> iter =
+        mapColumnNameToIndex.entrySet().iterator();
+      while (iter.hasNext())
+      {
+        Map.Entry<String, Integer> entry = iter.next();
+        String column = entry.getKey();
+        int idx = entry.getValue().intValue();
+        String value = null;
+        if (idx > 0) {
+          value = row.getString(idx);
         }
+        data.put(column, value);
       }
+      datasets.add(new OOoDataset(data));
+    }
+    return datasets;
+  }
+
+  /**
+   * Liefert die Verbindung zur Datenbank. Die Verbindung wird für alle Anfragen wiederverwendet,
+   * bis sie geschlossen ist oder bei einer Anfrage ein Fehler auftritt.
+   */
+  private synchronized XConnection getConnection() throws SQLException
+  {
+    if (closed)
+    {
+      throw new SQLException(L.m("Data source \"{0}\" is closed", datasourceName));
+    }
+    if (connection != null && !connection.isClosed())
+    {
+      return connection;
+    }
+    closeConnection();
+
+    XDataSource ds =
+      UNO.XDataSource(UNO.dbContext.getRegisteredObject(oooDatasourceName));
+
+    ds.setLoginTimeout((int) Datasource.getDatasourceTimeout());
+    connection = ds.getConnection(userName, password);
+    return connection;
+  }
+
+  /**
+   * Schließt alle Prepared Statements und die Verbindung zur Datenbank. Laufende Anfragen werden
+   * nicht abgewartet, sie liefern keine Datensätze mehr und ihre Statements werden geschlossen,
+   * sobald sie fertig sind.
+   */
+  @Override
+  public synchronized void close()
+  {
+    closed = true;
+    closeConnection();
+  }
+
+  /**
+   * Schließt wie {@link #closeConnection()} die Verbindung con, falls sie noch die aktuelle
+   * Verbindung ist. Ansonsten wurde sie bereits geschlossen.
+   */
+  private synchronized void closeConnection(XConnection con)
+  {
+    if (con == connection)
+    {
+      closeConnection();
     }
+  }
 
-    return new QueryResultsList(datasets);
+  /**
+   * Schließt alle vorgehaltenen Prepared Statements und die Verbindung zur Datenbank.
+   */
+  private synchronized void closeConnection()
+  {
+    statements.values().forEach(cached -> close(cached.statement));
+    statements.clear();
+    if (connection != null)
+    {
+      close(connection);
+      connection = null;
+    }
+  }
 
+  private static void close(Object closeable)
+  {
+    try
+    {
+      XCloseable xCloseable = UnoRuntime.queryInterface(XCloseable.class, closeable);
+      if (xCloseable != null)
+      {
+        xCloseable.close();
+      }
+    }
+    catch (Exception e)
+    {
+      LOGGER.trace("", e);
+    }
   }
 
   /**
@@ -676,6 +1112,101 @@ public class OOoDatasource extends Datasource
     return datasourceName;
   }
 
+  /**
+   * Eine SQL-Anfrage mit Platzhaltern "?" für die Werte in {@link #parameters}. Parallel dazu wird
+   * die Anfrage mit als Literal eingesetzten Werten aufgebaut, für Treiber ohne Prepared
+   * Statements. Die Werte sind Strings oder, für Zahlen, Longs.
+   */
+  private static class Sql
+  {
+    private final StringBuilder statement = new StringBuilder();
+
+    private final StringBuilder literal = new StringBuilder();
+
+    private final List<Object> parameters = new ArrayList<>();
+
+    Sql append(String str)
+    {
+      statement.append(str);
+      literal.append(str);
+      return this;
+    }
+
+    Sql appendParameter(String value)
+    {
+      statement.append('?');
+      literal.append(sqlLiteral(value));
+      parameters.add(value);
+      return this;
+    }
+
+    Sql appendParameter(long value)
+    {
+      statement.append('?');
+      literal.append(value);
+      parameters.add(value);
+      return this;
+    }
+
+    /**
+     * Liefert eine neue Anfrage prefix + diese Anfrage + suffix mit den gleichen Parametern.
+     */
+    Sql wrap(String prefix, String suffix)
+    {
+      Sql sql = new Sql().append(prefix);
+      sql.statement.append(statement);
+      sql.literal.append(literal);
+      sql.parameters.addAll(parameters);
+      return sql.append(suffix);
+    }
+
+    /**
+     * Liefert die Anfrage mit eingesetzten Werten und abschließendem ';'.
+     */
+    String toLiteral()
+    {
+      return literal + ";";
+    }
+
+    @Override
+    public String toString()
+    {
+      return toLiteral();
+    }
+  }
+
+  /**
+   * Ein Prepared Statement, seine Verbindung und die Abbildung der Spalten auf die Indizes seiner
+   * Resultate, die bei der ersten Ausführung ermittelt wird.
+   */
+  private static class CachedStatement
+  {
+    private final XConnection connection;
+
+    private final XPreparedStatement statement;
+
+    private Map<String, Integer> columns;
+
+    CachedStatement(XConnection connection, XPreparedStatement statement)
+    {
+      this.connection = connection;
+      this.statement = statement;
+    }
+  }
+
+  /**
+   * Der Treiber kann für eine Anfrage kein Prepared Statement erzeugen.
+   */
+  private static class PreparedStatementUnsupportedException extends Exception
+  {
+    private static final long serialVersionUID = 1L;
+
+    PreparedStatementUnsupportedException(Throwable cause)
+    {
+      super(cause);
+    }
+  }
+
   private class OOoDataset implements Dataset
   {
     private Map<String, String> data;
@@ -27,6 +27,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -102,6 +103,16 @@ public class OverlayDatasource extends Datasource
    */
   private boolean treatEmptyStringsAsNull;
 
+  /**
+   * Ergänzt Datensätze aus SOURCE um die passenden Datensätze aus OVERLAY.
+   */
+  private DatasetJoin join2;
+
+  /**
+   * Sucht zu Datensätzen aus OVERLAY die passenden Datensätze aus SOURCE.
+   */
+  private DatasetJoin join1;
+
   /**
    * Erzeugt eine neue OverlayDatasource.
    *
@@ -196,6 +207,9 @@ public class OverlayDatasource extends Datasource
         commonMatchColumns.add(spalte1);
       }
     }
+
+    join2 = new DatasetJoin(source2, match1, match2);
+    join1 = new DatasetJoin(source1, match2, match1);
   }
 
   /*
@@ -330,19 +344,13 @@ public class OverlayDatasource extends Datasource
        * 3. In einer weiteren Abfrage alle Datensätze mit den Schlüsseln aus 1. bestimmen und
        * diejenigen, die die Filterbedingung erfüllen den Ergebnissen wieder hinzufügen.
        */
-      HashSet<String> results1Keys = new HashSet<>();
-      for (Dataset ds : results1)
-      {
-        results1Keys.add(ds.getKey());
-      }
+      Set<String> results1Keys = DatasetJoin.keys(results1);
 
       List<Dataset> finalResults = new ArrayList<>(results1.size() + results2.size());
 
-      List<String> dupKeys = new ArrayList<>();
-      Iterator<Dataset> iter = results2.iterator();
-      while (iter.hasNext())
+      Set<String> dupKeys = new LinkedHashSet<>();
+      for (Dataset ds : results2)
       {
-        Dataset ds = iter.next();
         String key = ds.getKey();
         if (results1Keys.contains(key))
           dupKeys.add(key);
@@ -350,13 +358,14 @@ public class OverlayDatasource extends Datasource
           finalResults.add(ds);
       }
 
-      QueryResults results3 = getDatasetsByKey(dupKeys);
-
-      for (Dataset ds : results3)
-        if (predicate.test(ds))
-        {
-          finalResults.add(ds);
-        }
+      if (!dupKeys.isEmpty())
+      {
+        for (Dataset ds : getDatasetsByKey(dupKeys))
+          if (predicate.test(ds))
+          {
+            finalResults.add(ds);
+          }
+      }
 
       for (Dataset ds : results1)
         if (!dupKeys.contains(ds.getKey()))
@@ -424,85 +433,12 @@ public class OverlayDatasource extends Datasource
 
   private QueryResults overlayColumns(QueryResults results, Predicate<Dataset> filter)
   {
-    List<Dataset> resultsWithOverlayments = new ArrayList<>(results.size());
-
-    Iterator<Dataset> iter = results.iterator();
-    while (iter.hasNext())
-    {
-      Dataset ds = iter.next();
-
-      List<QueryPart> query = new ArrayList<>(match1.length);
-      for (int i = 0; i < match1.length; ++i)
-      {
-        try
-        {
-          query.add(new QueryPart(match2[i], ds.get(match1[i])));
-        } catch (ColumnNotFoundException x)
-        {
-          LOGGER.error("", x);
-        }
-      }
-
-      QueryResults appendix = source2.find(query);
-
-      Dataset newDataset;
-
-      if (appendix.size() == 0)
-      {
-        newDataset = new ConcatDataset(ds, null);
-        if (filter.test(newDataset))
-        {
-          resultsWithOverlayments.add(newDataset);
-        }
-      } else
-      {
-        Iterator<Dataset> appendixIter = appendix.iterator();
-        while (appendixIter.hasNext())
-        {
-          newDataset = new ConcatDataset(ds, appendixIter.next());
-          if (filter.test(newDataset))
-          {
-            resultsWithOverlayments.add(newDataset);
-            break;
-          }
-        }
-      }
-    }
-
-    return new QueryResultsList(resultsWithOverlayments);
+    return new QueryResultsList(join2.leftJoinFirst(results, ConcatDataset::new, filter));
   }
 
   private QueryResults overlayColumnsReversed(QueryResults results, Predicate<Dataset> filter)
   {
-    List<ConcatDataset> resultsWithOverlayments = new ArrayList<>(results.size());
-
-    for (Dataset ds : results)
-    {
-      List<QueryPart> query = new ArrayList<>(match1.length);
-      for (int i = 0; i < match1.length; ++i)
-      {
-        try
-        {
-          query.add(new QueryPart(match1[i], ds.get(match2[i])));
-        } catch (ColumnNotFoundException x)
-        {
-          LOGGER.error("", x);
-        }
-      }
-
-      QueryResults prependix = source1.find(query);
-
-      for (Dataset prepend : prependix)
-      {
-        ConcatDataset newDataset = new ConcatDataset(prepend, ds);
-        if (filter.test(newDataset))
-        {
-          resultsWithOverlayments.add(newDataset);
-        }
-      }
-    }
-
-    return new QueryResultsList(resultsWithOverlayments);
+    return new QueryResultsList(join1.innerJoin(results, (ds, prepend) -> new ConcatDataset(prepend, ds), filter));
   }
 
   private class ConcatDataset implements Dataset
@@ -0,0 +1,182 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2023 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.db;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * {@link QueryResults} which are loaded page by page when they are iterated.
+ *
+ * The first page is loaded by the first call of {@link Iterator#hasNext()} or {@link #isEmpty()}.
+ * A further page is only loaded if an iterator has passed all loaded datasets, so iterations which
+ * stop early never load the remaining pages. {@link #size()} has to load all pages. The loaded
+ * datasets are kept, so that further iterations don't load them again.
+ */
+public class PagedQueryResults implements QueryResults
+{
+  /**
+   * Loads a page of datasets.
+   */
+  @FunctionalInterface
+  public interface PageLoader
+  {
+    /**
+     * Load a page.
+     *
+     * @param offset
+     *          The number of datasets to skip.
+     * @param limit
+     *          The maximum number of datasets to load.
+     * @return The datasets. If there are less than limit datasets, this is the last page.
+     */
+    List<? extends Dataset> load(int offset, int limit);
+  }
+
+  private final PageLoader loader;
+
+  private final int pageSize;
+
+  private final List<Dataset> loaded = new ArrayList<>();
+
+  private boolean complete = false;
+
+  /**
+   * Create new results. No page is loaded yet.
+   *
+   * @param loader
+   *          The loader of the pages.
+   * @param pageSize
+   *          The number of datasets of a page.
+   */
+  public PagedQueryResults(PageLoader loader, int pageSize)
+  {
+    if (pageSize <= 0)
+    {
+      throw new IllegalArgumentException("pageSize has to be greater than 0");
+    }
+    this.loader = loader;
+    this.pageSize = pageSize;
+  }
+
+  /**
+   * Are all pages loaded?
+   *
+   * @return True if there aren't any further datasets to load.
+   */
+  public synchronized boolean isComplete()
+  {
+    return complete;
+  }
+
+  /**
+   * The number of datasets loaded so far.
+   *
+   * @return The number of datasets.
+   */
+  public synchronized int getLoadedCount()
+  {
+    return loaded.size();
+  }
+
+  @Override
+  public int size()
+  {
+    while (loadNextPage())
+    {
+      // load all pages
+    }
+    return getLoadedCount();
+  }
+
+  @Override
+  public boolean isEmpty()
+  {
+    return !hasDataset(0);
+  }
+
+  @Override
+  public Iterator<Dataset> iterator()
+  {
+    return new Iterator<>()
+    {
+      private int index = 0;
+
+      @Override
+      public boolean hasNext()
+      {
+        return hasDataset(index);
+      }
+
+      @Override
+      public Dataset next()
+      {
+        if (!hasNext())
+        {
+          throw new NoSuchElementException();
+        }
+        return getDataset(index++);
+      }
+    };
+  }
+
+  /**
+   * Is there a dataset at the index? Loads pages until the dataset is available or all pages are
+   * loaded.
+   */
+  private boolean hasDataset(int index)
+  {
+    while (index >= getLoadedCount())
+    {
+      if (!loadNextPage())
+      {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private synchronized Dataset getDataset(int index)
+  {
+    return loaded.get(index);
+  }
+
+  /**
+   * Load the next page.
+   *
+   * @return False if all pages have already been loaded, true otherwise.
+   */
+  private synchronized boolean loadNextPage()
+  {
+    if (complete)
+    {
+      return false;
+    }
+    List<? extends Dataset> page = loader.load(loaded.size(), pageSize);
+    loaded.addAll(page);
+    complete = page.size() < pageSize;
+    return true;
+  }
+}
@@ -204,29 +204,19 @@ public class PreferDatasource extends Datasource
        * Suchbedingung nicht mehr passt) müssen auch mit ihrem Schlüssel auf die
        * Denylist. Deswegen müssen wir diese Datensätze suchen.
        */
-      QueryResults denylistResults =
-          override.getDatasetsByKey(keyToCount.keySet());
+      Set<String> overriddenKeys = DatasetJoin.keys(overrideResults);
+      overriddenKeys.addAll(DatasetJoin.existingKeys(override, keyToCount.keySet()));
 
       size += overrideResults.size();
 
-      QueryResults[] oResults = new QueryResults[] {
-        overrideResults, denylistResults };
-
-      for (int i = 0; i < oResults.length; ++i)
+      for (String key : overriddenKeys)
       {
-        iter = oResults[i].iterator();
-        while (iter.hasNext())
+        int[] count = keyToCount.get(key);
+        if (count != null)
         {
-          Dataset ds = iter.next();
-          String key = ds.getKey();
-
-          int[] count = keyToCount.get(key);
-          if (count != null)
-          {
-            size -= count[0];
-            count[0] = 0;
-            keyDenylist.add(key);
-          }
+          size -= count[0];
+          count[0] = 0;
+          keyDenylist.add(key);
         }
       }
     }
@@ -24,8 +24,10 @@ package de.muenchen.allg.itd51.wollmux.db;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 import java.util.Vector;
 import java.util.function.Predicate;
 
@@ -49,6 +51,11 @@ public class RAMDatasource extends Datasource
    */
   private String name;
 
+  /**
+   * Die Indizes über data oder null, falls ohne Index gesucht wird.
+   */
+  private DatasetIndex index;
+
   /**
    * Erzeugt eine neue RAMDatasource mit Namen name. data und schema werden direkt als Referenz
    * eingebunden, nicht kopiert.
@@ -65,6 +72,25 @@ public class RAMDatasource extends Datasource
     init(name, schema, data);
   }
 
+  /**
+   * Erzeugt eine neue RAMDatasource mit Namen name, die optional Indizes über alle Spalten und die
+   * Schlüssel aufbaut. Die Ergebnisse sind mit und ohne Indizes die gleichen. Mit Indizes dürfen
+   * data und die Datensätze nach dem Erzeugen nicht mehr verändert werden.
+   *
+   * @param name
+   *          der Name der Datenquelle
+   * @param schema
+   *          das Schema der Datenquelle
+   * @param data
+   *          die Datensätze der Datenquelle
+   * @param indexed
+   *          true, falls Indizes aufgebaut werden sollen.
+   */
+  public RAMDatasource(String name, List<String> schema, List<Dataset> data, boolean indexed)
+  {
+    init(name, schema, data, indexed);
+  }
+
   /**
    * Erzeugt eine uninitialisierte RAMDatasource. Eine abgeleitete Klasse, die diesen Konstruktor
    * verwendet sollte init() aufrufen, um die nötigen Initialisierungen zu erledigen.
@@ -79,10 +105,19 @@ public class RAMDatasource extends Datasource
    * Argumente verwenden.
    */
   protected void init(String name, List<String> schema, List<Dataset> data)
+  {
+    init(name, schema, data, false);
+  }
+
+  /**
+   * Wie {@link #init(String, List, List)}, baut aber falls indexed true ist die Indizes auf.
+   */
+  protected void init(String name, List<String> schema, List<Dataset> data, boolean indexed)
   {
     this.schema = schema;
     this.data = data;
     this.name = name;
+    this.index = indexed ? new DatasetIndex(schema, data) : null;
   }
 
   @Override
@@ -94,12 +129,18 @@ public class RAMDatasource extends Datasource
   @Override
   public QueryResults getDatasetsByKey(Collection<String> keys)
   {
+    if (index != null)
+    {
+      return index.getDatasetsByKey(keys);
+    }
+
+    Set<String> keySet = new HashSet<>(keys);
     List<Dataset> res = new ArrayList<>();
     Iterator<Dataset> iter = data.iterator();
     while (iter.hasNext())
     {
       Dataset ds = iter.next();
-      if (keys.contains(ds.getKey()))
+      if (keySet.contains(ds.getKey()))
       {
         res.add(ds);
       }
@@ -121,6 +162,11 @@ public class RAMDatasource extends Datasource
       return new QueryResultsList(new Vector<Dataset>(0));
     }
 
+    if (index != null)
+    {
+      return index.find(query);
+    }
+
     Predicate<Dataset> pred = DatasetPredicate.makePredicate(query);
 
     List<Dataset> results = new ArrayList<>();
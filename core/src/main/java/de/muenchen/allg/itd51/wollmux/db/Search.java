@@ -24,12 +24,25 @@ package de.muenchen.allg.itd51.wollmux.db;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Stream;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import de.muenchen.allg.itd51.wollmux.config.ConfigThingy;
+import de.muenchen.allg.itd51.wollmux.util.L;
 
 /**
  * Diese Klasse stellt Methoden zur Verfügung um in Datenquellen Suchen durchzuführen.
@@ -37,6 +50,19 @@ import de.muenchen.allg.itd51.wollmux.config.ConfigThingy;
 public class Search
 {
 
+  private static final Logger LOGGER = LoggerFactory.getLogger(Search.class);
+
+  private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+  /**
+   * Führt die Anfragen einer Suche an verschiedene Datenquellen gleichzeitig aus.
+   */
+  private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(r -> {
+    Thread t = new Thread(r, "Search-" + THREAD_COUNT.incrementAndGet());
+    t.setDaemon(true);
+    return t;
+  });
+
   private Search()
   {
     // hide implicit public constructor
@@ -46,7 +72,11 @@ public class Search
    * Führt die übergebene Suchanfrage gemäß der übergebenen Suchstrategie aus und liefert die
    * Ergebnisse in einem {@link QueryResults}-Objekt zurück. Falls einer der übergebenen Parameter
    * <code>null</code> ist oder falls der queryString leer ist, wird <code>null</code>
-   * zurückgeliefert.
+   * zurückgeliefert. Die Anfragen an verschiedene Datenquellen werden gleichzeitig ausgeführt und
+   * müssen innerhalb von {@link Datasource#getDatasourceTimeout()} beantwortet werden. Die Anfragen
+   * an dieselbe Datenquelle werden nacheinander ausgeführt, da die Datenquellen nicht threadsicher
+   * sein müssen. Besteht die Suche aus nur einer Anfrage, werden die Ergebnisse seitenweise beim
+   * Iterieren geladen, aber ebenfalls nur bis zum Ablauf des Zeitlimits.
    *
    * @param queryString
    *          die Suchanfrage
@@ -56,64 +86,161 @@ public class Search
    *          Data source to use.
    * @throws IllegalArgumentException
    *           falls eine Datenquelle, in der gesucht werden soll, nicht existiert
-   * @return Results as an Iterable of Dataset as {@link QueryResults}
+   * @return Results as an Iterable of Dataset as {@link SearchResults}
    */
-  public static QueryResults search(String queryString, SearchStrategy searchStrategy,
+  public static SearchResults search(String queryString, SearchStrategy searchStrategy,
       Map<String, Datasource> datasources)
   {
     if (queryString == null || searchStrategy == null || datasources == null)
     {
       return null;
     }
+    return search(queryString, searchStrategy, datasources, Datasource.getDatasourceTimeout());
+  }
 
-    List<Query> queries = parseQuery(searchStrategy, queryString);
+  /**
+   * Wie {@link #search(String, SearchStrategy, Map)}, aber mit einem eigenen Zeitlimit. Die
+   * Ergebnisse der Datenquellen, die nicht innerhalb des Zeitlimits geantwortet haben, fehlen und
+   * die Datenquellen werden in {@link SearchResults#getTimedOutDatasources()} aufgeführt. Ebenso
+   * fehlen die Ergebnisse der Datenquellen, bei denen ein Fehler aufgetreten ist (siehe
+   * {@link SearchResults#getFailedDatasources()}).
+   *
+   * @param timeout
+   *          Zeitlimit in Millisekunden für alle Anfragen zusammen.
+   */
+  public static SearchResults search(String queryString, SearchStrategy searchStrategy,
+      Map<String, Datasource> datasources, long timeout)
+  {
+    if (queryString == null || searchStrategy == null || datasources == null)
+    {
+      return null;
+    }
 
-    QueryResults results = null;
-    List<QueryResults> listOfQueryResultsList = new ArrayList<>();
+    List<Query> queries = parseQuery(searchStrategy, queryString);
+    for (Query query : queries)
+    {
+      if (!datasources.containsKey(query.getDatasourceName()))
+      {
+        throw new IllegalArgumentException(
+            L.m("Data source \"{0}\" does not exist", query.getDatasourceName()));
+      }
+    }
 
+    Map<String, List<Query>> queriesByDatasource = new LinkedHashMap<>();
     for (Query query : queries)
     {
-      if (query.numberOfQueryParts() == 0)
+      queriesByDatasource.computeIfAbsent(query.getDatasourceName(), name -> new ArrayList<>())
+          .add(query);
+    }
+
+    // the results of several queries are merged, so they have to be loaded completely
+    boolean loadAll = queries.size() > 1;
+    long deadline = System.currentTimeMillis() + timeout;
+    Map<String, Future<List<QueryResults>>> futures = new LinkedHashMap<>();
+    for (Map.Entry<String, List<Query>> entry : queriesByDatasource.entrySet())
+    {
+      futures.put(entry.getKey(),
+          EXECUTOR.submit(() -> execute(entry.getValue(), datasources, loadAll)));
+    }
+
+    SearchResults results = new SearchResults();
+    Map<Query, QueryResults> queryResults = new IdentityHashMap<>();
+    try
+    {
+      for (Map.Entry<String, Future<List<QueryResults>>> entry : futures.entrySet())
       {
-        results = datasources.get(query.getDatasourceName()).getContents();
-      } else
+        String datasourceName = entry.getKey();
+        Future<List<QueryResults>> future = entry.getValue();
+        try
+        {
+          long remaining = deadline - System.currentTimeMillis();
+          List<QueryResults> res = future.get(Math.max(remaining, 0), TimeUnit.MILLISECONDS);
+          List<Query> datasourceQueries = queriesByDatasource.get(datasourceName);
+          for (int i = 0; i < res.size(); i++)
+          {
+            queryResults.put(datasourceQueries.get(i), res.get(i));
+          }
+        } catch (TimeoutException e)
+        {
+          future.cancel(true);
+          LOGGER.warn("Search in data source \"{}\" exceeded the time limit of {} ms.", datasourceName,
+              timeout);
+          results.addTimedOutDatasource(datasourceName);
+        } catch (ExecutionException e)
+        {
+          if (e.getCause() instanceof Error)
+          {
+            throw (Error) e.getCause();
+          }
+          LOGGER.error("Search in data source \"{}\" failed.", datasourceName, e.getCause());
+          results.addFailedDatasource(datasourceName);
+        }
+      }
+    } catch (InterruptedException e)
+    {
+      LOGGER.error("", e);
+      Thread.currentThread().interrupt();
+    } finally
+    {
+      futures.values().forEach(future -> future.cancel(true));
+    }
+
+    if (queries.size() == 1 && queryResults.containsKey(queries.get(0)))
+    {
+      // further pages are loaded lazily until the deadline
+      return new SearchResults(queryResults.get(queries.get(0)), queries.get(0).getDatasourceName(),
+          deadline, EXECUTOR);
+    }
+
+    // merge in the order of the search strategy
+    for (Query query : queries)
+    {
+      QueryResults res = queryResults.get(query);
+      if (res != null)
       {
-        results = datasources.get(query.getDatasourceName()).find(query.getQueryParts());
+        results.addAll(res);
       }
-      listOfQueryResultsList.add(results);
     }
-    return mergeListOfQueryResultsList(listOfQueryResultsList);
+    return results;
   }
 
   /**
-   * Führt die Ergenismengen zusammen. Dabei werden mehrfache Ergebnisse ausgefiltert.
+   * Execute the queries of one datasource one after another.
    *
-   * @return bereinigte Ergebnisliste.
+   * @param loadAll
+   *          If true, all pages of the results are loaded, otherwise they are loaded lazily.
+   * @return The results in the order of the queries.
    */
-  private static QueryResults mergeListOfQueryResultsList(List<QueryResults> listOfQueryResultsList)
+  private static List<QueryResults> execute(List<Query> queries, Map<String, Datasource> datasources,
+      boolean loadAll)
   {
-    QueryResultsSet results = new QueryResultsSet((o1, o2) -> {
-      if (o1.getClass() == o2.getClass() && o1.getKey() == o2.getKey())
+    List<QueryResults> results = new ArrayList<>(queries.size());
+    for (Query query : queries)
+    {
+      if (Thread.currentThread().isInterrupted())
       {
-        return 0;
+        break;
       }
-      return 1;
-    });
-
-    if (listOfQueryResultsList.size() == 1)
-    {
-      return listOfQueryResultsList.get(0);
-    } else
-    {
-      for (QueryResults queryResults : listOfQueryResultsList)
+      QueryResults res = execute(query, datasources);
+      if (loadAll)
       {
-        results.addAll(queryResults);
+        res.size();
       }
+      results.add(res);
     }
-
     return results;
   }
 
+  private static QueryResults execute(Query query, Map<String, Datasource> datasources)
+  {
+    Datasource datasource = datasources.get(query.getDatasourceName());
+    if (query.numberOfQueryParts() == 0)
+    {
+      return datasource.getContents();
+    }
+    return datasource.find(query.getQueryParts());
+  }
+
   /**
    * Liefert zur Anfrage queryString eine Liste von {@link Query}s, die der Reihe nach probiert
    * werden sollten, gemäß der Suchstrategie searchStrategy (siehe
@@ -0,0 +1,402 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2023 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.db;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The merged results of a {@link Search}. Datasets of the same class with equal keys are only
+ * contained once.
+ *
+ * If a datasource didn't answer within the timeout, the results are incomplete. The names of these
+ * datasources are available with {@link #getTimedOutDatasources()}. The same applies to datasources
+ * which failed with an exception (see {@link #getFailedDatasources()}).
+ *
+ * The results of a search with a single query aren't merged, so that they are only loaded when they
+ * are iterated (see {@link PagedQueryResults}). Pages are loaded by the executor of the search and
+ * only until the deadline of the search. If a page isn't loaded in time or loading fails, the
+ * iteration stops after the datasets loaded so far and the datasource is reported as timed out or
+ * failed.
+ */
+public class SearchResults implements QueryResults
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger(SearchResults.class);
+
+  /**
+   * The results of a single query or null if the results are merged.
+   */
+  private final QueryResults single;
+
+  /**
+   * The name of the datasource of the single query.
+   */
+  private final String datasourceName;
+
+  /**
+   * Point in time (in milliseconds) after which no further page of the single query is loaded.
+   */
+  private final long deadline;
+
+  /**
+   * Executor which loads the pages of the single query.
+   */
+  private final ExecutorService executor;
+
+  /**
+   * Iterator over the results of the single query. Only used by the tasks of the executor.
+   */
+  private Iterator<Dataset> source;
+
+  /**
+   * Guards the tasks, which load pages of the single query.
+   */
+  private final Object loadLock = new Object();
+
+  /**
+   * Datasets of the single query which have been loaded so far.
+   */
+  private final List<Dataset> loaded = new ArrayList<>();
+
+  /**
+   * No further datasets of the single query are loaded, because all have been loaded or because
+   * the deadline has passed or loading failed.
+   */
+  private boolean stopped = false;
+
+  private final List<Dataset> results = new ArrayList<>();
+
+  private final Set<Map.Entry<Class<?>, String>> identities = new HashSet<>();
+
+  private final Set<String> timedOutDatasources = Collections.synchronizedSet(new LinkedHashSet<>());
+
+  private final Set<String> failedDatasources = Collections.synchronizedSet(new LinkedHashSet<>());
+
+  /**
+   * Create empty results, which are merged with {@link #addAll(QueryResults)}.
+   */
+  SearchResults()
+  {
+    this(null, null, 0, null);
+  }
+
+  /**
+   * Create results of a single query.
+   *
+   * @param single
+   *          The results of the query.
+   * @param datasourceName
+   *          The name of the datasource of the query.
+   * @param deadline
+   *          Point in time (in milliseconds) after which no further page is loaded.
+   * @param executor
+   *          The executor which loads the pages.
+   */
+  SearchResults(QueryResults single, String datasourceName, long deadline, ExecutorService executor)
+  {
+    this.single = single;
+    this.datasourceName = datasourceName;
+    this.deadline = deadline;
+    this.executor = executor;
+  }
+
+  /**
+   * Add all datasets, which aren't already contained.
+   *
+   * @param queryResults
+   *          The new datasets.
+   */
+  void addAll(QueryResults queryResults)
+  {
+    for (Dataset ds : queryResults)
+    {
+      if (identities.add(new AbstractMap.SimpleImmutableEntry<>(ds.getClass(), ds.getKey())))
+      {
+        results.add(ds);
+      }
+    }
+  }
+
+  /**
+   * Mark a datasource as timed out.
+   *
+   * @param datasourceName
+   *          The name of the datasource.
+   */
+  void addTimedOutDatasource(String datasourceName)
+  {
+    timedOutDatasources.add(datasourceName);
+  }
+
+  /**
+   * The datasources which didn't answer within the timeout.
+   *
+   * @return The names of the datasources. Empty if the results are complete.
+   */
+  public Set<String> getTimedOutDatasources()
+  {
+    synchronized (timedOutDatasources)
+    {
+      return Collections.unmodifiableSet(new LinkedHashSet<>(timedOutDatasources));
+    }
+  }
+
+  /**
+   * Mark a datasource as failed.
+   *
+   * @param datasourceName
+   *          The name of the datasource.
+   */
+  void addFailedDatasource(String datasourceName)
+  {
+    failedDatasources.add(datasourceName);
+  }
+
+  /**
+   * The datasources which failed with an exception.
+   *
+   * @return The names of the datasources. Empty if no datasource failed.
+   */
+  public Set<String> getFailedDatasources()
+  {
+    synchronized (failedDatasources)
+    {
+      return Collections.unmodifiableSet(new LinkedHashSet<>(failedDatasources));
+    }
+  }
+
+  /**
+   * Did all datasources answer within the timeout without an error?
+   *
+   * @return True if the results are complete, false otherwise.
+   */
+  public boolean isComplete()
+  {
+    return timedOutDatasources.isEmpty() && failedDatasources.isEmpty();
+  }
+
+  @Override
+  public int size()
+  {
+    if (single == null)
+    {
+      return results.size();
+    }
+    int size = 0;
+    for (Iterator<Dataset> iter = iterator(); iter.hasNext(); iter.next())
+    {
+      size++;
+    }
+    return size;
+  }
+
+  @Override
+  public Iterator<Dataset> iterator()
+  {
+    if (single == null)
+    {
+      return Collections.unmodifiableList(results).iterator();
+    }
+    return new Iterator<>()
+    {
+      private int index = 0;
+
+      @Override
+      public boolean hasNext()
+      {
+        return hasDataset(index);
+      }
+
+      @Override
+      public Dataset next()
+      {
+        if (!hasNext())
+        {
+          throw new NoSuchElementException();
+        }
+        return getDataset(index++);
+      }
+    };
+  }
+
+  @Override
+  public boolean isEmpty()
+  {
+    return single == null ? results.isEmpty() : !hasDataset(0);
+  }
+
+  /**
+   * Is there a dataset of the single query at the index? Loads further datasets until the deadline
+   * if necessary.
+   */
+  private boolean hasDataset(int index)
+  {
+    while (true)
+    {
+      synchronized (loaded)
+      {
+        if (index < loaded.size())
+        {
+          return true;
+        }
+        if (stopped)
+        {
+          return false;
+        }
+      }
+      if (!loadWithinDeadline(index))
+      {
+        return false;
+      }
+    }
+  }
+
+  private Dataset getDataset(int index)
+  {
+    synchronized (loaded)
+    {
+      return loaded.get(index);
+    }
+  }
+
+  /**
+   * Load further datasets of the single query with the executor. If they aren't loaded until the
+   * deadline or loading fails, no further datasets are loaded.
+   *
+   * @param count
+   *          The number of datasets the caller has already seen.
+   * @return False if no further datasets could be loaded, true otherwise.
+   */
+  private boolean loadWithinDeadline(int count)
+  {
+    Future<?> future = executor.submit(() -> load(count));
+    try
+    {
+      long remaining = deadline - System.currentTimeMillis();
+      future.get(Math.max(remaining, 0), TimeUnit.MILLISECONDS);
+      return true;
+    } catch (TimeoutException e)
+    {
+      stop();
+      future.cancel(true);
+      LOGGER.warn("Loading results of data source \"{}\" exceeded the time limit.", datasourceName);
+      addTimedOutDatasource(datasourceName);
+    } catch (ExecutionException e)
+    {
+      if (e.getCause() instanceof Error)
+      {
+        throw (Error) e.getCause();
+      }
+      LOGGER.error("Loading results of data source \"{}\" failed.", datasourceName, e.getCause());
+      stop();
+      addFailedDatasource(datasourceName);
+    } catch (InterruptedException e)
+    {
+      future.cancel(true);
+      LOGGER.error("", e);
+      Thread.currentThread().interrupt();
+    }
+    return false;
+  }
+
+  /**
+   * Load the next page of the single query unless another caller has already loaded datasets
+   * beyond count. All datasets of a page are taken over, so that the next page is only loaded by
+   * the next call.
+   */
+  private void load(int count)
+  {
+    synchronized (loadLock)
+    {
+      int position;
+      synchronized (loaded)
+      {
+        if (stopped || loaded.size() > count)
+        {
+          return;
+        }
+        position = loaded.size();
+      }
+      if (source == null)
+      {
+        source = single.iterator();
+      }
+      List<Dataset> page = new ArrayList<>();
+      if (source.hasNext())
+      {
+        page.add(source.next());
+        while (!Thread.currentThread().isInterrupted() && isLoaded(position + page.size())
+            && source.hasNext())
+        {
+          page.add(source.next());
+        }
+      }
+      synchronized (loaded)
+      {
+        if (!stopped)
+        {
+          loaded.addAll(page);
+          stopped = page.isEmpty();
+        }
+      }
+    }
+  }
+
+  /**
+   * Is the dataset at the index already loaded by the results of the single query, so that it can
+   * be taken over without loading a further page?
+   */
+  private boolean isLoaded(int index)
+  {
+    if (single instanceof PagedQueryResults)
+    {
+      PagedQueryResults paged = (PagedQueryResults) single;
+      return index < paged.getLoadedCount() || paged.isComplete();
+    }
+    return true;
+  }
+
+  private void stop()
+  {
+    synchronized (loaded)
+    {
+      stopped = true;
+    }
+  }
+}
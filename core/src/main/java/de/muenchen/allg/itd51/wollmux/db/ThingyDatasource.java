@@ -56,7 +56,9 @@ public class ThingyDatasource extends RAMDatasource
    *          ThingyDatasource bereits vollständig instanziierten Datenquellen.
    * @param sourceDesc
    *          der "Datenquelle"-Knoten, der die Beschreibung dieser
-   *          ThingyDatasource enthält.
+   *          ThingyDatasource enthält. Mit INDEX "true" werden beim Laden
+   *          Indizes über alle Spalten aufgebaut, die große Datenquellen
+   *          schneller durchsuchen.
    * @param context
    *          der Kontext relativ zu dem URLs aufgelöst werden sollen.
    */
@@ -99,7 +101,7 @@ public class ThingyDatasource extends RAMDatasource
       List<Dataset> data = parseData(conf, name, schema, schemaOrdered,
           keyCols);
 
-      init(name, schema, data);
+      init(name, schema, data, Boolean.parseBoolean(sourceDesc.getString("INDEX", "false")));
     }
     catch (NodeNotFoundException x)
     {
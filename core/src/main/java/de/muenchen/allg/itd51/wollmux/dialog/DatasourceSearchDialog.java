@@ -24,6 +24,7 @@ package de.muenchen.allg.itd51.wollmux.dialog;
 
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
@@ -34,6 +35,7 @@ import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -95,6 +97,11 @@ public class DatasourceSearchDialog implements Dialog
 
   private static final String ABORT = "abort";
 
+  /**
+   * Number of search results which are added to the result list at once.
+   */
+  private static final int DISPLAY_BATCH_SIZE = 50;
+
   /**
    * The description of the dialog.
    */
@@ -399,7 +406,13 @@ public class DatasourceSearchDialog implements Dialog
     /**
      * Mapping from search results display string to the actual data set.
      */
-    Map<String, Dataset> datasets = new TreeMap<>();
+    SortedMap<String, Dataset> datasets = new TreeMap<>();
+
+    /**
+     * Counts the started searches. The results of a search are only displayed as long as no other
+     * search has been started.
+     */
+    private final AtomicInteger searchCount = new AtomicInteger();
 
     /**
      * Create a new tab.
@@ -646,29 +659,86 @@ public class DatasourceSearchDialog implements Dialog
     }
 
     /**
-     * Display the search results in the control {@link #resultsList}.
+     * Display the search results in the control {@link #resultsList}. The results are displayed
+     * in batches of {@link #DISPLAY_BATCH_SIZE}, so that the first results are visible while
+     * further results are loaded. Stops loading results as soon as another search is started.
      *
      * @param data
      *          The results of the search
+     * @param search
+     *          The number of the search, see {@link #searchCount}.
+     */
+    private void setListElements(QueryResults data, int search)
+    {
+      List<Dataset> batch = new ArrayList<>(DISPLAY_BATCH_SIZE);
+      boolean first = true;
+      for (Dataset d : data)
+      {
+        if (search != searchCount.get() || resultsList == null)
+        {
+          return;
+        }
+        batch.add(d);
+        if (batch.size() == DISPLAY_BATCH_SIZE)
+        {
+          addListElements(batch, first, search);
+          batch.clear();
+          first = false;
+        }
+      }
+      if (first || !batch.isEmpty())
+      {
+        addListElements(batch, first, search);
+      }
+    }
+
+    /**
+     * Add search results to the control {@link #resultsList}. The list stays sorted. All items
+     * from the first new one on are inserted with one call.
+     *
+     * @param data
+     *          The results.
+     * @param replace
+     *          If true, the former results are removed.
+     * @param search
+     *          The number of the search, see {@link #searchCount}.
      */
-    private void setListElements(QueryResults data)
+    private synchronized void addListElements(List<Dataset> data, boolean replace, int search)
     {
-      datasets.clear();
-      if (resultsList == null)
+      if (resultsList == null || search != searchCount.get())
       {
         return;
       }
-      if (data != null)
+      if (replace)
+      {
+        datasets.clear();
+        resultsList.removeItems((short) 0, resultsList.getItemCount());
+      }
+      String firstNew = null;
+      for (Dataset d : data)
       {
-        for (Dataset d : data)
+        String display = substituteVars(d);
+        if (datasets.put(display, d) == null && (firstNew == null || display.compareTo(firstNew) < 0))
         {
-          datasets.put(substituteVars(d), d);
+          firstNew = display;
         }
       }
-
-      resultsList.removeItems((short) 0, resultsList.getItemCount());
-      resultsList.addItems(datasets.keySet().toArray(String[]::new), (short) 0);
-      updatePreview(null);
+      if (firstNew != null)
+      {
+        // the items behind the first new one are replaced, so the batch needs only one addItems
+        int position = datasets.headMap(firstNew).size();
+        short count = resultsList.getItemCount();
+        if (position < count)
+        {
+          resultsList.removeItems((short) position, (short) (count - position));
+        }
+        resultsList.addItems(datasets.tailMap(firstNew).keySet().toArray(String[]::new),
+            (short) position);
+      }
+      if (replace)
+      {
+        updatePreview(null);
+      }
     }
 
     /**
@@ -704,6 +774,7 @@ public class DatasourceSearchDialog implements Dialog
         return;
       }
 
+      int search = searchCount.incrementAndGet();
       CompletableFuture.supplyAsync(() -> {
         QueryResults r = null;
         try
@@ -722,7 +793,7 @@ public class DatasourceSearchDialog implements Dialog
       }).thenAcceptAsync(r -> {
         if (r != null && resultsList != null)
         {
-          setListElements(columnTransformer.transform(r));
+          setListElements(columnTransformer.transform(r), search);
         }
       });
     }
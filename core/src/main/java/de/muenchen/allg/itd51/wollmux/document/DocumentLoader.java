@@ -156,6 +156,14 @@ public class DocumentLoader
     return null;
   }
 
+  /**
+   * Verwirft alle zwischengespeicherten Dokumente, z.B. weil sich die Konfiguration geändert hat.
+   */
+  public void clear()
+  {
+    cache.invalidateAll();
+  }
+
   public boolean hasDocument(String path)
   {
     return cache.getIfPresent(path) != null;
@@ -72,6 +72,7 @@ import de.muenchen.allg.itd51.wollmux.form.model.FormModelException;
 import de.muenchen.allg.itd51.wollmux.func.Function;
 import de.muenchen.allg.itd51.wollmux.func.FunctionFactory;
 import de.muenchen.allg.itd51.wollmux.func.FunctionLibrary;
+import de.muenchen.allg.itd51.wollmux.func.MemoizedFunction;
 import de.muenchen.allg.itd51.wollmux.func.Values;
 import de.muenchen.allg.itd51.wollmux.func.Values.SimpleMap;
 import de.muenchen.allg.itd51.wollmux.util.L;
@@ -1609,7 +1610,7 @@ public class TextDocumentController
 
     FunctionLibrary funcLib = getFunctionLibrary();
     Function function = FunctionFactory.parseChildren(trafoConf, funcLib, getDialogLibrary(), getFunctionContext());
-    funcLib.add(trafoName, function);
+    funcLib.add(trafoName, MemoizedFunction.memoize(function));
 
     // remove children of func, so that we can reset them later
     for (Iterator<ConfigThingy> iter = func.iterator(); iter.hasNext();)
@@ -1657,7 +1658,7 @@ public class TextDocumentController
 
     try
     {
-      funcLib.add(name, FunctionFactory.parseChildren(funcConf, funcLib, dLib, context));
+      funcLib.add(name, MemoizedFunction.memoize(FunctionFactory.parseChildren(funcConf, funcLib, dLib, context)));
 
       ConfigThingy betterNameFunc = new ConfigThingy(name);
       for (ConfigThingy func : funcConf)
@@ -23,13 +23,19 @@
 package de.muenchen.allg.itd51.wollmux.document;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -46,6 +52,10 @@ import de.muenchen.allg.itd51.wollmux.util.L;
  * und um die Beachtung der Vorrangregelung: Immer das zuletzt definierte
  * Textfragment oder die zuletzt definierte Variable gewinnt.
  *
+ * Die Textfragmente werden beim ersten Zugriff auf eine Konfiguration einmal
+ * ausgewertet und in einem Index abgelegt, der erst bei einer neuen Konfiguration
+ * neu aufgebaut wird.
+ *
  * @author Christoph Lutz (D-III-ITD 5.1)
  *
  */
@@ -55,82 +65,16 @@ public class VisibleTextFragmentList
       .getLogger(VisibleTextFragmentList.class);
 
   /**
-   * Abbruchwert zur Vermeidung von Endlosloops bei Variablenersetzungen.
+   * Findet Variablen der Form ${NAME}.
    */
-  private static final int MAXCOUNT = 100;
-
-  private VisibleTextFragmentList() {}
+  private static final Pattern VAR = Pattern.compile("\\$\\{([^\\}]*)\\}");
 
   /**
-   * Ersetzen der zu dem Block gehörende Variable VAR durch den Wert VALUE
-   *
-   * @param node
-   *          Knoten der die Url enthält die benötigt wird um die Variable zu
-   *          bestimmen die von ihm aus sichtbar ist.
-   * @param root
-   *          das ConfigThingy das die gesamte Configuration enthält
-   * @return Das ConfigThingy als String ohne Variablen.
-   * @throws EndlessLoopException
+   * Der Index der zuletzt verwendeten Konfiguration.
    */
-  private static String expandVariable(ConfigThingy node, ConfigThingy root)
-      throws EndlessLoopException
-  {
-    // Map der sichtbaren Variablen erzeugen:
-    Map<String, String> variables = new HashMap<>();
-
-    for (ConfigThingy var : ConfigThingy.getNodesVisibleAt(node, "VAR", root))
-    {
-      String name = var.getString("NAME");
-      String value = var.getString("VALUE");
+  private static volatile FragmentIndex index;
 
-      if (name != null && value != null)
-      {
-        variables.put(name, value);
-      }
-    }
-
-    LOGGER.trace("Variablenset an Knoten {} '{}':", node.getName(), node);
-    for (Map.Entry<String, String> ent : variables.entrySet())
-    {
-      LOGGER.trace("  {}=\"{}\"", ent.getKey(), ent.getValue());
-    }
-
-    // Matcher zum Finden der Variablen ersetzen:
-    String string = node.toString();
-    Pattern var = Pattern.compile("\\$\\{([^\\}]*)\\}");
-    Matcher m = var.matcher(string);
-
-    // Variablen so lange ersetzen, bis keine Variable mehr gefunden wird.
-    // Vermeidung von möglichen Endlosloops durch Abbruch nach MAXCOUNT
-    // Ersetzungen.
-    int count = 0;
-    while (m.find() && MAXCOUNT > ++count)
-    {
-      String key = m.group(1);
-      if (variables.containsKey(key))
-      {
-        string = string.substring(0, m.start()) + variables.get(key) + string.substring(m.end());
-        if (LOGGER.isTraceEnabled())
-        {
-          LOGGER.trace("  Ersetzen der Variable {} --> {}", m.group(0), string);
-        }
-        // Nach jeder Ersetzung wieder von vorne anfangen.
-        m = var.matcher(string);
-      }
-      else
-      {
-        // Die Variable kann nicht ersetzt werden und wird auch nicht
-        // ersetzt. Eine Exception muss deswegen nicht geworfen werden, es ist
-        // aber sinnvoll, die Fehlermeldung in einem Logger rauszuschreiben.
-        LOGGER.error("The variable '{}' in the URL '{}' is not defined.", key, string);
-      }
-    }
-    if (count == MAXCOUNT)
-      throw new EndlessLoopException(L.m(
-        "Infinite loop after replacing the variable in URL \"{0}\".",
-        node.toString()));
-    return string;
-  }
+  private VisibleTextFragmentList() {}
 
   /**
    * Gibt die URLs des unter der frag_id definierten Textfragmente zurück.
@@ -145,32 +89,85 @@ public class VisibleTextFragmentList
   {
     ConfigThingy.checkIdentifier(fragId);
 
-    LinkedList<ConfigThingy> tfListe = new LinkedList<>();
-    ConfigThingy tfConf = conf.query("Textfragmente");
-    Iterator<ConfigThingy> iter = tfConf.iterator();
-    while (iter.hasNext())
+    FragmentIndex fragments = index;
+    if (fragments == null || fragments.conf != conf)
     {
-      ConfigThingy confTextfragmente = iter.next();
-      tfListe.addFirst(confTextfragmente);
+      fragments = new FragmentIndex(conf);
+      index = fragments;
     }
+    return new ArrayList<>(fragments.getURLs(fragId));
+  }
+
+  /**
+   * Alle Textfragmente einer Konfiguration mit bereits ersetzten Variablen.
+   */
+  private static class FragmentIndex
+  {
+    /**
+     * Die Konfiguration des Index.
+     */
+    private final ConfigThingy conf;
+
+    /**
+     * Die Textfragmente in der Reihenfolge, in der sie durchsucht werden.
+     */
+    private final List<Fragment> fragments = new ArrayList<>();
+
+    /**
+     * Die bereits ermittelten URLs je frag_id.
+     */
+    private final Map<String, List<String>> urlsById = new ConcurrentHashMap<>();
 
-    Iterator<ConfigThingy> iterTbListe = tfListe.iterator();
-    List<String> urls = new ArrayList<>();
-    while (iterTbListe.hasNext())
+    FragmentIndex(ConfigThingy conf)
     {
-      ConfigThingy textfragmente = iterTbListe.next();
+      this.conf = conf;
 
-      ConfigThingy mappingsConf = textfragmente.queryByChild("FRAG_ID");
+      // zuletzt definierte Textfragmente-Abschnitte zuerst
+      LinkedList<ConfigThingy> tfListe = new LinkedList<>();
+      for (ConfigThingy confTextfragmente : conf.query("Textfragmente"))
+      {
+        tfListe.addFirst(confTextfragmente);
+      }
 
-      for (ConfigThingy mappingConf : mappingsConf)
+      Map<ConfigThingy, ConfigThingy> urlsByMapping = new IdentityHashMap<>();
+      List<ConfigThingy> mappings = new ArrayList<>();
+      for (ConfigThingy textfragmente : tfListe)
       {
+        for (ConfigThingy mappingConf : textfragmente.queryByChild("FRAG_ID"))
+        {
+          try
+          {
+            urlsByMapping.put(mappingConf, mappingConf.get("URL"));
+            mappings.add(mappingConf);
+          }
+          catch (NodeNotFoundException e)
+          {
+            LOGGER.trace("", e);
+            // kommt nicht vor, da obiger queryByChild immer URL liefert
+          }
+        }
+      }
 
-        String fragIdConf = null;
+      Set<ConfigThingy> urlNodes = Collections.newSetFromMap(new IdentityHashMap<>());
+      for (ConfigThingy url : urlsByMapping.values())
+      {
+        for (ConfigThingy urlNext : url)
+        {
+          urlNodes.add(urlNext);
+        }
+      }
+      Map<ConfigThingy, Variables> variables = new IdentityHashMap<>();
+      collectVariables(conf, new Variables(new HashMap<>()), urlNodes, variables);
+
+      for (ConfigThingy mappingConf : mappings)
+      {
+        String fragIdConf;
         try
         {
           fragIdConf = mappingConf.get("FRAG_ID").toString();
           // Typischen Konfigurationsfehler korrigieren
-          if (".*".equals(fragIdConf)) {
+          if (".*".equals(fragIdConf))
+          {
             fragIdConf = ".+";
           }
         }
@@ -180,38 +177,237 @@ public class VisibleTextFragmentList
           continue;
         }
 
-        ConfigThingy url = null;
+        Pattern pattern;
         try
         {
-          url = mappingConf.get("URL");
+          pattern = Pattern.compile(fragIdConf);
         }
-        catch (NodeNotFoundException e)
+        catch (PatternSyntaxException e)
         {
-          LOGGER.trace("", e);
-          // kommt nicht vor, da obiger queryByChild immer URL liefert
+          LOGGER.error("The FRAG_ID '{}' of text fragment '{}' is incorrect.", fragIdConf,
+              mappingConf.stringRepresentation(), e);
           continue;
         }
 
-        if (fragId.matches(fragIdConf))
+        List<String> urls = new ArrayList<>();
+        for (ConfigThingy urlNext : urlsByMapping.get(mappingConf))
         {
-          for (ConfigThingy urlNext : url)
+          try
           {
-            try
-            {
-              String urlStr = expandVariable(urlNext, conf);
-              urlStr = fragId.replaceAll(fragIdConf, urlStr);
-              urls.add(urlStr);
-            }
-            catch (EndlessLoopException e)
+            urls.add(variables.get(urlNext).expand(urlNext));
+          }
+          catch (EndlessLoopException e)
+          {
+            LOGGER.error("The URL for text fragment '{}' with the FRAG_ID '{}' is incorrect.",
+                mappingConf.stringRepresentation(), fragIdConf, e);
+          }
+        }
+        fragments.add(new Fragment(pattern, urls));
+      }
+    }
+
+    /**
+     * Liefert die URLs aller Textfragmente, deren FRAG_ID auf fragId passt.
+     */
+    List<String> getURLs(String fragId)
+    {
+      return urlsById.computeIfAbsent(fragId, id -> {
+        List<String> urls = new ArrayList<>();
+        for (Fragment fragment : fragments)
+        {
+          Matcher m = fragment.fragId.matcher(id);
+          if (m.matches())
+          {
+            for (String url : fragment.urls)
             {
-              LOGGER.error("The URL for text fragment '{}' with the FRAG_ID '{}' is incorrect.",
-                  mappingConf.stringRepresentation(), fragId, e);
+              urls.add(m.replaceAll(url));
             }
           }
         }
+        return urls;
+      });
+    }
+  }
+
+  /**
+   * Eine Textfragment-Definition mit den URLs nach der Variablenersetzung.
+   */
+  private static class Fragment
+  {
+    private final Pattern fragId;
+
+    private final List<String> urls;
+
+    Fragment(Pattern fragId, List<String> urls)
+    {
+      this.fragId = fragId;
+      this.urls = urls;
+    }
+  }
+
+  /**
+   * Bestimmt die Variablen, die von den Knoten in urlNodes aus sichtbar sind (siehe
+   * {@link ConfigThingy#getNodesVisibleAt(ConfigThingy, String, ConfigThingy)}). Sichtbar
+   * sind die VAR-Knoten unter node und unter allen Vorfahren von node, wobei die Variablen
+   * weiter oben im Baum Vorrang haben.
+   *
+   * @param node
+   *          Der aktuelle Knoten.
+   * @param outer
+   *          Die Variablen, die von node aus sichtbar sind.
+   * @param urlNodes
+   *          Die Knoten, deren Variablen benötigt werden.
+   * @param result
+   *          Bekommt die Variablen der Knoten aus urlNodes.
+   */
+  private static void collectVariables(ConfigThingy node, Variables outer,
+      Set<ConfigThingy> urlNodes, Map<ConfigThingy, Variables> result)
+  {
+    Map<String, String> own = new HashMap<>();
+    for (ConfigThingy child : node)
+    {
+      if ("VAR".equals(child.getName()))
+      {
+        String name = child.getString("NAME");
+        String value = child.getString("VALUE");
+
+        if (name != null && value != null)
+        {
+          own.put(name, value);
+        }
+      }
+    }
+
+    Variables visible = outer;
+    if (!own.isEmpty())
+    {
+      own.putAll(outer.values);
+      visible = new Variables(own);
+    }
+
+    for (ConfigThingy child : node)
+    {
+      if (urlNodes.contains(child))
+      {
+        result.put(child, visible);
+      }
+      if (child.count() > 0)
+      {
+        collectVariables(child, visible, urlNodes, result);
       }
     }
-    return urls;
   }
 
+  /**
+   * Die an einem Knoten sichtbaren Variablen.
+   */
+  private static class Variables
+  {
+    /**
+     * Die Werte der Variablen.
+     */
+    private final Map<String, String> values;
+
+    /**
+     * Die Werte der Variablen, in denen bereits alle Variablen ersetzt sind.
+     */
+    private final Map<String, String> expanded = new HashMap<>();
+
+    Variables(Map<String, String> values)
+    {
+      this.values = values;
+    }
+
+    /**
+     * Ersetzen der Variablen in der URL node durch ihre Werte. Variablen in den Werten
+     * werden ebenfalls ersetzt.
+     *
+     * @param node
+     *          Knoten der die Url enthält.
+     * @return Die URL ohne Variablen.
+     * @throws EndlessLoopException
+     *           Eine Variable enthält sich selbst.
+     */
+    String expand(ConfigThingy node) throws EndlessLoopException
+    {
+      if (LOGGER.isTraceEnabled())
+      {
+        LOGGER.trace("Variablenset an Knoten {} '{}':", node.getName(), node);
+        for (Map.Entry<String, String> ent : values.entrySet())
+        {
+          LOGGER.trace("  {}=\"{}\"", ent.getKey(), ent.getValue());
+        }
+      }
+      try
+      {
+        return expand(node.toString(), new HashSet<>());
+      }
+      catch (EndlessLoopException e)
+      {
+        throw new EndlessLoopException(L.m(
+          "Infinite loop after replacing the variable in URL \"{0}\".",
+          node.toString()));
+      }
+    }
+
+    private String expand(String string, Set<String> resolving) throws EndlessLoopException
+    {
+      Matcher m = VAR.matcher(string);
+      if (!m.find())
+      {
+        return string;
+      }
+
+      StringBuilder result = new StringBuilder();
+      int end = 0;
+      do
+      {
+        String key = m.group(1);
+        result.append(string, end, m.start());
+        if (values.containsKey(key))
+        {
+          result.append(resolve(key, resolving));
+        }
+        else
+        {
+          // Die Variable kann nicht ersetzt werden und wird auch nicht
+          // ersetzt. Eine Exception muss deswegen nicht geworfen werden, es ist
+          // aber sinnvoll, die Fehlermeldung in einem Logger rauszuschreiben.
+          LOGGER.error("The variable '{}' in the URL '{}' is not defined.", key, string);
+          result.append(m.group());
+        }
+        end = m.end();
+      } while (m.find());
+      result.append(string, end, string.length());
+      return result.toString();
+    }
+
+    /**
+     * Liefert den Wert einer Variablen, in dem alle Variablen ersetzt sind.
+     *
+     * @param resolving
+     *          Die Variablen, deren Werte gerade ersetzt werden.
+     * @throws EndlessLoopException
+     *           Die Variable enthält sich selbst.
+     */
+    private String resolve(String key, Set<String> resolving) throws EndlessLoopException
+    {
+      String value = expanded.get(key);
+      if (value == null)
+      {
+        if (!resolving.add(key))
+        {
+          throw new EndlessLoopException(key);
+        }
+        value = expand(values.get(key), resolving);
+        resolving.remove(key);
+        expanded.put(key, value);
+        if (LOGGER.isTraceEnabled())
+        {
+          LOGGER.trace("  Ersetzen der Variable {} --> {}", key, value);
+        }
+      }
+      return value;
+    }
+  }
 }
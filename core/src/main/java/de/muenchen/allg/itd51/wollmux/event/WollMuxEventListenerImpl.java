@@ -43,6 +43,8 @@ import de.muenchen.allg.itd51.wollmux.event.handlers.OnNotifyDocumentEventListen
 import de.muenchen.allg.itd51.wollmux.event.handlers.OnOpenDocument;
 import de.muenchen.allg.itd51.wollmux.event.handlers.OnPrint;
 import de.muenchen.allg.itd51.wollmux.event.handlers.OnPrintPage;
+import de.muenchen.allg.itd51.wollmux.event.handlers.OnReloadConfiguration;
+import de.muenchen.allg.itd51.wollmux.event.handlers.OnSendersRefreshed;
 import de.muenchen.allg.itd51.wollmux.event.handlers.OnRemoveDocumentEventListener;
 import de.muenchen.allg.itd51.wollmux.event.handlers.OnRemoveFormularMax;
 import de.muenchen.allg.itd51.wollmux.event.handlers.OnReprocessTextDocument;
@@ -195,6 +197,30 @@ public class WollMuxEventListenerImpl implements WollMuxEventListener
     event.process();
   }
 
+  /**
+   * Execute the event
+   *
+   * @param event
+   *          The event.
+   */
+  @Subscribe
+  public void onReloadConfiguration(OnReloadConfiguration event)
+  {
+    event.process();
+  }
+
+  /**
+   * Execute the event
+   *
+   * @param event
+   *          The event.
+   */
+  @Subscribe
+  public void onSendersRefreshed(OnSendersRefreshed event)
+  {
+    event.process();
+  }
+
   /**
    * Execute the event
    *
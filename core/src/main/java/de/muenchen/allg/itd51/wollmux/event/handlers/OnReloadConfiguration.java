@@ -0,0 +1,61 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2023 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.event.handlers;
+
+import java.net.URL;
+import java.util.List;
+
+import de.muenchen.allg.itd51.wollmux.ConfigReloader;
+import de.muenchen.allg.itd51.wollmux.config.ConfigThingy;
+
+/**
+ * Event for replacing the configuration after wollmux.conf or one of its included files has
+ * changed.
+ */
+public class OnReloadConfiguration extends WollMuxEvent
+{
+
+  private ConfigThingy conf;
+
+  private List<URL> urls;
+
+  /**
+   * A new reload event.
+   *
+   * @param conf
+   *          The new configuration.
+   * @param urls
+   *          The files of the new configuration.
+   */
+  public OnReloadConfiguration(ConfigThingy conf, List<URL> urls)
+  {
+    this.conf = conf;
+    this.urls = urls;
+  }
+
+  @Override
+  protected void doit()
+  {
+    ConfigReloader.apply(conf, urls);
+  }
+}
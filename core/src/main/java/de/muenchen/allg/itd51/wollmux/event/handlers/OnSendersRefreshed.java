@@ -0,0 +1,52 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2023 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.event.handlers;
+
+import de.muenchen.allg.itd51.wollmux.sender.SenderService;
+
+/**
+ * Event for applying the values of the senders, which have been read from the datasource in the
+ * background.
+ */
+public class OnSendersRefreshed extends WollMuxEvent
+{
+
+  private SenderService service;
+
+  /**
+   * A new refresh event.
+   *
+   * @param service
+   *          The service whose senders have been read.
+   */
+  public OnSendersRefreshed(SenderService service)
+  {
+    this.service = service;
+  }
+
+  @Override
+  protected void doit()
+  {
+    service.applyPendingRefresh();
+  }
+}
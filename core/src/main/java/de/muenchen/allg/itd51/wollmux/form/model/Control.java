@@ -32,6 +32,7 @@ import de.muenchen.allg.itd51.wollmux.dialog.DialogLibrary;
 import de.muenchen.allg.itd51.wollmux.func.Function;
 import de.muenchen.allg.itd51.wollmux.func.FunctionFactory;
 import de.muenchen.allg.itd51.wollmux.func.FunctionLibrary;
+import de.muenchen.allg.itd51.wollmux.func.MemoizedFunction;
 import de.muenchen.allg.itd51.wollmux.func.Values;
 import de.muenchen.allg.itd51.wollmux.func.Values.SimpleMap;
 import de.muenchen.allg.itd51.wollmux.ui.UIElementConfig;
@@ -116,7 +117,8 @@ public class Control
     type = conf.getType();
     try
     {
-      plausi = FunctionFactory.parseGrandchildren(conf.getPlausi(), funcLib, dialogLib, functionContext);
+      plausi = MemoizedFunction
+          .memoize(FunctionFactory.parseGrandchildren(conf.getPlausi(), funcLib, dialogLib, functionContext));
       if (plausi == null)
       {
         plausi = FunctionFactory.alwaysTrueFunction();
@@ -127,8 +129,8 @@ public class Control
     }
     try
     {
-      autofill = Optional
-          .ofNullable(FunctionFactory.parseGrandchildren(conf.getAutofill(), funcLib, dialogLib, functionContext));
+      autofill = Optional.ofNullable(MemoizedFunction
+          .memoize(FunctionFactory.parseGrandchildren(conf.getAutofill(), funcLib, dialogLib, functionContext)));
     } catch (ConfigurationErrorException e)
     {
       autofill = Optional.empty();
@@ -220,6 +222,11 @@ public class Control
     }
   }
 
+  public List<Control> getDependingAutoFillFormFields()
+  {
+    return dependingAutoFillFormFields;
+  }
+
   /**
    * Add a dependency for an AUTOFILL function.
    *
@@ -228,7 +235,15 @@ public class Control
    */
   public void addDependingAutoFillFormField(Control control)
   {
-    dependingAutoFillFormFields.add(control);
+    if (!dependingAutoFillFormFields.contains(control))
+    {
+      dependingAutoFillFormFields.add(control);
+    }
+  }
+
+  public List<Control> getDependingPlausiFormFields()
+  {
+    return dependingPlausiFormFields;
   }
 
   /**
@@ -239,34 +254,9 @@ public class Control
    */
   public void addDependingPlausiFormField(Control control)
   {
-    dependingPlausiFormFields.add(control);
-  }
-
-  /**
-   * Compute the value of all dependent fields. The value is only computed once for each control.
-   *
-   * @param value
-   *          The new value of this control.
-   * @param values
-   *          The values of all fields.
-   * @param modified
-   *          Already computed fields.
-   */
-  public void computeNewValues(String value, SimpleMap values, SimpleMap modified)
-  {
-    modified.put(id, value);
-    SimpleMap newValues = new SimpleMap(values);
-    newValues.putAll(modified);
-    for (Control control : dependingAutoFillFormFields)
+    if (!dependingPlausiFormFields.contains(control))
     {
-      if (!modified.hasValue(control.id))
-      {
-        String v = control.computeValue(newValues);
-        if (v != null)
-        {
-          control.computeNewValues(v, newValues, modified);
-        }
-      }
+      dependingPlausiFormFields.add(control);
     }
   }
 
@@ -0,0 +1,319 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2023 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.form.model;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.muenchen.allg.itd51.wollmux.func.Function;
+import de.muenchen.allg.itd51.wollmux.func.Values.SimpleMap;
+
+/**
+ * The dependencies between the controls and visibility groups of a form.
+ *
+ * The dependencies of the AUTOFILL functions are sorted topologically when the graph is created.
+ * A new value is propagated in this order, so that each AUTOFILL function is evaluated at most
+ * once and only after all controls it depends on have their new value. Functions are only
+ * evaluated if one of their parameters has changed. All functions are evaluated with one map of
+ * the current values, which is updated incrementally.
+ */
+class DependencyGraph
+{
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(DependencyGraph.class);
+
+  /**
+   * All controls in topological order of their AUTOFILL dependencies.
+   */
+  private final List<Control> order;
+
+  /**
+   * Mapping from controls to their position in {@link #order}.
+   */
+  private final Map<Control, Integer> rank = new HashMap<>();
+
+  /**
+   * The current values of all controls.
+   */
+  private final SimpleMap values = new SimpleMap();
+
+  /**
+   * Create the dependencies of the controls. The dependencies are added to the controls.
+   *
+   * @param controls
+   *          Mapping from control IDs to controls.
+   * @param groups
+   *          The visibility groups.
+   */
+  DependencyGraph(Map<String, Control> controls, Collection<VisibilityGroup> groups)
+  {
+    for (Control control : controls.values())
+    {
+      control.getAutofill().ifPresent(
+          autofill -> dependencies(autofill, control.getId(), controls)
+              .forEach(c -> c.addDependingAutoFillFormField(control)));
+      dependencies(control.getPlausi(), control.getId(), controls)
+          .forEach(c -> c.addDependingPlausiFormField(control));
+      control.addDependingPlausiFormField(control);
+      values.put(control.getId(), control.getValue());
+    }
+    for (VisibilityGroup group : groups)
+    {
+      for (String param : group.getCondition().parameters())
+      {
+        Control control = controls.get(param);
+        if (control != null)
+        {
+          control.addDependingGroup(group);
+        }
+      }
+    }
+
+    order = sort(controls.values());
+    for (int i = 0; i < order.size(); i++)
+    {
+      rank.put(order.get(i), i);
+    }
+  }
+
+  /**
+   * Get all controls in topological order of their AUTOFILL dependencies. If a control depends on
+   * other controls, it's after them in the list.
+   *
+   * @return The controls.
+   */
+  List<Control> getControls()
+  {
+    return order;
+  }
+
+  /**
+   * The current values of all controls. The map is updated by {@link #setValue(Control, String)}
+   * and mustn't be modified by callers.
+   *
+   * @return The values.
+   */
+  SimpleMap getValues()
+  {
+    return values;
+  }
+
+  /**
+   * Set the value of a control without updating the depending controls.
+   *
+   * @param control
+   *          The control.
+   * @param value
+   *          The new value.
+   */
+  void initValue(Control control, String value)
+  {
+    control.setValue(value);
+    values.put(control.getId(), value);
+  }
+
+  /**
+   * Set the value of a control and update all controls and visibility groups, which depend on it.
+   *
+   * @param control
+   *          The control.
+   * @param value
+   *          The new value.
+   * @return The modified controls and visibility groups.
+   */
+  Changes setValue(Control control, String value)
+  {
+    Changes changes = new Changes();
+    Set<Control> visited = new LinkedHashSet<>();
+    PriorityQueue<Control> dirty = new PriorityQueue<>((c1, c2) -> rank.get(c1) - rank.get(c2));
+
+    visited.add(control);
+    initValue(control, value);
+    changes.controls.add(control);
+    dirty.addAll(control.getDependingAutoFillFormFields());
+
+    while (!dirty.isEmpty())
+    {
+      Control next = dirty.poll();
+      if (!visited.add(next))
+      {
+        continue;
+      }
+      String newValue = next.computeValue(values);
+      if (newValue != null && !newValue.equals(next.getValue()))
+      {
+        initValue(next, newValue);
+        changes.controls.add(next);
+        dirty.addAll(next.getDependingAutoFillFormFields());
+      }
+    }
+
+    Set<Control> checked = new LinkedHashSet<>();
+    Set<VisibilityGroup> groups = new LinkedHashSet<>();
+    for (Control changed : changes.controls)
+    {
+      checked.addAll(changed.getDependingPlausiFormFields());
+      groups.addAll(changed.getDependingGroups());
+    }
+    for (Control c : checked)
+    {
+      c.setOkay(values);
+      changes.checkedControls.add(c);
+    }
+    for (VisibilityGroup group : groups)
+    {
+      boolean visible = group.isVisible();
+      group.computeVisibility(values);
+      if (visible != group.isVisible())
+      {
+        changes.groups.add(group);
+      }
+    }
+    return changes;
+  }
+
+  /**
+   * Get the controls referenced by the parameters of a function.
+   *
+   * @param function
+   *          The function.
+   * @param id
+   *          The ID of the control or group with this function.
+   * @param controls
+   *          Mapping from control IDs to controls.
+   * @return The referenced controls.
+   */
+  private static List<Control> dependencies(Function function, String id, Map<String, Control> controls)
+  {
+    List<Control> dependencies = new ArrayList<>();
+    for (String param : function.parameters())
+    {
+      Control control = controls.get(param);
+      if (control == null)
+      {
+        LOGGER.warn("Unbekanntes Controlelement {} wird referenziert in {}", param, id);
+      } else
+      {
+        dependencies.add(control);
+      }
+    }
+    return dependencies;
+  }
+
+  /**
+   * Sort the controls topologically by their AUTOFILL dependencies (Kahn's algorithm). The order of
+   * independent controls is kept. Controls with cyclic dependencies are logged and appended in
+   * their original order. Their values are computed at most once for each change.
+   *
+   * @param controls
+   *          The controls.
+   * @return The sorted controls.
+   */
+  private static List<Control> sort(Collection<Control> controls)
+  {
+    Map<Control, Integer> inDegree = new HashMap<>();
+    for (Control control : controls)
+    {
+      inDegree.putIfAbsent(control, 0);
+      for (Control dependent : control.getDependingAutoFillFormFields())
+      {
+        inDegree.merge(dependent, 1, Integer::sum);
+      }
+    }
+
+    List<Control> sorted = new ArrayList<>(controls.size());
+    Deque<Control> ready = controls.stream().filter(c -> inDegree.get(c) == 0)
+        .collect(Collectors.toCollection(ArrayDeque::new));
+    while (!ready.isEmpty())
+    {
+      Control control = ready.poll();
+      sorted.add(control);
+      for (Control dependent : control.getDependingAutoFillFormFields())
+      {
+        if (inDegree.merge(dependent, -1, Integer::sum) == 0)
+        {
+          ready.add(dependent);
+        }
+      }
+    }
+
+    if (sorted.size() < controls.size())
+    {
+      List<Control> cyclic = controls.stream().filter(c -> inDegree.get(c) > 0)
+          .collect(Collectors.toList());
+      LOGGER.error("Zyklische Abhängigkeit der AUTOFILL-Funktionen von {}",
+          cyclic.stream().map(Control::getId).collect(Collectors.toList()));
+      sorted.addAll(cyclic);
+    }
+    return Collections.unmodifiableList(sorted);
+  }
+
+  /**
+   * The controls and visibility groups modified by {@link DependencyGraph#setValue(Control, String)}.
+   */
+  static class Changes
+  {
+    private final List<Control> controls = new ArrayList<>();
+
+    private final List<Control> checkedControls = new ArrayList<>();
+
+    private final List<VisibilityGroup> groups = new ArrayList<>();
+
+    /**
+     * The controls with a new value in the order of their modification.
+     */
+    List<Control> getControls()
+    {
+      return controls;
+    }
+
+    /**
+     * The controls whose PLAUSI function has been evaluated.
+     */
+    List<Control> getCheckedControls()
+    {
+      return checkedControls;
+    }
+
+    /**
+     * The visibility groups whose visibility has changed.
+     */
+    List<VisibilityGroup> getGroups()
+    {
+      return groups;
+    }
+  }
+}
@@ -30,7 +30,6 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.stream.Stream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -42,7 +41,6 @@ import de.muenchen.allg.itd51.wollmux.form.config.TabConfig;
 import de.muenchen.allg.itd51.wollmux.form.config.VisibilityGroupConfig;
 import de.muenchen.allg.itd51.wollmux.form.sidebar.FormSidebarController;
 import de.muenchen.allg.itd51.wollmux.func.FunctionLibrary;
-import de.muenchen.allg.itd51.wollmux.func.Values;
 import de.muenchen.allg.itd51.wollmux.func.Values.SimpleMap;
 import de.muenchen.allg.itd51.wollmux.ui.UIElementConfig;
 
@@ -79,6 +77,11 @@ public class FormModel
    */
   private final Map<String, Control> formControls = new LinkedHashMap<>();
 
+  /**
+   * The dependencies between the controls and visibility groups.
+   */
+  private final DependencyGraph dependencies;
+
   /**
    * Mapping from function dialog names to controls whose AUTOFILL dependens on this dialog.
    */
@@ -141,9 +144,10 @@ public class FormModel
         addFormField(new Control(config, funcLib, dialogLib, functionContext));
       }
     }
+    dependencies = new DependencyGraph(formControls, visiblities.values());
     for (Control control : formControls.values())
     {
-      storeDepsForFormField(control);
+      storeAutofillFunctionDialogDeps(control);
     }
 
     this.initControls(presetValues);
@@ -157,8 +161,8 @@ public class FormModel
   private void initControls(Map<String, String> presetValues)
   {
     // Initialize controls with preset values or AUTOFILL function
-    SimpleMap values = idToValue();
-    for (Control control : formControls.values())
+    SimpleMap values = dependencies.getValues();
+    for (Control control : dependencies.getControls())
     {
       String value = "";
       if (presetValues.containsKey(control.getId()))
@@ -171,8 +175,7 @@ public class FormModel
       if (!value.equals(control.getValue()))
       {
         txtDocController.setValueChanged(control.getId(), value);
-        control.setValue(value);
-        values.put(control.getId(), value);
+        dependencies.initValue(control, value);
       }
     }
 
@@ -182,7 +185,7 @@ public class FormModel
     }
     for (VisibilityGroup group : visiblities.values())
     {
-      storeDepsForVisibility(group);
+      group.computeVisibility(values);
     }
   }
 
@@ -256,8 +259,9 @@ public class FormModel
   }
 
   /**
-   * Set the value of a control and notify the listeners. All depending controls are updated. For
-   * all changed controls the state is computed.
+   * Set the value of a control and notify the listeners. All depending controls are updated in
+   * topological order. For all controls whose PLAUSI depends on a changed control the state is
+   * computed. Listeners are only notified about changed values and visibilities.
    *
    * @param id
    *          The ID of the control.
@@ -266,39 +270,32 @@ public class FormModel
    */
   public void setValue(final String id, final String value)
   {
-    if (formControls.containsKey(id) && !formControls.get(id).getValue().equals(value))
+    Control field = formControls.get(id);
+    if (field != null && !field.getValue().equals(value))
     {
-      Control field = formControls.get(id);
-      SimpleMap modified = new SimpleMap();
-
-      // compute dependent controls
-      field.computeNewValues(value, idToValue(), modified);
-      SimpleMap newValues = idToValue();
-      newValues.putAll(modified);
-      List<VisibilityGroup> modifiedGroups = new ArrayList<>();
+      DependencyGraph.Changes changes = dependencies.setValue(field, value);
 
-      // update values and notify listener
-      for (Map.Entry<String, String> changedEntries : modified)
+      // notify listener
+      for (Control control : changes.getControls())
       {
-        Control control = formControls.get(changedEntries.getKey());
-        control.setValue(changedEntries.getValue());
-        control.setOkay(newValues);
         formSidebarController.setFormUiValue(control.getId(), control.getValue());
-        formSidebarController.setControlBackground(control.getId(), control.isOkay(), false);
         txtDocController.setValueChanged(control.getId(), control.getValue());
-        modifiedGroups.addAll(control.getDependingGroups());
       }
-      modifiedGroups.forEach(g -> g.computeVisibility(newValues));
+      for (Control control : changes.getCheckedControls())
+      {
+        formSidebarController.setControlBackground(control.getId(), control.isOkay(), false);
+      }
 
-        for (VisibilityGroup g : modifiedGroups)
+      for (VisibilityGroup g : changes.getGroups())
+      {
+        if (txtDocController != null && formSidebarController != null)
         {
-          if (txtDocController != null && formSidebarController != null) {
-            //update vis. in doc
-            txtDocController.setVisibilityChanged(g.getGroupId(), g.isVisible());
-            //update vis in form-ui
-            formSidebarController.visibilityChanged(g.getGroupId());
-          }
+          // update vis. in doc
+          txtDocController.setVisibilityChanged(g.getGroupId(), g.isVisible());
+          // update vis in form-ui
+          formSidebarController.visibilityChanged(g.getGroupId());
         }
+      }
     }
   }
 
@@ -374,7 +371,7 @@ public class FormModel
     for (Control c : mapDialogNameToListOfControlsWithDependingAutofill.get(dialogName))
     {
       c.getAutofill()
-          .ifPresent(autofill -> setValue(c.getId(), autofill.getResult(idToValue())));
+          .ifPresent(autofill -> setValue(c.getId(), autofill.getResult(dependencies.getValues())));
     }
   }
 
@@ -390,21 +387,6 @@ public class FormModel
     return formControls.containsKey(fieldId);
   }
 
-  /**
-   * Create a mapping from control ID to control value.
-   *
-   * @return A mapping which can be used as function parameter.
-   */
-  private SimpleMap idToValue()
-  {
-    SimpleMap values = new Values.SimpleMap();
-    for (Map.Entry<String, Control> entry : formControls.entrySet())
-    {
-      values.put(entry.getKey(), entry.getValue().getValue());
-    }
-    return values;
-  }
-
   /**
    * Add a dependencies for all function dialogs which are referenced by the AUTOFILL function.
    *
@@ -443,65 +425,6 @@ public class FormModel
     formControls.put(control.getId(), control);
   }
 
-  /**
-   * Computes for a control the dependency to other controls. Should be called after all controls
-   * have been added to the model.
-   *
-   * @param control
-   *          The new control for which we want the dependencies.
-   */
-  private void storeDepsForFormField(Control control)
-  {
-    storeDeps(control);
-    storeAutofillFunctionDialogDeps(control);
-  }
-
-  /**
-   * Compute the visibility of a visibility group and add the dependencies to the controls.
-   *
-   * @param group
-   *          A visibility group.
-   */
-  private void storeDepsForVisibility(VisibilityGroup group)
-  {
-    String[] deps = group.getCondition().parameters();
-    for (int i = 0; i < deps.length; ++i)
-    {
-      String elementId = deps[i];
-      if (formControls.containsKey(elementId))
-      {
-        formControls.get(elementId).addDependingGroup(group);
-      }
-    }
-
-    group.computeVisibility(idToValue());
-  }
-
-  /**
-   * Compute the dependency on other controls based on the PLAUSI and AUTOFILL function.
-   *
-   * @param control
-   *          The control which may depend on others.
-   */
-  private void storeDeps(Control control)
-  {
-    control.getAutofill().ifPresent(autofill -> Stream.of(autofill
-        .parameters())
-        .filter(id -> {
-          if (!formControls.containsKey(id))
-            LOGGER.warn("Unbekanntes Controlelement {} wird referenziert in {}", id,
-                    control.getId());
-          return formControls.containsKey(id);
-        }).map(formControls::get).forEach(f -> f.addDependingAutoFillFormField(control)));
-    Stream.of(control.getPlausi().parameters()).filter(id -> {
-      if (!formControls.containsKey(id))
-        LOGGER.warn("Unbekanntes Controlelement {} wird referenziert in {}", id,
-                control.getId());
-      return formControls.containsKey(id);
-    }).map(formControls::get).forEach(f -> f.addDependingPlausiFormField(control));
-    control.addDependingPlausiFormField(control);
-  }
-
   /**
    * Notifies the listener with the current values and states.
    *
@@ -30,6 +30,7 @@ import de.muenchen.allg.itd51.wollmux.form.config.VisibilityGroupConfig;
 import de.muenchen.allg.itd51.wollmux.func.Function;
 import de.muenchen.allg.itd51.wollmux.func.FunctionFactory;
 import de.muenchen.allg.itd51.wollmux.func.FunctionLibrary;
+import de.muenchen.allg.itd51.wollmux.func.MemoizedFunction;
 import de.muenchen.allg.itd51.wollmux.func.Values;
 
 /**
@@ -70,7 +71,8 @@ public class VisibilityGroup
     groupId = conf.getGroupId();
     try
     {
-      condition = FunctionFactory.parseChildren(conf.getCondition(), funcLib, dialogLib, functionContext);
+      condition = MemoizedFunction
+          .memoize(FunctionFactory.parseChildren(conf.getCondition(), funcLib, dialogLib, functionContext));
       if (condition == null)
       {
         condition = FunctionFactory.alwaysTrueFunction();
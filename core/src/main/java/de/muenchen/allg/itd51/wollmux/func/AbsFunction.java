@@ -22,6 +22,7 @@
  */
 package de.muenchen.allg.itd51.wollmux.func;
 
+import java.math.BigDecimal;
 import java.util.Map;
 
 import de.muenchen.allg.itd51.wollmux.config.ConfigThingy;
@@ -36,8 +37,8 @@ public class AbsFunction extends SumFunction
   }
 
   @Override
-  protected String computationResult()
+  protected BigDecimal numericComputationResult()
   {
-    return formatBigDecimal(numericComputationResult().abs());
+    return super.numericComputationResult().abs();
   }
 }
@@ -24,6 +24,7 @@ package de.muenchen.allg.itd51.wollmux.func;
 
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -38,14 +39,32 @@ import de.muenchen.allg.itd51.wollmux.util.L;
 
 public class BindFunction implements Function
 {
-  private Map<String, Function> mapParamNameToSetFunction = new HashMap<>();
+  private final Map<String, Function> mapParamNameToSetFunction = new HashMap<>();
 
-  private Function func;
+  private final Function func;
 
   private String[] params;
 
   private Set<String> functionDialogReferences = new HashSet<>();
 
+  /**
+   * Erzeugt ein BIND, das die Parameter aus setFunctions an die jeweilige Funktion
+   * bindet.
+   */
+  BindFunction(Function func, Map<String, Function> setFunctions)
+  {
+    this.func = func;
+    mapParamNameToSetFunction.putAll(setFunctions);
+    Set<String> myParams = new HashSet<>(Arrays.asList(func.parameters()));
+    myParams.removeAll(setFunctions.keySet());
+    for (Function setFunc : setFunctions.values())
+    {
+      myParams.addAll(Arrays.asList(setFunc.parameters()));
+      setFunc.getFunctionDialogReferences(functionDialogReferences);
+    }
+    params = myParams.toArray(new String[0]);
+  }
+
   public BindFunction(Function func, ConfigThingy conf, FunctionLibrary funcLib,
       DialogLibrary dialogLib, Map<Object, Object> context)
   {
@@ -98,6 +117,22 @@ public class BindFunction implements Function
     params = myParams.toArray(new String[0]);
   }
 
+  /**
+   * Liefert die Funktion, an die die Parameter gebunden werden.
+   */
+  Function getFunction()
+  {
+    return func;
+  }
+
+  /**
+   * Liefert die gebundenen Funktionen zu den Namen der Parameter.
+   */
+  Map<String, Function> getSetFunctions()
+  {
+    return Collections.unmodifiableMap(mapParamNameToSetFunction);
+  }
+
   @Override
   public String[] parameters()
   {
@@ -66,6 +66,12 @@ public class DiffFunction extends NumberFunction
   @Override
   protected String computationResult()
   {
-    return formatBigDecimal(sum);
+    return formatBigDecimal(numericComputationResult());
+  }
+
+  @Override
+  protected BigDecimal numericComputationResult()
+  {
+    return sum;
   }
 }
@@ -24,18 +24,16 @@ package de.muenchen.allg.itd51.wollmux.func;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
-import java.text.DecimalFormat;
-import java.text.NumberFormat;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Set;
 
-public class DivideFunction implements Function
+public class DivideFunction implements NumericFunction
 {
-  private Function dividendFunction;
+  Function dividendFunction;
 
-  private Function divisorFunction = null;
+  Function divisorFunction = null;
 
   private int minScale;
 
@@ -43,6 +41,8 @@ public class DivideFunction implements Function
 
   private String[] params;
 
+  private char decimalPoint;
+
   /**
    * Wenn divisorFunction null ist wird 1 angenommen.
    */
@@ -58,6 +58,7 @@ public class DivideFunction implements Function
     this.divisorFunction = divisorFunction;
     this.minScale = minScale;
     this.maxScale = maxScale;
+    decimalPoint = NumberFunction.getDecimalPoint();
   }
 
   @Override
@@ -74,52 +75,31 @@ public class DivideFunction implements Function
   }
 
   @Override
-  public String getResult(Values parameters)
-  { // TESTED
-    char decimalPoint;
-    try
-    {
-      decimalPoint =
-        ((DecimalFormat) NumberFormat.getInstance()).getDecimalFormatSymbols().getDecimalSeparator();
-    }
-    catch (Exception x)
-    {
-      decimalPoint = '.';
-    }
-
-    String dividend = dividendFunction.getResult(parameters);
-    if (dividend == FunctionLibrary.ERROR) return FunctionLibrary.ERROR;
-
-    String divisor = "1";
-    if (divisorFunction != null) divisor = divisorFunction.getResult(parameters);
-    if (divisor == FunctionLibrary.ERROR) return FunctionLibrary.ERROR;
+  public BigDecimal getNumber(Values parameters)
+  {
+    BigDecimal dividend = NumberFunction.evaluateNumber(dividendFunction, parameters, decimalPoint);
+    if (dividend == null) return null;
 
-    /*
-     * Falls der Dezimaltrenner nicht '.' ist, ersetzte alle '.' durch etwas, das
-     * kein Dezimaltrenner ist, um eine NumberFormatException beim Konvertieren zu
-     * provozieren. Dies ist eine Vorsichtsmaßnahme, da '.' zum Beispiel in
-     * Deutschland alls Gruppierungszeichen verwendet wird und wir wollen nicht
-     * fälschlicher weise "100.000" als 100 interpretieren, wenn die eingebende
-     * Person 100000 gemeint hat.
-     */
-    if (decimalPoint != '.')
-    {
-      dividend = dividend.replace('.', 'ß');
-      divisor = divisor.replace('.', 'ß');
-    }
+    BigDecimal divisor = BigDecimal.ONE;
+    if (divisorFunction != null)
+      divisor = NumberFunction.evaluateNumber(divisorFunction, parameters, decimalPoint);
+    if (divisor == null) return null;
 
-    BigDecimal bigResult;
     try
     {
-      BigDecimal bigDividend = new BigDecimal(dividend.replace(decimalPoint, '.'));
-      BigDecimal bigDivisor = new BigDecimal(divisor.replace(decimalPoint, '.'));
-
-      bigResult = bigDividend.divide(bigDivisor, maxScale, RoundingMode.HALF_UP);
+      return dividend.divide(divisor, maxScale, RoundingMode.HALF_UP);
     }
-    catch (Exception x)
+    catch (ArithmeticException x)
     {
-      return FunctionLibrary.ERROR;
+      return null;
     }
+  }
+
+  @Override
+  public String getResult(Values parameters)
+  { // TESTED
+    BigDecimal bigResult = getNumber(parameters);
+    if (bigResult == null) return FunctionLibrary.ERROR;
 
     /*
      * NumberFormat kann leider nicht zum formatieren verwendet werden, da es nur
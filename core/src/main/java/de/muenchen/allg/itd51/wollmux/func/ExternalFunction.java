@@ -66,6 +66,12 @@ public class ExternalFunction
    */
   private String[] params;
 
+  /**
+   * Ist die Funktion als reine Funktion markiert, deren Ergebnis nur von den
+   * Parametern abhängt?
+   */
+  private boolean pure;
+
   /**
    * Erzeugt aus einem ConfigThingy (übergeben wird der EXTERN-Knoten) eine
    * ExternalFunction, wobei zum Laden von Java-Klassen der selbe ClassLoader wie für
@@ -143,6 +149,7 @@ public class ExternalFunction
     }
 
     params = paramList.toArray(new String[] {});
+    pure = Boolean.parseBoolean(conf.getString("PURE", "false"));
   }
 
   /**
@@ -153,6 +160,15 @@ public class ExternalFunction
     return params;
   }
 
+  /**
+   * Liefert true, falls die Funktion mit PURE "true" als reine Funktion markiert
+   * ist, deren Ergebnis nur von ihren Parametern abhängt.
+   */
+  public boolean isPure()
+  {
+    return pure;
+  }
+
   /**
    * Ruft die Funktion auf mit den String-Parametern aus parameters.
    *
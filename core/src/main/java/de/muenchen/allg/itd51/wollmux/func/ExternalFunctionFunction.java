@@ -44,6 +44,15 @@ public class ExternalFunctionFunction implements Function
     func = new ExternalFunction(conf, ConfClassLoader.getClassLoader());
   }
 
+  /**
+   * Liefert true, falls die Funktion in ihrer Definition mit PURE "true" als reine
+   * Funktion markiert ist, deren Ergebnis nur von ihren Parametern abhängt.
+   */
+  public boolean isPure()
+  {
+    return func.isPure();
+  }
+
   @Override
   public String[] parameters()
   {
@@ -0,0 +1,644 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2023 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.func;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Übersetzt einen Function-Baum in eine Kette von {@link MethodHandle}s, so dass
+ * bei der Auswertung der Baum nicht mehr durchlaufen werden muss. Funktionen, die
+ * nicht übersetzt werden können (z.B. EXTERN oder DIALOG), werden weiterhin
+ * interpretiert.
+ *
+ * Die übersetzte Funktion verhält sich genau wie die ursprüngliche Funktion. Das
+ * gilt nicht nur für das Ergebnis, sondern auch dafür, wie oft und in welcher
+ * Reihenfolge die {@link Values} gelesen und die an BIND gebundenen Funktionen
+ * ausgewertet werden. Eine SET-Funktion wird also wie bei {@link BindFunction} bei
+ * jedem Zugriff auf den gebundenen Parameter ausgewertet.
+ *
+ * Ob die Funktionen der Konfiguration übersetzt werden, legt
+ * {@link FunctionFactory#setCompileFunctions(boolean)} fest.
+ */
+public class FunctionCompiler
+{
+  private static final MethodHandle VALUE;
+
+  private static final MethodHandle IS_TRUE;
+
+  private static final MethodHandle CAT;
+
+  private static final MethodHandle CAT_STEP;
+
+  private static final MethodHandle CAT_END;
+
+  private static final MethodHandle LENGTH;
+
+  private static final MethodHandle AND;
+
+  private static final MethodHandle OR;
+
+  private static final MethodHandle NOT;
+
+  private static final MethodHandle IF;
+
+  private static final MethodHandle IF_BOOLEAN;
+
+  private static final MethodHandle MATCH;
+
+  private static final MethodHandle REPLACE;
+
+  private static final MethodHandle SPLIT;
+
+  private static final MethodHandle SELECT;
+
+  private static final MethodHandle SELECT_END;
+
+  private static final MethodHandle IS_ERROR;
+
+  private static final MethodHandle IS_ERROR_BOOLEAN;
+
+  private static final MethodHandle BIND;
+
+  private static final MethodHandle BIND_BOOLEAN;
+
+  private static final MethodHandle INTERPRET;
+
+  private static final MethodHandle INTERPRET_BOOLEAN;
+
+  static
+  {
+    MethodHandles.Lookup lookup = MethodHandles.lookup();
+    MethodType result = MethodType.methodType(String.class, Values.class);
+    MethodType bool = MethodType.methodType(boolean.class, Values.class);
+    try
+    {
+      VALUE = lookup.findStatic(FunctionCompiler.class, "value",
+          result.insertParameterTypes(0, String.class));
+      IS_TRUE = lookup.findStatic(FunctionCompiler.class, "isTrue",
+          MethodType.methodType(boolean.class, String.class));
+      CAT = lookup.findStatic(FunctionCompiler.class, "cat",
+          result.insertParameterTypes(0, MethodHandle.class));
+      CAT_STEP = lookup.findStatic(FunctionCompiler.class, "catStep", result
+          .insertParameterTypes(0, MethodHandle.class, MethodHandle.class, StringBuilder.class));
+      CAT_END = MethodHandles.dropArguments(lookup.findVirtual(StringBuilder.class, "toString",
+          MethodType.methodType(String.class)), 1, Values.class);
+      LENGTH = lookup.findStatic(FunctionCompiler.class, "length",
+          MethodType.methodType(String.class, String.class));
+      AND = lookup.findStatic(FunctionCompiler.class, "and",
+          result.insertParameterTypes(0, MethodHandle.class, MethodHandle.class));
+      OR = lookup.findStatic(FunctionCompiler.class, "or",
+          result.insertParameterTypes(0, MethodHandle.class, MethodHandle.class));
+      NOT = lookup.findStatic(FunctionCompiler.class, "not",
+          result.insertParameterTypes(0, MethodHandle.class, MethodHandle.class));
+      IF = lookup.findStatic(FunctionCompiler.class, "ifThenElse", result
+          .insertParameterTypes(0, MethodHandle.class, MethodHandle.class, MethodHandle.class));
+      IF_BOOLEAN = lookup.findStatic(FunctionCompiler.class, "ifThenElseBoolean", bool
+          .insertParameterTypes(0, MethodHandle.class, MethodHandle.class, MethodHandle.class));
+      MATCH = lookup.findStatic(FunctionCompiler.class, "match",
+          result.insertParameterTypes(0, Pattern.class, MethodHandle.class));
+      REPLACE = lookup.findStatic(FunctionCompiler.class, "replace", result
+          .insertParameterTypes(0, Pattern.class, MethodHandle.class, MethodHandle.class));
+      SPLIT = lookup.findStatic(FunctionCompiler.class, "split",
+          result.insertParameterTypes(0, String.class, int.class, MethodHandle.class));
+      SELECT = lookup.findStatic(FunctionCompiler.class, "select", result.insertParameterTypes(0,
+          MethodHandle.class, MethodHandle.class, MethodHandle.class, String.class));
+      SELECT_END = MethodHandles.dropArguments(MethodHandles.identity(String.class), 1,
+          Values.class);
+      IS_ERROR = lookup.findStatic(FunctionCompiler.class, "isError",
+          MethodType.methodType(String.class, boolean.class, String.class));
+      IS_ERROR_BOOLEAN = lookup.findStatic(FunctionCompiler.class, "isErrorBoolean",
+          MethodType.methodType(boolean.class, boolean.class, String.class));
+      BIND = lookup.findStatic(FunctionCompiler.class, "bind",
+          result.insertParameterTypes(0, Map.class, MethodHandle.class));
+      BIND_BOOLEAN = lookup.findStatic(FunctionCompiler.class, "bindBoolean",
+          bool.insertParameterTypes(0, Map.class, MethodHandle.class));
+      INTERPRET = lookup.findStatic(FunctionCompiler.class, "interpret",
+          result.insertParameterTypes(0, Function.class));
+      INTERPRET_BOOLEAN = lookup.findStatic(FunctionCompiler.class, "interpretBoolean",
+          bool.insertParameterTypes(0, Function.class));
+    } catch (ReflectiveOperationException e)
+    {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  private FunctionCompiler()
+  {
+    // hide public ctor
+  }
+
+  /**
+   * Liefert eine Funktion, die sich wie function verhält, aber nicht mehr den
+   * Function-Baum interpretiert. Ist function null oder bereits übersetzt, wird
+   * function geliefert.
+   */
+  public static Function compile(Function function)
+  {
+    if (function == null || function instanceof CompiledFunction)
+    {
+      return function;
+    }
+    return new CompiledFunction(function, result(function), bool(function));
+  }
+
+  /**
+   * Liefert ein MethodHandle vom Typ (Values)String, das
+   * {@link Function#getResult(Values)} von function entspricht.
+   */
+  private static MethodHandle result(Function function)
+  {
+    MethodHandle handle = lower(function);
+    if (handle == null)
+    {
+      handle = INTERPRET.bindTo(function);
+    }
+    return handle;
+  }
+
+  /**
+   * Liefert ein MethodHandle vom Typ (Values)boolean, das
+   * {@link Function#getBoolean(Values)} von function entspricht.
+   */
+  private static MethodHandle bool(Function function)
+  {
+    Class<?> type = function.getClass();
+    if (type == StringLiteralFunction.class)
+    {
+      return constant(boolean.class,
+          ((StringLiteralFunction) function).getLiteral().equalsIgnoreCase("true"));
+    } else if (type == LengthFunction.class)
+    {
+      return constant(boolean.class, false);
+    } else if (type == IfFunction.class)
+    {
+      IfFunction f = (IfFunction) function;
+      return MethodHandles.insertArguments(IF_BOOLEAN, 0, result(f.getCondition()),
+          bool(f.getThenFunction()), bool(f.getElseFunction()));
+    } else if (type == IsErrorFunction.class)
+    {
+      IsErrorFunction f = (IsErrorFunction) function;
+      return MethodHandles.filterReturnValue(result(f.getFunction()),
+          MethodHandles.insertArguments(IS_ERROR_BOOLEAN, 0, f.isObjectCompare()));
+    } else if (type == BindFunction.class)
+    {
+      BindFunction f = (BindFunction) function;
+      return MethodHandles.insertArguments(BIND_BOOLEAN, 0, setters(f), bool(f.getFunction()));
+    }
+
+    MethodHandle handle = lower(function);
+    if (handle == null)
+    {
+      return INTERPRET_BOOLEAN.bindTo(function);
+    }
+    return MethodHandles.filterReturnValue(handle, IS_TRUE);
+  }
+
+  /**
+   * Übersetzt die bekannten Funktionen. Unterklassen werden nicht übersetzt, da sie
+   * das Verhalten ändern können.
+   *
+   * @return null, falls function interpretiert werden muss.
+   */
+  private static MethodHandle lower(Function function)
+  {
+    Class<?> type = function.getClass();
+    if (type == StringLiteralFunction.class)
+    {
+      return constant(String.class, ((StringLiteralFunction) function).getLiteral());
+    } else if (type == AlwaysTrueFunction.class)
+    {
+      return constant(String.class, "true");
+    } else if (type == ValueFunction.class)
+    {
+      return MethodHandles.insertArguments(VALUE, 0, ((ValueFunction) function).params[0]);
+    } else if (type == CatFunction.class)
+    {
+      return cat((MultiFunction) function);
+    } else if (type == LengthFunction.class)
+    {
+      return MethodHandles.filterReturnValue(cat((MultiFunction) function), LENGTH);
+    } else if (type == AndFunction.class)
+    {
+      return chain(AND, ((MultiFunction) function).subFunction, constant(String.class, "true"));
+    } else if (type == OrFunction.class)
+    {
+      return chain(OR, ((MultiFunction) function).subFunction, constant(String.class, "false"));
+    } else if (type == NotFunction.class)
+    {
+      return chain(NOT, ((MultiFunction) function).subFunction, constant(String.class, "false"));
+    } else if (type == IfFunction.class)
+    {
+      IfFunction f = (IfFunction) function;
+      return MethodHandles.insertArguments(IF, 0, result(f.getCondition()),
+          result(f.getThenFunction()), result(f.getElseFunction()));
+    } else if (type == MatchFunction.class)
+    {
+      MatchFunction f = (MatchFunction) function;
+      return MethodHandles.insertArguments(MATCH, 0, f.getPattern(), result(f.getInput()));
+    } else if (type == ReplaceFunction.class)
+    {
+      ReplaceFunction f = (ReplaceFunction) function;
+      return MethodHandles.insertArguments(REPLACE, 0, f.getPattern(), result(f.getInput()),
+          result(f.getReplace()));
+    } else if (type == SplitFunction.class)
+    {
+      SplitFunction f = (SplitFunction) function;
+      return MethodHandles.insertArguments(SPLIT, 0, f.getRegex(), f.getIndex(),
+          result(f.getInput()));
+    } else if (type == SelectFunction.class)
+    {
+      SelectFunction f = (SelectFunction) function;
+      MethodHandle onError = f.getOnErrorFunction() == null ? null
+          : result(f.getOnErrorFunction());
+      MethodHandle select = chain(MethodHandles.insertArguments(SELECT, 2, onError),
+          f.subFunction, SELECT_END);
+      return MethodHandles.insertArguments(select, 0, FunctionLibrary.ERROR);
+    } else if (type == IsErrorFunction.class)
+    {
+      IsErrorFunction f = (IsErrorFunction) function;
+      return MethodHandles.filterReturnValue(result(f.getFunction()),
+          MethodHandles.insertArguments(IS_ERROR, 0, f.isObjectCompare()));
+    } else if (type == BindFunction.class)
+    {
+      BindFunction f = (BindFunction) function;
+      return MethodHandles.insertArguments(BIND, 0, setters(f), result(f.getFunction()));
+    }
+    return null;
+  }
+
+  /**
+   * Übersetzt die SET-Funktionen von function. Sie werden mit den Values ausgewertet,
+   * die das BIND bekommt.
+   */
+  private static Map<String, MethodHandle> setters(BindFunction function)
+  {
+    Map<String, MethodHandle> setters = new HashMap<>();
+    for (Map.Entry<String, Function> entry : function.getSetFunctions().entrySet())
+    {
+      setters.put(entry.getKey(), result(entry.getValue()));
+    }
+    return setters;
+  }
+
+  private static MethodHandle cat(MultiFunction function)
+  {
+    return MethodHandles.insertArguments(CAT, 0, chain(CAT_STEP, function.subFunction, CAT_END));
+  }
+
+  /**
+   * Verkettet die Funktionen mit step. Jeder Schritt bekommt seine Funktion und den
+   * nächsten Schritt gebunden, der letzte Schritt ist end. Die Handles werden nicht
+   * in einem Array abgelegt, damit der JIT-Compiler sie als Konstanten behandeln
+   * und die ganze Kette inlinen kann.
+   */
+  private static MethodHandle chain(MethodHandle step, Collection<Function> functions,
+      MethodHandle end)
+  {
+    List<MethodHandle> handles = new ArrayList<>(functions.size());
+    for (Function f : functions)
+    {
+      handles.add(result(f));
+    }
+    MethodHandle handle = end;
+    for (int i = handles.size() - 1; i >= 0; i--)
+    {
+      handle = MethodHandles.insertArguments(step, 0, handles.get(i), handle);
+    }
+    return handle;
+  }
+
+  private static MethodHandle constant(Class<?> type, Object value)
+  {
+    return MethodHandles.dropArguments(MethodHandles.constant(type, value), 0, Values.class);
+  }
+
+  private static String invoke(MethodHandle handle, Values values)
+  {
+    try
+    {
+      return (String) handle.invokeExact(values);
+    } catch (RuntimeException | Error e)
+    {
+      throw e;
+    } catch (Throwable e)
+    {
+      // Functions don't throw checked exceptions.
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static boolean invokeBoolean(MethodHandle handle, Values values)
+  {
+    try
+    {
+      return (boolean) handle.invokeExact(values);
+    } catch (RuntimeException | Error e)
+    {
+      throw e;
+    } catch (Throwable e)
+    {
+      // Functions don't throw checked exceptions.
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static String value(String id, Values values)
+  {
+    if (!values.hasValue(id)) return FunctionLibrary.ERROR;
+    return values.getString(id);
+  }
+
+  private static boolean isTrue(String str)
+  {
+    return str.equalsIgnoreCase("true");
+  }
+
+  private static String cat(MethodHandle parts, Values values) throws Throwable
+  {
+    return (String) parts.invokeExact(new StringBuilder(), values);
+  }
+
+  private static String catStep(MethodHandle part, MethodHandle next, StringBuilder res,
+      Values values) throws Throwable
+  {
+    String str = (String) part.invokeExact(values);
+    if (str == FunctionLibrary.ERROR) return FunctionLibrary.ERROR;
+    res.append(str);
+    return (String) next.invokeExact(res, values);
+  }
+
+  private static String length(String str)
+  {
+    if (str == FunctionLibrary.ERROR) return FunctionLibrary.ERROR;
+    return "" + str.length();
+  }
+
+  private static String and(MethodHandle condition, MethodHandle next, Values values)
+      throws Throwable
+  {
+    String str = (String) condition.invokeExact(values);
+    if (str == FunctionLibrary.ERROR) return FunctionLibrary.ERROR;
+    if (!str.equalsIgnoreCase("true")) return "false";
+    return (String) next.invokeExact(values);
+  }
+
+  private static String or(MethodHandle condition, MethodHandle next, Values values)
+      throws Throwable
+  {
+    String str = (String) condition.invokeExact(values);
+    if (str == FunctionLibrary.ERROR) return FunctionLibrary.ERROR;
+    if (str.equalsIgnoreCase("true")) return "true";
+    return (String) next.invokeExact(values);
+  }
+
+  private static String not(MethodHandle condition, MethodHandle next, Values values)
+      throws Throwable
+  {
+    String str = (String) condition.invokeExact(values);
+    if (str == FunctionLibrary.ERROR) return FunctionLibrary.ERROR;
+    if (!str.equalsIgnoreCase("true")) return "true";
+    return (String) next.invokeExact(values);
+  }
+
+  private static String ifThenElse(MethodHandle condition, MethodHandle then,
+      MethodHandle otherwise, Values values) throws Throwable
+  {
+    String str = (String) condition.invokeExact(values);
+    if (str == FunctionLibrary.ERROR) return FunctionLibrary.ERROR;
+    if (str.equalsIgnoreCase("true"))
+      return (String) then.invokeExact(values);
+    else
+      return (String) otherwise.invokeExact(values);
+  }
+
+  private static boolean ifThenElseBoolean(MethodHandle condition, MethodHandle then,
+      MethodHandle otherwise, Values values) throws Throwable
+  {
+    String str = (String) condition.invokeExact(values);
+    if (str == FunctionLibrary.ERROR) return false;
+    if (str.equalsIgnoreCase("true"))
+      return (boolean) then.invokeExact(values);
+    else
+      return (boolean) otherwise.invokeExact(values);
+  }
+
+  private static String match(Pattern pattern, MethodHandle input, Values values)
+      throws Throwable
+  {
+    String str = (String) input.invokeExact(values);
+    if (str == FunctionLibrary.ERROR) return FunctionLibrary.ERROR;
+    if (pattern.matcher(str).matches()) return "true";
+    return "false";
+  }
+
+  private static String replace(Pattern pattern, MethodHandle input, MethodHandle replace,
+      Values values) throws Throwable
+  {
+    String str = (String) input.invokeExact(values);
+    String repStr = (String) replace.invokeExact(values);
+    if (str == FunctionLibrary.ERROR || repStr == FunctionLibrary.ERROR)
+      return FunctionLibrary.ERROR;
+    return pattern.matcher(str).replaceAll(repStr);
+  }
+
+  private static String split(String regex, int index, MethodHandle input, Values values)
+      throws Throwable
+  {
+    String str = (String) input.invokeExact(values);
+    if (str == FunctionLibrary.ERROR) return FunctionLibrary.ERROR;
+    String[] a = str.split(regex);
+    if (index < 0 || index >= a.length) return "";
+    return a[index];
+  }
+
+  private static String select(MethodHandle alternative, MethodHandle next,
+      MethodHandle onError, String result, Values values) throws Throwable
+  {
+    String str = (String) alternative.invokeExact(values);
+    if (str != FunctionLibrary.ERROR)
+    {
+      if (str.length() > 0) return str;
+      result = str;
+    } else if (onError != null)
+    {
+      return (String) onError.invokeExact(values);
+    }
+    return (String) next.invokeExact(result, values);
+  }
+
+  private static String isError(boolean objectCompare, String str)
+  {
+    return isErrorBoolean(objectCompare, str) ? "true" : "false";
+  }
+
+  private static boolean isErrorBoolean(boolean objectCompare, String str)
+  {
+    if (objectCompare)
+    {
+      return FunctionLibrary.ERROR == str;
+    }
+    return FunctionLibrary.ERROR.equals(str);
+  }
+
+  private static String bind(Map<String, MethodHandle> setters, MethodHandle function,
+      Values values) throws Throwable
+  {
+    BoundValues bound = new BoundValues(setters, values);
+    String res = (String) function.invokeExact((Values) bound);
+    if (bound.hasError) return FunctionLibrary.ERROR;
+    return res;
+  }
+
+  private static boolean bindBoolean(Map<String, MethodHandle> setters, MethodHandle function,
+      Values values) throws Throwable
+  {
+    BoundValues bound = new BoundValues(setters, values);
+    boolean res = (boolean) function.invokeExact((Values) bound);
+    if (bound.hasError) return false;
+    return res;
+  }
+
+  private static String interpret(Function function, Values values)
+  {
+    return function.getResult(values);
+  }
+
+  private static boolean interpretBoolean(Function function, Values values)
+  {
+    return function.getBoolean(values);
+  }
+
+  /**
+   * Die Values innerhalb eines übersetzten BIND. Wie bei {@link BindFunction} wird
+   * die SET-Funktion eines gebundenen Parameters bei jedem Zugriff ausgewertet.
+   */
+  private static final class BoundValues implements Values
+  {
+    private final Map<String, MethodHandle> setters;
+
+    private final Values values;
+
+    private boolean hasError = false;
+
+    BoundValues(Map<String, MethodHandle> setters, Values values)
+    {
+      this.setters = setters;
+      this.values = values;
+    }
+
+    @Override
+    public boolean hasValue(String id)
+    {
+      if (setters.containsKey(id)) return true;
+      return values.hasValue(id);
+    }
+
+    @Override
+    public String getString(String id)
+    {
+      MethodHandle setter = setters.get(id);
+      if (setter != null)
+      {
+        String res = invoke(setter, values);
+        if (res == FunctionLibrary.ERROR)
+        {
+          hasError = true;
+          return "";
+        }
+        return res;
+      }
+      return values.getString(id);
+    }
+
+    @Override
+    public boolean getBoolean(String id)
+    {
+      MethodHandle setter = setters.get(id);
+      if (setter != null)
+      {
+        String res = invoke(setter, values);
+        if (res == FunctionLibrary.ERROR)
+        {
+          hasError = true;
+          return false;
+        }
+        return res.equalsIgnoreCase("true");
+      }
+      return values.getBoolean(id);
+    }
+  }
+
+  /**
+   * Eine übersetzte Funktion.
+   */
+  static final class CompiledFunction implements Function
+  {
+    /**
+     * Die ursprüngliche Funktion.
+     */
+    final Function function;
+
+    private final MethodHandle result;
+
+    private final MethodHandle bool;
+
+    CompiledFunction(Function function, MethodHandle result, MethodHandle bool)
+    {
+      this.function = function;
+      this.result = result;
+      this.bool = bool;
+    }
+
+    @Override
+    public String[] parameters()
+    {
+      return function.parameters();
+    }
+
+    @Override
+    public void getFunctionDialogReferences(Collection<String> set)
+    {
+      function.getFunctionDialogReferences(set);
+    }
+
+    @Override
+    public String getResult(Values parameters)
+    {
+      return invoke(result, parameters);
+    }
+
+    @Override
+    public boolean getBoolean(Values parameters)
+    {
+      return invokeBoolean(bool, parameters);
+    }
+  }
+}
@@ -24,6 +24,7 @@ package de.muenchen.allg.itd51.wollmux.func;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -56,11 +57,38 @@ public class FunctionFactory
    */
   private static final Function myAlwaysTrueFunction = new AlwaysTrueFunction();
 
+  /**
+   * Falls true, werden die Funktionen aus {@link #parseFunctions(FunctionLibrary,
+   * ConfigThingy, String, DialogLibrary, Map)} und {@link #parseTrafos(ConfigThingy,
+   * String, FunctionLibrary, DialogLibrary, Map)} mit dem {@link FunctionCompiler}
+   * übersetzt.
+   */
+  private static volatile boolean compileFunctions = false;
+
   private FunctionFactory()
   {
     // hide public ctor
   }
 
+  /**
+   * Legt fest, ob geparste Funktionsbibliotheken und Spaltenumsetzungen mit dem
+   * {@link FunctionCompiler} übersetzt werden. Gilt für alle Funktionen, die danach
+   * geparst werden. Per Default werden die Funktionen interpretiert.
+   */
+  public static void setCompileFunctions(boolean compile)
+  {
+    compileFunctions = compile;
+  }
+
+  /**
+   * Liefert true, falls geparste Funktionsbibliotheken und Spaltenumsetzungen
+   * übersetzt werden.
+   */
+  public static boolean isCompileFunctions()
+  {
+    return compileFunctions;
+  }
+
   /**
    * Liefert eine Funktion, die immer true liefert.
    */
@@ -723,7 +751,11 @@ public class FunctionFactory
 
   /**
    * Parst die Inhalte von conf,query(section) als Funktionsdefinitionen und fügt sie
-   * funcs hinzu.
+   * funcs hinzu. Die Funktionen werden mit einem gemeinsamen
+   * {@link FunctionOptimizer} optimiert. Reine Funktionen werden als
+   * {@link MemoizedFunction} hinzugefügt, wobei gleiche Funktionen denselben
+   * Zwischenspeicher verwenden. Ist {@link #isCompileFunctions()} gesetzt, werden die
+   * Funktionen vorher übersetzt.
    *
    * @param context
    *          der Kontext in dem die Funktionsdefinitionen ausgewertet werden sollen
@@ -737,6 +769,8 @@ public class FunctionFactory
       Map<Object, Object> context)
   {
     conf = conf.query(section);
+    FunctionOptimizer optimizer = new FunctionOptimizer();
+    Map<Function, Function> memoized = new IdentityHashMap<>();
     Iterator<ConfigThingy> parentIter = conf.iterator();
     while (parentIter.hasNext())
     {
@@ -747,9 +781,13 @@ public class FunctionFactory
         String name = funcConf.getName();
         try
         {
-          Function func =
-            parseChildren(funcConf, funcs, dialogLib, context);
-          funcs.add(name, func);
+          Function func = optimizer.optimize(
+            parseChildren(funcConf, funcs, dialogLib, context));
+          if (LOGGER.isDebugEnabled())
+          {
+            LOGGER.debug("Function {}: {}", name, FunctionOptimizer.dump(func));
+          }
+          funcs.add(name, memoized.computeIfAbsent(func, f -> MemoizedFunction.memoize(compile(f))));
         }
         catch (ConfigurationErrorException e)
         {
@@ -767,6 +805,7 @@ public class FunctionFactory
       DialogLibrary dialogLib, Map<Object, Object> context)
   {
     Map<String, Function> trafos = new HashMap<>();
+    FunctionOptimizer optimizer = new FunctionOptimizer();
     Iterator<ConfigThingy> suIter = trafoConf.query(nodeName, 1).iterator();
     while (suIter.hasNext())
     {
@@ -781,7 +820,7 @@ public class FunctionFactory
           if (func == null)
             throw new ConfigurationErrorException(
                 L.m("Empty functions definition is not allowed. Instead use the empty string \"\""));
-          trafos.put(name, func);
+          trafos.put(name, compile(optimizer.optimize(func)));
         } catch (ConfigurationErrorException e)
         {
           LOGGER.error(L.m("Error during parsing of the column replacement "
@@ -791,4 +830,13 @@ public class FunctionFactory
     }
     return trafos;
   }
+
+  private static Function compile(Function func)
+  {
+    if (compileFunctions)
+    {
+      return FunctionCompiler.compile(func);
+    }
+    return func;
+  }
 }
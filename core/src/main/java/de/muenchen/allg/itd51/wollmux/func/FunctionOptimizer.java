@@ -0,0 +1,627 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2023 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.func;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+/**
+ * Vereinfacht geparste Function-Bäume, ohne ihr Ergebnis zu verändern.
+ *
+ * <ul>
+ * <li>Konstante Teilbäume werden zu {@link StringLiteralFunction}s ausgewertet.</li>
+ * <li>Aufeinanderfolgende Literale in CAT werden zusammengefasst.</li>
+ * <li>IF mit konstanter Bedingung wird durch den entsprechenden Zweig ersetzt, AND,
+ * OR, NOT und SELECT werden nach einem entscheidenden Literal abgeschnitten.</li>
+ * <li>Gleiche Teilbäume werden durch dieselbe Instanz ersetzt, auch über mehrere
+ * Funktionen hinweg, die mit demselben FunctionOptimizer optimiert werden.</li>
+ * </ul>
+ *
+ * Nur die eingebauten Funktionen ohne Seiteneffekte werden verändert. Teilbäume
+ * mit anderen Funktionen (z.B. DIALOG oder EXTERN ohne PURE) werden nie ausgewertet
+ * oder entfernt. Da die Parameter der neuen Funktionen neu berechnet werden, liefert
+ * {@link Function#parameters()} keine Parameter mehr, die nur in nie
+ * ausgewerteten Zweigen verwendet wurden.
+ */
+public class FunctionOptimizer
+{
+  private final Map<Function, Function> optimized = new IdentityHashMap<>();
+
+  private final Map<String, Function> canonical = new HashMap<>();
+
+  /**
+   * Liefert eine Funktion, die dieselben Ergebnisse wie function liefert. Ist
+   * function null, wird null geliefert.
+   */
+  public Function optimize(Function function)
+  {
+    if (function == null)
+    {
+      return null;
+    }
+    Function result = optimized.get(function);
+    if (result == null)
+    {
+      result = canonicalize(fold(simplify(function)));
+      optimized.put(function, result);
+      optimized.put(result, result);
+    }
+    return result;
+  }
+
+  /**
+   * Liefert eine Darstellung von function in der Syntax der Funktionsdefinitionen.
+   * Funktionen, die der FunctionOptimizer nicht kennt, werden mit ihrem
+   * Klassennamen dargestellt.
+   */
+  public static String dump(Function function)
+  {
+    StringBuilder buffy = new StringBuilder();
+    dump(function, buffy);
+    return buffy.toString();
+  }
+
+  private Function simplify(Function function)
+  {
+    Class<?> type = function.getClass();
+    if (type == CatFunction.class)
+    {
+      return simplifyCat(optimizeAll(((MultiFunction) function).subFunction));
+    } else if (type == AndFunction.class)
+    {
+      List<Function> conditions = truncate(optimizeAll(((MultiFunction) function).subFunction),
+          "true", true);
+      return conditions.isEmpty() ? new StringLiteralFunction("true") : new AndFunction(conditions);
+    } else if (type == OrFunction.class)
+    {
+      List<Function> conditions = truncate(optimizeAll(((MultiFunction) function).subFunction),
+          "true", false);
+      return conditions.isEmpty() ? new StringLiteralFunction("false") : new OrFunction(conditions);
+    } else if (type == NotFunction.class)
+    {
+      List<Function> conditions = truncate(optimizeAll(((MultiFunction) function).subFunction),
+          "true", true);
+      return conditions.isEmpty() ? new StringLiteralFunction("false") : new NotFunction(conditions);
+    } else if (type == IfFunction.class)
+    {
+      IfFunction f = (IfFunction) function;
+      return simplifyIf(optimize(f.getCondition()), optimize(f.getThenFunction()),
+          optimize(f.getElseFunction()));
+    } else if (type == MatchFunction.class)
+    {
+      MatchFunction f = (MatchFunction) function;
+      return new MatchFunction(optimize(f.getInput()), f.getPattern());
+    } else if (type == ReplaceFunction.class)
+    {
+      ReplaceFunction f = (ReplaceFunction) function;
+      return new ReplaceFunction(optimize(f.getInput()), f.getPattern(), optimize(f.getReplace()));
+    } else if (type == SplitFunction.class)
+    {
+      SplitFunction f = (SplitFunction) function;
+      return new SplitFunction(optimize(f.getInput()), Pattern.compile(f.getRegex()), f.getIndex());
+    } else if (type == SelectFunction.class)
+    {
+      SelectFunction f = (SelectFunction) function;
+      return new SelectFunction(truncateSelect(optimizeAll(f.subFunction)),
+          optimize(f.getOnErrorFunction()));
+    } else if (type == IsErrorFunction.class)
+    {
+      IsErrorFunction f = (IsErrorFunction) function;
+      return new IsErrorFunction(f.isObjectCompare(), optimize(f.getFunction()));
+    } else if (type == BindFunction.class)
+    {
+      BindFunction f = (BindFunction) function;
+      Map<String, Function> setFunctions = new HashMap<>();
+      f.getSetFunctions().forEach((name, setFunc) -> setFunctions.put(name, optimize(setFunc)));
+      return new BindFunction(optimize(f.getFunction()), setFunctions);
+    }
+    return function;
+  }
+
+  private List<Function> optimizeAll(Collection<Function> functions)
+  {
+    List<Function> result = new ArrayList<>(functions.size());
+    for (Function f : functions)
+    {
+      result.add(optimize(f));
+    }
+    return result;
+  }
+
+  /**
+   * Fasst aufeinanderfolgende Literale zusammen und entfernt alles nach einem
+   * Literal {@link FunctionLibrary#ERROR}.
+   */
+  private static Function simplifyCat(List<Function> parts)
+  {
+    parts = truncate(parts, null, false);
+    List<Function> merged = new ArrayList<>();
+    StringBuilder literal = new StringBuilder();
+    for (Function part : parts)
+    {
+      if (part instanceof StringLiteralFunction && literal(part) != FunctionLibrary.ERROR)
+      {
+        literal.append(literal(part));
+        continue;
+      }
+      if (literal.length() > 0)
+      {
+        merged.add(new StringLiteralFunction(literal.toString()));
+        literal.setLength(0);
+      }
+      merged.add(part);
+    }
+    if (literal.length() > 0 || merged.isEmpty())
+    {
+      merged.add(new StringLiteralFunction(literal.toString()));
+    }
+
+    if (merged.size() == 1 && isStringValued(merged.get(0)))
+    {
+      return merged.get(0);
+    }
+    return new CatFunction(merged);
+  }
+
+  private static Function simplifyIf(Function condition, Function then, Function otherwise)
+  {
+    if (condition instanceof StringLiteralFunction)
+    {
+      String literal = literal(condition);
+      if (literal == FunctionLibrary.ERROR)
+      {
+        if (isPure(then) && isPure(otherwise))
+        {
+          return condition;
+        }
+      } else if (literal.equalsIgnoreCase("true"))
+      {
+        if (isPure(otherwise))
+        {
+          return then;
+        }
+      } else if (isPure(then))
+      {
+        return otherwise;
+      }
+    }
+    return new IfFunction(condition, then, otherwise);
+  }
+
+  /**
+   * Entfernt bei AND, OR und NOT Literale, die das Ergebnis nicht beeinflussen und
+   * alle Funktionen nach einem Literal, das das Ergebnis festlegt.
+   *
+   * @param neutral
+   *          Falls nicht null, werden Literale entfernt, die (ohne Berücksichtigung
+   *          von Groß-/Kleinschreibung) gleich neutral sind bzw. ungleich, falls
+   *          equalsNeutral false ist. Alle anderen Literale beenden die Auswertung.
+   *          Falls null, beendet nur {@link FunctionLibrary#ERROR} die Auswertung.
+   */
+  private static List<Function> truncate(List<Function> functions, String neutral,
+      boolean equalsNeutral)
+  {
+    List<Function> result = new ArrayList<>(functions.size());
+    for (int i = 0; i < functions.size(); i++)
+    {
+      Function f = functions.get(i);
+      if (f instanceof StringLiteralFunction && neutral != null)
+      {
+        String literal = literal(f);
+        if (literal != FunctionLibrary.ERROR
+            && literal.equalsIgnoreCase(neutral) == equalsNeutral)
+        {
+          continue;
+        }
+      }
+      result.add(f);
+      if (f instanceof StringLiteralFunction
+          && (neutral != null || literal(f) == FunctionLibrary.ERROR)
+          && allPure(functions.subList(i + 1, functions.size())))
+      {
+        break;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Entfernt bei SELECT alle Funktionen nach einem nicht leeren Literal.
+   */
+  private static List<Function> truncateSelect(List<Function> functions)
+  {
+    for (int i = 0; i < functions.size(); i++)
+    {
+      Function f = functions.get(i);
+      if (f instanceof StringLiteralFunction && literal(f) != FunctionLibrary.ERROR
+          && !literal(f).isEmpty() && allPure(functions.subList(i + 1, functions.size())))
+      {
+        return new ArrayList<>(functions.subList(0, i + 1));
+      }
+    }
+    return functions;
+  }
+
+  /**
+   * Wertet konstante Funktionen ohne Seiteneffekte aus.
+   */
+  private static Function fold(Function function)
+  {
+    if (function instanceof StringLiteralFunction || !isPure(function)
+        || function.parameters().length > 0)
+    {
+      return function;
+    }
+    try
+    {
+      Values none = new Values.None();
+      String result = function.getResult(none);
+      if (result != null && result.equalsIgnoreCase("true") == function.getBoolean(none))
+      {
+        return new StringLiteralFunction(result);
+      }
+    } catch (RuntimeException e)
+    {
+      // the error is thrown each time the function is called
+    }
+    return function;
+  }
+
+  private Function canonicalize(Function function)
+  {
+    if (!isDescribable(function))
+    {
+      return function;
+    }
+    Function existing = canonical.putIfAbsent(dump(function), function);
+    return existing == null ? function : existing;
+  }
+
+  private static String literal(Function function)
+  {
+    return ((StringLiteralFunction) function).getLiteral();
+  }
+
+  /**
+   * Liefert true, falls {@link Function#getBoolean(Values)} von function genau
+   * dann true liefert, wenn {@link Function#getResult(Values)} "true" liefert.
+   */
+  private static boolean isStringValued(Function function)
+  {
+    Class<?> type = function.getClass();
+    return type == StringLiteralFunction.class || type == ValueFunction.class
+        || type == CatFunction.class || type == AndFunction.class || type == OrFunction.class
+        || type == NotFunction.class || type == MatchFunction.class
+        || type == ReplaceFunction.class || type == SplitFunction.class
+        || type == SelectFunction.class || type == StrCmpFunction.class
+        || type == IsErrorFunction.class;
+  }
+
+  private static boolean allPure(Collection<Function> functions)
+  {
+    for (Function f : functions)
+    {
+      if (!isPure(f))
+      {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Liefert true, falls function eine eingebaute Funktion ohne Seiteneffekte ist, die
+   * nur von ihren Parametern abhängt. DIALOG-Funktionen sind nie rein, EXTERN-Funktionen
+   * nur, wenn sie mit PURE "true" als rein markiert sind.
+   */
+  static boolean isPure(Function function)
+  {
+    Class<?> type = function.getClass();
+    if (type == StringLiteralFunction.class || type == ValueFunction.class
+        || type == AlwaysTrueFunction.class || type == MemoizedFunction.class)
+    {
+      return true;
+    } else if (type == FunctionCompiler.CompiledFunction.class)
+    {
+      return isPure(((FunctionCompiler.CompiledFunction) function).function);
+    } else if (type == ExternalFunctionFunction.class)
+    {
+      return ((ExternalFunctionFunction) function).isPure();
+    } else if (type == CatFunction.class || type == LengthFunction.class
+        || type == AndFunction.class || type == OrFunction.class || type == NotFunction.class
+        || type == StrCmpFunction.class || type == SumFunction.class
+        || type == MinusFunction.class || type == AbsFunction.class
+        || type == SignFunction.class || type == DiffFunction.class
+        || type == ProductFunction.class)
+    {
+      return allPure(((MultiFunction) function).subFunction);
+    } else if (type == NumberCompareFunction.class)
+    {
+      NumberCompareFunction f = (NumberCompareFunction) function;
+      return allPure(f.subFunction) && (f.marginFun == null || isPure(f.marginFun));
+    } else if (type == DivideFunction.class)
+    {
+      DivideFunction f = (DivideFunction) function;
+      return isPure(f.dividendFunction)
+          && (f.divisorFunction == null || isPure(f.divisorFunction));
+    } else if (type == IfFunction.class)
+    {
+      IfFunction f = (IfFunction) function;
+      return isPure(f.getCondition()) && isPure(f.getThenFunction()) && isPure(f.getElseFunction());
+    } else if (type == MatchFunction.class)
+    {
+      return isPure(((MatchFunction) function).getInput());
+    } else if (type == ReplaceFunction.class)
+    {
+      ReplaceFunction f = (ReplaceFunction) function;
+      return isPure(f.getInput()) && isPure(f.getReplace());
+    } else if (type == SplitFunction.class)
+    {
+      return isPure(((SplitFunction) function).getInput());
+    } else if (type == SelectFunction.class)
+    {
+      SelectFunction f = (SelectFunction) function;
+      return allPure(f.subFunction)
+          && (f.getOnErrorFunction() == null || isPure(f.getOnErrorFunction()));
+    } else if (type == IsErrorFunction.class)
+    {
+      return isPure(((IsErrorFunction) function).getFunction());
+    } else if (type == BindFunction.class)
+    {
+      BindFunction f = (BindFunction) function;
+      return isPure(f.getFunction()) && allPure(f.getSetFunctions().values());
+    }
+    return false;
+  }
+
+  /**
+   * Liefert true, falls {@link #dump(Function)} function vollständig beschreibt,
+   * d.h. zwei Funktionen mit gleichem dump sind austauschbar.
+   */
+  private static boolean isDescribable(Function function)
+  {
+    Class<?> type = function.getClass();
+    if (type == StringLiteralFunction.class || type == ValueFunction.class
+        || type == AlwaysTrueFunction.class)
+    {
+      return true;
+    } else if (type == CatFunction.class || type == AndFunction.class
+        || type == OrFunction.class || type == NotFunction.class)
+    {
+      return allDescribable(((MultiFunction) function).subFunction);
+    } else if (type == IfFunction.class)
+    {
+      IfFunction f = (IfFunction) function;
+      return isDescribable(f.getCondition()) && isDescribable(f.getThenFunction())
+          && isDescribable(f.getElseFunction());
+    } else if (type == MatchFunction.class)
+    {
+      return isDescribable(((MatchFunction) function).getInput());
+    } else if (type == ReplaceFunction.class)
+    {
+      ReplaceFunction f = (ReplaceFunction) function;
+      return isDescribable(f.getInput()) && isDescribable(f.getReplace());
+    } else if (type == SplitFunction.class)
+    {
+      return isDescribable(((SplitFunction) function).getInput());
+    } else if (type == SelectFunction.class)
+    {
+      SelectFunction f = (SelectFunction) function;
+      return allDescribable(f.subFunction)
+          && (f.getOnErrorFunction() == null || isDescribable(f.getOnErrorFunction()));
+    } else if (type == IsErrorFunction.class)
+    {
+      return isDescribable(((IsErrorFunction) function).getFunction());
+    } else if (type == BindFunction.class)
+    {
+      BindFunction f = (BindFunction) function;
+      return isDescribable(f.getFunction()) && allDescribable(f.getSetFunctions().values());
+    }
+    return false;
+  }
+
+  private static boolean allDescribable(Collection<Function> functions)
+  {
+    for (Function f : functions)
+    {
+      if (!isDescribable(f))
+      {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static void dump(Function function, StringBuilder buffy)
+  {
+    Class<?> type = function.getClass();
+    if (type == StringLiteralFunction.class)
+    {
+      dumpLiteral(literal(function), buffy);
+    } else if (type == AlwaysTrueFunction.class)
+    {
+      buffy.append("\"true\"");
+    } else if (type == ValueFunction.class)
+    {
+      buffy.append("VALUE ");
+      dumpLiteral(((ValueFunction) function).params[0], buffy);
+    } else if (type == MemoizedFunction.class)
+    {
+      dump(((MemoizedFunction) function).function, buffy);
+    } else if (type == FunctionCompiler.CompiledFunction.class)
+    {
+      dump(((FunctionCompiler.CompiledFunction) function).function, buffy);
+    } else if (type == IfFunction.class)
+    {
+      IfFunction f = (IfFunction) function;
+      buffy.append("IF(");
+      dump(f.getCondition(), buffy);
+      buffy.append(" THEN(");
+      dump(f.getThenFunction(), buffy);
+      buffy.append(") ELSE(");
+      dump(f.getElseFunction(), buffy);
+      buffy.append("))");
+    } else if (type == MatchFunction.class)
+    {
+      MatchFunction f = (MatchFunction) function;
+      buffy.append("MATCH(");
+      dump(f.getInput(), buffy);
+      buffy.append(' ');
+      dumpLiteral(f.getPattern().pattern(), buffy);
+      buffy.append(')');
+    } else if (type == ReplaceFunction.class)
+    {
+      ReplaceFunction f = (ReplaceFunction) function;
+      buffy.append("REPLACE(");
+      dump(f.getInput(), buffy);
+      buffy.append(' ');
+      dumpLiteral(f.getPattern().pattern(), buffy);
+      buffy.append(' ');
+      dump(f.getReplace(), buffy);
+      buffy.append(')');
+    } else if (type == SplitFunction.class)
+    {
+      SplitFunction f = (SplitFunction) function;
+      buffy.append("SPLIT(");
+      dump(f.getInput(), buffy);
+      buffy.append(' ');
+      dumpLiteral(f.getRegex(), buffy);
+      buffy.append(' ');
+      dumpLiteral(Integer.toString(f.getIndex()), buffy);
+      buffy.append(')');
+    } else if (type == SelectFunction.class)
+    {
+      SelectFunction f = (SelectFunction) function;
+      buffy.append("SELECT(");
+      dumpAll(f.subFunction, buffy);
+      if (f.getOnErrorFunction() != null)
+      {
+        buffy.append(" ONERROR(");
+        dump(f.getOnErrorFunction(), buffy);
+        buffy.append(')');
+      }
+      buffy.append(')');
+    } else if (type == IsErrorFunction.class)
+    {
+      IsErrorFunction f = (IsErrorFunction) function;
+      buffy.append(f.isObjectCompare() ? "ISERROR(" : "ISERRORSTRING(");
+      dump(f.getFunction(), buffy);
+      buffy.append(')');
+    } else if (type == BindFunction.class)
+    {
+      BindFunction f = (BindFunction) function;
+      buffy.append("BIND(FUNCTION(");
+      dump(f.getFunction(), buffy);
+      buffy.append(')');
+      for (Map.Entry<String, Function> set : new TreeMap<>(f.getSetFunctions())
+          .entrySet())
+      {
+        buffy.append(" SET(");
+        dumpLiteral(set.getKey(), buffy);
+        buffy.append(' ');
+        dump(set.getValue(), buffy);
+        buffy.append(')');
+      }
+      buffy.append(')');
+    } else if (function instanceof MultiFunction)
+    {
+      buffy.append(name(type)).append('(');
+      dumpAll(((MultiFunction) function).subFunction, buffy);
+      buffy.append(')');
+    } else
+    {
+      buffy.append(type.getSimpleName());
+    }
+  }
+
+  private static void dumpAll(Collection<Function> functions, StringBuilder buffy)
+  {
+    String separator = "";
+    for (Function f : functions)
+    {
+      buffy.append(separator);
+      dump(f, buffy);
+      separator = " ";
+    }
+  }
+
+  private static void dumpLiteral(String literal, StringBuilder buffy)
+  {
+    if (literal == FunctionLibrary.ERROR)
+    {
+      buffy.append("ERROR");
+      return;
+    }
+    buffy.append('"')
+        .append(literal.replace("%", "%%").replace("\n", "%n").replace("\"", "\"\""))
+        .append('"');
+  }
+
+  private static String name(Class<?> type)
+  {
+    if (type == CatFunction.class)
+    {
+      return "CAT";
+    } else if (type == AndFunction.class)
+    {
+      return "AND";
+    } else if (type == OrFunction.class)
+    {
+      return "OR";
+    } else if (type == NotFunction.class)
+    {
+      return "NOT";
+    } else if (type == LengthFunction.class)
+    {
+      return "LENGTH";
+    } else if (type == StrCmpFunction.class)
+    {
+      return "STRCMP";
+    } else if (type == SumFunction.class)
+    {
+      return "SUM";
+    } else if (type == MinusFunction.class)
+    {
+      return "MINUS";
+    } else if (type == AbsFunction.class)
+    {
+      return "ABS";
+    } else if (type == SignFunction.class)
+    {
+      return "SIGN";
+    } else if (type == DiffFunction.class)
+    {
+      return "DIFF";
+    } else if (type == ProductFunction.class)
+    {
+      return "PRODUCT";
+    }
+    return type.getSimpleName();
+  }
+}
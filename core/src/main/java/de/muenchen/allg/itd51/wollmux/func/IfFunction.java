@@ -29,11 +29,11 @@ import java.util.Set;
 
 public class IfFunction implements Function
 {
-  private Function ifFunction;
+  private final Function ifFunction;
 
-  private Function thenFunction;
+  private final Function thenFunction;
 
-  private Function elseFunction;
+  private final Function elseFunction;
 
   private String[] params;
 
@@ -50,6 +50,21 @@ public class IfFunction implements Function
     this.elseFunction = elseFunction;
   }
 
+  Function getCondition()
+  {
+    return ifFunction;
+  }
+
+  Function getThenFunction()
+  {
+    return thenFunction;
+  }
+
+  Function getElseFunction()
+  {
+    return elseFunction;
+  }
+
   @Override
   public String[] parameters()
   {
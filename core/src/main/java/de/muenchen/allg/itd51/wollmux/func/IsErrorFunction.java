@@ -32,9 +32,19 @@ import de.muenchen.allg.itd51.wollmux.util.L;
 
 public class IsErrorFunction implements Function
 {
-  private Function func;
+  private final Function func;
 
-  private boolean objectCompare;
+  private final boolean objectCompare;
+
+  /**
+   * Falls objectCompare == true, wird == Function,ERROR getestet, ansonsten
+   * equals(Function,ERROR).
+   */
+  IsErrorFunction(boolean objectCompare, Function func)
+  {
+    this.objectCompare = objectCompare;
+    this.func = func;
+  }
 
   /**
    * Falls objectCompare == true, wird == Function,ERROR getestet, ansonsten
@@ -51,6 +61,16 @@ public class IsErrorFunction implements Function
     func = FunctionFactory.parseChildren(conf, funcLib, dialogLib, context);
   }
 
+  Function getFunction()
+  {
+    return func;
+  }
+
+  boolean isObjectCompare()
+  {
+    return objectCompare;
+  }
+
   @Override
   public String[] parameters()
   {
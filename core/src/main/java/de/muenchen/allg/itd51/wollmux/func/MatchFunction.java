@@ -27,9 +27,9 @@ import java.util.regex.Pattern;
 
 public class MatchFunction implements Function
 {
-  private Pattern pattern;
+  private final Pattern pattern;
 
-  private Function input;
+  private final Function input;
 
   public MatchFunction(Function input, Pattern p)
   {
@@ -37,6 +37,16 @@ public class MatchFunction implements Function
     this.input = input;
   }
 
+  Pattern getPattern()
+  {
+    return pattern;
+  }
+
+  Function getInput()
+  {
+    return input;
+  }
+
   @Override
   public String getResult(Values parameters)
   {
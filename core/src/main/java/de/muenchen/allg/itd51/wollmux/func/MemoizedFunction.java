@@ -0,0 +1,197 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2023 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.func;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Eine Funktion, die die Ergebnisse einer reinen Funktion zwischenspeichert. Da das
+ * Ergebnis einer reinen Funktion nur von den Werten ihrer Parameter abhängt, wird
+ * sie nur neu ausgewertet, wenn sich einer dieser Werte geändert hat. Es werden die
+ * Ergebnisse der zuletzt verwendeten {@link #MAX_SIZE} Wertekombinationen
+ * gespeichert.
+ */
+public class MemoizedFunction implements Function
+{
+  /**
+   * Die maximale Anzahl gespeicherter Ergebnisse pro Funktion.
+   */
+  static final int MAX_SIZE = 64;
+
+  final Function function;
+
+  private final String[] params;
+
+  private final Map<List<String>, Result> results = new LinkedHashMap<>(16, 0.75f, true)
+  {
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<List<String>, Result> eldest)
+    {
+      return size() > MAX_SIZE;
+    }
+  };
+
+  private long hits;
+
+  private long misses;
+
+  private MemoizedFunction(Function function)
+  {
+    this.function = function;
+    this.params = function.parameters();
+  }
+
+  /**
+   * Liefert eine Funktion, die die Ergebnisse von function zwischenspeichert, falls
+   * function eine reine Funktion ist (siehe {@link FunctionOptimizer#isPure(Function)}).
+   * Andernfalls und für Funktionen, deren Auswertung nicht teurer als das
+   * Nachschlagen ist (z.B. Literale und VALUE), wird function unverändert
+   * geliefert. Ist function null, wird null geliefert.
+   */
+  public static Function memoize(Function function)
+  {
+    if (function == null || function instanceof MemoizedFunction)
+    {
+      return function;
+    }
+    Class<?> type = function.getClass();
+    if (type == StringLiteralFunction.class || type == ValueFunction.class
+        || type == AlwaysTrueFunction.class || !FunctionOptimizer.isPure(function))
+    {
+      return function;
+    }
+    return new MemoizedFunction(function);
+  }
+
+  @Override
+  public String[] parameters()
+  {
+    return params;
+  }
+
+  @Override
+  public void getFunctionDialogReferences(Collection<String> set)
+  {
+    function.getFunctionDialogReferences(set);
+  }
+
+  @Override
+  public String getResult(Values parameters)
+  {
+    List<String> key = key(parameters);
+    synchronized (this)
+    {
+      Result result = results.get(key);
+      if (result != null && result.result != null)
+      {
+        hits++;
+        return result.result;
+      }
+      misses++;
+    }
+
+    String value = function.getResult(parameters);
+    synchronized (this)
+    {
+      results.computeIfAbsent(key, k -> new Result()).result = value;
+    }
+    return value;
+  }
+
+  @Override
+  public boolean getBoolean(Values parameters)
+  {
+    List<String> key = key(parameters);
+    synchronized (this)
+    {
+      Result result = results.get(key);
+      if (result != null && result.bool != null)
+      {
+        hits++;
+        return result.bool;
+      }
+      misses++;
+    }
+
+    boolean value = function.getBoolean(parameters);
+    synchronized (this)
+    {
+      results.computeIfAbsent(key, k -> new Result()).bool = value;
+    }
+    return value;
+  }
+
+  /**
+   * Liefert die Anzahl der Auswertungen, für die ein gespeichertes Ergebnis
+   * verwendet wurde.
+   */
+  public synchronized long getHits()
+  {
+    return hits;
+  }
+
+  /**
+   * Liefert die Anzahl der Auswertungen, für die die Funktion ausgewertet werden
+   * musste.
+   */
+  public synchronized long getMisses()
+  {
+    return misses;
+  }
+
+  /**
+   * Liefert die Werte der Parameter in parameters. Ein fehlender Wert wird durch
+   * null dargestellt.
+   */
+  private List<String> key(Values parameters)
+  {
+    String[] key = new String[params.length];
+    for (int i = 0; i < params.length; i++)
+    {
+      if (parameters.hasValue(params[i]))
+      {
+        key[i] = parameters.getString(params[i]);
+      }
+    }
+    return Arrays.asList(key);
+  }
+
+  /**
+   * Die Ergebnisse der Funktion für eine Wertekombination. Das Ergebnis von
+   * {@link Function#getBoolean(Values)} wird getrennt gespeichert, da es nicht
+   * bei allen Funktionen aus {@link Function#getResult(Values)} folgt. Noch nicht
+   * bestimmte Ergebnisse sind null.
+   */
+  private static class Result
+  {
+    private String result;
+
+    private Boolean bool;
+  }
+}
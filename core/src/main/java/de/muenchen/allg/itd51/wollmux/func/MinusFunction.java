@@ -22,6 +22,7 @@
  */
 package de.muenchen.allg.itd51.wollmux.func;
 
+import java.math.BigDecimal;
 import java.util.Map;
 
 import de.muenchen.allg.itd51.wollmux.config.ConfigThingy;
@@ -36,8 +37,8 @@ public class MinusFunction extends SumFunction
   }
 
   @Override
-  protected String computationResult()
+  protected BigDecimal numericComputationResult()
   {
-    return formatBigDecimal(numericComputationResult().negate());
+    return super.numericComputationResult().negate();
   }
 }
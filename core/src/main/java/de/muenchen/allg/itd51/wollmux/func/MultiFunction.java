@@ -58,7 +58,7 @@ public abstract class MultiFunction implements Function
       throw new ConfigurationErrorException(L.m(
         "Function {0} requires at least one parameter", conf.getName()));
 
-    init(subFunc);
+    init(subFunc, ArrayUtils.EMPTY_STRING_ARRAY);
   }
 
   /**
@@ -89,10 +89,21 @@ public abstract class MultiFunction implements Function
 
   public MultiFunction(Collection<Function> subFunction)
   {
-    init(subFunction);
+    init(subFunction, ArrayUtils.EMPTY_STRING_ARRAY);
   }
 
-  private void init(Collection<Function> subFunction)
+  /**
+   * Wie {@link #MultiFunction(Collection)}, aber mit den Parametern zusätzlicher
+   * Funktionen, die nicht über
+   * {@link #handleParam(ConfigThingy, FunctionLibrary, DialogLibrary, Map)} geparst
+   * wurden.
+   */
+  protected MultiFunction(Collection<Function> subFunction, String[] additionalParams)
+  {
+    init(subFunction, additionalParams);
+  }
+
+  private void init(Collection<Function> subFunction, String[] additionalParams)
   {
     this.subFunction = subFunction;
 
@@ -113,7 +124,7 @@ public abstract class MultiFunction implements Function
       }
     }
 
-    for (String str : getAdditionalParams())
+    for (String str : ArrayUtils.addAll(getAdditionalParams(), additionalParams))
     {
       if (!deps.contains(str))
       {
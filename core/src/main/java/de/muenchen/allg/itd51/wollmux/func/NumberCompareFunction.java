@@ -125,17 +125,9 @@ public class NumberCompareFunction extends NumberFunction
     prevCompare = 0;
     if (marginFun != null)
     {
-      String str = marginFun.getResult(parameters);
-      if (str == FunctionLibrary.ERROR) return FunctionLibrary.ERROR;
-      try
-      {
-        margin = makeBigDecimal(str);
-        margin = margin.abs();
-      }
-      catch (Exception x)
-      {
-        return FunctionLibrary.ERROR;
-      }
+      margin = evaluateNumber(marginFun, parameters, decimalPoint);
+      if (margin == null) return FunctionLibrary.ERROR;
+      margin = margin.abs();
     }
     else
       margin = BigDecimal.ZERO;
@@ -181,4 +173,19 @@ public class NumberCompareFunction extends NumberFunction
         return "true";
     }
   }
+
+  @Override
+  protected BigDecimal numericComputationResult()
+  {
+    if (result != null) return parseNumber(result, decimalPoint);
+    switch (Integer.signum(prevCompare))
+    {
+      case 1:
+        return BigDecimal.ONE;
+      case -1:
+        return BigDecimal.ONE.negate();
+      default:
+        return null;
+    }
+  }
 }
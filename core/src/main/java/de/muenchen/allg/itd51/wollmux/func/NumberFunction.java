@@ -25,13 +25,12 @@ package de.muenchen.allg.itd51.wollmux.func;
 import java.math.BigDecimal;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
-import java.util.Iterator;
 import java.util.Map;
 
 import de.muenchen.allg.itd51.wollmux.config.ConfigThingy;
 import de.muenchen.allg.itd51.wollmux.dialog.DialogLibrary;
 
-abstract class NumberFunction extends MultiFunction
+abstract class NumberFunction extends MultiFunction implements NumericFunction
 {
   protected char decimalPoint = '.';
 
@@ -39,14 +38,7 @@ abstract class NumberFunction extends MultiFunction
       DialogLibrary dialogLib, Map<Object, Object> context)
   {
     super(conf, funcLib, dialogLib, context);
-    try
-    {
-      decimalPoint = ((DecimalFormat) NumberFormat.getInstance()).getDecimalFormatSymbols()
-          .getDecimalSeparator();
-    } catch (Exception x)
-    {
-      decimalPoint = '.';
-    }
+    decimalPoint = getDecimalPoint();
   }
 
   /**
@@ -79,20 +71,52 @@ abstract class NumberFunction extends MultiFunction
    */
   protected abstract String computationResult();
 
+  /**
+   * Wie {@link #computationResult()}, liefert das Endergebnis aber als Zahl für
+   * {@link #getNumber(Values)}. Unterklassen, deren Ergebnis eine Zahl ist,
+   * überschreiben diese Methode, damit das Ergebnis nicht formatiert und wieder
+   * geparst werden muss.
+   *
+   * @return das Endergebnis oder null, falls es keine Zahl ist.
+   */
+  protected BigDecimal numericComputationResult()
+  {
+    return parseNumber(computationResult(), decimalPoint);
+  }
+
   @Override
   public String getResult(Values parameters)
+  {
+    String result = compute(parameters);
+    if (result != null) return result;
+    return computationResult();
+  }
+
+  @Override
+  public BigDecimal getNumber(Values parameters)
+  {
+    String result = compute(parameters);
+    if (result != null) return parseNumber(result, decimalPoint);
+    return numericComputationResult();
+  }
+
+  /**
+   * Führt die Berechnung mit allen Unterfunktionen durch.
+   *
+   * @return das vorzeitige Ergebnis der Berechnung oder null, falls das Endergebnis
+   *         mit {@link #computationResult()} bzw.
+   *         {@link #numericComputationResult()} bestimmt werden muss.
+   */
+  private String compute(Values parameters)
   {
     String result = initComputation(parameters);
     if (result != null) return result;
-    Iterator<Function> iter = subFunction.iterator();
-    while (iter.hasNext())
+    for (Function func : subFunction)
     {
-      Function func = iter.next();
-      String str = func.getResult(parameters);
-      if (str.equals(FunctionLibrary.ERROR)) return FunctionLibrary.ERROR;
+      BigDecimal num = evaluateNumber(func, parameters, decimalPoint);
+      if (num == null) return FunctionLibrary.ERROR;
       try
       {
-        BigDecimal num = makeBigDecimal(str);
         result = addToComputation(num);
         if (result != null) return result;
       }
@@ -101,22 +125,7 @@ abstract class NumberFunction extends MultiFunction
         return FunctionLibrary.ERROR;
       }
     }
-    return computationResult();
-  }
-
-  protected BigDecimal makeBigDecimal(String str)
-  {
-    /*
-     * Falls der Dezimaltrenner nicht '.' ist, ersetzte alle '.' durch etwas, das
-     * kein Dezimaltrenner ist, um eine NumberFormatException beim Konvertieren zu
-     * provozieren. Dies ist eine Vorsichtsmaßnahme, da '.' zum Beispiel in
-     * Deutschland alls Gruppierungszeichen verwendet wird und wir wollen nicht
-     * fälschlicher weise "100.000" als 100 interpretieren, wenn die eingebende
-     * Person 100000 gemeint hat.
-     */
-    if (decimalPoint != '.') str = str.replace('.', 'ß');
-
-    return new BigDecimal(str.replace(decimalPoint, '.'));
+    return null;
   }
 
   /**
@@ -136,4 +145,81 @@ abstract class NumberFunction extends MultiFunction
       result = num.stripTrailingZeros().toPlainString().replace('.', decimalPoint);
     return result;
   }
+
+  /**
+   * Liefert den Dezimaltrenner der aktuellen Locale oder '.', falls dieser nicht
+   * bestimmt werden kann.
+   */
+  static char getDecimalPoint()
+  {
+    try
+    {
+      return ((DecimalFormat) NumberFormat.getInstance()).getDecimalFormatSymbols()
+          .getDecimalSeparator();
+    } catch (Exception x)
+    {
+      return '.';
+    }
+  }
+
+  /**
+   * Wertet func als Zahl aus. Numerische Funktionen liefern ihr Ergebnis direkt,
+   * bei allen anderen wird das Ergebnis von {@link Function#getResult(Values)}
+   * geparst.
+   *
+   * @return die Zahl oder null, falls func {@link FunctionLibrary#ERROR} oder keine
+   *         Zahl liefert.
+   */
+  static BigDecimal evaluateNumber(Function func, Values parameters, char decimalPoint)
+  {
+    if (func instanceof NumericFunction)
+      return ((NumericFunction) func).getNumber(parameters);
+    return parseNumber(func.getResult(parameters), decimalPoint);
+  }
+
+  /**
+   * Wie {@link #toBigDecimal(String, char)}, liefert aber null statt eine
+   * Exception zu werfen, falls str keine Zahl ist.
+   */
+  static BigDecimal parseNumber(String str, char decimalPoint)
+  {
+    /*
+     * Offensichtlich ungültige Strings wie "true" oder FunctionLibrary.ERROR
+     * werden ohne den Umweg über eine NumberFormatException abgelehnt.
+     */
+    if (str.isEmpty()) return null;
+    char c = str.charAt(0);
+    if (!Character.isDigit(c) && c != '-' && c != '+' && c != decimalPoint) return null;
+
+    try
+    {
+      return toBigDecimal(str, decimalPoint);
+    }
+    catch (NumberFormatException x)
+    {
+      return null;
+    }
+  }
+
+  /**
+   * Konvertiert str in eine Zahl, wobei decimalPoint als Dezimaltrenner verwendet
+   * wird.
+   *
+   * @throws NumberFormatException
+   *           falls str keine Zahl ist.
+   */
+  static BigDecimal toBigDecimal(String str, char decimalPoint)
+  {
+    /*
+     * Falls der Dezimaltrenner nicht '.' ist, ersetzte alle '.' durch etwas, das
+     * kein Dezimaltrenner ist, um eine NumberFormatException beim Konvertieren zu
+     * provozieren. Dies ist eine Vorsichtsmaßnahme, da '.' zum Beispiel in
+     * Deutschland alls Gruppierungszeichen verwendet wird und wir wollen nicht
+     * fälschlicher weise "100.000" als 100 interpretieren, wenn die eingebende
+     * Person 100000 gemeint hat.
+     */
+    if (decimalPoint != '.') str = str.replace('.', 'ß');
+
+    return new BigDecimal(str.replace(decimalPoint, '.'));
+  }
 }
@@ -0,0 +1,46 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2023 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.func;
+
+import java.math.BigDecimal;
+
+/**
+ * Eine Funktion, deren Ergebnis direkt als Zahl abgefragt werden kann. Numerische
+ * Funktionen werten ihre
+ * Unterfunktionen über {@link #getNumber(Values)} aus, so dass Zwischenergebnisse
+ * verschachtelter Berechnungen nicht als String formatiert und wieder geparst
+ * werden müssen.
+ */
+interface NumericFunction extends Function
+{
+  /**
+   * Ruft die Funktion mit Argumenten aus parameters auf und liefert das
+   * Funktionsergebnis als Zahl. Der Wert entspricht (im Sinne von
+   * {@link BigDecimal#compareTo(BigDecimal)}) dem Ergebnis von
+   * {@link #getResult(Values)}.
+   *
+   * @return null, falls {@link #getResult(Values)} {@link FunctionLibrary#ERROR}
+   *         oder keine Zahl liefern würde.
+   */
+  public BigDecimal getNumber(Values parameters);
+}
@@ -55,6 +55,12 @@ public class ProductFunction extends NumberFunction
   @Override
   protected String computationResult()
   {
-    return formatBigDecimal(prod);
+    return formatBigDecimal(numericComputationResult());
+  }
+
+  @Override
+  protected BigDecimal numericComputationResult()
+  {
+    return prod;
   }
 }
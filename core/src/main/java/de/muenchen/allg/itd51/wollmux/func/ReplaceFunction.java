@@ -30,11 +30,11 @@ import java.util.regex.Pattern;
 
 public class ReplaceFunction implements Function
 {
-  private Pattern pattern;
+  private final Pattern pattern;
 
-  private Function input;
+  private final Function input;
 
-  private Function replace;
+  private final Function replace;
 
   private String[] params;
 
@@ -49,6 +49,21 @@ public class ReplaceFunction implements Function
     this.params = paramset.toArray(new String[] {});
   }
 
+  Pattern getPattern()
+  {
+    return pattern;
+  }
+
+  Function getInput()
+  {
+    return input;
+  }
+
+  Function getReplace()
+  {
+    return replace;
+  }
+
   @Override
   public String getResult(Values parameters)
   {
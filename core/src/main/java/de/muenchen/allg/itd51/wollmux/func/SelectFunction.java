@@ -40,12 +40,30 @@ public class SelectFunction extends MultiFunction
     super(subFunction);
   }
 
+  /**
+   * Erzeugt ein SELECT mit ONERROR-Funktion. onErrorFunction darf null sein.
+   */
+  SelectFunction(Collection<Function> subFunction, Function onErrorFunction)
+  {
+    super(subFunction,
+        onErrorFunction == null ? ArrayUtils.EMPTY_STRING_ARRAY : onErrorFunction.parameters());
+    this.onErrorFunction = onErrorFunction;
+  }
+
   public SelectFunction(ConfigThingy conf, FunctionLibrary funcLib,
       DialogLibrary dialogLib, Map<Object, Object> context)
   {
     super(conf, funcLib, dialogLib, context);
   }
 
+  /**
+   * Liefert die ONERROR-Funktion oder null, falls es keine gibt.
+   */
+  Function getOnErrorFunction()
+  {
+    return onErrorFunction;
+  }
+
   @Override
   protected boolean handleParam(ConfigThingy conf, FunctionLibrary funcLib,
       DialogLibrary dialogLib, Map<Object, Object> context)
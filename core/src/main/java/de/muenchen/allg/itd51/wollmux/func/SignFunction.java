@@ -22,6 +22,7 @@
  */
 package de.muenchen.allg.itd51.wollmux.func;
 
+import java.math.BigDecimal;
 import java.util.Map;
 
 import de.muenchen.allg.itd51.wollmux.config.ConfigThingy;
@@ -36,9 +37,8 @@ public class SignFunction extends SumFunction
   }
 
   @Override
-  protected String computationResult()
+  protected BigDecimal numericComputationResult()
   {
-    // signum() liefert int, deswegen hier nur ""+ und nicht formatBigDecimal()
-    return "" + numericComputationResult().signum();
+    return BigDecimal.valueOf(super.numericComputationResult().signum());
   }
 }
@@ -27,11 +27,11 @@ import java.util.regex.Pattern;
 
 public class SplitFunction implements Function
 {
-  private String regex;
+  private final String regex;
 
-  private Function input;
+  private final Function input;
 
-  private int index;
+  private final int index;
 
   private String[] params;
 
@@ -43,6 +43,21 @@ public class SplitFunction implements Function
     this.params = input.parameters();
   }
 
+  String getRegex()
+  {
+    return regex;
+  }
+
+  Function getInput()
+  {
+    return input;
+  }
+
+  int getIndex()
+  {
+    return index;
+  }
+
   @Override
   public String getResult(Values parameters)
   {
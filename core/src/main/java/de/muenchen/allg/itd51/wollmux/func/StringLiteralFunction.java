@@ -22,16 +22,29 @@
  */
 package de.muenchen.allg.itd51.wollmux.func;
 
+import java.math.BigDecimal;
 import java.util.Collection;
 
 import org.apache.commons.lang3.ArrayUtils;
 
-public class StringLiteralFunction implements Function
+public class StringLiteralFunction implements NumericFunction
 {
-  private String literal;
+  private final String literal;
 
   private boolean bool;
 
+  /**
+   * Markiert in {@link #number} ein Literal, das keine Zahl ist.
+   */
+  private static final BigDecimal NOT_A_NUMBER = new BigDecimal(0);
+
+  /**
+   * Der Wert des Literals als Zahl oder {@link #NOT_A_NUMBER}. Wird erst beim
+   * ersten Aufruf von {@link #getNumber(Values)} bestimmt, da die meisten Literale
+   * nie als Zahl verwendet werden.
+   */
+  private BigDecimal number;
+
   @Override
   public String[] parameters()
   {
@@ -50,12 +63,30 @@ public class StringLiteralFunction implements Function
     bool = literal.equalsIgnoreCase("true");
   }
 
+  String getLiteral()
+  {
+    return literal;
+  }
+
   @Override
   public String getResult(Values parameters)
   {
     return literal;
   }
 
+  @Override
+  public BigDecimal getNumber(Values parameters)
+  {
+    BigDecimal num = number;
+    if (num == null)
+    {
+      num = NumberFunction.parseNumber(literal, NumberFunction.getDecimalPoint());
+      if (num == null) num = NOT_A_NUMBER;
+      number = num;
+    }
+    return num == NOT_A_NUMBER ? null : num;
+  }
+
   @Override
   public boolean getBoolean(Values parameters)
   {
@@ -58,6 +58,7 @@ public class SumFunction extends NumberFunction
     return formatBigDecimal(numericComputationResult());
   }
 
+  @Override
   protected BigDecimal numericComputationResult()
   {
     return sum;
@@ -22,6 +22,7 @@
  */
 package de.muenchen.allg.itd51.wollmux.sender;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -29,6 +30,7 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.io.Reader;
+import java.io.Writer;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
@@ -331,10 +333,11 @@ public class FileCache implements SenderCache
   {
     if (cacheFile != null)
     {
-      try (OutputStreamWriter out = new OutputStreamWriter(new FileOutputStream(cacheFile), StandardCharsets.UTF_8))
+      try (Writer out = new BufferedWriter(
+          new OutputStreamWriter(new FileOutputStream(cacheFile), StandardCharsets.UTF_8)))
       {
         out.write("\uFEFF");
-        out.write(conf.stringRepresentation(true, '"'));
+        conf.writeTo(out, true, '"', false);
       } catch (IOException e)
       {
         throw new SenderException("Konnte Cache nicht speichern", e);
@@ -28,10 +28,12 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
 
@@ -59,8 +61,10 @@ import de.muenchen.allg.itd51.wollmux.db.Datasources;
 import de.muenchen.allg.itd51.wollmux.db.DummyDatasourceWithMessagebox;
 import de.muenchen.allg.itd51.wollmux.db.QueryPart;
 import de.muenchen.allg.itd51.wollmux.db.QueryResults;
+import de.muenchen.allg.itd51.wollmux.db.SimpleDataset;
 import de.muenchen.allg.itd51.wollmux.dialog.DialogLibrary;
 import de.muenchen.allg.itd51.wollmux.dialog.InfoDialog;
+import de.muenchen.allg.itd51.wollmux.event.handlers.OnSendersRefreshed;
 import de.muenchen.allg.itd51.wollmux.func.FunctionFactory;
 import de.muenchen.allg.itd51.wollmux.func.FunctionLibrary;
 import de.muenchen.allg.itd51.wollmux.interfaces.XPALChangeEventListener;
@@ -120,6 +124,17 @@ public class SenderService implements XPALProvider
 
   protected String overrideFragDbSpalte;
 
+  /**
+   * Completes as soon as the values of the senders have been read from the datasource.
+   */
+  CompletableFuture<Void> refreshed;
+
+  /**
+   * The values read from the datasource in the background, which haven't been applied to the
+   * senders yet (see {@link #applyPendingRefresh()}).
+   */
+  private final AtomicReference<Refresh> pendingRefresh = new AtomicReference<>();
+
   /**
    * The string which, in the string representation of PAL entries,
    * separates the key of the PAL entry from the rest of the PAL entry
@@ -169,7 +184,7 @@ public class SenderService implements XPALProvider
         {
           datasource = new DummyDatasourceWithMessagebox(cache.getSchema(), senderSourceStr);
         }
-        instance = new SenderService(datasource, columnTransformer, cache, overrideFragDbSpalte);
+        instance = new SenderService(datasource, columnTransformer, cache, overrideFragDbSpalte, true);
       } catch (ConfigurationErrorException | SenderException e)
       {
         LOGGER.error("", e);
@@ -180,6 +195,32 @@ public class SenderService implements XPALProvider
 
   SenderService(Datasource mainDatasource, ColumnTransformer columnTransformer,
       SenderCache cache, String overrideFragDbSpalte) throws SenderException
+  {
+    this(mainDatasource, columnTransformer, cache, overrideFragDbSpalte, false);
+  }
+
+  /**
+   * New sender service.
+   *
+   * @param mainDatasource
+   *          The datasource of the senders.
+   * @param columnTransformer
+   *          The column transformer. Can be null.
+   * @param cache
+   *          The cache of the senders.
+   * @param overrideFragDbSpalte
+   *          The column with fragment overrides.
+   * @param asyncRefresh
+   *          If true, the senders are initialized with the values of the cache and their values are
+   *          read from the datasource in the background. The senders are only modified by
+   *          {@link #applyPendingRefresh()}, which is called by an {@link OnSendersRefreshed} event
+   *          and before any access to the senders. Otherwise the senders are refreshed before the
+   *          constructor returns.
+   * @throws SenderException
+   *           There's no datasource.
+   */
+  SenderService(Datasource mainDatasource, ColumnTransformer columnTransformer,
+      SenderCache cache, String overrideFragDbSpalte, boolean asyncRefresh) throws SenderException
   {
     registeredPALChangeListener = new ArrayList<>();
     this.columnTransformer = columnTransformer;
@@ -190,49 +231,147 @@ public class SenderService implements XPALProvider
     }
     this.mainDatasource = mainDatasource;
     this.overrideFragDbSpalte = overrideFragDbSpalte;
-    init(cache);
+    List<Sender> senders = init(cache);
     selectFromCache(cache);
     addPALChangeEventListener(cache);
+
+    if (asyncRefresh)
+    {
+      refreshed = CompletableFuture.runAsync(() -> {
+        pendingRefresh.set(lookup(cache, senders));
+        new OnSendersRefreshed(this).emit();
+      }).exceptionally(e -> {
+        LOGGER.error("The senders could not be updated from the database.", e);
+        return null;
+      });
+    } else
+    {
+      apply(lookup(cache, senders));
+      refreshed = CompletableFuture.completedFuture(null);
+    }
   }
 
-  private void init(SenderCache cache) throws SenderException
+  /**
+   * Apply the values read from the datasource in the background to the senders, if there are
+   * any. Has to be called by the threads which access the senders, so that the senders are never
+   * modified by the background thread.
+   */
+  public void applyPendingRefresh()
   {
-    List<String> cachedSchema = cache.getSchema();
-    Set<String> newColumns = new HashSet<>(getSchema());
-    newColumns.removeAll(cachedSchema);
+    Refresh refresh = pendingRefresh.getAndSet(null);
+    if (refresh != null)
+    {
+      apply(refresh);
+    }
+  }
 
-    Set<String> removedColumns = new HashSet<>(cachedSchema);
+  /**
+   * Create the senders with the values of the cache.
+   *
+   * @return The senders in the same order as in the cache.
+   */
+  private List<Sender> init(SenderCache cache) throws SenderException
+  {
+    Set<String> removedColumns = new HashSet<>(cache.getSchema());
     removedColumns.removeAll(getSchema());
     List<Sender> newSender = new ArrayList<>();
     for (SenderConf senderConf : cache.getData())
     {
-      Sender sender;
-      QueryResults res = mainDatasource.getDatasetsByKey(List.of(senderConf.getKey()));
-      if (!res.isEmpty())
+      Dataset cached = null;
+      if (!senderConf.getCachedValues().isEmpty())
+      {
+        Map<String, String> values = new HashMap<>();
+        getSchema().forEach(column -> values.put(column, senderConf.getCachedValues().get(column)));
+        cached = new SimpleDataset(senderConf.getKey(), values);
+      }
+      Sender sender = new Sender(senderConf.getKey(), cached, senderConf.getOverriddenValues());
+      removedColumns.forEach(sender::drop);
+      newSender.add(sender);
+    }
+    updateSenderList(newSender);
+    return newSender;
+  }
+
+  /**
+   * Read the values of the senders from the datasource. All senders are requested with one call of
+   * {@link Datasource#getDatasetsByKey(java.util.Collection)}. The senders aren't modified.
+   *
+   * @param cache
+   *          The cache.
+   * @param senders
+   *          The senders created by {@link #init(SenderCache)}.
+   * @return The values of the senders.
+   */
+  private Refresh lookup(SenderCache cache, List<Sender> senders)
+  {
+    List<SenderConf> senderConfs = cache.getData();
+    Set<String> newColumns = new HashSet<>(getSchema());
+    newColumns.removeAll(cache.getSchema());
+
+    Set<String> keys = new LinkedHashSet<>();
+    senderConfs.forEach(senderConf -> keys.add(senderConf.getKey()));
+    Map<String, Dataset> datasets = new HashMap<>();
+    boolean unknownKeys = false;
+    if (!keys.isEmpty())
+    {
+      for (Dataset ds : mainDatasource.getDatasetsByKey(keys))
       {
-        Dataset base = res.iterator().next();
-        sender = new Sender(senderConf.getKey(), base, senderConf.getOverriddenValues());
-      } else
+        datasets.putIfAbsent(ds.getKey(), ds);
+        unknownKeys |= !keys.contains(ds.getKey());
+      }
+    }
+
+    List<Dataset> bases = new ArrayList<>(senders.size());
+    List<Boolean> cached = new ArrayList<>(senders.size());
+    for (int i = 0; i < senders.size(); i++)
+    {
+      Sender sender = senders.get(i);
+      Dataset base = datasets.get(sender.getKey());
+      if (base == null && unknownKeys)
       {
-        sender = new Sender(senderConf.getKey(), null, senderConf.getOverriddenValues());
-        for (String newColumn : newColumns)
+        // the datasource returned keys in another form, so look up the missing sender on its own
+        QueryResults res = mainDatasource.getDatasetsByKey(List.of(sender.getKey()));
+        base = res.isEmpty() ? null : res.iterator().next();
+      }
+      bases.add(base);
+      cached.add(!senderConfs.get(i).getCachedValues().isEmpty());
+    }
+    return new Refresh(senders, bases, cached, newColumns);
+  }
+
+  /**
+   * Replace the cached values of the senders with the values of the datasource.
+   *
+   * @param refresh
+   *          The values of {@link #lookup(SenderCache, List)}.
+   */
+  private void apply(Refresh refresh)
+  {
+    List<Sender> lost = new ArrayList<>();
+    for (int i = 0; i < refresh.senders.size(); i++)
+    {
+      Sender sender = refresh.senders.get(i);
+      Dataset base = refresh.datasets.get(i);
+      sender.dataset = base;
+      if (base == null)
+      {
+        for (String newColumn : refresh.newColumns)
         {
-          sender.overrideValue(newColumn, "");
+          sender.overridenValues.put(newColumn, "");
         }
-        if (!senderConf.getCachedValues().isEmpty())
+        if (Boolean.TRUE.equals(refresh.cached.get(i)) && data.contains(sender))
         {
-          lostDatasets.add(sender);
+          lost.add(sender);
         }
       }
-      removedColumns.forEach(sender::drop);
-      newSender.add(sender);
     }
+    lostDatasets = lost;
 
     String lostKeys = lostDatasets.stream().map(Sender::getKey).collect(Collectors.joining(", "));
     if (!lostKeys.isEmpty())
       LOGGER.info("The records with the following keys could not be updated from the database: {}",
           lostKeys);
-    updateSenderList(newSender);
+    notifyListener();
   }
 
   private void selectFromCache(SenderCache cache) throws SenderException
@@ -330,6 +469,7 @@ public class SenderService implements XPALProvider
   @Override
   public String getCurrentSender()
   {
+    applyPendingRefresh();
     if (selectedSender == null)
     {
       return "";
@@ -531,6 +671,7 @@ public class SenderService implements XPALProvider
    */
   List<String> getLostDatasetDisplayStrings()
   {
+    applyPendingRefresh();
     return lostDatasets.stream().map(Sender::getDisplayString).collect(Collectors.toList());
   }
 
@@ -553,6 +694,7 @@ public class SenderService implements XPALProvider
 
   private void updateSenderList(List<Sender> newSenderList) throws SenderException
   {
+    applyPendingRefresh();
     if (selectedSender != null)
     {
       int index = -1;
@@ -589,6 +731,7 @@ public class SenderService implements XPALProvider
    */
   Sender getSelectedDatasetTransformed() throws SenderException
   {
+    applyPendingRefresh();
     if (selectedSender == null)
     {
       throw new SenderException("No sender is selected");
@@ -624,6 +767,7 @@ public class SenderService implements XPALProvider
    */
   public void select(Sender sender) throws SenderException
   {
+    applyPendingRefresh();
     if (sender != null && !data.contains(sender))
     {
       throw new SenderException("Unknown sender was selected.");
@@ -664,6 +808,7 @@ public class SenderService implements XPALProvider
    */
   public List<Sender> getSenderListSorted(String column)
   {
+    applyPendingRefresh();
     List<Sender> listDataset = new ArrayList<>(data);
     Collections.sort(listDataset, Sender.comparatorByColumn(column));
     return listDataset;
@@ -700,6 +845,7 @@ public class SenderService implements XPALProvider
    */
   protected List<Sender> getAllSender()
   {
+    applyPendingRefresh();
     if (data == null)
     {
       return Collections.emptyList();
@@ -708,4 +854,35 @@ public class SenderService implements XPALProvider
     data.forEach(s -> copy.add(new Sender(s)));
     return copy;
   }
+
+  /**
+   * The values of the senders read from the datasource.
+   */
+  private static class Refresh
+  {
+    private final List<Sender> senders;
+
+    /**
+     * The datasets of the senders, null if a sender isn't in the datasource.
+     */
+    private final List<Dataset> datasets;
+
+    /**
+     * Did the cache contain values of the senders?
+     */
+    private final List<Boolean> cached;
+
+    /**
+     * Columns which aren't in the cache.
+     */
+    private final Set<String> newColumns;
+
+    Refresh(List<Sender> senders, List<Dataset> datasets, List<Boolean> cached, Set<String> newColumns)
+    {
+      this.senders = senders;
+      this.datasets = datasets;
+      this.cached = cached;
+      this.newColumns = newColumns;
+    }
+  }
 }
@@ -0,0 +1,52 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2023 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import de.muenchen.allg.itd51.wollmux.config.ConfigThingy;
+
+public class ConfigReloaderTest
+{
+
+  @Test
+  public void testChangedSections() throws Exception
+  {
+    ConfigThingy conf = new ConfigThingy("",
+        "A \"1\" Funktionen(F(\"x\")) Datenquellen(D(\"1\")) Datenquellen(D(\"2\"))");
+    assertEquals(Set.of(), ConfigReloader.changedSections(conf, new ConfigThingy("",
+        "A \"1\"\nFunktionen(\n  F(\"x\")\n)\nDatenquellen(D(\"1\")) Datenquellen(D(\"2\"))")));
+    assertEquals(Set.of("A"), ConfigReloader.changedSections(conf, new ConfigThingy("",
+        "A \"2\" Funktionen(F(\"x\")) Datenquellen(D(\"1\")) Datenquellen(D(\"2\"))")));
+    assertEquals(Set.of("Datenquellen"), ConfigReloader.changedSections(conf, new ConfigThingy("",
+        "A \"1\" Funktionen(F(\"x\")) Datenquellen(D(\"2\")) Datenquellen(D(\"1\"))")));
+    assertEquals(Set.of("Datenquellen", "B"), ConfigReloader.changedSections(conf,
+        new ConfigThingy("", "A \"1\" Funktionen(F(\"x\")) B \"1\" Datenquellen(D(\"1\"))")));
+    assertEquals(Set.of("A", "Funktionen", "Datenquellen"),
+        ConfigReloader.changedSections(conf, new ConfigThingy("")));
+  }
+}
@@ -0,0 +1,122 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2023 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockserver.integration.ClientAndServer;
+import org.mockserver.model.HttpRequest;
+import org.mockserver.model.HttpResponse;
+
+public class CompiledConfigTest
+{
+
+  @TempDir
+  Path dir;
+
+  @Test
+  public void testCacheIsUsedUntilIncludeChanges() throws Exception
+  {
+    Path include = dir.resolve("include.conf");
+    Files.writeString(include, "B(C 'ä%n' D \"x\")", StandardCharsets.UTF_8);
+    Path main = dir.resolve("wollmux.conf");
+    Files.writeString(main, "A 'a'\n%include 'include.conf'\nE(F(G 'g') H 'a')", StandardCharsets.UTF_8);
+    URL url = main.toUri().toURL();
+    File cache = dir.resolve("wollmux.conf.cache").toFile();
+
+    ConfigThingy parsed = new ConfigThingy("", url);
+    assertNull(CompiledConfig.read("", url, cache));
+
+    ConfigThingy conf = CompiledConfig.load("", url, cache, false, new IncludeLoader(null));
+    assertEquals(parsed.stringRepresentation(), conf.stringRepresentation());
+    ConfigThingy cached = CompiledConfig.read("", url, cache);
+    assertNotNull(cached);
+    assertEquals(parsed.stringRepresentation(), cached.stringRepresentation());
+    assertEquals("ä\n", cached.get("C").toString());
+
+    Files.writeString(include, "B(C 'changed')", StandardCharsets.UTF_8);
+    assertNull(CompiledConfig.read("", url, cache));
+    conf = CompiledConfig.load("", url, cache, false, new IncludeLoader(null));
+    assertEquals("changed", conf.get("C").toString());
+    assertEquals("changed", CompiledConfig.read("", url, cache).get("C").toString());
+
+    assertNull(CompiledConfig.read("", include.toUri().toURL(), cache));
+  }
+
+  @Test
+  public void testRebuildAndCorruptCache() throws Exception
+  {
+    Path main = dir.resolve("wollmux.conf");
+    Files.writeString(main, "A 'a'", StandardCharsets.UTF_8);
+    URL url = main.toUri().toURL();
+    File cache = dir.resolve("wollmux.conf.cache").toFile();
+
+    Files.writeString(cache.toPath(), "no cache", StandardCharsets.UTF_8);
+    assertNull(CompiledConfig.read("", url, cache));
+    assertEquals("a", CompiledConfig.load("", url, cache, false, new IncludeLoader(null)).getString("A"));
+    assertNotNull(CompiledConfig.read("", url, cache));
+
+    byte[] data = Files.readAllBytes(cache.toPath());
+    Files.write(cache.toPath(), Arrays.copyOf(data, data.length - 1));
+    assertNull(CompiledConfig.read("", url, cache));
+
+    assertEquals("a", CompiledConfig.load("", url, cache, true, new IncludeLoader(null)).getString("A"));
+    assertEquals("a", CompiledConfig.read("", url, cache).getString("A"));
+  }
+
+  @Test
+  public void testSourcesWithoutValidatorsAreNotCached() throws Exception
+  {
+    assertFalse(new CompiledConfig.Source("http://localhost/a.conf", 0, 5, "").isCacheable());
+    assertTrue(new CompiledConfig.Source("http://localhost/a.conf", 0, 5, "\"v1\"").isCacheable());
+    assertTrue(new CompiledConfig.Source("http://localhost/a.conf", 1, 5, "").isCacheable());
+
+    ClientAndServer mockServer = ClientAndServer.startClientAndServer();
+    try
+    {
+      mockServer.when(HttpRequest.request().withPath("/main.conf"))
+          .respond(HttpResponse.response().withBody("A 'a'"));
+      URL url = new URL("http://localhost:" + mockServer.getLocalPort() + "/main.conf");
+      File cache = dir.resolve("wollmux.conf.cache").toFile();
+
+      assertEquals("a", CompiledConfig.load("", url, cache, false, new IncludeLoader(null)).getString("A"));
+      assertFalse(cache.exists());
+    } finally
+    {
+      mockServer.stop();
+    }
+  }
+}
@@ -0,0 +1,71 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2023 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+
+import java.util.Iterator;
+
+import org.junit.jupiter.api.Test;
+
+public class ConfigThingyCopyTest
+{
+
+  @Test
+  public void testCopiesAreIndependent() throws Exception
+  {
+    ConfigThingy conf = new ConfigThingy("", "A(B 'b' C('1' '2') D(E(F 'f')))");
+    ConfigThingy copy = new ConfigThingy(conf);
+    assertEquals(conf.stringRepresentation(), copy.stringRepresentation());
+    assertNotSame(conf.get("F"), copy.get("F"));
+
+    copy.get("F").getFirstChild().addChild(new ConfigThingy("G"));
+    copy.get("B").setName("X");
+    copy.get("C").add("3");
+    assertEquals(new ConfigThingy("", "A(B 'b' C('1' '2') D(E(F 'f')))").stringRepresentation(),
+        conf.stringRepresentation());
+    assertEquals(3, copy.get("C").count());
+
+    ConfigThingy target = new ConfigThingy("T");
+    target.addChildCopiesFrom(conf.get("A"));
+    assertEquals(3, target.count());
+    assertNotSame(conf.get("E"), target.get("E"));
+  }
+
+  @Test
+  public void testChangesOfTheSourceDontChangeTheCopy() throws Exception
+  {
+    ConfigThingy conf = new ConfigThingy("", "A(B 'b' C('1' '2') D(E(F 'f')))");
+    ConfigThingy f = conf.query("F").getFirstChild();
+    ConfigThingy copy = new ConfigThingy(conf);
+
+    f.getFirstChild().setName("g");
+    f.add("h");
+    Iterator<ConfigThingy> iter = conf.get("C").iterator();
+    iter.next();
+    iter.remove();
+    assertEquals(new ConfigThingy("", "A(B 'b' C('1' '2') D(E(F 'f')))").stringRepresentation(),
+        copy.stringRepresentation());
+  }
+}
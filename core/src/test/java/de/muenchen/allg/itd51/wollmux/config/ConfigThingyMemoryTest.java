@@ -0,0 +1,135 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2023 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.Iterator;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.jupiter.api.Test;
+
+public class ConfigThingyMemoryTest
+{
+
+  /**
+   * The maximum heap used by a node of a parsed configuration. A node takes 24 bytes, the rest is
+   * used by the lists of children and the names, which aren't shared by all nodes.
+   */
+  private static final long MAX_BYTES_PER_NODE = 64;
+
+  @Test
+  public void testParsedNamesAreShared() throws Exception
+  {
+    ConfigThingy conf = new ConfigThingy("", "A(TYPE 'menu' ID 'a') B(TYPE 'menu' ID 'b')");
+    Iterator<ConfigThingy> iter = conf.iterator();
+    ConfigThingy a = iter.next();
+    ConfigThingy b = iter.next();
+    assertSame(a.getFirstChild().getName(), b.getFirstChild().getName());
+    assertSame(a.getFirstChild().getFirstChild().getName(), b.getFirstChild().getFirstChild().getName());
+  }
+
+  @Test
+  public void testLeavesDontShareChildren() throws Exception
+  {
+    ConfigThingy leaf1 = new ConfigThingy("leaf1");
+    ConfigThingy leaf2 = new ConfigThingy("leaf2");
+    assertFalse(leaf1.iterator().hasNext());
+
+    leaf1.add("child");
+    assertEquals(1, leaf1.count());
+    assertEquals(0, leaf2.count());
+    assertEquals(0, new ConfigThingy("leaf3").count());
+
+    Iterator<ConfigThingy> iter = leaf1.iterator();
+    iter.next();
+    iter.remove();
+    assertEquals(0, leaf1.count());
+    leaf1.add("again");
+    assertEquals("again", leaf1.toString());
+  }
+  @Test
+  public void testBytesPerNode() throws Exception
+  {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName diagnostics = new ObjectName("com.sun.management:type=DiagnosticCommand");
+    assumeTrue(server.isRegistered(diagnostics), "No class histogram available");
+
+    StringBuilder builder = new StringBuilder();
+    int nodes = 0;
+    for (int i = 0; nodes < 100_000; i++)
+    {
+      builder.append("Button").append(i % 10).append("(TYPE \"button\" ID \"id").append(i)
+          .append("\" LABEL \"Label\" ACTION \"abort\" HOTKEY \"A\")\n");
+      nodes += 11;
+    }
+    String data = builder.toString();
+    // load all classes used for parsing before
+    new ConfigThingy("", data.substring(0, data.indexOf('\n')));
+
+    long before = heapBytes(server, diagnostics);
+    ConfigThingy conf = new ConfigThingy("", data);
+    long after = heapBytes(server, diagnostics);
+
+    assertEquals(nodes, countNodes(conf) - 1);
+    long bytesPerNode = (after - before) / nodes;
+    assertTrue(bytesPerNode <= MAX_BYTES_PER_NODE, bytesPerNode + " bytes per node");
+    assertTrue(data.length() > 0);
+  }
+
+  private static int countNodes(ConfigThingy conf)
+  {
+    int count = 1;
+    for (ConfigThingy child : conf)
+    {
+      count += countNodes(child);
+    }
+    return count;
+  }
+
+  /**
+   * Get the bytes of all live objects from a class histogram, which does a full GC before.
+   */
+  private static long heapBytes(MBeanServer server, ObjectName diagnostics) throws JMException
+  {
+    String histogram = (String) server.invoke(diagnostics, "gcClassHistogram",
+        new Object[] { new String[0] }, new String[] { String[].class.getName() });
+    for (String line : histogram.split("\n"))
+    {
+      String[] columns = line.trim().split("\\s+");
+      if (columns.length == 3 && "Total".equals(columns[0]))
+      {
+        return Long.parseLong(columns[2]);
+      }
+    }
+    throw new IllegalStateException("No total in class histogram");
+  }
+}
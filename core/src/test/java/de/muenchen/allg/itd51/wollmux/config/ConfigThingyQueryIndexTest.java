@@ -0,0 +1,156 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2023 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Compares the queries of a {@link ConfigThingy} with an index with the queries without index.
+ */
+public class ConfigThingyQueryIndexTest
+{
+
+  private static final String[] NAMES = { "A", "B", "C", "Fenster", "Dialoge", "TYPE", "MISSING" };
+
+  @Test
+  public void testIndexedQueriesEqualRollcall() throws Exception
+  {
+    Random random = new Random(42);
+    ConfigThingy conf = new ConfigThingy("A");
+    List<ConfigThingy> nodes = new ArrayList<>();
+    nodes.add(conf);
+    while (nodes.size() < 100000)
+    {
+      ConfigThingy parent = nodes.get(random.nextInt(nodes.size()));
+      ConfigThingy child = new ConfigThingy(NAMES[random.nextInt(NAMES.length - 1)]);
+      parent.addChild(child);
+      nodes.add(child);
+    }
+
+    List<ConfigThingy> expected = queryAllVariants(conf);
+    conf.enableQueryIndex();
+    List<ConfigThingy> actual = queryAllVariants(conf);
+    assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++)
+    {
+      assertSameNodes(expected.get(i), actual.get(i));
+    }
+  }
+
+  @Test
+  public void testIndexIsInvalidatedByChanges() throws Exception
+  {
+    ConfigThingy conf = new ConfigThingy("", "A(B(C 'x') E 'y')");
+    conf.enableQueryIndex();
+    ConfigThingy c = conf.get("C");
+    assertEquals(1, conf.query("C").count());
+    assertEquals(0, conf.query("D").count());
+
+    c.addChild(new ConfigThingy("D"));
+    assertEquals(1, conf.query("D").count());
+    assertSame(c, conf.getByChild("D"));
+
+    ConfigThingy e = conf.get("E");
+    e.setName("D");
+    assertEquals(0, conf.query("E").count());
+    assertSame(e, conf.get("D"));
+
+    Iterator<ConfigThingy> iter = conf.get("A").iterator();
+    iter.next();
+    iter.next();
+    iter.remove();
+    assertEquals(1, conf.query("D").count());
+    assertSame(c, conf.getByChild("D"));
+  }
+
+  @Test
+  public void testIndexIsInvalidatedPerTree() throws Exception
+  {
+    ConfigThingy conf = new ConfigThingy("", "A(B(C 'x') E 'y')");
+    conf.enableQueryIndex();
+    ConfigThingy c = conf.get("C");
+    assertTrue(conf.isQueryIndexValid());
+
+    // changes of other trees don't invalidate the index
+    ConfigThingy other = new ConfigThingy("", "X(Y 'z')");
+    other.add("D");
+    other.get("Y").setName("Z");
+    assertTrue(conf.isQueryIndexValid());
+
+    c.add("D");
+    assertFalse(conf.isQueryIndexValid());
+    assertSame(c, conf.getByChild("D"));
+    assertTrue(conf.isQueryIndexValid());
+
+    // a node shared by two indexed trees invalidates both
+    ConfigThingy second = new ConfigThingy("second");
+    second.addChild(c);
+    second.enableQueryIndex();
+    assertSame(c, second.get("C"));
+    c.add("F");
+    assertFalse(conf.isQueryIndexValid());
+    assertFalse(second.isQueryIndexValid());
+    assertEquals(1, conf.query("F").count());
+    assertEquals(1, second.query("F").count());
+  }
+
+  private static List<ConfigThingy> queryAllVariants(ConfigThingy conf)
+  {
+    List<ConfigThingy> results = new ArrayList<>();
+    for (String name : NAMES)
+    {
+      for (int minlevel = -1; minlevel < 8; minlevel++)
+      {
+        for (int maxlevel = minlevel; maxlevel < 10; maxlevel++)
+        {
+          results.add(conf.query(name, maxlevel, minlevel));
+          results.add(conf.queryByChild(name, maxlevel, minlevel));
+        }
+      }
+      results.add(conf.query(name));
+      results.add(conf.queryByChild(name));
+    }
+    return results;
+  }
+
+  private static void assertSameNodes(ConfigThingy expected, ConfigThingy actual)
+  {
+    assertEquals(expected.count(), actual.count());
+    Iterator<ConfigThingy> expectedIter = expected.iterator();
+    Iterator<ConfigThingy> actualIter = actual.iterator();
+    while (expectedIter.hasNext())
+    {
+      assertSame(expectedIter.next(), actualIter.next());
+    }
+  }
+}
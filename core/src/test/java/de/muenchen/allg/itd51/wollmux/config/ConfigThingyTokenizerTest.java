@@ -0,0 +1,316 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2023 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Compares {@link ConfigThingy#tokenize(URL, java.io.Reader)} with the former regex based
+ * tokenizer.
+ */
+public class ConfigThingyTokenizerTest
+{
+
+  private static final Pattern WHITESPACE = Pattern.compile("^(\\p{Space}|\\u00A0|,|;|\\uFEFF)+");
+
+  private static final Pattern KEY = Pattern.compile("^([a-zA-Z_][a-zA-Z_0-9]*)");
+
+  private static final String[] FRAGMENTS = { "KEY", "_a1", "x", " ", "\t", ",", ";", "\u00A0", "\uFEFF",
+      "\n", "\r\n", "\r", "(", ")", "\"", "'", "\"\"", "''", "\"str\"", "'it''s'", "\"a%nb\"", "\"%%\"",
+      "\"%u0041\"", "\"%x\"", "\"100%\"", "'\"'", "%include", "%includeX", "# comment", "#", "%", "ä", "1",
+      "\"%u00\"", "\"%uXYZW\"", "\"%u-001\"" };
+
+  @Test
+  public void testTokenizerEqualsReference() throws Exception
+  {
+    String[] inputs = { "", "\n", "\r\n\r\n", "A \"b\"", "A(B 'c' D(\"e\"))", "A 'It''s'\nB \"%n%u00E4%%\"",
+        "%include \"file.conf\" # comment", "A \"unclosed", "A 1", "A \"%u12\"", "A \"%uGGGG\"",
+        "\uFEFFA \"b\"", "A\u00A0\"b\";C,'d'", "A \"b\"\r\nC \"d\"\rE 'f'", "A \"%\"", "A '%''x'" };
+    for (String input : inputs)
+    {
+      assertSameTokens(input);
+    }
+
+    Random random = new Random(42);
+    for (int i = 0; i < 2000; i++)
+    {
+      StringBuilder input = new StringBuilder();
+      int length = random.nextInt(20);
+      for (int j = 0; j < length; j++)
+      {
+        input.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+      }
+      assertSameTokens(input.toString());
+    }
+  }
+
+  @Test
+  public void testTokenizerLargeConfig() throws Exception
+  {
+    StringBuilder conf = new StringBuilder();
+    int i = 0;
+    while (conf.length() < 4 * 1024 * 1024)
+    {
+      conf.append("Section").append(i).append("(\n");
+      conf.append("  # comment ").append(i).append('\n');
+      conf.append("  TYPE \"value ").append(i).append(" with 'quotes' and %n escapes\"\n");
+      conf.append("  LIST('a', 'b''c', \"%u00E4\", ").append("KEY_").append(i).append(" \"x\")\n");
+      conf.append(")\n");
+      i++;
+    }
+    assertSameTokens(conf.toString());
+
+    ConfigThingy parsed = new ConfigThingy("", conf.toString());
+    assertEquals(i, parsed.count());
+    Iterator<ConfigThingy> list = parsed.getFirstChild().get("LIST").iterator();
+    list.next();
+    assertEquals("b'c", list.next().toString());
+  }
+
+  @Test
+  public void testSyntaxErrorPosition() throws Exception
+  {
+    SyntaxErrorException ex = assertThrows(SyntaxErrorException.class,
+        () -> ConfigThingy.tokenize(null, new StringReader("A \"b\"\n  C 1 D")));
+    assertEquals("null: syntax error in line 2 at char 5, text in error location: \"1 D\"", ex.getMessage());
+  }
+
+  private static void assertSameTokens(String input) throws IOException
+  {
+    String expected;
+    try
+    {
+      expected = String.join("\n", referenceTokenize(input));
+    } catch (SyntaxErrorException e)
+    {
+      expected = "ERROR " + e.getMessage();
+    }
+
+    String actual;
+    try
+    {
+      List<String> tokens = new ArrayList<>();
+      for (ConfigThingy.Token token : ConfigThingy.tokenize(null, new StringReader(input)))
+      {
+        tokens.add(describe(token.type().name(), token.contentString(), token.line(), token.position()));
+      }
+      actual = String.join("\n", tokens);
+    } catch (SyntaxErrorException e)
+    {
+      actual = "ERROR " + e.getMessage();
+    }
+    assertEquals(expected, actual, input);
+  }
+
+  private static String describe(String type, String content, int line, int position)
+  {
+    return type + " " + line + ":" + position + " " + content;
+  }
+
+  /**
+   * The tokenizer of ConfigThingy before it was replaced by a single pass lexer.
+   */
+  private static List<String> referenceTokenize(String input) throws IOException, SyntaxErrorException
+  {
+    List<String> tokens = new ArrayList<>();
+    BufferedReader in = new BufferedReader(new StringReader(input));
+    String line;
+    int lineNo = 0;
+    while (null != (line = in.readLine()))
+    {
+      ++lineNo;
+      int pos = 0;
+      while (line.length() > 0)
+      {
+        Matcher wsm = WHITESPACE.matcher(line);
+        if (wsm.find())
+        {
+          pos += wsm.end();
+          line = line.substring(wsm.end());
+          if (line.length() == 0)
+          {
+            continue;
+          }
+        }
+
+        int tokenLength;
+        try
+        {
+          Matcher m = KEY.matcher(line);
+          if (m.find())
+          {
+            tokenLength = m.end();
+            tokens.add(describe("KEY", m.group(1), lineNo, pos + 1));
+          } else if (0 != (tokenLength = stringAtStartOf(line)))
+          {
+            tokens.add(describe("STRING", unescape(line, tokenLength), lineNo, pos + 1));
+          } else if (line.startsWith("("))
+          {
+            tokenLength = 1;
+            tokens.add(describe("OPENPAREN", "(", lineNo, pos + 1));
+          } else if (line.startsWith(")"))
+          {
+            tokenLength = 1;
+            tokens.add(describe("CLOSEPAREN", ")", lineNo, pos + 1));
+          } else if (line.startsWith("%include"))
+          {
+            tokenLength = "%include".length();
+            tokens.add(describe("INCLUDE", "%include", lineNo, pos + 1));
+          } else if (line.startsWith("#"))
+          {
+            tokenLength = line.length();
+          } else
+          {
+            throw new SyntaxErrorException("null: syntax error in line " + lineNo + " at char " + (pos + 1)
+                + ", text in error location: \"" + line + "\"");
+          }
+        } catch (IllegalArgumentException x)
+        {
+          throw new SyntaxErrorException("null: syntax error in line " + lineNo + " at char " + (pos + 1)
+              + ", text in error location: \"" + line + "\"", x);
+        }
+
+        pos += tokenLength;
+        line = line.substring(tokenLength);
+      }
+    }
+
+    ++lineNo;
+    for (int i = 0; i < 7; ++i)
+    {
+      tokens.add(describe("END", "", lineNo, 0));
+    }
+    return tokens;
+  }
+
+  private static int stringAtStartOf(String str)
+  {
+    if (str.length() < 2)
+    {
+      return 0;
+    }
+    char quote = str.charAt(0);
+    if (quote != '"' && quote != '\'')
+    {
+      return 0;
+    }
+
+    int idx = 1;
+    while (true)
+    {
+      idx = str.indexOf(quote, idx);
+      if (idx < 0)
+      {
+        return 0;
+      }
+      ++idx;
+      if (idx >= str.length() || str.charAt(idx) != quote)
+      {
+        return idx;
+      }
+      ++idx;
+    }
+  }
+
+  private static String unescape(String tokenData, int len)
+  {
+    char quote = tokenData.charAt(0);
+    StringBuilder buffy = new StringBuilder(tokenData.substring(1, len - 1));
+    String quoteStr = Character.toString(quote);
+    int startidx = 0;
+    int idx;
+    while (true)
+    {
+      idx = buffy.indexOf("%", startidx);
+      int idx2 = buffy.indexOf(quoteStr, startidx);
+
+      if (idx < 0 && idx2 < 0)
+      {
+        break;
+      }
+
+      String repstr;
+      int replen;
+
+      if (idx < 0 || (idx2 >= 0 && idx2 < idx))
+      {
+        idx = idx2;
+        replen = 2;
+        repstr = quoteStr;
+      } else
+      {
+        if (idx + 1 >= buffy.length())
+        {
+          break;
+        }
+
+        repstr = Character.toString(buffy.charAt(idx));
+        replen = 1;
+
+        switch (buffy.charAt(idx + 1))
+        {
+        case 'n':
+          repstr = "\n";
+          replen = 2;
+          break;
+        case '%':
+          repstr = "%";
+          replen = 2;
+          break;
+        case 'u':
+          if (idx + 6 > buffy.length())
+            throw new IllegalArgumentException("Incomplete %u escape!");
+          String code = buffy.substring(idx + 2, idx + 6);
+          try
+          {
+            repstr = Character.toString((char) Integer.parseInt(code, 16));
+          } catch (NumberFormatException x)
+          {
+            throw new IllegalArgumentException("Incorrect hex number in %u escape: \"%u" + code + "\"");
+          }
+          replen = 6;
+          break;
+        default:
+          break;
+        }
+      }
+      buffy.replace(idx, idx + replen, repstr);
+      startidx = idx + repstr.length();
+    }
+    return buffy.toString();
+  }
+}
@@ -0,0 +1,237 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2023 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Compares {@link ConfigThingy#writeTo(Appendable, boolean, char, boolean)} with the former regex
+ * based escaping.
+ */
+public class ConfigThingyWriterTest
+{
+
+  private static final String[] NAMES = { "", "A", "KEY", "x y", "'", "\"", "%", "%n", "\n", "\r", "ä",
+      " ", "\uD835\uDC00", "\uD83D\uDE00", "\uD800", "\uDC00", "a'b\"c%d\ne\rf", "100%", "1,2;3" };
+
+  @Test
+  public void testWriterEqualsReference() throws Exception
+  {
+    Random random = new Random(42);
+    for (int i = 0; i < 500; i++)
+    {
+      ConfigThingy conf = randomTree(random, 4);
+      for (char stringChar : new char[] { '"', '\'' })
+      {
+        for (boolean escapeAll : new boolean[] { false, true })
+        {
+          for (boolean childrenOnly : new boolean[] { false, true })
+          {
+            String expected = reference(conf, childrenOnly, stringChar, escapeAll);
+            assertEquals(expected, conf.stringRepresentation(childrenOnly, stringChar, escapeAll));
+            StringWriter writer = new StringWriter();
+            conf.writeTo(writer, childrenOnly, stringChar, escapeAll);
+            assertEquals(expected, writer.toString());
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testWrittenConfigCanBeParsed() throws Exception
+  {
+    ConfigThingy conf = new ConfigThingy("", "A 'It''s 100%%%n\"quoted\"' B(C 'x' D('1', '2')) E(F(G 'ä'))");
+    StringWriter writer = new StringWriter();
+    conf.writeTo(writer);
+    assertEquals(conf.stringRepresentation(), writer.toString());
+    assertEquals("It's 100%\n\"quoted\"", new ConfigThingy("", writer.toString()).getString("A"));
+    assertThrows(IllegalArgumentException.class, () -> conf.writeTo(new StringWriter(), false, 'x', false));
+  }
+
+  private static ConfigThingy randomTree(Random random, int depth)
+  {
+    ConfigThingy conf = new ConfigThingy(NAMES[random.nextInt(NAMES.length)]);
+    if (depth > 0)
+    {
+      int children = random.nextInt(4);
+      for (int i = 0; i < children; i++)
+      {
+        conf.addChild(randomTree(random, random.nextInt(depth)));
+      }
+    }
+    return conf;
+  }
+
+  /**
+   * The serialization of ConfigThingy before it was replaced by a streaming writer.
+   */
+  private static String reference(ConfigThingy conf, boolean childrenOnly, char stringChar, boolean escapeAll)
+  {
+    StringBuilder buf = new StringBuilder();
+    if (!childrenOnly)
+    {
+      reference(conf, buf, "", stringChar, escapeAll);
+    } else
+    {
+      for (ConfigThingy child : conf)
+      {
+        reference(child, buf, "", stringChar, escapeAll);
+        buf.append('\n');
+      }
+    }
+    return buf.toString();
+  }
+
+  private static void reference(ConfigThingy conf, StringBuilder buf, String childPrefix, char stringChar,
+      boolean escapeAll)
+  {
+    if (conf.count() == 0)
+    {
+      buf.append(stringChar + escapeString(conf.getName(), stringChar, escapeAll) + stringChar);
+    } else if (conf.count() == 1 && first(conf).count() == 0)
+    {
+      buf.append(conf.getName());
+      buf.append(conf.getName().length() == 0 ? '(' : ' ');
+      reference(first(conf), buf, childPrefix, stringChar, escapeAll);
+      if (conf.getName().length() == 0)
+      {
+        buf.append(')');
+      }
+    } else
+    {
+      int count = -1;
+      boolean sameCount = true;
+      for (ConfigThingy child : conf)
+      {
+        if (count == -1)
+        {
+          count = child.count();
+        }
+        sameCount &= count == child.count();
+      }
+      if (sameCount && (count == 0 || (count == 1 && allLeafPairs(conf))))
+      {
+        buf.append(childPrefix).append(conf.getName()).append('(');
+        List<ConfigThingy> children = new ArrayList<>();
+        conf.forEach(children::add);
+        for (int i = 0; i < children.size(); i++)
+        {
+          reference(children.get(i), buf, childPrefix, stringChar, escapeAll);
+          if (i < children.size() - 1)
+          {
+            if (count == 0)
+            {
+              buf.append(',');
+            }
+            buf.append(' ');
+          }
+        }
+        buf.append(")\n");
+      } else
+      {
+        buf.append('\n').append(childPrefix).append(conf.getName()).append("(\n");
+        for (ConfigThingy child : conf)
+        {
+          boolean simple = child.count() == 0 || (child.count() == 1 && first(child).count() == 0);
+          if (simple)
+          {
+            buf.append(childPrefix + "  ");
+          }
+          reference(child, buf, childPrefix + "  ", stringChar, escapeAll);
+          if (simple)
+          {
+            buf.append('\n');
+          }
+        }
+        buf.append(childPrefix).append(")\n");
+      }
+    }
+  }
+
+  private static boolean allLeafPairs(ConfigThingy conf)
+  {
+    for (ConfigThingy child : conf)
+    {
+      if (first(child).count() != 0)
+      {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static ConfigThingy first(ConfigThingy conf)
+  {
+    return conf.iterator().next();
+  }
+
+  private static String escapeString(String str, char stringChar, boolean escapeAll)
+  {
+    Pattern p = escapeAll ? Pattern.compile("\\P{javaLetterOrDigit}") : Pattern.compile("[%\n\r\"']");
+    Matcher m = p.matcher(str);
+    List<Integer> locations = new ArrayList<>();
+    while (m.find())
+    {
+      locations.add(m.start());
+    }
+    StringBuilder buffy = new StringBuilder(str);
+    while (!locations.isEmpty())
+    {
+      int idx = locations.remove(locations.size() - 1);
+      char ch = buffy.charAt(idx);
+      String repstr = Character.toString(ch);
+      if (escapeAll)
+      {
+        repstr = String.format("%%u%04x", (int) ch);
+      } else if (ch == '\'')
+      {
+        repstr = stringChar == '\'' ? "''" : "'";
+      } else if (ch == '"')
+      {
+        repstr = stringChar == '"' ? "\"\"" : "\"";
+      } else if (ch == '\n')
+      {
+        repstr = "%n";
+      } else if (ch == '\r')
+      {
+        repstr = "%u000a";
+      } else if (ch == '%')
+      {
+        repstr = "%%";
+      }
+      buffy.replace(idx, idx + 1, repstr);
+    }
+    return buffy.toString();
+  }
+}
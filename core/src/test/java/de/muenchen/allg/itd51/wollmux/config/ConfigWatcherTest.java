@@ -0,0 +1,103 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2023 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ConfigWatcherTest
+{
+
+  @TempDir
+  Path tmp;
+
+  @Test
+  public void testChangedFile() throws Exception
+  {
+    File conf = writeFile("wollmux.conf", "%include \"include.conf\"\n");
+    File include = writeFile("include.conf", "A \"1\"\n");
+    Semaphore changes = new Semaphore(0);
+    try (ConfigWatcher watcher = new ConfigWatcher(
+        List.of(conf.toURI().toURL(), include.toURI().toURL()), 200, changes::release))
+    {
+      watcher.start();
+      assertFalse(changes.tryAcquire(1, TimeUnit.SECONDS));
+
+      Files.writeString(include.toPath(), "A \"2\"\n", StandardCharsets.UTF_8);
+      include.setLastModified(include.lastModified() + 2000);
+      assertTrue(changes.tryAcquire(10, TimeUnit.SECONDS));
+      assertFalse(changes.tryAcquire(1, TimeUnit.SECONDS));
+
+      Files.delete(conf.toPath());
+      assertTrue(changes.tryAcquire(10, TimeUnit.SECONDS));
+    }
+  }
+
+  @Test
+  public void testUnchangedFileInSameDirectory() throws Exception
+  {
+    File conf = writeFile("wollmux.conf", "A \"1\"\n");
+    Semaphore changes = new Semaphore(0);
+    try (ConfigWatcher watcher = new ConfigWatcher(List.of(conf.toURI().toURL()), 200,
+        changes::release))
+    {
+      watcher.start();
+      writeFile("other.conf", "B \"1\"\n");
+      assertFalse(changes.tryAcquire(1, TimeUnit.SECONDS));
+    }
+  }
+
+  @Test
+  public void testClose() throws Exception
+  {
+    File conf = writeFile("wollmux.conf", "A \"1\"\n");
+    Semaphore changes = new Semaphore(0);
+    ConfigWatcher watcher = new ConfigWatcher(List.of(conf.toURI().toURL()), 200,
+        changes::release);
+    watcher.start();
+    watcher.close();
+    Files.writeString(conf.toPath(), "A \"2\"\n", StandardCharsets.UTF_8);
+    conf.setLastModified(conf.lastModified() + 2000);
+    assertFalse(changes.tryAcquire(1, TimeUnit.SECONDS));
+    assertEquals(List.of(conf.toURI().toURL()), watcher.getUrls());
+  }
+
+  private File writeFile(String name, String content) throws Exception
+  {
+    Path file = tmp.resolve(name);
+    Files.writeString(file, content, StandardCharsets.UTF_8);
+    return file.toFile();
+  }
+}
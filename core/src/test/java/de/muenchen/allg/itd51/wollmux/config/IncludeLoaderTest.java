@@ -0,0 +1,196 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2023 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockserver.integration.ClientAndServer;
+import org.mockserver.model.HttpRequest;
+import org.mockserver.model.HttpResponse;
+import org.mockserver.verify.VerificationTimes;
+
+public class IncludeLoaderTest
+{
+
+  private ClientAndServer mockServer;
+
+  @TempDir
+  Path cacheDir;
+
+  @BeforeEach
+  public void startServer()
+  {
+    mockServer = ClientAndServer.startClientAndServer();
+  }
+
+  @AfterEach
+  public void stopServer()
+  {
+    mockServer.stop();
+  }
+
+  @Test
+  public void testIncludes() throws Exception
+  {
+    serve("/main.conf", "A 'a'\n%include 'a.conf'\nB(%include 'b.conf')\n%include 'c.conf' %include 'd.conf'", 0);
+    serve("/a.conf", "C 'c'\n%include 'sub/e.conf'", 0);
+    serve("/b.conf", "D 'd'", 0);
+    serve("/c.conf", "E 'e'", 0);
+    serve("/d.conf", "F 'f'", 0);
+    serve("/sub/e.conf", "G 'g'\n%include '../b.conf'", 0);
+    URL url = new URL("http://localhost:" + mockServer.getLocalPort() + "/main.conf");
+
+    ConfigThingy conf = new IncludeLoader(null).load("", url);
+
+    assertEquals(new ConfigThingy("", url).stringRepresentation(), conf.stringRepresentation());
+    assertEquals("A \"a\"\nC \"c\"\nG \"g\"\nD \"d\"\nB(\n  D \"d\"\n)\nE \"e\"\nF \"f\"\n",
+        conf.stringRepresentation());
+    mockServer.verify(HttpRequest.request().withPath("/b.conf"), VerificationTimes.exactly(2));
+  }
+
+  @Test
+  public void testIncludesAreFetchedConcurrently() throws Exception
+  {
+    Map<String, String> files = Map.of("/main.conf",
+        "%include 'a.conf'\n%include 'b.conf'\n%include 'c.conf'\n%include 'd.conf'", "/a.conf",
+        "A 'a'", "/b.conf", "B 'b'", "/c.conf", "C 'c'", "/d.conf", "D 'd'");
+    // each include is only delivered once all includes have been requested
+    CountDownLatch requested = new CountDownLatch(4);
+    Set<String> arrived = ConcurrentHashMap.newKeySet();
+    URLStreamHandler handler = new URLStreamHandler()
+    {
+      @Override
+      protected URLConnection openConnection(URL u)
+      {
+        return new URLConnection(u)
+        {
+          @Override
+          public void connect()
+          {
+            connected = true;
+          }
+
+          @Override
+          public InputStream getInputStream() throws IOException
+          {
+            String path = getURL().getPath();
+            if (!path.equals("/main.conf"))
+            {
+              if (arrived.add(path))
+              {
+                requested.countDown();
+              }
+              try
+              {
+                if (!requested.await(10, TimeUnit.SECONDS))
+                {
+                  throw new IOException("Includes weren't fetched concurrently");
+                }
+              } catch (InterruptedException e)
+              {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+              }
+            }
+            return new ByteArrayInputStream(files.get(path).getBytes(StandardCharsets.UTF_8));
+          }
+        };
+      }
+    };
+    URL url = new URL(null, "test:/main.conf", handler);
+
+    ConfigThingy conf = new IncludeLoader(null).load("", url);
+    assertEquals(4, conf.count());
+    assertEquals("a", conf.getString("A"));
+    assertEquals("d", conf.getString("D"));
+  }
+
+  @Test
+  public void testNoSourceWithoutValidators() throws Exception
+  {
+    serve("/main.conf", "A 'a'", 0);
+    URL url = new URL("http://localhost:" + mockServer.getLocalPort() + "/main.conf");
+
+    IncludeLoader loader = new IncludeLoader(cacheDir.toFile());
+    assertEquals("a", loader.load("", url).getString("A"));
+    assertNull(loader.getSource(url));
+    assertEquals(0, cacheDir.toFile().list().length);
+  }
+
+  @Test
+  public void testConditionalRequests() throws Exception
+  {
+    mockServer.when(HttpRequest.request().withPath("/main.conf").withHeader("If-None-Match", "\"v1\""))
+        .respond(HttpResponse.response().withStatusCode(304));
+    mockServer.when(HttpRequest.request().withPath("/main.conf"))
+        .respond(HttpResponse.response().withHeader("ETag", "\"v1\"").withBody("A 'cached'"));
+    URL url = new URL("http://localhost:" + mockServer.getLocalPort() + "/main.conf");
+
+    assertEquals("cached", new IncludeLoader(cacheDir.toFile()).load("", url).getString("A"));
+    assertEquals("cached", new IncludeLoader(cacheDir.toFile()).load("", url).getString("A"));
+    mockServer.verify(HttpRequest.request().withPath("/main.conf").withHeader("If-None-Match", "\"v1\""),
+        VerificationTimes.once());
+
+    IncludeLoader loader = new IncludeLoader(null);
+    loader.prefetch(url);
+    assertEquals(new CompiledConfig.Source(url.toString(), 0, 10, "\"v1\""), loader.getSource(url));
+  }
+
+  @Test
+  public void testTimeout() throws Exception
+  {
+    serve("/main.conf", "A 'a'\n%include 'slow.conf'", 0);
+    serve("/slow.conf", "B 'b'", 2);
+    URL url = new URL("http://localhost:" + mockServer.getLocalPort() + "/main.conf");
+
+    IOException ex = assertThrows(IOException.class, () -> new IncludeLoader(null, 500).load("", url));
+    assertTrue(ex.getMessage().contains("%include failed"), ex.getMessage());
+  }
+
+  private void serve(String path, String content, int delay)
+  {
+    mockServer.when(HttpRequest.request().withPath(path))
+        .respond(HttpResponse.response().withBody(content).withDelay(TimeUnit.SECONDS, delay));
+  }
+}
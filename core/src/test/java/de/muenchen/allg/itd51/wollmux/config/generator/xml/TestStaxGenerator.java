@@ -0,0 +1,188 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2023 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.config.generator.xml;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.xml.transform.TransformerException;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Compares the streaming generators with the document based ones.
+ */
+public class TestStaxGenerator
+{
+
+  @TempDir
+  Path tmp;
+
+  @Test
+  public void streamWithoutInclude() throws Exception
+  {
+    assertSameOutput(copy("scannerTest.conf", "tmp.conf"));
+  }
+
+  @Test
+  public void streamWithInclude() throws Exception
+  {
+    copy("scannerTest.conf", "tmp.conf");
+    assertSameOutput(copy("scannerTest2.conf", "tmp2.conf"));
+  }
+
+  @Test
+  public void streamLargeConfiguration() throws Exception
+  {
+    assertSameOutput(copy("performance.conf", "performance.conf"));
+  }
+
+  @Test
+  public void streamSyntheticTree() throws Exception
+  {
+    Files.createDirectory(tmp.resolve("sub"));
+    Files.writeString(tmp.resolve("sub/leaf.conf"),
+        "LEAF \"a & b < c > d\"\n(\"\u0085\", \"😀\", \"tab\there\")\n");
+    StringBuilder part = new StringBuilder();
+    for (int i = 0; i < 500; i++)
+    {
+      part.append("Part").append(i).append("(\n  # comment ").append(i).append("\n  List(\"x\" 'y' \"z\")\n");
+      part.append("  Nested(A(B(C \"").append(i).append("\") (D 'd')) E ())\n)\n");
+    }
+    part.append("%include \"leaf.conf\"\n");
+    Files.writeString(tmp.resolve("sub/part.conf"), part.toString());
+    StringBuilder root = new StringBuilder("# root\n");
+    for (int i = 0; i < 2000; i++)
+    {
+      root.append("Key").append(i).append(" \"value ").append(i).append(" %n\"\n");
+      root.append("Group").append(i).append("((TYPE \"t\" LABEL 'l''s') (\"a\", \"b\"))\n");
+      if (i == 1000)
+      {
+        root.append("%include \"sub/part.conf\"\n");
+      }
+    }
+    root.append("LAST \"value\" # trailing comment\n");
+    assertSameOutput(write("root.conf", root.toString()));
+  }
+
+  @Test
+  public void roundTrip() throws Exception
+  {
+    File conf = copy("scannerTest.conf", "tmp.conf");
+    File conf2 = copy("scannerTest2.conf", "tmp2.conf");
+    File xml = tmp.resolve("tmp.xml").toFile();
+    try (OutputStream out = new FileOutputStream(xml))
+    {
+      new XMLGenerator(conf2.toURI().toURL()).generateXML(out);
+    }
+    Map<String, String> expected = new ConfGenerator(new XMLGenerator(conf2.toURI().toURL()).generateXML())
+        .generateConfMap("UTF-8");
+
+    new StaxConfGenerator(xml.toURI().toURL()).generateConf();
+    assertEquals(expected.get(conf.getAbsolutePath()), Files.readString(conf.toPath()));
+    assertEquals(expected.get(conf2.getAbsolutePath()), Files.readString(conf2.toPath()));
+
+    // the written configuration results in the same XML-document
+    ByteArrayOutputStream again = new ByteArrayOutputStream();
+    new XMLGenerator(conf2.toURI().toURL()).generateXML(again);
+    assertEquals(Files.readString(xml.toPath()), again.toString(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void invalidDocument() throws Exception
+  {
+    URL noConfig = write("noConfig.xml", "<file filename=\"a\"/>").toURI().toURL();
+    assertThrows(XMLGeneratorException.class, () -> new StaxConfGenerator(noConfig));
+    URL empty = write("empty.xml", "<config/>").toURI().toURL();
+    assertThrows(XMLGeneratorException.class, () -> new StaxConfGenerator(empty));
+  }
+
+  /**
+   * Convert a configuration in both directions with and without documents and compare the results.
+   */
+  private void assertSameOutput(final File conf)
+      throws XMLGeneratorException, TransformerException, IOException, URISyntaxException
+  {
+    URL url = conf.toURI().toURL();
+    ByteArrayOutputStream expectedXml = new ByteArrayOutputStream();
+    XMLGenerator.printDocument(new XMLGenerator(url).generateXML(), expectedXml);
+    ByteArrayOutputStream actualXml = new ByteArrayOutputStream();
+    new XMLGenerator(url).generateXML(actualXml);
+    assertEquals(expectedXml.toString(StandardCharsets.UTF_8), actualXml.toString(StandardCharsets.UTF_8));
+
+    File xml = tmp.resolve(conf.getName() + ".xml").toFile();
+    Files.write(xml.toPath(), actualXml.toByteArray());
+    ConfGenerator expected = new ConfGenerator(new XMLGenerator(url).generateXML());
+    StaxConfGenerator actual = new StaxConfGenerator(xml.toURI().toURL());
+    assertEquals(expected.generateConf("UTF-8"), actual.generateConf("UTF-8"));
+    Map<String, String> expectedMap = expected.generateConfMap("UTF-8");
+    assertEquals(expectedMap, actual.generateConfMap("UTF-8"));
+
+    // the outputs are written with UTF-8, the printed files of the document with the default charset
+    Map<String, ByteArrayOutputStream> outputs = new LinkedHashMap<>();
+    actual.generateConfMap(filename -> outputs.computeIfAbsent(filename, f -> new ByteArrayOutputStream()));
+    assertEquals(expectedMap.keySet(), outputs.keySet());
+    int file = 0;
+    for (ByteArrayOutputStream output : outputs.values())
+    {
+      ByteArrayOutputStream expectedFile = new ByteArrayOutputStream();
+      expected.generateConf(expectedFile, file);
+      ByteArrayOutputStream actualFile = new ByteArrayOutputStream();
+      actual.generateConf(actualFile, file++);
+      assertArrayEquals(expectedFile.toByteArray(), actualFile.toByteArray());
+      assertArrayEquals(expectedFile.toByteArray(),
+          output.toString(StandardCharsets.UTF_8).getBytes(Charset.defaultCharset()));
+    }
+  }
+
+  private File copy(final String resource, final String name) throws IOException, URISyntaxException
+  {
+    Path target = tmp.resolve(name);
+    Files.copy(Path.of(getClass().getResource(resource).toURI()), target, StandardCopyOption.REPLACE_EXISTING);
+    return target.toFile();
+  }
+
+  private File write(final String name, final String content) throws IOException
+  {
+    Path target = tmp.resolve(name);
+    Files.writeString(target, content);
+    return target.toFile();
+  }
+}
@@ -0,0 +1,191 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2023 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.db;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import de.muenchen.allg.itd51.wollmux.config.ConfigThingy;
+import de.muenchen.allg.itd51.wollmux.config.ConfigurationErrorException;
+import de.muenchen.allg.itd51.wollmux.db.mock.MockDataset;
+import de.muenchen.allg.itd51.wollmux.db.mock.MockDatasource;
+
+public class CachingDatasourceTest
+{
+
+  @Test
+  public void testCachingDatasource() throws Exception
+  {
+    CountingDatasource mock = new CountingDatasource();
+    Map<String, Datasource> nameToDatasource = new HashMap<>();
+    nameToDatasource.put("mock", mock);
+    CachingDatasource ds = new CachingDatasource(nameToDatasource,
+        new ConfigThingy("", "NAME \"cache\" SOURCE \"mock\""), null);
+    assertEquals("cache", ds.getName());
+    assertEquals(List.of("column", "column2"), ds.getSchema());
+
+    assertEquals(1, ds.find(List.of(new QueryPart("column", "value"), new QueryPart("column2", "value2"))).size());
+    assertEquals(1, ds.find(List.of(new QueryPart("column2", "value2"), new QueryPart("column", "value"))).size());
+    assertEquals(1, mock.findCount);
+    assertEquals(1, ds.getHits());
+    assertEquals(1, ds.getMisses());
+
+    assertEquals(2, ds.getDatasetsByKey(List.of("ds", "ds2")).size());
+    assertEquals(2, ds.getDatasetsByKey(List.of("ds2", "ds", "ds")).size());
+    assertEquals(1, mock.keyCount);
+
+    assertEquals(2, ds.getContents().size());
+    assertEquals(2, ds.getContents().size());
+    assertEquals(1, mock.contentsCount);
+
+    // empty results aren't cached by default
+    assertEquals(0, ds.find(List.of(new QueryPart("column", "unknown"))).size());
+    assertEquals(0, ds.find(List.of(new QueryPart("column", "unknown"))).size());
+    assertEquals(3, mock.findCount);
+
+    ds.clear();
+    assertEquals(0, ds.size());
+    assertEquals(1, ds.find(List.of(new QueryPart("column", "value"), new QueryPart("column2", "value2"))).size());
+    assertEquals(4, mock.findCount);
+  }
+
+  @Test
+  public void testCachingDatasourceEviction() throws Exception
+  {
+    CountingDatasource mock = new CountingDatasource();
+    Map<String, Datasource> nameToDatasource = new HashMap<>();
+    nameToDatasource.put("mock", mock);
+    CachingDatasource ds = new CachingDatasource(nameToDatasource,
+        new ConfigThingy("", "NAME \"cache\" SOURCE \"mock\" MAX_ENTRIES \"2\" CACHE_EMPTY_RESULTS \"true\""), null);
+
+    ds.find(List.of(new QueryPart("column", "a")));
+    ds.find(List.of(new QueryPart("column", "b")));
+    ds.find(List.of(new QueryPart("column", "a")));
+    ds.find(List.of(new QueryPart("column", "c")));
+    assertEquals(3, mock.findCount);
+    assertEquals(2, ds.size());
+    assertEquals(1, ds.getEvictions());
+
+    // "b" was least recently used
+    ds.find(List.of(new QueryPart("column", "a")));
+    ds.find(List.of(new QueryPart("column", "b")));
+    assertEquals(4, mock.findCount);
+  }
+
+  @Test
+  public void testCachingDatasourceTimeToLive() throws Exception
+  {
+    CountingDatasource mock = new CountingDatasource();
+    Map<String, Datasource> nameToDatasource = new HashMap<>();
+    nameToDatasource.put("mock", mock);
+    CachingDatasource ds = new CachingDatasource(nameToDatasource,
+        new ConfigThingy("", "NAME \"cache\" SOURCE \"mock\" TTL \"1\""), null);
+
+    ds.getDatasetsByKey(List.of("ds"));
+    Thread.sleep(5);
+    ds.getDatasetsByKey(List.of("ds"));
+    assertEquals(2, mock.keyCount);
+    assertEquals(0, ds.getHits());
+  }
+
+  @Test
+  public void testCachingDatasourceKeepsKeyOrder() throws Exception
+  {
+    CountingDatasource mock = new CountingDatasource();
+    Map<String, Datasource> nameToDatasource = new HashMap<>();
+    nameToDatasource.put("mock", mock);
+    CachingDatasource ds = new CachingDatasource(nameToDatasource,
+        new ConfigThingy("", "NAME \"cache\" SOURCE \"mock\""), null);
+
+    assertEquals(List.of("ds", "ds2"), keys(ds.getDatasetsByKey(List.of("ds", "ds2"))));
+    assertEquals(List.of("ds2", "ds"), keys(ds.getDatasetsByKey(List.of("ds2", "ds"))));
+    assertEquals(List.of("ds2", "ds"), keys(ds.getDatasetsByKey(List.of("ds2", "ds", "ds2"))));
+    assertEquals(1, mock.keyCount);
+  }
+
+  @Test
+  public void testInvalidCachingDatasource() throws Exception
+  {
+    Map<String, Datasource> nameToDatasource = new HashMap<>();
+    nameToDatasource.put("mock", new MockDatasource());
+    assertThrows(ConfigurationErrorException.class,
+        () -> new CachingDatasource(nameToDatasource, new ConfigThingy("", "NAME \"cache\""), null));
+    assertThrows(ConfigurationErrorException.class, () -> new CachingDatasource(nameToDatasource,
+        new ConfigThingy("", "NAME \"cache\" SOURCE \"unknown\""), null));
+    assertThrows(ConfigurationErrorException.class, () -> new CachingDatasource(nameToDatasource,
+        new ConfigThingy("", "NAME \"cache\" SOURCE \"mock\" TTL \"-1\""), null));
+    assertThrows(ConfigurationErrorException.class, () -> new CachingDatasource(nameToDatasource,
+        new ConfigThingy("", "NAME \"cache\" SOURCE \"mock\" MAX_ENTRIES \"many\""), null));
+  }
+
+  private static List<String> keys(QueryResults results)
+  {
+    List<String> keys = new ArrayList<>();
+    results.forEach(ds -> keys.add(ds.getKey()));
+    return keys;
+  }
+
+  private static class CountingDatasource extends MockDatasource
+  {
+    private int findCount = 0;
+    private int keyCount = 0;
+    private int contentsCount = 0;
+
+    CountingDatasource()
+    {
+      super("mock", List.of("column", "column2"),
+          List.of(new MockDataset("ds", Map.of("column", "value", "column2", "value2")),
+              new MockDataset("ds2", Map.of("column", "value3", "column2", "value4"))));
+    }
+
+    @Override
+    public QueryResults find(List<QueryPart> query)
+    {
+      findCount++;
+      return super.find(query);
+    }
+
+    @Override
+    public QueryResults getDatasetsByKey(Collection<String> keys)
+    {
+      keyCount++;
+      return super.getDatasetsByKey(keys);
+    }
+
+    @Override
+    public QueryResults getContents()
+    {
+      contentsCount++;
+      return super.getContents();
+    }
+  }
+
+}
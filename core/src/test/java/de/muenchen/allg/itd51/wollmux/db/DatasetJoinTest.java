@@ -0,0 +1,176 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2023 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.db;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import de.muenchen.allg.itd51.wollmux.db.mock.MockDataset;
+import de.muenchen.allg.itd51.wollmux.db.mock.MockDatasource;
+
+public class DatasetJoinTest
+{
+
+  @Test
+  public void testLeftJoinFirst() throws Exception
+  {
+    CountingDatasource probe = new CountingDatasource(
+        List.of(new MockDataset("p1", Map.of("join", "a", "value", "1")),
+            new MockDataset("p2", Map.of("join", "a", "value", "2"))));
+    DatasetJoin join = new DatasetJoin(probe, new String[] { "column" }, new String[] { "join" });
+    QueryResults outer = new QueryResultsList(List.of(new MockDataset("o1", "column", "a"),
+        new MockDataset("o2", "column", "b"), new MockDataset("o3", "column", "a")));
+
+    List<Dataset> results = join.leftJoinFirst(outer, JoinedDataset::new, DatasetPredicate.matchAll);
+    assertEquals(3, results.size());
+    assertEquals("o1", results.get(0).getKey());
+    assertEquals("1", results.get(0).get("value"));
+    assertNull(results.get(1).get("value"));
+    assertEquals("1", results.get(2).get("value"));
+    assertEquals(2, probe.findCount);
+
+    results = join.leftJoinFirst(outer, JoinedDataset::new, ds -> "2".equals(get(ds, "value")));
+    assertEquals(2, results.size());
+    assertEquals("2", results.get(0).get("value"));
+  }
+
+  @Test
+  public void testInnerJoin() throws Exception
+  {
+    CountingDatasource probe = new CountingDatasource(
+        List.of(new MockDataset("p1", Map.of("join", "a", "value", "1")),
+            new MockDataset("p2", Map.of("join", "a", "value", "2"))));
+    DatasetJoin join = new DatasetJoin(probe, new String[] { "column" }, new String[] { "join" });
+    QueryResults outer = new QueryResultsList(
+        List.of(new MockDataset("o1", "column", "a"), new MockDataset("o2", "column", "b")));
+
+    List<Dataset> results = join.innerJoin(outer, JoinedDataset::new, DatasetPredicate.matchAll);
+    assertEquals(2, results.size());
+    assertEquals("1", results.get(0).get("value"));
+    assertEquals("2", results.get(1).get("value"));
+  }
+
+  @Test
+  public void testJoinScalesWithDistinctTuples() throws Exception
+  {
+    int distinct = 10;
+    List<Dataset> probeDatasets = new ArrayList<>();
+    for (int i = 0; i < distinct; i++)
+    {
+      probeDatasets.add(new MockDataset("p" + i, Map.of("join", "v" + i, "value", "" + i)));
+    }
+    CountingDatasource probe = new CountingDatasource(probeDatasets);
+    DatasetJoin join = new DatasetJoin(probe, new String[] { "column" }, new String[] { "join" });
+
+    for (int size : new int[] { 100, 1000, 10000 })
+    {
+      probe.findCount = 0;
+      List<Dataset> outerDatasets = new ArrayList<>(size);
+      for (int i = 0; i < size; i++)
+      {
+        outerDatasets.add(new MockDataset("o" + i, "column", "v" + (i % distinct)));
+      }
+
+      List<Dataset> results = join.leftJoinFirst(new QueryResultsList(outerDatasets), JoinedDataset::new,
+          DatasetPredicate.matchAll);
+      assertEquals(size, results.size());
+      assertEquals("" + ((size - 1) % distinct), results.get(size - 1).get("value"));
+      assertEquals(distinct, probe.findCount);
+    }
+  }
+
+  @Test
+  public void testKeys() throws Exception
+  {
+    QueryResults results = new QueryResultsList(List.of(new MockDataset("b", "column", "1"),
+        new MockDataset("a", "column", "2"), new MockDataset("b", "column", "3")));
+    assertEquals(List.of("b", "a"), new ArrayList<>(DatasetJoin.keys(results)));
+    assertEquals(Set.of("ds2"), DatasetJoin.existingKeys(new MockDatasource(), List.of("ds2", "ds3")));
+    assertEquals(Set.of(), DatasetJoin.existingKeys(new MockDatasource(), List.of()));
+  }
+
+  private static String get(Dataset ds, String column)
+  {
+    try
+    {
+      return ds.get(column);
+    } catch (ColumnNotFoundException e)
+    {
+      return null;
+    }
+  }
+
+  private static class JoinedDataset implements Dataset
+  {
+    private final Dataset outer;
+
+    private final Dataset probe;
+
+    JoinedDataset(Dataset outer, Dataset probe)
+    {
+      this.outer = outer;
+      this.probe = probe;
+    }
+
+    @Override
+    public String get(String columnName) throws ColumnNotFoundException
+    {
+      if ("value".equals(columnName))
+      {
+        return probe == null ? null : probe.get(columnName);
+      }
+      return outer.get(columnName);
+    }
+
+    @Override
+    public String getKey()
+    {
+      return outer.getKey();
+    }
+  }
+
+  private static class CountingDatasource extends MockDatasource
+  {
+    private int findCount = 0;
+
+    CountingDatasource(List<Dataset> datasets)
+    {
+      super("probe", List.of("join", "value"), datasets);
+    }
+
+    @Override
+    public QueryResults find(List<QueryPart> query)
+    {
+      findCount++;
+      return super.find(query);
+    }
+  }
+
+}
@@ -103,4 +103,45 @@ public class DatasetPredicateTest
         "Given datasets have a wrong match count with given QueryParts:");
   }
 
+  @Test
+  public void makeMatcher()
+  {
+    assertTrue(DatasetPredicate.makeMatcher("sheldon").test("Sheldon"));
+    assertFalse(DatasetPredicate.makeMatcher("Sheldon").test("Sheldon Cooper"));
+    assertFalse(DatasetPredicate.makeMatcher("Sheldon").test(null));
+
+    assertTrue(DatasetPredicate.makeMatcher("shel*").test("Sheldon"));
+    assertFalse(DatasetPredicate.makeMatcher("shel*").test("Mr. Sheldon"));
+    assertFalse(DatasetPredicate.makeMatcher("Sheldon Cooper*").test("Sheldon"));
+
+    assertTrue(DatasetPredicate.makeMatcher("*DON").test("Sheldon"));
+    assertFalse(DatasetPredicate.makeMatcher("*shel").test("Sheldon"));
+    assertFalse(DatasetPredicate.makeMatcher("*Sheldon Cooper").test("Cooper"));
+
+    assertTrue(DatasetPredicate.makeMatcher("*eld*").test("Sheldon"));
+    assertTrue(DatasetPredicate.makeMatcher("**eld**").test("Sheldon"));
+    assertFalse(DatasetPredicate.makeMatcher("*leo*").test("Sheldon"));
+    assertTrue(DatasetPredicate.makeMatcher("*").test("Sheldon"));
+    assertTrue(DatasetPredicate.makeMatcher("").test(""));
+  }
+
+  @Test
+  public void makeMatcherInnerStar()
+  {
+    assertTrue(DatasetPredicate.makeMatcher("S*n").test("Sheldon"));
+    assertTrue(DatasetPredicate.makeMatcher("s**L*n").test("Sheldon"));
+    assertFalse(DatasetPredicate.makeMatcher("S*n").test("Sheldon Cooper"));
+    assertTrue(DatasetPredicate.makeMatcher("*e*o*").test("Sheldon Cooper"));
+    assertFalse(DatasetPredicate.makeMatcher("S*n").test(null));
+  }
+
+  @Test
+  public void makeMatcherNoRegex()
+  {
+    assertTrue(DatasetPredicate.makeMatcher("a.b").test("A.B"));
+    assertFalse(DatasetPredicate.makeMatcher("a.b").test("axb"));
+    assertTrue(DatasetPredicate.makeMatcher("*(1)*").test("Zimmer (1)"));
+    assertTrue(DatasetPredicate.makeMatcher("[a]*\\E").test("[A] \\E"));
+  }
+
 }
@@ -0,0 +1,159 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2023 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.db;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.net.URL;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import de.muenchen.allg.itd51.wollmux.config.ConfigThingy;
+import de.muenchen.allg.itd51.wollmux.db.mock.MockDatasource;
+
+public class DatasourcesTest
+{
+
+  private final URL file = getClass().getResource("thingyDatasource.conf");
+
+  @Test
+  public void testParseDatasources() throws Exception
+  {
+    Map<String, String> descriptions = new HashMap<>();
+    Set<String> changed = new HashSet<>();
+    Map<String, Datasource> datasources = Datasources.parseDatasources(
+        conf("Schluessel(\"column\")", "DROP(\"column2\")"), null, Map.of(), Map.of(), descriptions,
+        changed);
+    assertEquals(Set.of("conf", "schema", "conf2"), datasources.keySet());
+    assertEquals(Set.of("conf", "schema", "conf2"), changed);
+    assertEquals(Set.of("conf", "schema", "conf2"), descriptions.keySet());
+    assertEquals(List.of("column"), datasources.get("schema").getSchema());
+  }
+
+  @Test
+  public void testReuseUnchangedDatasources() throws Exception
+  {
+    Map<String, String> descriptions = new HashMap<>();
+    Map<String, Datasource> datasources = Datasources.parseDatasources(
+        conf("Schluessel(\"column\")", "DROP(\"column2\")"), null, Map.of(), Map.of(), descriptions,
+        new HashSet<>());
+
+    // nothing changed
+    Map<String, String> newDescriptions = new HashMap<>();
+    Set<String> changed = new HashSet<>();
+    Map<String, Datasource> newDatasources = Datasources.parseDatasources(
+        conf("Schluessel(\"column\")", "DROP(\"column2\")"), null, datasources, descriptions,
+        newDescriptions, changed);
+    assertEquals(Set.of(), changed);
+    assertSame(datasources.get("conf"), newDatasources.get("conf"));
+    assertSame(datasources.get("schema"), newDatasources.get("schema"));
+    assertSame(datasources.get("conf2"), newDatasources.get("conf2"));
+
+    // only the data source on top changed
+    changed = new HashSet<>();
+    newDatasources = Datasources.parseDatasources(conf("Schluessel(\"column\")", "DROP(\"column\")"),
+        null, datasources, descriptions, new HashMap<>(), changed);
+    assertEquals(Set.of("schema"), changed);
+    assertSame(datasources.get("conf"), newDatasources.get("conf"));
+    assertNotSame(datasources.get("schema"), newDatasources.get("schema"));
+    assertSame(datasources.get("conf2"), newDatasources.get("conf2"));
+
+    // the data source used by the unchanged schema changed
+    changed = new HashSet<>();
+    newDatasources = Datasources.parseDatasources(
+        conf("Schluessel(\"column2\")", "DROP(\"column2\")"), null, datasources, descriptions,
+        new HashMap<>(), changed);
+    assertEquals(Set.of("conf", "schema"), changed);
+    assertNotSame(datasources.get("conf"), newDatasources.get("conf"));
+    assertNotSame(datasources.get("schema"), newDatasources.get("schema"));
+    assertSame(datasources.get("conf2"), newDatasources.get("conf2"));
+  }
+
+  @Test
+  public void testRemovedDatasource() throws Exception
+  {
+    Map<String, String> descriptions = new HashMap<>();
+    Map<String, Datasource> datasources = Datasources.parseDatasources(
+        conf("Schluessel(\"column\")", "DROP(\"column2\")"), null, Map.of(), Map.of(), descriptions,
+        new HashSet<>());
+
+    Set<String> changed = new HashSet<>();
+    Map<String, Datasource> newDatasources = Datasources.parseDatasources(
+        new ConfigThingy("", "Datenquellen(" + datasource("conf2", "Schluessel(\"column\")")
+            + "Datenquelle(NAME \"schema\" TYPE \"schema\" SOURCE \"conf2\" DROP(\"column2\")))"),
+        null, datasources, descriptions, new HashMap<>(), changed);
+    assertEquals(Set.of("conf", "schema"), changed);
+    assertEquals(Set.of("schema", "conf2"), newDatasources.keySet());
+    assertSame(datasources.get("conf2"), newDatasources.get("conf2"));
+  }
+
+  @Test
+  public void testCloseReplacedDatasources() throws Exception
+  {
+    Set<String> closed = new HashSet<>();
+    Datasource kept = closeable("kept", closed);
+    Datasource replaced = closeable("replaced", closed);
+    Datasource removed = closeable("removed", closed);
+    Map<String, Datasource> oldDatasources = new HashMap<>();
+    oldDatasources.put("kept", kept);
+    oldDatasources.put("replaced", replaced);
+    oldDatasources.put("removed", removed);
+    oldDatasources.put("failed", null);
+
+    Datasources.closeReplaced(oldDatasources,
+        Map.of("kept", kept, "replaced", closeable("replacement", closed)));
+    assertEquals(Set.of("replaced", "removed"), closed);
+  }
+
+  private static Datasource closeable(String name, Set<String> closed)
+  {
+    return new MockDatasource(name, List.of("column"), List.of())
+    {
+      @Override
+      public void close()
+      {
+        closed.add(name);
+      }
+    };
+  }
+
+  private ConfigThingy conf(String key, String drop) throws Exception
+  {
+    return new ConfigThingy("",
+        "Datenquellen(" + datasource("conf", key) + ")"
+            + "Datenquellen(Datenquelle(NAME \"schema\" TYPE \"schema\" SOURCE \"conf\" " + drop + ")"
+            + datasource("conf2", "Schluessel(\"column\")") + ")");
+  }
+
+  private String datasource(String name, String key)
+  {
+    return "Datenquelle(NAME \"" + name + "\" TYPE \"conf\" URL \"" + file + "\" " + key + ")";
+  }
+}
@@ -23,10 +23,19 @@
 package de.muenchen.allg.itd51.wollmux.db;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import javax.naming.Context;
+import javax.naming.ServiceUnavailableException;
+import javax.naming.directory.DirContext;
 
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
@@ -35,14 +44,22 @@ import org.junit.jupiter.api.Test;
 import com.unboundid.ldap.listener.InMemoryDirectoryServer;
 import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
 import com.unboundid.ldap.listener.InMemoryListenerConfig;
+import com.unboundid.ldap.listener.interceptor.InMemoryInterceptedSearchRequest;
+import com.unboundid.ldap.listener.interceptor.InMemoryOperationInterceptor;
 
 import de.muenchen.allg.itd51.wollmux.config.ConfigThingy;
+import de.muenchen.allg.itd51.wollmux.config.ConfigurationErrorException;
 
 public class LDAPDatasourceTest
 {
   public static InMemoryDirectoryServer server;
   public static final String BASE_DN = "dc=myorg,dc=com";
 
+  /**
+   * Searches with this base DN are delayed by the server.
+   */
+  private static volatile String delayedBaseDN = null;
+
   @BeforeAll
   public static void setup() throws Exception
   {
@@ -50,6 +67,23 @@ public class LDAPDatasourceTest
     InMemoryListenerConfig listener = InMemoryListenerConfig.createLDAPConfig("test");
     InMemoryDirectoryServerConfig config = new InMemoryDirectoryServerConfig(BASE_DN);
     config.setListenerConfigs(listener);
+    config.addInMemoryOperationInterceptor(new InMemoryOperationInterceptor()
+    {
+      @Override
+      public void processSearchRequest(InMemoryInterceptedSearchRequest request)
+      {
+        if (request.getRequest().getBaseDN().equalsIgnoreCase(delayedBaseDN))
+        {
+          try
+          {
+            Thread.sleep(3000);
+          } catch (InterruptedException e)
+          {
+            Thread.currentThread().interrupt();
+          }
+        }
+      }
+    });
     server = new InMemoryDirectoryServer(config);
     server.applyChangesFromLDIF(Paths.get(LDAPDatasourceTest.class.getResource("users.ldif").toURI()).toFile());
     server.startListening();
@@ -65,57 +99,250 @@ public class LDAPDatasourceTest
   public void testLDAPDatasourceAbsolute() throws Exception
   {
     String url = "ldap://localhost:" + server.getListenPort();
-    Datasource ds = new LDAPDatasource(null,
+    try (Datasource ds = new LDAPDatasource(null,
         new ConfigThingy("", "NAME \"ldap\" URL \"" + url + "\" BASE_DN \"" + BASE_DN
             + "\" OBJECT_CLASS \"person\" Spalten ((DB_SPALTE \"column\" PATH \"0:sn\") (DB_SPALTE \"column2\" PATH \"-1:ou\")) Schluessel (\"column\")"),
-        null);
-    assertEquals("ldap", ds.getName());
-    assertEquals(List.of("column", "column2"), ds.getSchema());
-
-    QueryResults results = ds.getContents();
-    assertEquals(0, results.size());
-    results = ds.getDatasetsByKey(List.of("(&(sn=LDAP))==%§%=="));
-    assertEquals(1, results.size());
-    results = ds.find(List.of(new QueryPart("column", "Ldap")));
-    assertEquals(1, results.size());
-    Dataset data = results.iterator().next();
-    assertEquals("(&(sn=Ldap))==%§%==", data.getKey());
-    assertEquals("Ldap", data.get("column"));
-    assertThrows(ColumnNotFoundException.class, () -> data.get("unknown"));
+        null))
+    {
+      assertEquals("ldap", ds.getName());
+      assertEquals(List.of("column", "column2"), ds.getSchema());
+
+      QueryResults results = ds.getContents();
+      assertEquals(0, results.size());
+      results = ds.getDatasetsByKey(List.of("(&(sn=LDAP))==%§%=="));
+      assertEquals(1, results.size());
+      results = ds.find(List.of(new QueryPart("column", "Ldap")));
+      assertEquals(1, results.size());
+      Dataset data = results.iterator().next();
+      assertEquals("(&(sn=Ldap))==%§%==", data.getKey());
+      assertEquals("Ldap", data.get("column"));
+      assertThrows(ColumnNotFoundException.class, () -> data.get("unknown"));
+    }
   }
 
   @Test
   public void testLDAPDatasourceAbsoluteRelative() throws Exception
   {
     String url = "ldap://localhost:" + server.getListenPort();
-    Datasource ds = new LDAPDatasource(null, new ConfigThingy("", "NAME \"ldap\" URL \"" + url + "\" BASE_DN \""
+    try (Datasource ds = new LDAPDatasource(null, new ConfigThingy("", "NAME \"ldap\" URL \"" + url + "\" BASE_DN \""
         + BASE_DN
         + "\" OBJECT_CLASS \"person\" Spalten ((DB_SPALTE \"column\" PATH \"0:sn\") (DB_SPALTE \"column2\" PATH \"-1:ou\")) Schluessel (\"column\" \"column2\")"),
-        null);
-    assertEquals("ldap", ds.getName());
-    assertEquals(List.of("column", "column2"), ds.getSchema());
+        null))
+    {
+      assertEquals("ldap", ds.getName());
+      assertEquals(List.of("column", "column2"), ds.getSchema());
 
-    QueryResults results = ds.find(List.of(new QueryPart("column", "Ldap")));
-    assertEquals(1, results.size());
-    results = ds.getDatasetsByKey(List.of("(&(sn=Ldap))==%§%==column2=Users&:=&:%"));
-    assertEquals(1, results.size());
+      QueryResults results = ds.find(List.of(new QueryPart("column", "Ldap")));
+      assertEquals(1, results.size());
+      results = ds.getDatasetsByKey(List.of("(&(sn=Ldap))==%§%==column2=Users&:=&:%"));
+      assertEquals(1, results.size());
+    }
   }
 
   @Test
   public void testLDAPDatasourceRelative() throws Exception
   {
     String url = "ldap://localhost:" + server.getListenPort();
-    Datasource ds = new LDAPDatasource(null, new ConfigThingy("", "NAME \"ldap\" URL \"" + url + "\" BASE_DN \""
+    try (Datasource ds = new LDAPDatasource(null, new ConfigThingy("", "NAME \"ldap\" URL \"" + url + "\" BASE_DN \""
         + BASE_DN
         + "\" OBJECT_CLASS \"person\" Spalten ((DB_SPALTE \"column\" PATH \"0:sn\") (DB_SPALTE \"column2\" PATH \"-1:ou\")) Schluessel (\"column2\")"),
+        null))
+    {
+      assertEquals("ldap", ds.getName());
+      assertEquals(List.of("column", "column2"), ds.getSchema());
+
+      QueryResults results = ds.find(List.of(new QueryPart("column2", "Users")));
+      assertEquals(1, results.size());
+      results = ds.getDatasetsByKey(List.of("==%§%==column2=Users&:=&:%"));
+      assertEquals(1, results.size());
+    }
+  }
+
+  @Test
+  public void testLDAPDatasourceReusesConnections() throws Exception
+  {
+    String url = "ldap://localhost:" + server.getListenPort();
+    try (LDAPDatasource ds = new LDAPDatasource(null, new ConfigThingy("", "NAME \"ldap\" URL \"" + url + "\" BASE_DN \""
+        + BASE_DN
+        + "\" OBJECT_CLASS \"person\" POOL_SIZE \"2\" Spalten ((DB_SPALTE \"column\" PATH \"0:sn\") (DB_SPALTE \"column2\" PATH \"-1:ou\")) Schluessel (\"column\" \"column2\")"),
+        null))
+    {
+      LDAPContextPool pool = ds.getPool();
+      assertEquals(2, pool.getMaxSize());
+
+      for (int i = 0; i < 5; i++)
+      {
+        assertEquals(1, ds.find(List.of(new QueryPart("column", "Ldap"))).size());
+        assertEquals(1, ds.find(List.of(new QueryPart("column2", "Users"))).size());
+      }
+      assertEquals(1, pool.getCreatedCount());
+      assertTrue(pool.getBorrowCount() >= 10);
+      assertEquals(0, pool.getActiveCount());
+      assertEquals(1, pool.getIdleCount());
+      assertEquals(0, pool.getExhaustedCount());
+
+      pool.clear();
+      assertEquals(0, pool.getIdleCount());
+    }
+  }
+
+  @Test
+  public void testLDAPDatasourceClose() throws Exception
+  {
+    String url = "ldap://localhost:" + server.getListenPort();
+    LDAPDatasource ds = new LDAPDatasource(null, new ConfigThingy("", "NAME \"ldap\" URL \"" + url + "\" BASE_DN \""
+        + BASE_DN
+        + "\" OBJECT_CLASS \"person\" Spalten ((DB_SPALTE \"column\" PATH \"0:sn\")) Schluessel (\"column\")"),
+        null);
+    assertEquals(1, ds.find(List.of(new QueryPart("column", "Ldap"))).size());
+    assertEquals(1, ds.getPool().getIdleCount());
+
+    assertTrue(ds.getPool().isEvicting());
+
+    ds.close();
+    assertTrue(ds.getPool().isClosed());
+    assertFalse(ds.getPool().isEvicting());
+    assertEquals(0, ds.getPool().getIdleCount());
+    assertEquals(0, ds.find(List.of(new QueryPart("column", "Ldap"))).size());
+  }
+
+  @Test
+  public void testLDAPContextPoolExhausted() throws Exception
+  {
+    Properties properties = new Properties();
+    properties.put(Context.INITIAL_CONTEXT_FACTORY, "com.sun.jndi.ldap.LdapCtxFactory");
+    properties.put(Context.PROVIDER_URL, "ldap://localhost:" + server.getListenPort());
+    LDAPContextPool pool = new LDAPContextPool(properties, 1, 60000, 10);
+
+    DirContext ctx = pool.borrow();
+    assertEquals(1, pool.getActiveCount());
+    assertThrows(ServiceUnavailableException.class, pool::borrow);
+    assertEquals(1, pool.getExhaustedCount());
+
+    pool.release(ctx);
+    assertEquals(ctx, pool.borrow());
+    pool.invalidate(ctx);
+    assertEquals(0, pool.getActiveCount());
+    assertEquals(0, pool.getIdleCount());
+    assertEquals(1, pool.getInvalidatedCount());
+    assertEquals(1, pool.getCreatedCount());
+  }
+
+  @Test
+  public void testLDAPContextPoolClose() throws Exception
+  {
+    Properties properties = new Properties();
+    properties.put(Context.INITIAL_CONTEXT_FACTORY, "com.sun.jndi.ldap.LdapCtxFactory");
+    properties.put(Context.PROVIDER_URL, "ldap://localhost:" + server.getListenPort());
+    LDAPContextPool pool = new LDAPContextPool(properties, 2, 60000, 10);
+
+    DirContext active = pool.borrow();
+    pool.release(pool.borrow());
+    assertEquals(1, pool.getIdleCount());
+
+    assertTrue(pool.isEvicting());
+
+    pool.close();
+    assertTrue(pool.isClosed());
+    assertFalse(pool.isEvicting());
+    assertEquals(0, pool.getIdleCount());
+    pool.release(active);
+    assertEquals(0, pool.getIdleCount());
+    assertEquals(0, pool.getActiveCount());
+    assertThrows(ServiceUnavailableException.class, pool::borrow);
+  }
+
+  @Test
+  public void testLDAPContextPoolEvictsIdleContexts() throws Exception
+  {
+    Properties properties = new Properties();
+    properties.put(Context.INITIAL_CONTEXT_FACTORY, "com.sun.jndi.ldap.LdapCtxFactory");
+    properties.put(Context.PROVIDER_URL, "ldap://localhost:" + server.getListenPort());
+    LDAPContextPool pool = new LDAPContextPool(properties, 1, 50, 10);
+    try
+    {
+      pool.release(pool.borrow());
+      for (int i = 0; i < 200 && pool.getIdleCount() > 0; i++)
+      {
+        Thread.sleep(50);
+      }
+      assertEquals(0, pool.getIdleCount());
+    } finally
+    {
+      pool.close();
+    }
+  }
+
+  @Test
+  public void testLDAPDatasourceInvalidPoolSize() throws Exception
+  {
+    String url = "ldap://localhost:" + server.getListenPort();
+    ConfigThingy conf = new ConfigThingy("", "NAME \"ldap\" URL \"" + url + "\" BASE_DN \"" + BASE_DN
+        + "\" OBJECT_CLASS \"person\" POOL_SIZE \"0\" Spalten ((DB_SPALTE \"column\" PATH \"0:sn\")) Schluessel (\"column\")");
+    assertThrows(ConfigurationErrorException.class, () -> new LDAPDatasource(null, conf, null));
+  }
+
+  @Test
+  public void testLDAPDatasourceParallelLevelSearch() throws Exception
+  {
+    String url = "ldap://localhost:" + server.getListenPort();
+    String conf = "NAME \"ldap\" URL \"" + url + "\" BASE_DN \"" + BASE_DN
+        + "\" OBJECT_CLASS \"person\" Spalten ((DB_SPALTE \"column\" PATH \"0:sn\") (DB_SPALTE \"column2\" PATH \"-2:dc\")) Schluessel (\"column\")";
+    try (Datasource sequential = new LDAPDatasource(null, new ConfigThingy("", conf + " SEARCH_THREADS \"1\""), null);
+        Datasource parallel = new LDAPDatasource(null, new ConfigThingy("", conf + " SEARCH_THREADS \"4\""), null))
+    {
+      List<QueryPart> query = List.of(new QueryPart("column2", "myorg"));
+      List<String> expected = new ArrayList<>();
+      sequential.find(query).forEach(ds -> expected.add(ds.getKey()));
+      assertEquals(2, expected.size());
+      for (int i = 0; i < 5; i++)
+      {
+        List<String> actual = new ArrayList<>();
+        parallel.find(query).forEach(ds -> actual.add(ds.getKey()));
+        assertEquals(expected, actual);
+      }
+    }
+  }
+
+  @Test
+  public void testLDAPDatasourceParallelLevelSearchTimeout() throws Exception
+  {
+    String url = "ldap://localhost:" + server.getListenPort();
+    String conf = "NAME \"ldap\" URL \"" + url + "\" BASE_DN \"" + BASE_DN
+        + "\" OBJECT_CLASS \"person\" SEARCH_THREADS \"4\" Spalten ((DB_SPALTE \"column\" PATH \"0:sn\") (DB_SPALTE \"column2\" PATH \"-2:dc\")) Schluessel (\"column\")";
+    Datasource.setDatasourceTimeout(500L);
+    delayedBaseDN = "ou=Groups," + BASE_DN;
+    try (Datasource ds = new LDAPDatasource(null, new ConfigThingy("", conf), null))
+    {
+      long start = System.currentTimeMillis();
+      List<String> columns = new ArrayList<>();
+      for (Dataset data : ds.find(List.of(new QueryPart("column2", "myorg"))))
+      {
+        columns.add(data.get("column"));
+      }
+      assertEquals(List.of("Ldap"), columns);
+      assertTrue(System.currentTimeMillis() - start < 3000);
+    } finally
+    {
+      delayedBaseDN = null;
+      Datasource.setDatasourceTimeout(null);
+    }
+  }
+
+  @Test
+  public void testLDAPDatasourceCloseShutsDownSearchThreads() throws Exception
+  {
+    String url = "ldap://localhost:" + server.getListenPort();
+    LDAPDatasource ds = new LDAPDatasource(null, new ConfigThingy("", "NAME \"ldap\" URL \"" + url + "\" BASE_DN \""
+        + BASE_DN
+        + "\" OBJECT_CLASS \"person\" SEARCH_THREADS \"4\" Spalten ((DB_SPALTE \"column\" PATH \"0:sn\") (DB_SPALTE \"column2\" PATH \"-2:dc\")) Schluessel (\"column\")"),
         null);
-    assertEquals("ldap", ds.getName());
-    assertEquals(List.of("column", "column2"), ds.getSchema());
+    assertEquals(2, ds.find(List.of(new QueryPart("column2", "myorg"))).size());
+    assertFalse(ds.getExecutor().isShutdown());
 
-    QueryResults results = ds.find(List.of(new QueryPart("column2", "Users")));
-    assertEquals(1, results.size());
-    results = ds.getDatasetsByKey(List.of("==%§%==column2=Users&:=&:%"));
-    assertEquals(1, results.size());
+    ds.close();
+    assertTrue(ds.getExecutor().isShutdown());
+    assertTrue(ds.getExecutor().awaitTermination(10, TimeUnit.SECONDS));
   }
 
 }
@@ -57,4 +57,27 @@ public class OOoDatasourceTest extends OfficeTest
     assertEquals(5, results.size());
   }
 
+  @Test
+  public void testOOoDatasourceStatements() throws Exception
+  {
+    Datasource prepared = new OOoDatasource(null,
+        new ConfigThingy("", "NAME \"ooo\" SOURCE \"Bibliography\" TABLE \"biblio\" Schluessel (\"Identifier\")"));
+    Datasource plain = new OOoDatasource(null, new ConfigThingy("",
+        "NAME \"ooo\" SOURCE \"Bibliography\" TABLE \"biblio\" Schluessel (\"Identifier\") "
+            + "PREPARED_STATEMENTS \"false\""));
+
+    for (Datasource ds : List.of(prepared, plain))
+    {
+      // repeated queries reuse the connection and the statement
+      for (int i = 0; i < 3; i++)
+      {
+        assertEquals(5, ds.find(List.of(new QueryPart("Author", "Gris, Myriam"))).size());
+        assertEquals(1, ds.getDatasetsByKey(List.of("Identifier#ARJ00#", "Identifier#unknown#")).size());
+      }
+      assertEquals(5, ds.find(List.of(new QueryPart("Author", "gris, myriam"))).size());
+      assertEquals(0, ds.find(List.of(new QueryPart("Author", "O'Gris"))).size());
+      assertEquals(0, ds.getDatasetsByKey(List.of("Identifier#AR'J00#")).size());
+    }
+  }
+
 }
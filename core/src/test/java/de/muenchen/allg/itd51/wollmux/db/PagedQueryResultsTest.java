@@ -0,0 +1,92 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2023 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.db;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.junit.jupiter.api.Test;
+
+import de.muenchen.allg.itd51.wollmux.db.mock.MockDataset;
+
+public class PagedQueryResultsTest
+{
+
+  @Test
+  public void testPagedQueryResults()
+  {
+    List<Dataset> data = new ArrayList<>();
+    for (int i = 0; i < 25; i++)
+    {
+      data.add(new MockDataset("ds" + i, "column", "value" + i));
+    }
+    List<Integer> offsets = new ArrayList<>();
+    PagedQueryResults results = new PagedQueryResults((offset, limit) -> {
+      offsets.add(offset);
+      return data.subList(Math.min(offset, data.size()), Math.min(offset + limit, data.size()));
+    }, 10);
+
+    assertTrue(offsets.isEmpty());
+    assertFalse(results.isEmpty());
+    assertEquals(List.of(0), offsets);
+
+    Iterator<Dataset> iter = results.iterator();
+    for (int i = 0; i < 11; i++)
+    {
+      assertEquals("ds" + i, iter.next().getKey());
+    }
+    assertEquals(List.of(0, 10), offsets);
+    assertEquals(20, results.getLoadedCount());
+    assertFalse(results.isComplete());
+
+    assertEquals(25, results.size());
+    assertTrue(results.isComplete());
+    assertEquals(List.of(0, 10, 20), offsets);
+
+    int count = 0;
+    for (Dataset ds : results)
+    {
+      assertEquals("ds" + count++, ds.getKey());
+    }
+    assertEquals(25, count);
+    assertEquals(List.of(0, 10, 20), offsets);
+  }
+
+  @Test
+  public void testEmptyPagedQueryResults()
+  {
+    PagedQueryResults results = new PagedQueryResults((offset, limit) -> List.of(), 10);
+    assertTrue(results.isEmpty());
+    assertEquals(0, results.size());
+    assertThrows(NoSuchElementException.class, () -> results.iterator().next());
+    assertThrows(IllegalArgumentException.class, () -> new PagedQueryResults((offset, limit) -> List.of(), 0));
+  }
+
+}
@@ -26,7 +26,13 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
 
 import org.junit.jupiter.api.Test;
 
@@ -47,6 +53,8 @@ public class RAMDatasourceTest
     results = ds.getDatasetsByKey(List.of("ds", "ds2"));
     assertEquals(1, results.size());
     results = ds.find(List.of(new QueryPart("column", "value")));
+    assertEquals(1, results.size());
+    results = ds.find(List.of(new QueryPart("column", "value*")));
     assertEquals(2, results.size());
     results = ds.find(List.of());
     assertEquals(0, results.size());
@@ -62,4 +70,91 @@ public class RAMDatasourceTest
     assertThrows(NullPointerException.class, () -> ds.getSchema());
   }
 
+  @Test
+  public void testIndexedRAMDatasource()
+  {
+    Datasource ds = new RAMDatasource("ram", List.of("column", "column2"),
+        List.of(new MockDataset(), new MockDataset("ds3", "column", "Value3"),
+            new MockDataset("ds4", Map.of("column", "other", "column2", "value"))),
+        true);
+    assertEquals(List.of("ds"), keys(ds.find(List.of(new QueryPart("column", "VALUE")))));
+    assertEquals(List.of("ds", "ds3"), keys(ds.find(List.of(new QueryPart("column", "val*")))));
+    assertEquals(List.of("ds3"), keys(ds.find(List.of(new QueryPart("column", "*ue3")))));
+    assertEquals(List.of("ds", "ds3", "ds4"), keys(ds.find(List.of(new QueryPart("column", "*")))));
+    assertEquals(List.of("ds4"),
+        keys(ds.find(List.of(new QueryPart("column", "*the*"), new QueryPart("column2", "value")))));
+    assertEquals(List.of(), keys(ds.find(List.of(new QueryPart("unknown", "value")))));
+    assertEquals(List.of("ds", "ds4"), keys(ds.getDatasetsByKey(List.of("ds4", "ds", "ds2"))));
+  }
+
+  @Test
+  public void testIndexedRAMDatasourceEqualsFullScan()
+  {
+    Random random = new Random(42);
+    String alphabet = "aAbBcäÄ ";
+    List<String> schema = List.of("column", "column2");
+    List<Dataset> data = new ArrayList<>();
+    for (int i = 0; i < 2000; i++)
+    {
+      Map<String, String> values = new HashMap<>();
+      values.put("column", randomString(random, alphabet, 6));
+      if (random.nextInt(10) > 0)
+      {
+        values.put("column2", randomString(random, alphabet, 4));
+      }
+      data.add(new MockDataset("ds" + random.nextInt(1500), values));
+    }
+    Datasource scan = new RAMDatasource("scan", schema, data);
+    Datasource indexed = new RAMDatasource("indexed", schema, data, true);
+
+    for (int i = 0; i < 2000; i++)
+    {
+      List<QueryPart> query = new ArrayList<>();
+      for (int j = random.nextInt(2); j >= 0; j--)
+      {
+        query.add(new QueryPart(schema.get(random.nextInt(schema.size())), randomSearchString(random, alphabet)));
+      }
+      assertEquals(datasets(scan.find(query)), datasets(indexed.find(query)), query.toString());
+
+      List<String> searchKeys = List.of("ds" + random.nextInt(1600), "ds" + random.nextInt(1600));
+      assertEquals(datasets(scan.getDatasetsByKey(searchKeys)), datasets(indexed.getDatasetsByKey(searchKeys)));
+    }
+  }
+
+  private static List<Dataset> datasets(QueryResults results)
+  {
+    return StreamSupport.stream(results.spliterator(), false).collect(Collectors.toList());
+  }
+
+  private static List<String> keys(QueryResults results)
+  {
+    return datasets(results).stream().map(Dataset::getKey).collect(Collectors.toList());
+  }
+
+  private static String randomString(Random random, String alphabet, int maxLength)
+  {
+    StringBuilder str = new StringBuilder();
+    for (int i = random.nextInt(maxLength + 1); i > 0; i--)
+    {
+      str.append(alphabet.charAt(random.nextInt(alphabet.length())));
+    }
+    return str.toString();
+  }
+
+  private static String randomSearchString(Random random, String alphabet)
+  {
+    String search = randomString(random, alphabet + "*", 5);
+    switch (random.nextInt(4))
+    {
+    case 0:
+      return "*" + search;
+    case 1:
+      return search + "*";
+    case 2:
+      return "*" + search + "*";
+    default:
+      return search;
+    }
+  }
+
 }
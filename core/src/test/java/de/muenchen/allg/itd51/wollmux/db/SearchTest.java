@@ -23,10 +23,21 @@
 package de.muenchen.allg.itd51.wollmux.db;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.jupiter.api.Test;
 
@@ -75,4 +86,190 @@ public class SearchTest
     results = Search.search("value", strategy, datasources);
     assertEquals(2, results.size());
   }
+
+  @Test
+  public void testSearchDeduplicatesEqualKeys() throws Exception
+  {
+    SearchStrategy strategy = SearchStrategy.parse(new ConfigThingy("",
+        "Suchstrategie(test (column \"${suchanfrage1}\") test2 (column \"${suchanfrage1}\"))"));
+    Map<String, Datasource> datasources = Map.of("test", new MockDatasource(), "test2",
+        new MockDatasource("test2", List.of("column"),
+            List.of(new MockDataset(new String("ds"), "column", "value"), new MockDataset("ds3", "column", "value"))));
+    SearchResults results = Search.search("value", strategy, datasources);
+    assertEquals(2, results.size());
+    assertTrue(results.isComplete());
+
+    assertThrows(IllegalArgumentException.class,
+        () -> Search.search("value", strategy, Map.of("test", new MockDatasource())));
+  }
+
+  @Test
+  public void testSearchTimeout() throws Exception
+  {
+    SearchStrategy strategy = SearchStrategy.parse(new ConfigThingy("",
+        "Suchstrategie(slow (column \"${suchanfrage1}\") test (column \"${suchanfrage1}\"))"));
+    CountDownLatch blocked = new CountDownLatch(1);
+    CountDownLatch cancelled = new CountDownLatch(1);
+    Map<String, Datasource> datasources = new HashMap<>();
+    datasources.put("test", new MockDatasource());
+    datasources.put("slow", new MockDatasource()
+    {
+      @Override
+      public QueryResults find(List<QueryPart> query)
+      {
+        try
+        {
+          blocked.await();
+        } catch (InterruptedException e)
+        {
+          cancelled.countDown();
+          Thread.currentThread().interrupt();
+        }
+        return super.find(query);
+      }
+    });
+    SearchResults results = Search.search("value", strategy, datasources, 200);
+    assertEquals(1, results.size());
+    assertFalse(results.isComplete());
+    assertEquals(Set.of("slow"), results.getTimedOutDatasources());
+    assertTrue(cancelled.await(10, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testSearchFailure() throws Exception
+  {
+    SearchStrategy strategy = SearchStrategy.parse(new ConfigThingy("",
+        "Suchstrategie(broken (column \"${suchanfrage1}\") test (column \"${suchanfrage1}\"))"));
+    Map<String, Datasource> datasources = new HashMap<>();
+    datasources.put("test", new MockDatasource());
+    datasources.put("broken", new MockDatasource()
+    {
+      @Override
+      public QueryResults find(List<QueryPart> query)
+      {
+        throw new IllegalStateException("broken");
+      }
+    });
+    SearchResults results = Search.search("value", strategy, datasources, 10000);
+    assertEquals(1, results.size());
+    assertFalse(results.isComplete());
+    assertEquals(Set.of("broken"), results.getFailedDatasources());
+    assertTrue(results.getTimedOutDatasources().isEmpty());
+  }
+
+  @Test
+  public void testQueriesOfOneDatasourceAreSequential() throws Exception
+  {
+    SearchStrategy strategy = SearchStrategy.parse(new ConfigThingy("",
+        "Suchstrategie(test (column \"${suchanfrage1}\") test (column \"${suchanfrage1}2\"))"));
+    AtomicInteger running = new AtomicInteger();
+    AtomicInteger maxRunning = new AtomicInteger();
+    Map<String, Datasource> datasources = Map.of("test", new MockDatasource()
+    {
+      @Override
+      public QueryResults find(List<QueryPart> query)
+      {
+        maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+        try
+        {
+          Thread.sleep(50);
+        } catch (InterruptedException e)
+        {
+          Thread.currentThread().interrupt();
+        }
+        running.decrementAndGet();
+        return super.find(query);
+      }
+    });
+    SearchResults results = Search.search("value", strategy, datasources, 10000);
+    assertEquals(2, results.size());
+    assertEquals(1, maxRunning.get());
+  }
+
+  @Test
+  public void testSingleQueryTimeout() throws Exception
+  {
+    SearchStrategy strategy = SearchStrategy
+        .parse(new ConfigThingy("", "Suchstrategie(slow (column \"${suchanfrage1}\"))"));
+    CountDownLatch blocked = new CountDownLatch(1);
+    Map<String, Datasource> datasources = Map.of("slow", new MockDatasource()
+    {
+      @Override
+      public QueryResults find(List<QueryPart> query)
+      {
+        try
+        {
+          blocked.await();
+        } catch (InterruptedException e)
+        {
+          Thread.currentThread().interrupt();
+        }
+        return super.find(query);
+      }
+    });
+    SearchResults results = Search.search("value", strategy, datasources, 200);
+    assertTrue(results.isEmpty());
+    assertEquals(Set.of("slow"), results.getTimedOutDatasources());
+  }
+
+  @Test
+  public void testSingleQueryFailure() throws Exception
+  {
+    SearchStrategy strategy = SearchStrategy
+        .parse(new ConfigThingy("", "Suchstrategie(broken (column \"${suchanfrage1}\"))"));
+    Map<String, Datasource> datasources = Map.of("broken", new MockDatasource()
+    {
+      @Override
+      public QueryResults find(List<QueryPart> query)
+      {
+        throw new IllegalStateException("broken");
+      }
+    });
+    SearchResults results = Search.search("value", strategy, datasources, 10000);
+    assertTrue(results.isEmpty());
+    assertEquals(Set.of("broken"), results.getFailedDatasources());
+  }
+
+  @Test
+  public void testSingleQueryPagesWithinDeadline() throws Exception
+  {
+    SearchStrategy strategy = SearchStrategy
+        .parse(new ConfigThingy("", "Suchstrategie(paged (column \"${suchanfrage1}\"))"));
+    CountDownLatch blocked = new CountDownLatch(1);
+    List<Thread> loaders = Collections.synchronizedList(new ArrayList<>());
+    Map<String, Datasource> datasources = Map.of("paged", new MockDatasource()
+    {
+      @Override
+      public QueryResults find(List<QueryPart> query)
+      {
+        return new PagedQueryResults((offset, limit) -> {
+          loaders.add(Thread.currentThread());
+          if (offset > 0)
+          {
+            try
+            {
+              blocked.await();
+            } catch (InterruptedException e)
+            {
+              Thread.currentThread().interrupt();
+            }
+          }
+          List<Dataset> page = new ArrayList<>();
+          for (int i = offset; i < offset + limit; i++)
+          {
+            page.add(new MockDataset("ds" + i, "column", "value" + i));
+          }
+          return page;
+        }, 2);
+      }
+    });
+    SearchResults results = Search.search("value", strategy, datasources, 500);
+    Iterator<Dataset> iter = results.iterator();
+    assertEquals("ds0", iter.next().getKey());
+    assertEquals("ds1", iter.next().getKey());
+    assertFalse(iter.hasNext());
+    assertEquals(Set.of("paged"), results.getTimedOutDatasources());
+    assertEquals(2, results.size());
+    assertFalse(loaders.contains(Thread.currentThread()));
+  }
 }
@@ -48,4 +48,16 @@ public class ThingyDatasourceTest
     assertThrows(ColumnNotFoundException.class, () -> data.get("unknown"));
   }
 
+  @Test
+  public void testIndexedThingyDatasource() throws Exception
+  {
+    Datasource ds = new ThingyDatasource(null, new ConfigThingy("",
+        "NAME \"conf\" URL \"" + file + "\" Schluessel(\"column\" \"column2\") INDEX \"true\""), null);
+    Dataset data = ds.find(List.of(new QueryPart("column", "VALUE1"))).iterator().next();
+    assertEquals("value2", data.get("column2"));
+    assertEquals(2, ds.find(List.of(new QueryPart("column2", "val*"))).size());
+    assertEquals(1, ds.find(List.of(new QueryPart("column2", "*ue4"))).size());
+    assertEquals(1, ds.getDatasetsByKey(List.of(data.getKey())).size());
+  }
+
 }
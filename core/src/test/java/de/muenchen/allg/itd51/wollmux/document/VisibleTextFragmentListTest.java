@@ -0,0 +1,204 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2023 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.document;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.Test;
+
+import de.muenchen.allg.itd51.wollmux.config.ConfigThingy;
+import de.muenchen.allg.itd51.wollmux.config.InvalidIdentifierException;
+import de.muenchen.allg.itd51.wollmux.config.NodeNotFoundException;
+
+public class VisibleTextFragmentListTest
+{
+
+  private static final String CONF = "VAR(NAME 'root' VALUE 'http://server')\n"
+      + "VAR(NAME 'dir' VALUE '${root}/vorlagen')\n"
+      + "Textfragmente(\n"
+      + "  VAR(NAME 'dir' VALUE 'ignored')\n"
+      + "  VAR(NAME 'local' VALUE '${dir}/local')\n"
+      + "  (FRAG_ID 'Briefkopf' URL '${dir}/briefkopf.ott')\n"
+      + "  (FRAG_ID 'Fax' URL ('${local}/fax.ott' 'fax${n}.ott' VAR(NAME 'n' VALUE '2')))\n"
+      + "  (FRAG_ID 'Abs_(.*)' URL '${dir}/abs_$1.ott')\n"
+      + "  (FRAG_ID '.*' URL '${dir}/fallback/${root}.ott')\n"
+      + ")\n"
+      + "Textfragmente(\n"
+      + "  (FRAG_ID 'Briefkopf' URL ('file:/override.ott' VAR(NAME 'dir' VALUE 'x')))\n"
+      + "  (FRAG_ID 'Loop' URL '${a}' VAR(NAME 'a' VALUE '${b}') VAR(NAME 'b' VALUE '${a}'))\n"
+      + ")\n";
+
+  @Test
+  public void testSameURLsAsPerCallResolution() throws Exception
+  {
+    ConfigThingy conf = new ConfigThingy("", CONF);
+    for (String fragId : new String[] { "Briefkopf", "Fax", "Abs_Sachgebiet", "Unbekannt", "Loop" })
+    {
+      assertEquals(referenceURLsByID(conf, fragId), VisibleTextFragmentList.getURLsByID(conf, fragId), fragId);
+      // second lookup from the index
+      assertEquals(referenceURLsByID(conf, fragId), VisibleTextFragmentList.getURLsByID(conf, fragId), fragId);
+    }
+    assertEquals(List.of("file:/override.ott", "dirx", "http://server/vorlagen/briefkopf.ott",
+        "http://server/vorlagen/fallback/http://server.ott"), VisibleTextFragmentList.getURLsByID(conf, "Briefkopf"));
+    assertEquals(List.of("http://server/vorlagen/fallback/http://server.ott"),
+        VisibleTextFragmentList.getURLsByID(conf, "Loop"));
+    assertThrows(InvalidIdentifierException.class, () -> VisibleTextFragmentList.getURLsByID(conf, "no id"));
+  }
+
+  @Test
+  public void testIndexIsRebuiltForNewConfiguration() throws Exception
+  {
+    ConfigThingy conf = new ConfigThingy("", "Textfragmente((FRAG_ID 'A' URL 'a.ott'))");
+    assertEquals(List.of("a.ott"), VisibleTextFragmentList.getURLsByID(conf, "A"));
+    ConfigThingy reloaded = new ConfigThingy("", "Textfragmente((FRAG_ID 'A' URL 'b.ott'))");
+    assertEquals(List.of("b.ott"), VisibleTextFragmentList.getURLsByID(reloaded, "A"));
+  }
+
+  @Test
+  public void testConfigurationIsEvaluatedOnce() throws Exception
+  {
+    StringBuilder builder = new StringBuilder("VAR(NAME 'root' VALUE 'http://server')\n");
+    for (int i = 0; i < 20; i++)
+    {
+      builder.append("Textfragmente(\n  VAR(NAME 'dir").append(i).append("' VALUE '${root}/").append(i)
+          .append("')\n");
+      for (int j = 0; j < 100; j++)
+      {
+        builder.append("  (FRAG_ID 'frag_").append(i).append('_').append(j).append("' URL '${dir").append(i)
+            .append("}/").append(j).append(".ott')\n");
+      }
+      builder.append(")\nOther").append(i).append("(A 'a' B('b' 'c') C(D 'd'))\n");
+    }
+    AtomicInteger evaluations = new AtomicInteger();
+    ConfigThingy conf = new ConfigThingy("", builder.toString())
+    {
+      @Override
+      public ConfigThingy query(String name)
+      {
+        if ("Textfragmente".equals(name))
+        {
+          evaluations.incrementAndGet();
+        }
+        return super.query(name);
+      }
+    };
+    String[] fragIds = new String[300];
+    for (int i = 0; i < fragIds.length; i++)
+    {
+      fragIds[i] = "frag_" + (i % 20) + "_" + (i % 100);
+    }
+
+    List<List<String>> expected = new ArrayList<>();
+    for (String fragId : fragIds)
+    {
+      expected.add(referenceURLsByID(conf, fragId));
+    }
+    assertEquals(fragIds.length, evaluations.get());
+
+    evaluations.set(0);
+    List<List<String>> actual = new ArrayList<>();
+    for (String fragId : fragIds)
+    {
+      actual.add(VisibleTextFragmentList.getURLsByID(conf, fragId));
+    }
+    assertEquals(expected, actual);
+    assertEquals(1, evaluations.get());
+  }
+
+  /**
+   * The resolution of VisibleTextFragmentList before the index was introduced.
+   */
+  private static List<String> referenceURLsByID(ConfigThingy conf, String fragId) throws NodeNotFoundException
+  {
+    LinkedList<ConfigThingy> tfListe = new LinkedList<>();
+    for (ConfigThingy confTextfragmente : conf.query("Textfragmente"))
+    {
+      tfListe.addFirst(confTextfragmente);
+    }
+
+    List<String> urls = new ArrayList<>();
+    for (ConfigThingy textfragmente : tfListe)
+    {
+      for (ConfigThingy mappingConf : textfragmente.queryByChild("FRAG_ID"))
+      {
+        String fragIdConf = mappingConf.get("FRAG_ID").toString();
+        if (".*".equals(fragIdConf))
+        {
+          fragIdConf = ".+";
+        }
+        if (fragId.matches(fragIdConf))
+        {
+          for (ConfigThingy urlNext : mappingConf.get("URL"))
+          {
+            String urlStr = referenceExpandVariable(urlNext, conf);
+            if (urlStr != null)
+            {
+              urls.add(fragId.replaceAll(fragIdConf, urlStr));
+            }
+          }
+        }
+      }
+    }
+    return urls;
+  }
+
+  private static String referenceExpandVariable(ConfigThingy node, ConfigThingy root)
+  {
+    Map<String, String> variables = new HashMap<>();
+    for (ConfigThingy var : ConfigThingy.getNodesVisibleAt(node, "VAR", root))
+    {
+      String name = var.getString("NAME");
+      String value = var.getString("VALUE");
+      if (name != null && value != null)
+      {
+        variables.put(name, value);
+      }
+    }
+
+    String string = node.toString();
+    Pattern var = Pattern.compile("\\$\\{([^\\}]*)\\}");
+    Matcher m = var.matcher(string);
+    int count = 0;
+    while (m.find() && 100 > ++count)
+    {
+      String key = m.group(1);
+      if (variables.containsKey(key))
+      {
+        string = string.substring(0, m.start()) + variables.get(key) + string.substring(m.end());
+        m = var.matcher(string);
+      }
+    }
+    return count == 100 ? null : string;
+  }
+}
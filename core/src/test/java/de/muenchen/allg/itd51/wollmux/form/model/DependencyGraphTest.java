@@ -0,0 +1,184 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2023 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.form.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+import de.muenchen.allg.itd51.wollmux.config.ConfigThingy;
+import de.muenchen.allg.itd51.wollmux.dialog.DialogLibrary;
+import de.muenchen.allg.itd51.wollmux.form.config.VisibilityGroupConfig;
+import de.muenchen.allg.itd51.wollmux.func.FunctionLibrary;
+import de.muenchen.allg.itd51.wollmux.ui.UIElementConfig;
+
+public class DependencyGraphTest
+{
+
+  @Test
+  public void testTopologicalOrder() throws Exception
+  {
+    Map<String, Control> controls = controls(
+        "ID 'd' AUTOFILL(CAT(VALUE 'b' VALUE 'c'))",
+        "ID 'c' AUTOFILL(CAT(VALUE 'a' '2'))",
+        "ID 'b' AUTOFILL(CAT(VALUE 'a' '1'))",
+        "ID 'a'");
+    DependencyGraph graph = new DependencyGraph(controls, Collections.emptyList());
+    List<String> order = ids(graph.getControls());
+    assertTrue(order.indexOf("a") < order.indexOf("b"));
+    assertTrue(order.indexOf("a") < order.indexOf("c"));
+    assertTrue(order.indexOf("b") < order.indexOf("d"));
+    assertTrue(order.indexOf("c") < order.indexOf("d"));
+
+    DependencyGraph.Changes changes = graph.setValue(controls.get("a"), "x");
+    assertEquals("x1x2", controls.get("d").getValue());
+    assertEquals("x1x2", graph.getValues().getString("d"));
+    assertEquals(Arrays.asList("a", "c", "b", "d"), ids(changes.getControls()));
+  }
+
+  @Test
+  public void testUnchangedValueStopsPropagation() throws Exception
+  {
+    Map<String, Control> controls = controls(
+        "ID 'a'",
+        "ID 'b' AUTOFILL(IF(MATCH(VALUE 'a' '.+') THEN 'voll' ELSE 'leer'))",
+        "ID 'c' AUTOFILL(CAT(VALUE 'b' '!'))");
+    DependencyGraph graph = new DependencyGraph(controls, Collections.emptyList());
+
+    assertEquals(Arrays.asList("a", "b", "c"), ids(graph.setValue(controls.get("a"), "x").getControls()));
+    assertEquals("voll!", controls.get("c").getValue());
+    assertEquals(Arrays.asList("a"), ids(graph.setValue(controls.get("a"), "y").getControls()));
+    assertEquals("voll!", controls.get("c").getValue());
+  }
+
+  @Test
+  public void testCyclicDependencies() throws Exception
+  {
+    Map<String, Control> controls = controls(
+        "ID 'a' AUTOFILL(CAT(VALUE 'b'))",
+        "ID 'b' AUTOFILL(CAT(VALUE 'a' '!'))",
+        "ID 'c'");
+    DependencyGraph graph = new DependencyGraph(controls, Collections.emptyList());
+    assertEquals(Arrays.asList("c", "a", "b"), ids(graph.getControls()));
+
+    DependencyGraph.Changes changes = graph.setValue(controls.get("a"), "x");
+    assertEquals(Arrays.asList("a", "b"), ids(changes.getControls()));
+    assertEquals("x", controls.get("a").getValue());
+    assertEquals("x!", controls.get("b").getValue());
+  }
+
+  @Test
+  public void testPlausiOfDependingControls() throws Exception
+  {
+    Map<String, Control> controls = controls(
+        "ID 'a'",
+        "ID 'b' AUTOFILL(CAT(VALUE 'a'))",
+        "ID 'c' PLAUSI(MATCH(VALUE 'b' 'x'))",
+        "ID 'd' PLAUSI(MATCH(VALUE 'd' '.+'))");
+    DependencyGraph graph = new DependencyGraph(controls, Collections.emptyList());
+    controls.values().forEach(c -> c.setOkay(graph.getValues()));
+    assertFalse(controls.get("c").isOkay());
+
+    DependencyGraph.Changes changes = graph.setValue(controls.get("a"), "x");
+    assertTrue(controls.get("c").isOkay());
+    assertEquals(Arrays.asList("a", "b", "c"), ids(changes.getCheckedControls()));
+
+    changes = graph.setValue(controls.get("d"), "y");
+    assertTrue(controls.get("d").isOkay());
+    assertEquals(Arrays.asList("d"), ids(changes.getCheckedControls()));
+  }
+
+  @Test
+  public void testVisibility() throws Exception
+  {
+    Map<String, Control> controls = controls("ID 'a'", "ID 'b'");
+    VisibilityGroup group = new VisibilityGroup(
+        new VisibilityGroupConfig(new ConfigThingy("g", "MATCH(VALUE 'a' 'x')")), new FunctionLibrary(),
+        new DialogLibrary(), new HashMap<>());
+    DependencyGraph graph = new DependencyGraph(controls, Arrays.asList(group));
+    group.computeVisibility(graph.getValues());
+    assertFalse(group.isVisible());
+
+    assertEquals(Arrays.asList(group), graph.setValue(controls.get("a"), "x").getGroups());
+    assertTrue(group.isVisible());
+    assertEquals(Arrays.asList(group), graph.setValue(controls.get("a"), "y").getGroups());
+    assertFalse(group.isVisible());
+    assertTrue(graph.setValue(controls.get("a"), "z").getGroups().isEmpty());
+    assertTrue(graph.setValue(controls.get("b"), "x").getGroups().isEmpty());
+    assertFalse(group.isVisible());
+  }
+
+  /**
+   * Ein Tastendruck wertet nur die abhängigen Controls aus. Die Anzahl der Auswertungen hängt
+   * daher nicht von der Größe des Formulars ab.
+   */
+  @Test
+  public void testChangesDontDependOnFormSize() throws Exception
+  {
+    for (int count : new int[] { 100, 400 })
+    {
+      String[] confs = new String[count];
+      for (int i = 0; i < count; i += 2)
+      {
+        confs[i] = "ID 'f" + i + "' PLAUSI(MATCH(VALUE 'f" + i + "' '.*'))";
+        confs[i + 1] = "ID 'f" + (i + 1) + "' AUTOFILL(CAT(VALUE 'f" + i + "' '!'))";
+      }
+      Map<String, Control> controls = controls(confs);
+      DependencyGraph graph = new DependencyGraph(controls, Collections.emptyList());
+
+      DependencyGraph.Changes changes = graph.setValue(controls.get("f0"), "Wert");
+      assertEquals("Wert!", controls.get("f1").getValue());
+      assertEquals(Arrays.asList("f0", "f1"), ids(changes.getControls()));
+      assertEquals(Arrays.asList("f0", "f1"), ids(changes.getCheckedControls()));
+      assertTrue(changes.getGroups().isEmpty());
+    }
+  }
+
+  private static Map<String, Control> controls(String... confs) throws Exception
+  {
+    Map<String, Control> controls = new LinkedHashMap<>();
+    for (String conf : confs)
+    {
+      Control control = new Control(new UIElementConfig(new ConfigThingy("", "TYPE 'textfield' " + conf)),
+          new FunctionLibrary(), new DialogLibrary(), new HashMap<>());
+      controls.put(control.getId(), control);
+    }
+    return controls;
+  }
+
+  private static List<String> ids(List<Control> controls)
+  {
+    return controls.stream().map(Control::getId).collect(Collectors.toCollection(ArrayList::new));
+  }
+}
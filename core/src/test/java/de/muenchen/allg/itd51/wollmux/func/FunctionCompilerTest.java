@@ -0,0 +1,335 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2023 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.func;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import de.muenchen.allg.itd51.wollmux.config.ConfigThingy;
+import de.muenchen.allg.itd51.wollmux.config.ConfigurationErrorException;
+import de.muenchen.allg.itd51.wollmux.dialog.DialogLibrary;
+
+public class FunctionCompilerTest
+{
+
+  /**
+   * Funktionen, wie sie in den Funktionen-Abschnitten der Konfigurationen
+   * vorkommen.
+   */
+  private static final String LIBRARY = "Funktionen("
+      + "Anrede(IF(MATCH(VALUE 'Geschlecht' 'm.*') THEN 'Herr' ELSE(IF(STRCMP(VALUE 'Geschlecht' 'w') "
+      + "THEN 'Frau' ELSE ''))))"
+      + "Gender(BIND(FUNCTION(SELECT(IF(MATCH(VALUE 'Anrede' 'Herr') THEN(VALUE 'Falls_Herr')) "
+      + "IF(MATCH(VALUE 'Anrede' 'Frau') THEN(VALUE 'Falls_Frau')) ELSE(VALUE 'Falls_sonstige'))) "
+      + "SET('Anrede' VALUE 'Geschlecht') SET('Falls_Herr' 'Sehr geehrter Herr') "
+      + "SET('Falls_Frau' 'Sehr geehrte Frau') SET('Falls_sonstige' 'Sehr geehrte Damen und Herren')))"
+      + "Briefanrede(CAT(BIND(FUNCTION 'Gender' SET('Geschlecht' VALUE 'Geschlecht')) ' ' VALUE 'Nachname' ','))"
+      + "Datum(CAT(SPLIT(VALUE 'Datum' '\\.' '0') '/' SPLIT(VALUE 'Datum' '\\.' '1') '/' SPLIT(VALUE 'Datum' '\\.' '2')))"
+      + "Aktenzeichen(REPLACE(CAT(VALUE 'Referat' '-' VALUE 'Nummer') '\\s+' ''))"
+      + "Pflichtfeld(AND(NOT(MATCH(VALUE 'Nachname' '')) OR(MATCH(VALUE 'Vorname' '.+') VALUE 'Anonym')))"
+      + "Laenge(LENGTH(VALUE 'Nachname' VALUE 'Vorname'))"
+      + "Fehler(ISERROR(VALUE 'Nachname'))"
+      + "Fehlertext(ISERRORSTRING(VALUE 'Nachname'))"
+      + "Auswahl(SELECT(VALUE 'Vorname' VALUE 'Nachname' ONERROR 'unbekannt'))"
+      + "Betrag(IF(NUMCMP(SUM(VALUE 'Anzahl' '1') '3') THEN 'drei' ELSE(CAT('Summe ' SUM(VALUE 'Anzahl' '1')))))"
+      + "Wahr('true')"
+      + "Doppelt(BIND(FUNCTION(CAT(VALUE 'x' VALUE 'x' VALUE 'y')) SET('x' CAT(VALUE 'Vorname' '!'))))"
+      + "Verschachtelt(BIND(FUNCTION(BIND(FUNCTION(CAT(VALUE 'a' VALUE 'b')) SET('a' VALUE 'b'))) "
+      + "SET('b' VALUE 'Nachname')))"
+      + "Ungebunden(BIND(FUNCTION(IF(VALUE 'Anonym' THEN 'anonym' ELSE(VALUE 'x'))) "
+      + "SET('x' VALUE 'Nachname')))"
+      + "Logisch(IF(VALUE 'Anonym' THEN(LENGTH(VALUE 'Nachname')) ELSE 'true'))"
+      + ")";
+
+  private static final String[] VALUES = { null, "", "true", "TRUE", "false", "m", "männlich", "w",
+      "Herr", "Frau", "12.03.2024", "1.2", "2", "  RIT  1 ", "Müller", FunctionLibrary.ERROR };
+
+  /**
+   * Vergleicht die Ergebnisse und die Zugriffe auf die Values der interpretierten und
+   * der übersetzten Funktionen aus der Bibliothek und den AUTOFILL-, PLAUSI- und
+   * Sichtbarkeit-Funktionen eines echten Formulars.
+   */
+  @Test
+  public void testCompiledEqualsInterpreted() throws Exception
+  {
+    // separately parsed, so that the caches of memoized functions have the same history
+    Map<String, Function> functions = parseFunctionTrees();
+    Map<String, Function> compiledFunctions = parseFunctionTrees();
+    compiledFunctions.replaceAll((name, function) -> FunctionCompiler.compile(function));
+
+    Set<String> names = new LinkedHashSet<>();
+    for (Function function : functions.values())
+    {
+      for (String name : function.parameters())
+      {
+        names.add(name);
+      }
+    }
+
+    Random random = new Random(42);
+    for (int i = 0; i < 2000; i++)
+    {
+      Values.SimpleMap values = new Values.SimpleMap();
+      for (String name : names)
+      {
+        values.put(name, VALUES[random.nextInt(VALUES.length)]);
+      }
+
+      for (Map.Entry<String, Function> entry : functions.entrySet())
+      {
+        String name = entry.getKey();
+        Function function = entry.getValue();
+        Function compiled = compiledFunctions.get(name);
+        RecordingValues expectedAccess = new RecordingValues(values);
+        RecordingValues actualAccess = new RecordingValues(values);
+        String expected = function.getResult(expectedAccess);
+        String actual = compiled.getResult(actualAccess);
+        assertEquals(expected, actual, name);
+        if (expected == FunctionLibrary.ERROR)
+        {
+          assertSame(FunctionLibrary.ERROR, actual, name);
+        }
+        assertEquals(expectedAccess.access, actualAccess.access, name);
+
+        expectedAccess = new RecordingValues(values);
+        actualAccess = new RecordingValues(values);
+        assertEquals(function.getBoolean(expectedAccess), compiled.getBoolean(actualAccess), name);
+        assertEquals(expectedAccess.access, actualAccess.access, name);
+      }
+    }
+  }
+
+  @Test
+  public void testCompiledFunction() throws Exception
+  {
+    FunctionLibrary funcLib = parseLibrary();
+    Function function = funcLib.get("Briefanrede");
+    Function compiled = FunctionCompiler.compile(function);
+    assertArrayEquals(function.parameters(), compiled.parameters());
+    assertSame(compiled, FunctionCompiler.compile(compiled));
+    assertNull(FunctionCompiler.compile(null));
+
+    Values.SimpleMap values = new Values.SimpleMap();
+    values.put("Geschlecht", "Frau");
+    values.put("Nachname", "Müller");
+    assertEquals("Sehr geehrte Frau Müller,", compiled.getResult(values));
+    values.remove("Nachname");
+    assertSame(FunctionLibrary.ERROR, compiled.getResult(values));
+  }
+
+  /**
+   * Wie bei BIND wird die SET-Funktion bei jedem Zugriff auf den Parameter
+   * ausgewertet.
+   */
+  @Test
+  public void testBoundFunctionEvaluatedOnEachAccess() throws Exception
+  {
+    List<String> calls = new ArrayList<>();
+    FunctionLibrary funcLib = new FunctionLibrary();
+    funcLib.add("Zaehler", new CountingFunction(calls));
+    Function function = FunctionFactory.parseChildren(
+        new ConfigThingy("", "BIND(FUNCTION(CAT(VALUE 'x' VALUE 'x')) SET('x' BIND(FUNCTION 'Zaehler')))"),
+        funcLib, new DialogLibrary(), new HashMap<>());
+
+    assertEquals("xx", function.getResult(new Values.None()));
+    assertEquals(2, calls.size());
+    calls.clear();
+    Function compiled = FunctionCompiler.compile(function);
+    assertEquals("xx", compiled.getResult(new Values.None()));
+    assertEquals(2, calls.size());
+  }
+
+  @Test
+  public void testCompileFunctions() throws Exception
+  {
+    assertFalse(FunctionFactory.isCompileFunctions());
+    assertFalse(parseLibrary().get("Datum") instanceof FunctionCompiler.CompiledFunction);
+    try
+    {
+      FunctionFactory.setCompileFunctions(true);
+      FunctionLibrary funcLib = parseLibrary();
+      Function datum = funcLib.get("Datum");
+      assertTrue(datum instanceof MemoizedFunction);
+      assertTrue(((MemoizedFunction) datum).function instanceof FunctionCompiler.CompiledFunction);
+      assertEquals("CAT(SPLIT(VALUE \"Datum\" \"\\.\" \"0\") \"/\" SPLIT(VALUE \"Datum\" \"\\.\" \"1\") "
+          + "\"/\" SPLIT(VALUE \"Datum\" \"\\.\" \"2\"))", FunctionOptimizer.dump(datum));
+      Values.SimpleMap values = new Values.SimpleMap();
+      values.put("Datum", "12.03.2024");
+      assertEquals("12/03/2024", datum.getResult(values));
+
+      Map<String, Function> trafos = FunctionFactory.parseTrafos(
+          new ConfigThingy("", "Spaltenumsetzung(Name(CAT(VALUE 'Vorname' ' ' VALUE 'Nachname')))"),
+          "Spaltenumsetzung", funcLib, new DialogLibrary(), new HashMap<>());
+      assertTrue(trafos.get("Name") instanceof FunctionCompiler.CompiledFunction);
+    } finally
+    {
+      FunctionFactory.setCompileFunctions(false);
+    }
+  }
+
+  /**
+   * Liefert die Funktionen der Bibliothek ohne Zwischenspeicher und die Funktionen
+   * des Formulars.
+   */
+  private Map<String, Function> parseFunctionTrees() throws Exception
+  {
+    Map<String, Function> functions = new LinkedHashMap<>();
+    FunctionLibrary funcLib = parseLibrary();
+    for (String name : funcLib.getFunctionNames())
+    {
+      Function function = funcLib.get(name);
+      if (function instanceof MemoizedFunction)
+      {
+        function = ((MemoizedFunction) function).function;
+      }
+      functions.put(name, function);
+    }
+    Map<String, Function> form = parseForm();
+    assertEquals(11, form.size());
+    functions.putAll(form);
+    return functions;
+  }
+
+  private static FunctionLibrary parseLibrary() throws Exception
+  {
+    return FunctionFactory.parseFunctions(new ConfigThingy("", LIBRARY), new DialogLibrary(),
+        new HashMap<>(), null);
+  }
+
+  /**
+   * Parst die Funktionen eines Formulars. Funktionen mit DIALOG werden
+   * übersprungen, da es keine Funktionsdialoge gibt.
+   */
+  private Map<String, Function> parseForm() throws Exception
+  {
+    ConfigThingy form = new ConfigThingy("",
+        getClass().getResource("/de/muenchen/allg/itd51/wollmux/form/model/abtretungserklaerung.conf"));
+    List<ConfigThingy> confs = new ArrayList<>();
+    form.query("AUTOFILL").forEach(confs::add);
+    form.query("PLAUSI").forEach(confs::add);
+    for (ConfigThingy visibility : form.query("Sichtbarkeit"))
+    {
+      visibility.forEach(confs::add);
+    }
+    Map<String, Function> functions = new LinkedHashMap<>();
+    for (ConfigThingy conf : confs)
+    {
+      try
+      {
+        functions.put(conf.getName() + functions.size(),
+            FunctionFactory.parseChildren(conf, new FunctionLibrary(), new DialogLibrary(), null));
+      } catch (ConfigurationErrorException e)
+      {
+        // DIALOG
+      }
+    }
+    return functions;
+  }
+
+  /**
+   * Zeichnet alle Zugriffe auf.
+   */
+  private static class RecordingValues implements Values
+  {
+    private final Values values;
+
+    private final List<String> access = new ArrayList<>();
+
+    RecordingValues(Values values)
+    {
+      this.values = values;
+    }
+
+    @Override
+    public boolean hasValue(String id)
+    {
+      access.add("hasValue " + id);
+      return values.hasValue(id);
+    }
+
+    @Override
+    public String getString(String id)
+    {
+      access.add("getString " + id);
+      return values.getString(id);
+    }
+
+    @Override
+    public boolean getBoolean(String id)
+    {
+      access.add("getBoolean " + id);
+      return values.getBoolean(id);
+    }
+  }
+
+  private static class CountingFunction implements Function
+  {
+    private final List<String> calls;
+
+    CountingFunction(List<String> calls)
+    {
+      this.calls = calls;
+    }
+
+    @Override
+    public String[] parameters()
+    {
+      return new String[0];
+    }
+
+    @Override
+    public void getFunctionDialogReferences(Collection<String> set)
+    {
+      // no dialogs
+    }
+
+    @Override
+    public String getResult(Values parameters)
+    {
+      calls.add("x");
+      return "x";
+    }
+
+    @Override
+    public boolean getBoolean(Values parameters)
+    {
+      return false;
+    }
+  }
+}
@@ -0,0 +1,242 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2023 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.func;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import de.muenchen.allg.itd51.wollmux.config.ConfigThingy;
+import de.muenchen.allg.itd51.wollmux.dialog.Dialog;
+import de.muenchen.allg.itd51.wollmux.dialog.DialogLibrary;
+
+public class FunctionOptimizerTest
+{
+  private static FunctionLibrary funcLib = new FunctionLibrary();
+  private static DialogLibrary dialogLib = new DialogLibrary();
+  private static HashMap<Object, Object> context = new HashMap<>();
+
+  /**
+   * Die gültigen Funktionen aus {@link FunctionFactoryTest} und Funktionen, die
+   * vereinfacht werden können.
+   */
+  private static final String[][] FUNCTIONS = { { "test", "" }, { "AND", "\"true\"" },
+      { "NOT", "\"true\"" }, { "OR", "\"true\"" }, { "VALUE", "\"true\"" },
+      { "MATCH", "\"abs\" \"abc\"" }, { "REPLACE", "\"abc\" \"abc\" \"def\"" },
+      { "SPLIT", "\"abc\" \"b\" \"0\"" }, { "IF", "\"true\"" },
+      { "EXTERN", "URL \"java:de.muenchen.allg.itd51.wollmux.func.FunctionFactoryTest.extMethod\"" },
+      { "DIALOG", "\"dialog\" \"value1\"" }, { "BIND", "FUNCTION \"func\"" },
+      { "SELECT", "\"test\"" }, { "CAT", "\"abc\"" }, { "THEN", "\"abc\"" }, { "ELSE", "\"abc\"" },
+      { "LENGTH", "\"abc\"" }, { "FORMAT", "\"5\"" },
+      { "DIVIDE", "\"5\" BY \"1\" MAX \"1\" MIN \"1\"" }, { "MINUS", "\"5\"" }, { "SUM", "\"5\"" },
+      { "DIFF", "\"5\"" }, { "PRODUCT", "\"5\"" }, { "ABS", "\"5\"" }, { "SIGN", "\"5\"" },
+      { "LT", "\"5\" \"2\"" }, { "LE", "\"5\" \"2\"" }, { "GT", "\"5\" \"2\"" },
+      { "GE", "\"5\" \"2\"" }, { "NUMCMP", "\"5\" \"2\"" }, { "STRCMP", "\"abc\" \"def\"" },
+      { "ISERROR", "\"test\"" }, { "ISERRORSTRING", "\"test\"" },
+      { "IF", "\"true\" THEN \"then\" ELSE \"else\"" },
+      { "IF", "THEN \"then\" ELSE \"else\" \"true\"" }, { "MATCH", "\"abc\"" },
+      { "VALUE", "\"value1\" \"value2\"" }, { "BIND", "FUNCTION (SUM(\"1\" \"1\"))" },
+      { "IF", "MATCH(VALUE \"a\" \"x.*\") THEN(VALUE \"b\") ELSE(CAT(\"a\" \"b\" VALUE \"c\" \"d\"))" },
+      { "IF", "VALUE \"a\" THEN(LENGTH(VALUE \"b\")) ELSE \"false\"" },
+      { "IF", "\"false\" THEN(DIALOG(\"dialog\" \"value1\")) ELSE(VALUE \"a\")" },
+      { "IF", "\"TRUE\" THEN(VALUE \"a\") ELSE(VALUE \"b\")" },
+      { "IF", "ISERROR(VALUE \"a\") THEN \"error\" ELSE(LENGTH(VALUE \"a\"))" },
+      { "AND", "\"true\" VALUE \"a\" \"false\" VALUE \"b\"" },
+      { "AND", "VALUE \"a\" \"true\" \"TRUE\"" }, { "AND", "\"true\"" },
+      { "OR", "VALUE \"a\" \"x\" \"true\" VALUE \"b\"" }, { "OR", "\"false\" \"x\"" },
+      { "NOT", "\"true\" VALUE \"a\" \"x\" VALUE \"b\"" },
+      { "CAT", "\"a\" \"b\" VALUE \"a\" \"\" \"c\" \"d\"" }, { "CAT", "VALUE \"a\"" },
+      { "CAT", "\"\"" }, { "CAT", "VALUE \"a\" CAT(VALUE \"b\" ISERROR(VALUE \"c\"))" },
+      { "SELECT", "\"\" VALUE \"a\" \"x\" VALUE \"b\"" },
+      { "SELECT", "VALUE \"a\" VALUE \"b\" ONERROR(CAT(\"x\" \"y\"))" },
+      { "SELECT", "VALUE \"a\" \"\"" },
+      { "LENGTH", "CAT(\"ab\" \"c\")" },
+      { "REPLACE", "CAT(VALUE \"a\" \"-\") \"-\" CAT(\"+\" \"+\")" },
+      { "SPLIT", "CAT(\"a,b,\" VALUE \"a\") \",\" \"2\"" },
+      { "STRCMP", "VALUE \"a\" CAT(\"t\" \"rue\")" },
+      { "BIND", "FUNCTION(CAT(VALUE \"x\" VALUE \"a\")) SET(\"x\" IF(\"true\" THEN \"1\" ELSE \"2\"))" },
+      { "BIND", "FUNCTION(CAT(VALUE \"x\" VALUE \"y\")) SET(\"x\" \"1\") SET(\"y\" \"2\")" },
+      { "BIND", "FUNCTION(VALUE \"x\") SET(\"x\" VALUE \"a\")" },
+      { "NUMCMP", "VALUE \"a\" SUM(\"1\" \"2\") MARGIN \"1\"" } };
+
+  private static final String[] VALUES = { null, "", "true", "TRUE", "false", "x", "xyz", "1",
+      "3", "-2.5", "a,b,c", FunctionLibrary.ERROR };
+
+  @BeforeAll
+  public static void setup()
+  {
+    funcLib.add("func", new StringLiteralFunction("test"));
+    dialogLib.add("dialog", new Dialog()
+    {
+
+      @Override
+      public void show(ActionListener dialogEndListener, FunctionLibrary funcLib, DialogLibrary dialogLib)
+      {
+        dialogEndListener.actionPerformed(new ActionEvent(this, 1, "success"));
+      }
+
+      @Override
+      public Dialog instanceFor(Map<Object, Object> context)
+      {
+        return this;
+      }
+
+      @Override
+      public Collection<String> getSchema()
+      {
+        return List.of("value1");
+      }
+
+      @Override
+      public Object getData(String id)
+      {
+        if ("value1".equals(id))
+        {
+          return "v1";
+        }
+        return null;
+      }
+    });
+  }
+
+  @Test
+  public void testOptimizedEqualsParsed() throws Exception
+  {
+    List<Values> valueSets = new ArrayList<>();
+    valueSets.add(new Values.None());
+    for (String a : VALUES)
+    {
+      for (String b : VALUES)
+      {
+        Values.SimpleMap values = new Values.SimpleMap();
+        put(values, "a", a);
+        put(values, "b", b);
+        put(values, "c", b);
+        put(values, "true", a);
+        put(values, "value1", b);
+        valueSets.add(values);
+      }
+    }
+
+    FunctionOptimizer optimizer = new FunctionOptimizer();
+    for (String[] conf : FUNCTIONS)
+    {
+      Function function = FunctionFactory.parse(new ConfigThingy(conf[0], conf[1]), funcLib,
+          dialogLib, context);
+      Function optimized = optimizer.optimize(function);
+      String name = conf[0] + "(" + conf[1] + ") -> " + FunctionOptimizer.dump(optimized);
+
+      assertTrue(new HashSet<>(Arrays.asList(function.parameters()))
+          .containsAll(Arrays.asList(optimized.parameters())), name);
+      Set<String> expectedDialogs = new HashSet<>();
+      function.getFunctionDialogReferences(expectedDialogs);
+      Set<String> actualDialogs = new HashSet<>();
+      optimized.getFunctionDialogReferences(actualDialogs);
+      assertEquals(expectedDialogs, actualDialogs, name);
+
+      for (Values values : valueSets)
+      {
+        String expected = function.getResult(values);
+        String actual = optimized.getResult(values);
+        assertEquals(expected, actual, name);
+        if (expected == FunctionLibrary.ERROR)
+        {
+          assertSame(FunctionLibrary.ERROR, actual, name);
+        }
+        assertEquals(function.getBoolean(values), optimized.getBoolean(values), name);
+      }
+    }
+  }
+
+  @Test
+  public void testSimplifications() throws Exception
+  {
+    assertOptimized("\"abc\"", "CAT", "\"a\" \"b\" \"c\"");
+    assertOptimized("CAT(\"ab\" VALUE \"a\" \"cd\")", "CAT", "\"a\" \"b\" VALUE \"a\" \"\" \"c\" \"d\"");
+    assertOptimized("VALUE \"a\"", "IF", "\"true\" THEN(VALUE \"a\") ELSE(VALUE \"b\")");
+    assertOptimized("IF(\"false\" THEN(CAT(DialogFunction)) ELSE(VALUE \"a\"))", "IF",
+        "\"false\" THEN(DIALOG(\"dialog\" \"value1\")) ELSE(VALUE \"a\")");
+    assertOptimized("AND(VALUE \"a\" \"false\")", "AND", "\"true\" VALUE \"a\" \"false\" VALUE \"b\"");
+    assertOptimized("OR(VALUE \"a\" \"true\")", "OR", "VALUE \"a\" \"x\" \"true\" VALUE \"b\"");
+    assertOptimized("\"false\"", "OR", "\"false\" \"x\"");
+    assertOptimized("SELECT(\"\" VALUE \"a\" \"x\")", "SELECT", "\"\" VALUE \"a\" \"x\" VALUE \"b\"");
+    assertOptimized("\"false\"", "MATCH", "\"abs\" \"abc\"");
+    assertOptimized("\"3\"", "LENGTH", "CAT(\"ab\" \"c\")");
+    assertOptimized("BIND(FUNCTION(CAT(VALUE \"x\" VALUE \"a\")) SET(\"x\" \"1\"))", "BIND",
+        "FUNCTION(CAT(VALUE \"x\" VALUE \"a\")) SET(\"x\" IF(\"true\" THEN \"1\" ELSE \"2\"))");
+    assertOptimized("\"12\"", "BIND", "FUNCTION(CAT(VALUE \"x\" VALUE \"y\")) SET(\"x\" \"1\") SET(\"y\" \"2\")");
+    assertOptimized("VALUE \"a\"", "IF", "ISERROR(\"test\") THEN \"error\" ELSE(VALUE \"a\")");
+    assertOptimized("ERROR", "IF", "SUM(\"x\") THEN \"1\" ELSE \"2\"");
+    assertOptimized("ExternalFunctionFunction", "EXTERN",
+        "URL \"java:de.muenchen.allg.itd51.wollmux.func.FunctionFactoryTest.extMethod\"");
+
+    Function optimized = new FunctionOptimizer().optimize(FunctionFactory.parse(
+        new ConfigThingy("IF", "\"true\" THEN \"1\" ELSE(VALUE \"b\")"), funcLib, dialogLib, context));
+    assertEquals(0, optimized.parameters().length);
+    assertNull(new FunctionOptimizer().optimize(null));
+  }
+
+  @Test
+  public void testCommonSubexpressions() throws Exception
+  {
+    FunctionLibrary lib = FunctionFactory.parseFunctions(new ConfigThingy("",
+        "Funktionen(Herr(MATCH(VALUE \"Anrede\" \"Herr.*\")) "
+            + "Anrede(IF(MATCH(VALUE \"Anrede\" \"Herr.*\") THEN \"Sehr geehrter\" ELSE \"Sehr geehrte\")) "
+            + "Gruss(IF(MATCH(VALUE \"Anrede\" \"Herr.*\") THEN \"Sehr geehrter\" ELSE \"Sehr geehrte\")))"),
+        dialogLib, context, null);
+    Function herr = ((MemoizedFunction) lib.get("Herr")).function;
+    assertSame(herr, ((IfFunction) ((MemoizedFunction) lib.get("Anrede")).function).getCondition());
+    assertSame(lib.get("Anrede"), lib.get("Gruss"));
+    assertEquals("IF(MATCH(VALUE \"Anrede\" \"Herr.*\") THEN(\"Sehr geehrter\") ELSE(\"Sehr geehrte\"))",
+        FunctionOptimizer.dump(lib.get("Anrede")));
+  }
+
+  private static void assertOptimized(String expected, String name, String conf) throws Exception
+  {
+    Function function = FunctionFactory.parse(new ConfigThingy(name, conf), funcLib, dialogLib, context);
+    assertEquals(expected, FunctionOptimizer.dump(new FunctionOptimizer().optimize(function)));
+  }
+
+  private static void put(Values.SimpleMap values, String id, String value)
+  {
+    if (value != null)
+    {
+      values.put(id, value);
+    }
+  }
+}
@@ -0,0 +1,151 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2023 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.func;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+
+import org.junit.jupiter.api.Test;
+
+import de.muenchen.allg.itd51.wollmux.config.ConfigThingy;
+import de.muenchen.allg.itd51.wollmux.dialog.DialogLibrary;
+
+public class MemoizedFunctionTest
+{
+  private static FunctionLibrary funcLib = new FunctionLibrary();
+  private static DialogLibrary dialogLib = new DialogLibrary();
+  private static HashMap<Object, Object> context = new HashMap<>();
+
+  @Test
+  public void testMemoizedFunction() throws Exception
+  {
+    Function function = parse("CAT", "VALUE \"a\" \"-\" VALUE \"b\"");
+    Function memoized = MemoizedFunction.memoize(function);
+    assertTrue(memoized instanceof MemoizedFunction);
+    assertArrayEquals(function.parameters(), memoized.parameters());
+    assertSame(memoized, MemoizedFunction.memoize(memoized));
+    MemoizedFunction memo = (MemoizedFunction) memoized;
+
+    Values.SimpleMap values = new Values.SimpleMap();
+    values.put("a", "1");
+    values.put("b", "2");
+    values.put("c", "3");
+    assertEquals("1-2", memoized.getResult(values));
+    assertEquals("1-2", memoized.getResult(values));
+    assertEquals(1, memo.getHits());
+    assertEquals(1, memo.getMisses());
+
+    values.put("c", "4");
+    assertEquals("1-2", memoized.getResult(values));
+    assertEquals(2, memo.getHits());
+
+    values.put("b", "5");
+    assertEquals("1-5", memoized.getResult(values));
+    assertEquals(2, memo.getMisses());
+
+    values.remove("b");
+    assertSame(FunctionLibrary.ERROR, memoized.getResult(values));
+    assertSame(FunctionLibrary.ERROR, memoized.getResult(values));
+    values.put("b", "");
+    assertEquals("1-", memoized.getResult(values));
+    assertEquals(3, memo.getHits());
+    assertEquals(4, memo.getMisses());
+  }
+
+  @Test
+  public void testMemoizedBoolean() throws Exception
+  {
+    Function function = parse("LENGTH", "VALUE \"a\"");
+    MemoizedFunction memo = (MemoizedFunction) MemoizedFunction.memoize(function);
+    Values.SimpleMap values = new Values.SimpleMap();
+    values.put("a", "true");
+    assertEquals("4", memo.getResult(values));
+    assertEquals(function.getBoolean(values), memo.getBoolean(values));
+    assertEquals(function.getBoolean(values), memo.getBoolean(values));
+    assertEquals(1, memo.getHits());
+    assertEquals(2, memo.getMisses());
+  }
+
+  @Test
+  public void testBounded() throws Exception
+  {
+    MemoizedFunction memo = (MemoizedFunction) MemoizedFunction
+        .memoize(parse("CAT", "VALUE \"a\" \"!\""));
+    Values.SimpleMap values = new Values.SimpleMap();
+    for (int i = 0; i <= MemoizedFunction.MAX_SIZE; i++)
+    {
+      values.put("a", Integer.toString(i));
+      assertEquals(i + "!", memo.getResult(values));
+    }
+    values.put("a", Integer.toString(MemoizedFunction.MAX_SIZE));
+    memo.getResult(values);
+    assertEquals(1, memo.getHits());
+    values.put("a", "0");
+    memo.getResult(values);
+    assertEquals(1, memo.getHits());
+  }
+
+  @Test
+  public void testPurity() throws Exception
+  {
+    assertNull(MemoizedFunction.memoize(null));
+
+    Function function = parse("VALUE", "\"a\"");
+    assertSame(function, MemoizedFunction.memoize(function));
+    function = new StringLiteralFunction("a");
+    assertSame(function, MemoizedFunction.memoize(function));
+
+    String url = "URL \"java:de.muenchen.allg.itd51.wollmux.func.FunctionFactoryTest.extMethod\"";
+    function = parse("CAT", "EXTERN(" + url + ") VALUE \"a\"");
+    assertSame(function, MemoizedFunction.memoize(function));
+    function = parse("CAT", "EXTERN(" + url + " PURE \"true\") VALUE \"a\"");
+    assertTrue(MemoizedFunction.memoize(function) instanceof MemoizedFunction);
+    assertFalse(((ExternalFunctionFunction) parse("EXTERN", url)).isPure());
+  }
+
+  @Test
+  public void testParseFunctions() throws Exception
+  {
+    FunctionLibrary lib = FunctionFactory.parseFunctions(new ConfigThingy("",
+        "Funktionen(Anrede(IF(MATCH(VALUE \"Anrede\" \"Herr.*\") THEN \"Sehr geehrter\" ELSE \"Sehr geehrte\")) "
+            + "Gruss(IF(MATCH(VALUE \"Anrede\" \"Herr.*\") THEN \"Sehr geehrter\" ELSE \"Sehr geehrte\")) "
+            + "Name(VALUE \"Name\"))"),
+        dialogLib, context, null);
+    assertTrue(lib.get("Anrede") instanceof MemoizedFunction);
+    assertSame(lib.get("Anrede"), lib.get("Gruss"));
+    assertTrue(lib.get("Name") instanceof ValueFunction);
+    assertEquals("IF(MATCH(VALUE \"Anrede\" \"Herr.*\") THEN(\"Sehr geehrter\") ELSE(\"Sehr geehrte\"))",
+        FunctionOptimizer.dump(lib.get("Anrede")));
+  }
+
+  private static Function parse(String name, String conf) throws Exception
+  {
+    return FunctionFactory.parse(new ConfigThingy(name, conf), funcLib, dialogLib, context);
+  }
+}
@@ -0,0 +1,222 @@
+/*-
+ * #%L
+ * WollMux
+ * %%
+ * Copyright (C) 2005 - 2023 Landeshauptstadt München
+ * %%
+ * Licensed under the EUPL, Version 1.1 or – as soon they will be
+ * approved by the European Commission - subsequent versions of the
+ * EUPL (the "Licence");
+ *
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ * http://ec.europa.eu/idabc/eupl5
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ * #L%
+ */
+package de.muenchen.allg.itd51.wollmux.func;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import de.muenchen.allg.itd51.wollmux.config.ConfigThingy;
+import de.muenchen.allg.itd51.wollmux.dialog.DialogLibrary;
+
+public class NumberFunctionTest
+{
+
+  private static final String DECIMAL_POINT = String.valueOf(NumberFunction.getDecimalPoint());
+
+  /**
+   * Verschachtelte Berechnungen, wie sie z.B. in Rechnungsformularen vorkommen.
+   */
+  private static final String[] FUNCTIONS = {
+      "SUM(PRODUCT(VALUE 'a' VALUE 'b') PRODUCT(VALUE 'b' VALUE 'c') MINUS(VALUE 'c'))",
+      "DIVIDE(SUM(VALUE 'a' VALUE 'b') BY(DIFF(VALUE 'c' '1')) MIN '2' MAX '4')",
+      "ABS(DIFF(PRODUCT(VALUE 'a' '1" + DECIMAL_POINT + "19') SUM(VALUE 'b' VALUE 'c')))",
+      "SIGN(SUM(VALUE 'a' MINUS(VALUE 'b')))",
+      "NUMCMP(SUM(VALUE 'a' '1') PRODUCT(VALUE 'b' '2') MARGIN(ABS(VALUE 'c')))",
+      "SUM(NUMCMP(VALUE 'a' VALUE 'b') '1')",
+      "SUM(LT(VALUE 'a' VALUE 'b') '1')",
+      "PRODUCT(DIVIDE(VALUE 'a' BY(VALUE 'b') MIN '1' MAX '2') '3')",
+      "GE(SUM(VALUE 'a' VALUE 'b') DIVIDE(VALUE 'c') PRODUCT('2' VALUE 'a'))",
+      "MINUS(SUM(VALUE 'a' DIVIDE(PRODUCT(VALUE 'b' VALUE 'c') BY '3' MAX '5')))",
+      "SUM('0" + DECIMAL_POINT + "10' 'abc' VALUE 'a')" };
+
+  private static final String[] VALUES = { null, "", "abc", "0", "1", "-3", "2" + DECIMAL_POINT + "5",
+      "100.000", "1e3", "+4", "0" + DECIMAL_POINT + "333", FunctionLibrary.ERROR };
+
+  private static final Set<String> NUMBER_FUNCTIONS = Set.of("SUM", "MINUS", "DIFF", "PRODUCT", "ABS",
+      "SIGN", "DIVIDE", "FORMAT", "LT", "LE", "GT", "GE", "NUMCMP");
+
+  /**
+   * Vergleicht die Ergebnisse mit Funktionen, bei denen jede verschachtelte
+   * numerische Funktion in ein CAT eingepackt ist und ihr Ergebnis deshalb als
+   * String weitergegeben wird.
+   */
+  @Test
+  public void testNumberEqualsResult() throws Exception
+  {
+    List<Function> functions = new ArrayList<>();
+    List<Function> stringFunctions = new ArrayList<>();
+    for (String conf : FUNCTIONS)
+    {
+      functions.add(parse(conf, false));
+      stringFunctions.add(parse(conf, true));
+    }
+
+    Random random = new Random(42);
+    for (int i = 0; i < 2000; i++)
+    {
+      Values.SimpleMap values = new Values.SimpleMap();
+      for (String name : new String[] { "a", "b", "c" })
+      {
+        String value = VALUES[random.nextInt(VALUES.length)];
+        if (value != null)
+        {
+          values.put(name, value);
+        }
+      }
+
+      for (int j = 0; j < FUNCTIONS.length; j++)
+      {
+        String expected = stringFunctions.get(j).getResult(values);
+        String actual = functions.get(j).getResult(values);
+        assertEquals(expected, actual, FUNCTIONS[j]);
+        if (expected == FunctionLibrary.ERROR)
+        {
+          assertSame(FunctionLibrary.ERROR, actual, FUNCTIONS[j]);
+        }
+
+        BigDecimal number = ((NumericFunction) functions.get(j)).getNumber(values);
+        BigDecimal parsed = NumberFunction.parseNumber(actual, DECIMAL_POINT.charAt(0));
+        if (parsed == null)
+        {
+          assertNull(number, FUNCTIONS[j]);
+        } else
+        {
+          assertEquals(0, parsed.compareTo(number), FUNCTIONS[j]);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testStringLiteralNumber() throws Exception
+  {
+    assertEquals(new BigDecimal("-1.5"),
+        new StringLiteralFunction("-1" + DECIMAL_POINT + "5").getNumber(null));
+    assertEquals(BigDecimal.ZERO, new StringLiteralFunction("0").getNumber(null));
+    assertNull(new StringLiteralFunction("true").getNumber(null));
+    assertNull(new StringLiteralFunction("").getNumber(null));
+    assertNull(new StringLiteralFunction("1 2").getNumber(null));
+    assertNull(new StringLiteralFunction(FunctionLibrary.ERROR).getNumber(null));
+  }
+
+  /**
+   * Verschachtelte numerische Funktionen werden als Zahl ausgewertet, ohne ihr
+   * Ergebnis als String zu formatieren und wieder zu parsen.
+   */
+  @Test
+  public void testNestedNumbersAreNotFormatted() throws Exception
+  {
+    MultiFunction sum = (MultiFunction) parse(
+        "SUM(PRODUCT(VALUE 'a' '2') DIVIDE(VALUE 'b' BY '4' MAX '2') ABS(VALUE 'c') '1')", false);
+    for (Function func : sum.subFunction)
+    {
+      assertTrue(func instanceof NumericFunction, func.getClass().getName());
+    }
+
+    CountingNumber counting = new CountingNumber();
+    assertEquals(new BigDecimal(2), NumberFunction.evaluateNumber(counting, null, '.'));
+    assertEquals(1, counting.numbers);
+    assertEquals(0, counting.results);
+  }
+
+  private static class CountingNumber implements NumericFunction
+  {
+    private int numbers = 0;
+
+    private int results = 0;
+
+    @Override
+    public BigDecimal getNumber(Values parameters)
+    {
+      numbers++;
+      return new BigDecimal(2);
+    }
+
+    @Override
+    public String getResult(Values parameters)
+    {
+      results++;
+      return "2";
+    }
+
+    @Override
+    public String[] parameters()
+    {
+      return new String[0];
+    }
+
+    @Override
+    public void getFunctionDialogReferences(Collection<String> set)
+    {
+      // keine Dialoge
+    }
+
+    @Override
+    public boolean getBoolean(Values parameters)
+    {
+      return false;
+    }
+  }
+
+  private static Function parse(String conf, boolean wrapNumbers) throws Exception
+  {
+    ConfigThingy function = new ConfigThingy("", conf).getFirstChild();
+    if (wrapNumbers)
+    {
+      function = wrapNumbers(function);
+    }
+    return FunctionFactory.parse(function, new FunctionLibrary(), new DialogLibrary(), new HashMap<>());
+  }
+
+  /**
+   * Packt alle verschachtelten numerischen Funktionen in ein CAT ein.
+   */
+  private static ConfigThingy wrapNumbers(ConfigThingy conf)
+  {
+    ConfigThingy copy = new ConfigThingy(conf.getName());
+    for (ConfigThingy child : conf)
+    {
+      ConfigThingy wrapped = wrapNumbers(child);
+      if (NUMBER_FUNCTIONS.contains(child.getName()))
+      {
+        ConfigThingy cat = new ConfigThingy("CAT");
+        cat.addChild(wrapped);
+        wrapped = cat;
+      }
+      copy.addChild(wrapped);
+    }
+    return copy;
+  }
+}
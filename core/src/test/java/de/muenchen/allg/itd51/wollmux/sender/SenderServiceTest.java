@@ -30,9 +30,12 @@ import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 
 import org.junit.jupiter.api.BeforeEach;
@@ -43,6 +46,7 @@ import de.muenchen.allg.itd51.wollmux.db.ColumnNotFoundException;
 import de.muenchen.allg.itd51.wollmux.db.ColumnTransformer;
 import de.muenchen.allg.itd51.wollmux.db.Dataset;
 import de.muenchen.allg.itd51.wollmux.db.Datasource;
+import de.muenchen.allg.itd51.wollmux.db.QueryResults;
 import de.muenchen.allg.itd51.wollmux.db.mock.MockDataset;
 import de.muenchen.allg.itd51.wollmux.db.mock.MockDatasource;
 import de.muenchen.allg.itd51.wollmux.func.StringLiteralFunction;
@@ -202,4 +206,56 @@ public class SenderServiceTest
     assertEquals(0, service.getCurrentOverrideFragMap().count());
   }
 
+
+  @Test
+  public void testRefreshWithOneRequest() throws Exception
+  {
+    List<Collection<String>> requests = new ArrayList<>();
+    Datasource ds = new MockDatasource("mock", List.of("column", "column2"), List.of(first, second))
+    {
+      @Override
+      public QueryResults getDatasetsByKey(Collection<String> keys)
+      {
+        requests.add(keys);
+        return super.getDatasetsByKey(keys);
+      }
+    };
+    service = new SenderService(ds, null, new MockCache(), "column");
+    assertEquals(1, requests.size());
+    assertEquals(List.of("ds", "lost"), new ArrayList<>(requests.get(0)));
+    assertEquals(List.of(", "), service.getLostDatasetDisplayStrings());
+  }
+
+  @Test
+  public void testAsyncRefresh() throws Exception
+  {
+    CountDownLatch latch = new CountDownLatch(1);
+    Datasource ds = new MockDatasource("mock", List.of("column", "column2"), List.of(first, second))
+    {
+      @Override
+      public QueryResults getDatasetsByKey(Collection<String> keys)
+      {
+        try
+        {
+          latch.await();
+        } catch (InterruptedException e)
+        {
+          Thread.currentThread().interrupt();
+        }
+        return super.getDatasetsByKey(keys);
+      }
+    };
+    service = new SenderService(ds, null, new MockCache(), "column", true);
+    // cached values are available immediately
+    assertEquals("value1", service.getCurrentSenderValue("column"));
+    assertNull(service.getCurrentSenderValue("column2"));
+    assertFalse(service.refreshed.isDone());
+
+    latch.countDown();
+    service.refreshed.get();
+    // the background thread doesn't modify the senders
+    assertFalse(service.data.get(0).isFromDatabase());
+    assertEquals("value2", service.getCurrentSenderValue("column2"));
+    assertEquals(List.of(", "), service.getLostDatasetDisplayStrings());
+  }
 }